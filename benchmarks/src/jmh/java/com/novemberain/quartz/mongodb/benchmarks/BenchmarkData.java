@@ -0,0 +1,105 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import org.quartz.CalendarIntervalScheduleBuilder;
+import org.quartz.CronScheduleBuilder;
+import org.quartz.DailyTimeIntervalScheduleBuilder;
+import org.quartz.Job;
+import org.quartz.JobBuilder;
+import org.quartz.JobDataMap;
+import org.quartz.JobDetail;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobKey;
+import org.quartz.ScheduleBuilder;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.spi.OperableTrigger;
+
+import java.util.Date;
+
+/**
+ * Jobs and triggers used as benchmark input.
+ */
+final class BenchmarkData {
+
+    static final JobKey JOB_KEY = new JobKey("benchmark-job", "benchmarks");
+
+    private BenchmarkData() {
+    }
+
+    /**
+     * @param size    number of entries
+     * @return job data map with a mix of value types found in typical jobs
+     */
+    static JobDataMap jobDataMap(int size) {
+        JobDataMap map = new JobDataMap();
+        for (int i = 0; i < size; i++) {
+            switch (i % 4) {
+                case 0:
+                    map.put("string-" + i, "value of entry number " + i);
+                    break;
+                case 1:
+                    map.put("int-" + i, i);
+                    break;
+                case 2:
+                    map.put("long-" + i, (long) i * 1000000L);
+                    break;
+                default:
+                    map.put("boolean-" + i, i % 3 == 0);
+            }
+        }
+        return map;
+    }
+
+    static JobDetail job(int jobDataSize) {
+        return JobBuilder.newJob(NoOpJob.class)
+                .withIdentity(JOB_KEY)
+                .withDescription("benchmark job")
+                .storeDurably()
+                .usingJobData(jobDataMap(jobDataSize))
+                .build();
+    }
+
+    /**
+     * @param type           one of {@code simple}, {@code cron}, {@code calendarInterval}
+     *                       or {@code dailyTimeInterval}
+     * @param jobDataSize    number of job data entries of the trigger
+     * @return trigger with computed first fire time
+     */
+    static OperableTrigger trigger(String type, int jobDataSize) {
+        Trigger trigger = TriggerBuilder.newTrigger()
+                .withIdentity("benchmark-" + type, "benchmarks")
+                .forJob(JOB_KEY)
+                .withDescription("benchmark trigger")
+                .startAt(new Date(1500000000000L))
+                .usingJobData(jobDataMap(jobDataSize))
+                .withSchedule(schedule(type))
+                .build();
+        OperableTrigger operable = (OperableTrigger) trigger;
+        operable.computeFirstFireTime(null);
+        return operable;
+    }
+
+    private static ScheduleBuilder<? extends Trigger> schedule(String type) {
+        if ("simple".equals(type)) {
+            return SimpleScheduleBuilder.simpleSchedule()
+                    .withIntervalInSeconds(30)
+                    .repeatForever();
+        } else if ("cron".equals(type)) {
+            return CronScheduleBuilder.cronSchedule("0 0/5 8-18 ? * MON-FRI");
+        } else if ("calendarInterval".equals(type)) {
+            return CalendarIntervalScheduleBuilder.calendarIntervalSchedule()
+                    .withIntervalInHours(1);
+        } else if ("dailyTimeInterval".equals(type)) {
+            return DailyTimeIntervalScheduleBuilder.dailyTimeIntervalSchedule()
+                    .withIntervalInMinutes(15);
+        }
+        throw new IllegalArgumentException("Unknown trigger type " + type);
+    }
+
+    public static class NoOpJob implements Job {
+        @Override
+        public void execute(JobExecutionContext context) {
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import com.novemberain.quartz.mongodb.JobConverter;
+import com.novemberain.quartz.mongodb.JobDataConverter;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.quartz.JobDetail;
+import org.quartz.JobPersistenceException;
+import org.quartz.simpl.SimpleClassLoadHelper;
+
+/**
+ * Cost of converting jobs, a job is loaded for every fired trigger.
+ */
+@State(Scope.Benchmark)
+public class JobConverterBenchmark {
+
+    @Param({"0", "10", "100"})
+    public int jobDataSize;
+
+    @Param({"true", "false"})
+    public boolean base64;
+
+    private JobConverter converter;
+    private JobDetail job;
+    private Document document;
+
+    @Setup
+    public void setUp() throws JobPersistenceException {
+        converter = new JobConverter(new SimpleClassLoadHelper(), new JobDataConverter(base64));
+        job = BenchmarkData.job(jobDataSize);
+        document = converter.toDocument(job, job.getKey());
+    }
+
+    @Benchmark
+    public Document toDocument() throws JobPersistenceException {
+        return converter.toDocument(job, job.getKey());
+    }
+
+    @Benchmark
+    public JobDetail toJobDetail() throws JobPersistenceException {
+        return converter.toJobDetail(document);
+    }
+}
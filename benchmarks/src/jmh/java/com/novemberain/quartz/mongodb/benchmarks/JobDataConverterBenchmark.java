@@ -0,0 +1,53 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import com.novemberain.quartz.mongodb.JobDataConverter;
+import com.novemberain.quartz.mongodb.util.CompactJobDataSerializer;
+import org.bson.Document;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.quartz.JobDataMap;
+import org.quartz.JobPersistenceException;
+
+/**
+ * Cost of storing job data maps as base64 encoded serialized maps
+ * compared to plain documents and compact binary encoding.
+ */
+@State(Scope.Benchmark)
+public class JobDataConverterBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int jobDataSize;
+
+    @Param({"base64", "plain", "binary"})
+    public String format;
+
+    private JobDataConverter converter;
+    private JobDataMap jobDataMap;
+    private Document document;
+
+    @Setup
+    public void setUp() throws JobPersistenceException {
+        converter = new JobDataConverter("base64".equals(format),
+                "binary".equals(format) ? new CompactJobDataSerializer() : null);
+        jobDataMap = BenchmarkData.jobDataMap(jobDataSize);
+        document = new Document();
+        converter.toDocument(jobDataMap, document);
+    }
+
+    @Benchmark
+    public Document toDocument() throws JobPersistenceException {
+        Document doc = new Document();
+        converter.toDocument(jobDataMap, doc);
+        return doc;
+    }
+
+    @Benchmark
+    public JobDataMap toJobData() throws JobPersistenceException {
+        JobDataMap map = new JobDataMap();
+        converter.toJobData(document, map);
+        return map;
+    }
+}
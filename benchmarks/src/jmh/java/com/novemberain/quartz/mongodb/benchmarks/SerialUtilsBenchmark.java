@@ -0,0 +1,41 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import com.novemberain.quartz.mongodb.util.SerialUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.quartz.JobDataMap;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Cost of Java serialization and base64 encoding of job data maps.
+ */
+@State(Scope.Benchmark)
+public class SerialUtilsBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int jobDataSize;
+
+    private JobDataMap jobDataMap;
+    private String serialized;
+
+    @Setup
+    public void setUp() throws IOException {
+        jobDataMap = BenchmarkData.jobDataMap(jobDataSize);
+        serialized = SerialUtils.serialize(jobDataMap);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return SerialUtils.serialize(jobDataMap);
+    }
+
+    @Benchmark
+    public Map<String, ?> deserialize() throws IOException {
+        return SerialUtils.deserialize(null, serialized);
+    }
+}
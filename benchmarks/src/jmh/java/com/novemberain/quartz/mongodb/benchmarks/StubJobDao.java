@@ -0,0 +1,43 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import com.novemberain.quartz.mongodb.dao.JobDao;
+import com.novemberain.quartz.mongodb.util.Keys;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.quartz.JobKey;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Job DAO which knows a single job and never touches the database,
+ * so converter benchmarks measure conversion only.
+ */
+class StubJobDao extends JobDao {
+
+    private final ObjectId jobId;
+    private final Document job;
+
+    StubJobDao(ObjectId jobId, JobKey jobKey) {
+        super(null, null, null);
+        this.jobId = jobId;
+        this.job = new Document("_id", jobId)
+                .append(Keys.KEY_NAME, jobKey.getName())
+                .append(Keys.KEY_GROUP, jobKey.getGroup());
+    }
+
+    @Override
+    public Document getById(Object id) {
+        return jobId.equals(id) ? job : null;
+    }
+
+    @Override
+    public Map<Object, JobKey> getJobKeysByIds(Collection<?> ids) {
+        Map<Object, JobKey> keys = new HashMap<Object, JobKey>();
+        if (ids.contains(jobId)) {
+            keys.put(jobId, Keys.toJobKey(job));
+        }
+        return keys;
+    }
+}
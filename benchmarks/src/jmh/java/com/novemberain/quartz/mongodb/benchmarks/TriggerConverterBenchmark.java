@@ -0,0 +1,75 @@
+package com.novemberain.quartz.mongodb.benchmarks;
+
+import com.novemberain.quartz.mongodb.JobDataConverter;
+import com.novemberain.quartz.mongodb.trigger.TriggerConverter;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.quartz.JobPersistenceException;
+import org.quartz.spi.OperableTrigger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cost of converting triggers of every supported type, which happens
+ * for each trigger on every acquire and fire.
+ */
+@State(Scope.Benchmark)
+public class TriggerConverterBenchmark {
+
+    private static final int BATCH_SIZE = 10;
+
+    @Param({"simple", "cron", "calendarInterval", "dailyTimeInterval"})
+    public String triggerType;
+
+    @Param({"0", "10", "100"})
+    public int jobDataSize;
+
+    @Param({"true", "false"})
+    public boolean base64;
+
+    private TriggerConverter converter;
+    private OperableTrigger trigger;
+    private ObjectId jobId;
+    private Document document;
+    private List<Document> documents;
+
+    @Setup
+    public void setUp() throws JobPersistenceException {
+        jobId = new ObjectId();
+        converter = new TriggerConverter(new StubJobDao(jobId, BenchmarkData.JOB_KEY),
+                new JobDataConverter(base64));
+        trigger = BenchmarkData.trigger(triggerType, jobDataSize);
+        document = converter.toDocument(trigger, jobId);
+
+        documents = new ArrayList<Document>(BATCH_SIZE);
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            documents.add(document);
+        }
+    }
+
+    @Benchmark
+    public Document toDocument() throws JobPersistenceException {
+        return converter.toDocument(trigger, jobId);
+    }
+
+    @Benchmark
+    public Document toFireTimesDocument() {
+        return converter.toFireTimesDocument(trigger);
+    }
+
+    @Benchmark
+    public OperableTrigger toTriggerWithOptionalJob() throws JobPersistenceException {
+        return converter.toTriggerWithOptionalJob(document);
+    }
+
+    @Benchmark
+    public List<OperableTrigger> toTriggersBatch() throws JobPersistenceException {
+        return converter.toTriggersWithOptionalJob(documents);
+    }
+}
@@ -0,0 +1,208 @@
+package com.novemberain.quartz.mongodb.loadtest;
+
+import com.mongodb.MongoClient;
+import com.mongodb.MongoClientURI;
+import org.bson.Document;
+import org.quartz.JobBuilder;
+import org.quartz.JobDetail;
+import org.quartz.Scheduler;
+import org.quartz.SchedulerException;
+import org.quartz.SimpleScheduleBuilder;
+import org.quartz.Trigger;
+import org.quartz.TriggerBuilder;
+import org.quartz.impl.SchedulerRepository;
+import org.quartz.impl.StdSchedulerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs a cluster of schedulers in one JVM against a MongoDB server and reports
+ * how well they keep up with the configured load.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ *     <li>{@code loadtest.mongoUri} - server to use, {@code mongodb://localhost:12345} by default</li>
+ *     <li>{@code loadtest.dbName} - database, dropped before the run, {@code quartz_loadtest} by default</li>
+ *     <li>{@code loadtest.nodes} - number of schedulers, 3 by default</li>
+ *     <li>{@code loadtest.threads} - worker threads of each scheduler, 10 by default</li>
+ *     <li>{@code loadtest.triggers} - number of triggers, 1000 by default</li>
+ *     <li>{@code loadtest.intervalMillis} - repeat interval of each trigger, 10000 by default</li>
+ *     <li>{@code loadtest.durationSeconds} - how long to measure, 60 by default</li>
+ * </ul>
+ * Other {@code org.quartz.*} system properties are passed to the schedulers,
+ * e.g. {@code -Dorg.quartz.jobStore.triggerLockInDocument=true}.
+ */
+public class ClusterLoadTest {
+
+    private static final String INSTANCE_NAME = "loadtest";
+    private static final long START_DELAY_MILLIS = 5000;
+    private static final long DRAIN_MILLIS = 5000;
+
+    private final String mongoUri = System.getProperty("loadtest.mongoUri", "mongodb://localhost:12345");
+    private final String dbName = System.getProperty("loadtest.dbName", "quartz_loadtest");
+    private final int nodes = Integer.getInteger("loadtest.nodes", 3);
+    private final int threads = Integer.getInteger("loadtest.threads", 10);
+    private final int triggers = Integer.getInteger("loadtest.triggers", 1000);
+    private final long intervalMillis = Long.getLong("loadtest.intervalMillis", 10000);
+    private final long durationMillis = Long.getLong("loadtest.durationSeconds", 60) * 1000;
+
+    private final FireRecorder recorder = new FireRecorder();
+
+    public static void main(String[] args) throws Exception {
+        new ClusterLoadTest().run();
+    }
+
+    public void run() throws Exception {
+        MongoClient client = new MongoClient(new MongoClientURI(mongoUri));
+        List<Scheduler> cluster = new ArrayList<Scheduler>(nodes);
+        try {
+            client.getDatabase(dbName).drop();
+
+            for (int i = 0; i < nodes; i++) {
+                cluster.add(createScheduler("node-" + i));
+            }
+
+            long start = System.currentTimeMillis() + START_DELAY_MILLIS;
+            long expectedFires = scheduleTriggers(cluster.get(0), start);
+            if (System.currentTimeMillis() >= start) {
+                // triggers would misfire before measurement starts
+                throw new IllegalStateException("Scheduling " + triggers + " triggers took longer than "
+                        + START_DELAY_MILLIS + " ms, use fewer triggers");
+            }
+            for (Scheduler scheduler : cluster) {
+                scheduler.start();
+            }
+
+            sleepUntil(start);
+            Document opsBefore = opCounters(client);
+            long end = start + durationMillis;
+            sleepUntil(end);
+            Document opsAfter = opCounters(client);
+
+            for (Scheduler scheduler : cluster) {
+                scheduler.standby();
+            }
+            Thread.sleep(DRAIN_MILLIS);
+
+            report(expectedFires, opsBefore, opsAfter);
+        } finally {
+            for (Scheduler scheduler : cluster) {
+                try {
+                    scheduler.shutdown(true);
+                } catch (SchedulerException e) {
+                    e.printStackTrace();
+                }
+            }
+            client.close();
+        }
+    }
+
+    private Scheduler createScheduler(String instanceId) throws SchedulerException {
+        Properties props = new Properties();
+        props.setProperty("org.quartz.jobStore.class", "com.novemberain.quartz.mongodb.MongoDBJobStore");
+        props.setProperty("org.quartz.jobStore.mongoUri", mongoUri);
+        props.setProperty("org.quartz.jobStore.dbName", dbName);
+        props.setProperty("org.quartz.jobStore.isClustered", "true");
+        props.setProperty("org.quartz.scheduler.instanceName", INSTANCE_NAME);
+        props.setProperty("org.quartz.scheduler.instanceId", instanceId);
+        props.setProperty("org.quartz.scheduler.skipUpdateCheck", "true");
+        props.setProperty("org.quartz.threadPool.threadCount", String.valueOf(threads));
+        for (Map.Entry<Object, Object> entry : System.getProperties().entrySet()) {
+            if (entry.getKey().toString().startsWith("org.quartz.")) {
+                props.setProperty(entry.getKey().toString(), entry.getValue().toString());
+            }
+        }
+
+        StdSchedulerFactory factory = new StdSchedulerFactory();
+        factory.initialize(props);
+        Scheduler scheduler = factory.getScheduler();
+        // all nodes share the scheduler name, which the repository expects to be unique in a JVM
+        SchedulerRepository.getInstance().remove(INSTANCE_NAME);
+
+        scheduler.getContext().put(FireRecorder.CONTEXT_KEY, recorder);
+        scheduler.getListenerManager().addTriggerListener(recorder);
+        return scheduler;
+    }
+
+    /**
+     * Schedule triggers with first fire times spread evenly over one interval.
+     * They are stored in bulk, so scheduling doesn't eat into the start delay.
+     *
+     * @return number of fires expected before the end of measurement
+     */
+    private long scheduleTriggers(Scheduler scheduler, long start) throws SchedulerException {
+        Map<JobDetail, Set<? extends Trigger>> jobs = new HashMap<JobDetail, Set<? extends Trigger>>();
+        long end = start + durationMillis;
+        long expected = 0;
+        for (int i = 0; i < triggers; i++) {
+            long firstFire = start + i * intervalMillis / triggers;
+            JobDetail job = JobBuilder.newJob(RecordingJob.class)
+                    .withIdentity("job-" + i, INSTANCE_NAME)
+                    .build();
+            Trigger trigger = TriggerBuilder.newTrigger()
+                    .withIdentity("trigger-" + i, INSTANCE_NAME)
+                    .startAt(new Date(firstFire))
+                    .withSchedule(SimpleScheduleBuilder.simpleSchedule()
+                            .withIntervalInMilliseconds(intervalMillis)
+                            .repeatForever())
+                    .build();
+            jobs.put(job, Collections.singleton(trigger));
+
+            if (firstFire < end) {
+                expected += (end - 1 - firstFire) / intervalMillis + 1;
+            }
+        }
+        scheduler.scheduleJobs(jobs, false);
+        return expected;
+    }
+
+    private Document opCounters(MongoClient client) {
+        Document status = client.getDatabase("admin").runCommand(new Document("serverStatus", 1));
+        return (Document) status.get("opcounters");
+    }
+
+    private void report(long expectedFires, Document opsBefore, Document opsAfter) {
+        long fires = recorder.getFires();
+        long[] lags = recorder.getLagPercentiles(50, 90, 99, 100);
+
+        System.out.println();
+        System.out.printf("nodes: %d, threads per node: %d, triggers: %d, interval: %d ms, duration: %d s%n",
+                nodes, threads, triggers, intervalMillis, durationMillis / 1000);
+        System.out.printf("fires: %d (expected %d, unique %d), %.1f fires/s%n",
+                fires, expectedFires, recorder.getUniqueFires(), fires * 1000.0 / durationMillis);
+        System.out.printf("fire lag ms: p50 %d, p90 %d, p99 %d, max %d%n", lags[0], lags[1], lags[2], lags[3]);
+        System.out.printf("duplicate fires: %d, misfires: %d%n", recorder.getDuplicates(), recorder.getMisfires());
+        for (Map.Entry<String, AtomicLong> entry : recorder.getFiresByNode().entrySet()) {
+            System.out.printf("  %s: %d fires%n", entry.getKey(), entry.getValue().get());
+        }
+
+        long totalOps = 0;
+        StringBuilder ops = new StringBuilder();
+        for (String op : opsAfter.keySet()) {
+            long delta = ((Number) opsAfter.get(op)).longValue() - ((Number) opsBefore.get(op)).longValue();
+            totalOps += delta;
+            ops.append(String.format(" %s %.2f,", op, perFire(delta, fires)));
+        }
+        System.out.printf("mongo ops per fire: %.2f (%s )%n", perFire(totalOps, fires),
+                ops.substring(0, Math.max(0, ops.length() - 1)));
+    }
+
+    private static double perFire(long count, long fires) {
+        return fires == 0 ? 0 : (double) count / fires;
+    }
+
+    private static void sleepUntil(long time) throws InterruptedException {
+        long remaining = time - System.currentTimeMillis();
+        if (remaining > 0) {
+            Thread.sleep(remaining);
+        }
+    }
+}
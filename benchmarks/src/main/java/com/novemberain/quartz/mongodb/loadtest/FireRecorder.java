@@ -0,0 +1,116 @@
+package com.novemberain.quartz.mongodb.loadtest;
+
+import org.quartz.Trigger;
+import org.quartz.listeners.TriggerListenerSupport;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects fires and misfires reported by all schedulers of the cluster.
+ */
+public class FireRecorder extends TriggerListenerSupport {
+
+    public static final String CONTEXT_KEY = "loadtest.fireRecorder";
+
+    private final ConcurrentMap<String, AtomicInteger> firesByScheduledTime =
+            new ConcurrentHashMap<String, AtomicInteger>();
+    private final List<Long> lags = new ArrayList<Long>();
+    private final AtomicLong misfires = new AtomicLong();
+    private final ConcurrentMap<String, AtomicLong> firesByNode = new ConcurrentHashMap<String, AtomicLong>();
+
+    /**
+     * @param triggerName           fired trigger
+     * @param scheduledFireTime     when it was supposed to fire
+     * @param fireTime              when it actually fired
+     * @param node                  id of scheduler which fired it
+     */
+    public void fired(String triggerName, Date scheduledFireTime, Date fireTime, String node) {
+        String key = triggerName + "@" + scheduledFireTime.getTime();
+        AtomicInteger count = firesByScheduledTime.putIfAbsent(key, new AtomicInteger(1));
+        if (count != null) {
+            count.incrementAndGet();
+        }
+
+        AtomicLong nodeFires = firesByNode.putIfAbsent(node, new AtomicLong(1));
+        if (nodeFires != null) {
+            nodeFires.incrementAndGet();
+        }
+
+        synchronized (lags) {
+            lags.add(fireTime.getTime() - scheduledFireTime.getTime());
+        }
+    }
+
+    @Override
+    public String getName() {
+        return "loadtest-fire-recorder";
+    }
+
+    @Override
+    public void triggerMisfired(Trigger trigger) {
+        misfires.incrementAndGet();
+    }
+
+    public long getFires() {
+        synchronized (lags) {
+            return lags.size();
+        }
+    }
+
+    /**
+     * @return number of scheduled fire times which were fired more than once
+     */
+    public long getDuplicates() {
+        long duplicates = 0;
+        for (AtomicInteger count : firesByScheduledTime.values()) {
+            if (count.get() > 1) {
+                duplicates++;
+            }
+        }
+        return duplicates;
+    }
+
+    public long getUniqueFires() {
+        return firesByScheduledTime.size();
+    }
+
+    public long getMisfires() {
+        return misfires.get();
+    }
+
+    public ConcurrentMap<String, AtomicLong> getFiresByNode() {
+        return firesByNode;
+    }
+
+    /**
+     * @param percentiles    percentiles to compute, from 0 to 100
+     * @return fire lag in millis for each of given percentiles
+     */
+    public long[] getLagPercentiles(double... percentiles) {
+        long[] sorted;
+        synchronized (lags) {
+            sorted = new long[lags.size()];
+            for (int i = 0; i < sorted.length; i++) {
+                sorted[i] = lags.get(i);
+            }
+        }
+        Arrays.sort(sorted);
+
+        long[] result = new long[percentiles.length];
+        if (sorted.length == 0) {
+            return result;
+        }
+        for (int i = 0; i < percentiles.length; i++) {
+            int index = (int) Math.ceil(percentiles[i] / 100 * sorted.length) - 1;
+            result[i] = sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+        }
+        return result;
+    }
+}
@@ -0,0 +1,24 @@
+package com.novemberain.quartz.mongodb.loadtest;
+
+import org.quartz.Job;
+import org.quartz.JobExecutionContext;
+import org.quartz.JobExecutionException;
+import org.quartz.SchedulerException;
+
+/**
+ * Reports every execution to the {@link FireRecorder} found in scheduler context.
+ */
+public class RecordingJob implements Job {
+
+    @Override
+    public void execute(JobExecutionContext context) throws JobExecutionException {
+        try {
+            FireRecorder recorder = (FireRecorder) context.getScheduler().getContext()
+                    .get(FireRecorder.CONTEXT_KEY);
+            recorder.fired(context.getTrigger().getKey().getName(), context.getScheduledFireTime(),
+                    context.getFireTime(), context.getScheduler().getSchedulerInstanceId());
+        } catch (SchedulerException e) {
+            throw new JobExecutionException(e);
+        }
+    }
+}
@@ -1,7 +1,9 @@
 package com.inovaworkscc.quartz.cassandra;
 
+import com.inovaworkscc.quartz.cassandra.dao.CountersDao;
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
 import com.inovaworkscc.quartz.cassandra.db.CassandraDatabaseException;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
 import org.quartz.*;
 import org.quartz.Calendar;
 import org.quartz.Trigger.CompletedExecutionInstruction;
@@ -15,7 +17,6 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.Map.Entry;
 
 public class CassandraJobStore implements JobStore {
 
@@ -34,6 +35,14 @@ public class CassandraJobStore implements JobStore {
     long clusterCheckinIntervalMillis = 7500;
     boolean jobDataAsBase64 = true;
     String checkInErrorHandler = null;
+    String metricsClass = null;
+    String jobDataSerializerClass = null;
+    String triggerPropertiesConverterClasses = null;
+    int bulkWriteChunkSize = 1000;
+    JobStoreMetrics metrics;
+    boolean reindexTriggers = false;
+    boolean approximateCounts = false;
+    long calendarMaxStalenessMillis = 0;
 
     public static final String PROPERTIES_FILE_NAME = "quartz.properties";
 
@@ -60,6 +69,17 @@ public class CassandraJobStore implements JobStore {
             throw new SchedulerConfigException("Failed to instantiate cluster checkin error handler", e);
         }
 
+        if (reindexTriggers) {
+            assembler.triggerDao.reindexNextFireTimes();
+        }
+
+        if (approximateCounts && assembler.countersDao.claimReset(instanceId)) {
+            // counters drift on failed updates, start from exact values
+            assembler.countersDao.reset(CountersDao.JOBS, assembler.jobDao.getCount());
+            assembler.countersDao.reset(CountersDao.TRIGGERS, assembler.triggerDao.getCount());
+            assembler.countersDao.reset(CountersDao.CALENDARS, assembler.calendarDao.getCount());
+        }
+
         if (isClustered()) {
             try {
                 assembler.triggerRecoverer.recover();
@@ -67,6 +87,7 @@ public class CassandraJobStore implements JobStore {
                 throw new SchedulerConfigException("Cannot recover triggers", e);
             }
             assembler.checkinExecutor.start();
+            assembler.defunctSchedulerRecoverer.start();
         }
         
         prepareInstance();
@@ -110,6 +131,7 @@ public class CassandraJobStore implements JobStore {
     @Override
     public void shutdown() {
         assembler.checkinExecutor.shutdown();
+        assembler.defunctSchedulerRecoverer.shutdown();
         CassandraConnectionManager.getInstance().shutdownConnection();
     }
 
@@ -178,6 +200,45 @@ public class CassandraJobStore implements JobStore {
         this.jobDataAsBase64 = jobDataAsBase64;
     }
 
+    public String getJobDataSerializerClass() {
+        return jobDataSerializerClass;
+    }
+
+    /**
+     * Class name of {@link com.inovaworkscc.quartz.cassandra.util.JobDataSerializer}
+     * implementation, e.g. {@link com.inovaworkscc.quartz.cassandra.util.CompactJobDataSerializer}.
+     * When set, job data is stored in binary '{@value Constants#JOB_DATA_BINARY}' column
+     * instead, and job data stored before is read as configured by
+     * {@link #setJobDataAsBase64(boolean)} until it's stored again.
+     */
+    public void setJobDataSerializerClass(String jobDataSerializerClass) {
+        this.jobDataSerializerClass = jobDataSerializerClass;
+    }
+
+    public int getBulkWriteChunkSize() {
+        return bulkWriteChunkSize;
+    }
+
+    /**
+     * Max number of jobs or triggers written at once by
+     * {@link #storeJobsAndTriggers(Map, boolean)}.
+     */
+    public void setBulkWriteChunkSize(int bulkWriteChunkSize) {
+        this.bulkWriteChunkSize = bulkWriteChunkSize;
+    }
+
+    public String getTriggerPropertiesConverterClasses() {
+        return triggerPropertiesConverterClasses;
+    }
+
+    /**
+     * Comma separated class names of {@link com.inovaworkscc.quartz.cassandra.trigger.TriggerPropertiesConverter}
+     * implementations of custom trigger types. They need a public no-arg constructor.
+     */
+    public void setTriggerPropertiesConverterClasses(String triggerPropertiesConverterClasses) {
+        this.triggerPropertiesConverterClasses = triggerPropertiesConverterClasses;
+    }
+
     public String getCheckInErrorHandler() {
         return checkInErrorHandler;
     }
@@ -186,6 +247,57 @@ public class CassandraJobStore implements JobStore {
         this.checkInErrorHandler = checkInErrorHandler;
     }
 
+    public String getMetricsClass() {
+        return metricsClass;
+    }
+
+    /**
+     * Class name of {@link JobStoreMetrics} implementation to create,
+     * e.g. {@link com.inovaworkscc.quartz.cassandra.metrics.MicrometerJobStoreMetrics}.
+     * Metrics are ignored by default.
+     */
+    public void setMetricsClass(String metricsClass) {
+        this.metricsClass = metricsClass;
+    }
+
+    /**
+     * Use given metrics instead of creating one from {@link #setMetricsClass(String)}.
+     * Must be called before {@link #initialize(ClassLoadHelper, SchedulerSignaler)}.
+     */
+    public void setMetrics(JobStoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Rebuild the next fire time index of triggers on startup. Needed once
+     * for triggers stored by a version without the triggers_by_next_fire table.
+     */
+    public void setReindexTriggers(boolean reindexTriggers) {
+        this.reindexTriggers = reindexTriggers;
+    }
+
+    /**
+     * Report numbers of jobs, triggers and calendars from counters maintained
+     * on writes, instead of counting whole tables. Counters are synchronized
+     * with exact counts on startup by one of the nodes started together.
+     */
+    public void setApproximateCounts(boolean approximateCounts) {
+        this.approximateCounts = approximateCounts;
+    }
+
+    public boolean isApproximateCounts() {
+        return approximateCounts;
+    }
+
+    /**
+     * Deserialized calendars are cached. By default the version stamp of a cached
+     * calendar is checked on each use, so changes made by other nodes are seen
+     * immediately. A positive value skips the check for that many millis.
+     */
+    public void setCalendarMaxStalenessMillis(long calendarMaxStalenessMillis) {
+        this.calendarMaxStalenessMillis = calendarMaxStalenessMillis;
+    }
+
     /**
      * Job and Trigger storage Methods
      */
@@ -204,19 +316,7 @@ public class CassandraJobStore implements JobStore {
     @Override
     public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
             throws JobPersistenceException {
-        for (Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
-
-            JobDetail newJob = entry.getKey();
-            Set<? extends Trigger> triggers = entry.getValue();
-            assembler.jobDao.storeJobInCassandra(newJob, replace);
-
-            // Store all triggers of the job.
-            for (Trigger newTrigger : triggers) {
-                // Simply cast to OperableTrigger as in QuartzScheduler.scheduleJobs
-                // http://www.programcreek.com/java-api-examples/index.php?api=org.quartz.spi.OperableTrigger
-                assembler.persister.storeTrigger((OperableTrigger) newTrigger, replace);
-            }
-        }
+        assembler.persister.storeJobsAndTriggers(triggersAndJobs, replace, bulkWriteChunkSize);
     }
 
     @Override
@@ -275,6 +375,7 @@ public class CassandraJobStore implements JobStore {
         assembler.jobDao.clear();
         assembler.triggerDao.clear();
         assembler.calendarDao.clear();
+        assembler.countersDao.clear();
         assembler.pausedJobGroupsDao.remove();
         assembler.pausedTriggerGroupsDao.remove();
     }
@@ -297,21 +398,32 @@ public class CassandraJobStore implements JobStore {
 
     @Override
     public Calendar retrieveCalendar(String calName) throws JobPersistenceException {
-        return assembler.calendarDao.retrieveCalendar(calName);
+        // cached calendars are shared, don't let callers modify them
+        Calendar calendar = assembler.calendarDao.retrieveCalendar(calName);
+        return calendar == null ? null : (Calendar) calendar.clone();
     }
 
     @Override
     public int getNumberOfJobs() throws JobPersistenceException {
+        if (approximateCounts) {
+            return (int)assembler.jobDao.getEstimatedCount();
+        }
         return (int)assembler.jobDao.getCount();
     }
 
     @Override
     public int getNumberOfTriggers() throws JobPersistenceException {
+        if (approximateCounts) {
+            return (int)assembler.triggerDao.getEstimatedCount();
+        }
         return (int)assembler.triggerDao.getCount();
     }
 
     @Override
     public int getNumberOfCalendars() throws JobPersistenceException {
+        if (approximateCounts) {
+            return (int)assembler.calendarDao.getEstimatedCount();
+        }
         return (int)assembler.calendarDao.getCount();
     }
 
@@ -413,7 +525,13 @@ public class CassandraJobStore implements JobStore {
     @Override
     public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow)
             throws JobPersistenceException {
-        return assembler.triggerRunner.acquireNext(noLaterThan, maxCount, timeWindow);
+        long start = System.nanoTime();
+        int roundTrips = CassandraConnectionManager.getRoundTrips();
+        try {
+            return assembler.triggerRunner.acquireNext(noLaterThan, maxCount, timeWindow);
+        } finally {
+            recordOperation(JobStoreMetrics.ACQUIRE_NEXT_TRIGGERS, start, roundTrips);
+        }
     }
 
     @Override
@@ -429,13 +547,42 @@ public class CassandraJobStore implements JobStore {
     @Override
     public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers)
             throws JobPersistenceException {
-        return assembler.triggerRunner.triggersFired(triggers);
+        long start = System.nanoTime();
+        int roundTrips = CassandraConnectionManager.getRoundTrips();
+        try {
+            List<TriggerFiredResult> results = assembler.triggerRunner.triggersFired(triggers);
+            recordFireLags(results);
+            return results;
+        } finally {
+            recordOperation(JobStoreMetrics.TRIGGERS_FIRED, start, roundTrips);
+        }
     }
 
     @Override
     public void triggeredJobComplete(OperableTrigger trigger, JobDetail job,
                                      CompletedExecutionInstruction triggerInstCode) {
-        assembler.jobCompleteHandler.jobComplete(trigger, job, triggerInstCode);
+        long start = System.nanoTime();
+        int roundTrips = CassandraConnectionManager.getRoundTrips();
+        try {
+            assembler.jobCompleteHandler.jobComplete(trigger, job, triggerInstCode);
+        } finally {
+            recordOperation(JobStoreMetrics.TRIGGERED_JOB_COMPLETE, start, roundTrips);
+        }
+    }
+
+    private void recordOperation(String operation, long start, int roundTrips) {
+        assembler.metrics.recordOperation(operation, System.nanoTime() - start,
+                CassandraConnectionManager.getRoundTrips() - roundTrips);
+    }
+
+    private void recordFireLags(List<TriggerFiredResult> results) {
+        for (TriggerFiredResult result : results) {
+            TriggerFiredBundle bundle = result.getTriggerFiredBundle();
+            if (bundle != null && bundle.getScheduledFireTime() != null) {
+                assembler.metrics.recordFireLag(
+                        bundle.getFireTime().getTime() - bundle.getScheduledFireTime().getTime());
+            }
+        }
     }
 
     @Override
@@ -2,6 +2,7 @@ package com.inovaworkscc.quartz.cassandra;
 
 import com.inovaworkscc.quartz.cassandra.dao.PausedJobGroupsDao;
 import com.inovaworkscc.quartz.cassandra.dao.CalendarDao;
+import com.inovaworkscc.quartz.cassandra.dao.CountersDao;
 import com.inovaworkscc.quartz.cassandra.dao.TriggerDao;
 import com.inovaworkscc.quartz.cassandra.dao.SchedulerDao;
 import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
@@ -10,18 +11,26 @@ import com.inovaworkscc.quartz.cassandra.cluster.TriggerRecoverer;
 import com.inovaworkscc.quartz.cassandra.cluster.CheckinExecutor;
 import com.inovaworkscc.quartz.cassandra.cluster.RecoveryTriggerFactory;
 import com.inovaworkscc.quartz.cassandra.cluster.CheckinTask;
+import com.inovaworkscc.quartz.cassandra.cluster.ClusterMembership;
+import com.inovaworkscc.quartz.cassandra.cluster.DefunctSchedulerRecoverer;
 import com.inovaworkscc.quartz.cassandra.cluster.KamikazeErrorHandler;
 import com.inovaworkscc.quartz.cassandra.dao.PausedTriggerGroupsDao;
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
+import com.inovaworkscc.quartz.cassandra.metrics.NoOpJobStoreMetrics;
 import com.inovaworkscc.quartz.cassandra.trigger.MisfireHandler;
 import com.inovaworkscc.quartz.cassandra.trigger.TriggerConverter;
+import com.inovaworkscc.quartz.cassandra.trigger.TriggerPropertiesConverter;
+import com.inovaworkscc.quartz.cassandra.util.CalendarCache;
 import com.inovaworkscc.quartz.cassandra.util.ExpiryCalculator;
 import com.inovaworkscc.quartz.cassandra.util.Clock;
+import com.inovaworkscc.quartz.cassandra.util.JobDataSerializer;
 import com.inovaworkscc.quartz.cassandra.util.QueryHelper;
 import org.quartz.SchedulerConfigException;
 import org.quartz.spi.ClassLoadHelper;
 import org.quartz.spi.SchedulerSignaler;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.Properties;
 
 public class CassandraStoreAssembler {
@@ -33,6 +42,7 @@ public class CassandraStoreAssembler {
     public TriggerAndJobPersister persister;
 
     public CalendarDao calendarDao;
+    public CountersDao countersDao;
     public JobDao jobDao;
     public LocksDao locksDao;
     public SchedulerDao schedulerDao;
@@ -42,6 +52,10 @@ public class CassandraStoreAssembler {
 
     public TriggerRecoverer triggerRecoverer;
     public CheckinExecutor checkinExecutor;
+    public ClusterMembership clusterMembership;
+    public DefunctSchedulerRecoverer defunctSchedulerRecoverer;
+
+    public JobStoreMetrics metrics;
 
     private QueryHelper queryHelper = new QueryHelper();
     private TriggerConverter triggerConverter;
@@ -50,17 +64,23 @@ public class CassandraStoreAssembler {
                       SchedulerSignaler signaler, Properties quartzProps)
         throws SchedulerConfigException, ClassNotFoundException,
         IllegalAccessException, InstantiationException {
-        
+
+        metrics = createMetrics(jobStore, loadHelper);
+
         CassandraConnectionManager.setProperties(
                 jobStore.getContactPoint(), 
                 jobStore.getPort(), 
                 jobStore.getDbName());
         
-        JobDataConverter jobDataConverter = new JobDataConverter(jobStore.isJobDataAsBase64());
+        JobDataConverter jobDataConverter = new JobDataConverter(jobStore.isJobDataAsBase64(),
+                createJobDataSerializer(jobStore, loadHelper));
+
+        countersDao = new CountersDao(jobStore.isApproximateCounts());
 
         jobDao = createJobDao(jobStore, loadHelper, jobDataConverter);
 
         triggerConverter = new TriggerConverter(jobDao, jobDataConverter);
+        registerTriggerPropertiesConverters(jobStore, loadHelper);
 
         triggerDao = createTriggerDao(jobStore);
         calendarDao = createCalendarDao(jobStore);
@@ -68,13 +88,14 @@ public class CassandraStoreAssembler {
         pausedJobGroupsDao = createPausedJobGroupsDao(jobStore);
         pausedTriggerGroupsDao = createPausedTriggerGroupsDao(jobStore);
         schedulerDao = createSchedulerDao(jobStore);
+        clusterMembership = new ClusterMembership(schedulerDao, Clock.SYSTEM_CLOCK);
 
         persister = createTriggerAndJobPersister();
 
-        jobCompleteHandler = createJobCompleteHandler(signaler);
-
         lockManager = createLockManager(jobStore);
 
+        jobCompleteHandler = createJobCompleteHandler(signaler);
+
         triggerStateManager = createTriggerStateManager();
 
         MisfireHandler misfireHandler = createMisfireHandler(jobStore, signaler);
@@ -84,11 +105,14 @@ public class CassandraStoreAssembler {
 
         triggerRecoverer = new TriggerRecoverer(locksDao, persister,
                 lockManager, triggerDao, jobDao, recoveryTriggerFactory,
-                misfireHandler);
+                misfireHandler, metrics);
 
         triggerRunner = createTriggerRunner(misfireHandler);
 
         checkinExecutor = createCheckinExecutor(jobStore, loadHelper, quartzProps);
+
+        defunctSchedulerRecoverer = new DefunctSchedulerRecoverer(clusterMembership, schedulerDao,
+                lockManager, triggerRecoverer, jobStore.clusterCheckinIntervalMillis);
     }
 
     private CheckinExecutor createCheckinExecutor(CassandraJobStore jobStore, ClassLoadHelper loadHelper,
@@ -109,20 +133,72 @@ public class CassandraStoreAssembler {
             aClass = loadHelper.loadClass(jobStore.getCheckInErrorHandler());
         }
         errorHandler = (Runnable) aClass.newInstance();
-        return new CheckinTask(schedulerDao, errorHandler);
+        return new CheckinTask(schedulerDao, clusterMembership, errorHandler);
+    }
+
+    private JobStoreMetrics createMetrics(CassandraJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.metrics != null) {
+            return jobStore.metrics;
+        }
+        if (jobStore.getMetricsClass() == null) {
+            return NoOpJobStoreMetrics.INSTANCE;
+        }
+        return (JobStoreMetrics) newInstance(loadHelper, jobStore.getMetricsClass());
+    }
+
+    /**
+     * Create instance of a configured class with its no-arg constructor.
+     * Failures of the constructor are reported with their own cause.
+     */
+    private static Object newInstance(ClassLoadHelper loadHelper, String className)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        try {
+            return loadHelper.loadClass(className).getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            InstantiationException ie = new InstantiationException(className + " has no constructor without arguments");
+            ie.initCause(e);
+            throw ie;
+        } catch (InvocationTargetException e) {
+            InstantiationException ie = new InstantiationException("Constructor of " + className + " failed: "
+                    + e.getCause());
+            ie.initCause(e.getCause());
+            throw ie;
+        }
     }
 
     private CalendarDao createCalendarDao(CassandraJobStore jobStore) {
-        return new CalendarDao();
+        CalendarCache calendarCache = new CalendarCache(Clock.SYSTEM_CLOCK,
+                jobStore.calendarMaxStalenessMillis, CalendarCache.DEFAULT_MAX_SIZE);
+        return new CalendarDao(countersDao, calendarCache);
+    }
+
+    private JobDataSerializer createJobDataSerializer(CassandraJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.getJobDataSerializerClass() == null) {
+            return null;
+        }
+        return (JobDataSerializer) newInstance(loadHelper, jobStore.getJobDataSerializerClass());
+    }
+
+    private void registerTriggerPropertiesConverters(CassandraJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.getTriggerPropertiesConverterClasses() == null) {
+            return;
+        }
+        for (String className : jobStore.getTriggerPropertiesConverterClasses().split(",")) {
+            triggerConverter.registerPropertiesConverter(
+                    (TriggerPropertiesConverter) newInstance(loadHelper, className.trim()));
+        }
     }
 
     private JobDao createJobDao(CassandraJobStore jobStore, ClassLoadHelper loadHelper, JobDataConverter jobDataConverter) {
         JobConverter jobConverter = new JobConverter(jobStore.getClassLoaderHelper(loadHelper), jobDataConverter);
-        return new JobDao(queryHelper, jobConverter);
+        return new JobDao(queryHelper, jobConverter, countersDao);
     }
 
     private JobCompleteHandler createJobCompleteHandler(SchedulerSignaler signaler) {
-        return new JobCompleteHandler(persister, signaler, jobDao, locksDao, triggerDao);
+        return new JobCompleteHandler(persister, signaler, jobDao, lockManager, triggerDao);
     }
 
     private LocksDao createLocksDao(CassandraJobStore jobStore) {
@@ -130,13 +206,17 @@ public class CassandraStoreAssembler {
     }
 
     private LockManager createLockManager(CassandraJobStore jobStore) {
-        ExpiryCalculator expiryCalculator = new ExpiryCalculator(schedulerDao,
+        ExpiryCalculator expiryCalculator = new ExpiryCalculator(clusterMembership,
                 Clock.SYSTEM_CLOCK, jobStore.jobTimeoutMillis, jobStore.triggerTimeoutMillis);
-        return new LockManager(locksDao, expiryCalculator);
+        if (!jobStore.isClustered()) {
+            return new LocalLockManager(locksDao, expiryCalculator, metrics, Clock.SYSTEM_CLOCK,
+                    jobStore.jobTimeoutMillis);
+        }
+        return new LockManager(locksDao, expiryCalculator, metrics);
     }
 
     private MisfireHandler createMisfireHandler(CassandraJobStore jobStore, SchedulerSignaler signaler) {
-        return new MisfireHandler(calendarDao, signaler, jobStore.misfireThreshold);
+        return new MisfireHandler(calendarDao, signaler, jobStore.misfireThreshold, metrics);
     }
 
     private PausedJobGroupsDao createPausedJobGroupsDao(CassandraJobStore jobStore) {
@@ -157,11 +237,11 @@ public class CassandraStoreAssembler {
     }
 
     private TriggerDao createTriggerDao(CassandraJobStore jobStore) {
-        return new TriggerDao(queryHelper, triggerConverter);
+        return new TriggerDao(queryHelper, triggerConverter, countersDao);
     }
 
     private TriggerRunner createTriggerRunner(MisfireHandler misfireHandler) {
-        return new TriggerRunner(persister, triggerDao, jobDao, locksDao, calendarDao,
+        return new TriggerRunner(persister, triggerDao, jobDao, calendarDao,
                 misfireHandler, triggerConverter, lockManager, triggerRecoverer);
     }
 
@@ -4,6 +4,7 @@ public interface Constants {
 
   String JOB_DATA = "jobData";
   String JOB_DATA_PLAIN = "jobDataPlain";
+  String JOB_DATA_BINARY = "jobDataBinary";
   String TRIGGER_NEXT_FIRE_TIME = "nextFireTime";
   String TRIGGER_JOB_ID = "jobId";
   String TRIGGER_STATE = "state";
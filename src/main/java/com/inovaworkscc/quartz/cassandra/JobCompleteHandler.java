@@ -1,7 +1,6 @@
 package com.inovaworkscc.quartz.cassandra;
 
 import com.inovaworkscc.quartz.cassandra.dao.JobDao;
-import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
 import com.inovaworkscc.quartz.cassandra.dao.TriggerDao;
 import org.quartz.JobDetail;
 import org.quartz.JobPersistenceException;
@@ -19,15 +18,15 @@ public class JobCompleteHandler {
     private final TriggerAndJobPersister persister;
     private final SchedulerSignaler signaler;
     private final JobDao jobDao;
-    private final LocksDao locksDao;
+    private final LockManager lockManager;
     private TriggerDao triggerDao;
 
     public JobCompleteHandler(TriggerAndJobPersister persister, SchedulerSignaler signaler,
-                              JobDao jobDao, LocksDao locksDao, TriggerDao triggerDao) {
+                              JobDao jobDao, LockManager lockManager, TriggerDao triggerDao) {
         this.persister = persister;
         this.signaler = signaler;
         this.jobDao = jobDao;
-        this.locksDao = locksDao;
+        this.lockManager = lockManager;
         this.triggerDao = triggerDao;
     }
 
@@ -47,7 +46,7 @@ public class JobCompleteHandler {
         }
 
         if (job.isConcurrentExectionDisallowed()) {
-            locksDao.unlockJob(job);
+            lockManager.unlockJob(job);
         }
 
         try {
@@ -56,7 +55,7 @@ public class JobCompleteHandler {
             throw new RuntimeException(e);
         }
 
-        locksDao.unlockTrigger(trigger);
+        lockManager.unlockAcquiredTrigger(trigger);
     }
 
     private boolean isTriggerDeletionRequested(CompletedExecutionInstruction triggerInstCode) {
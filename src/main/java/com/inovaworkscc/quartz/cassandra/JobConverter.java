@@ -6,6 +6,12 @@ import static com.inovaworkscc.quartz.cassandra.util.Keys.KEY_NAME;
 import org.quartz.*;
 import org.quartz.spi.ClassLoadHelper;
 
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
 public class JobConverter {
 
     public static final String JOB_ID = "jobId";
@@ -15,6 +21,9 @@ public class JobConverter {
     public static final String JOB_REQUESTS_RECOVERY = "requestsRecovery";
 
     private ClassLoadHelper loadHelper;
+    // Classes are weakly referenced, as they reference their loader
+    private final Map<ClassLoader, ConcurrentMap<String, WeakReference<Class<Job>>>> jobClasses =
+            new WeakHashMap<ClassLoader, ConcurrentMap<String, WeakReference<Class<Job>>>>();
     public final JobDataConverter jobDataConverter;
 
     public JobConverter(ClassLoadHelper loadHelper, JobDataConverter jobDataConverter) {
@@ -31,9 +40,7 @@ public class JobConverter {
             // When Quartz jobs are implemented as Clojure records, the only way to use
             // them without switching to gen-class is by using a
             // clojure.lang.DynamicClassLoader instance.
-            @SuppressWarnings("unchecked")
-            Class<Job> jobClass = (Class<Job>) loadHelper.getClassLoader()
-                    .loadClass(row.getString(JOB_CLASS));
+            Class<Job> jobClass = loadJobClass(row.getString(JOB_CLASS));
 
             JobBuilder builder = createJobBuilder(row, jobClass);
             withDurability(row, builder);
@@ -45,6 +52,35 @@ public class JobConverter {
         }
     }
 
+    /**
+     * Loads job class once per class loader, as most jobs share a few classes.
+     * Loaders no longer used are dropped with their classes.
+     */
+    private Class<Job> loadJobClass(String jobClassName) throws ClassNotFoundException {
+        ClassLoader classLoader = loadHelper.getClassLoader();
+        ConcurrentMap<String, WeakReference<Class<Job>>> loaded = getJobClasses(classLoader);
+        WeakReference<Class<Job>> reference = loaded.get(jobClassName);
+        Class<Job> jobClass = reference == null ? null : reference.get();
+        if (jobClass == null) {
+            @SuppressWarnings("unchecked")
+            Class<Job> loadedClass = (Class<Job>) classLoader.loadClass(jobClassName);
+            jobClass = loadedClass;
+            loaded.put(jobClassName, new WeakReference<Class<Job>>(jobClass));
+        }
+        return jobClass;
+    }
+
+    private ConcurrentMap<String, WeakReference<Class<Job>>> getJobClasses(ClassLoader classLoader) {
+        synchronized (jobClasses) {
+            ConcurrentMap<String, WeakReference<Class<Job>>> loaded = jobClasses.get(classLoader);
+            if (loaded == null) {
+                loaded = new ConcurrentHashMap<String, WeakReference<Class<Job>>>();
+                jobClasses.put(classLoader, loaded);
+            }
+            return loaded;
+        }
+    }
+
     /**
      * Converts row into job data map.
      * Will first try {@link JobDataConverter} to deserialize
@@ -1,11 +1,13 @@
 package com.inovaworkscc.quartz.cassandra;
 
 import com.datastax.driver.core.Row;
+import com.inovaworkscc.quartz.cassandra.util.JobDataSerializer;
 import com.inovaworkscc.quartz.cassandra.util.SerialUtils;
 import org.quartz.JobDataMap;
 import org.quartz.JobPersistenceException;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.Map;
 import java.util.HashMap;
 
@@ -15,13 +17,26 @@ import java.util.HashMap;
 public class JobDataConverter {
 
     private final boolean base64Preferred;
+    private final JobDataSerializer serializer;
 
     /**
      * Constructs an instance of converter.
      * @param base64Preferred if preferred way to store job details is {@code base64}.
      */
     public JobDataConverter(final boolean base64Preferred) {
+            this(base64Preferred, null);
+    }
+
+    /**
+     * Constructs an instance of converter.
+     * @param base64Preferred if preferred way to store job details is {@code base64}.
+     * @param serializer if not null, job data is stored in binary
+     *                   '{@value Constants#JOB_DATA_BINARY}' column encoded by it,
+     *                   and the other columns are only read.
+     */
+    public JobDataConverter(final boolean base64Preferred, final JobDataSerializer serializer) {
             this.base64Preferred = base64Preferred;
+            this.serializer = serializer;
     }
 
     public void toHashMap(JobDataMap from, HashMap to) throws JobPersistenceException {
@@ -29,7 +44,9 @@ public class JobDataConverter {
                 return;
         }
 
-        if (base64Preferred) {
+        if (serializer != null) {
+                to.put(Constants.JOB_DATA_BINARY, toBinary(from));
+        } else if (base64Preferred) {
                 String jobDataString;
                 try {
                         jobDataString = SerialUtils.serialize(from);
@@ -42,8 +59,25 @@ public class JobDataConverter {
         }
     }
 
+    /**
+     * Encodes job data map with configured serializer.
+     * @param from {@link JobDataMap} to encode.
+     * @return value of '{@value Constants#JOB_DATA_BINARY}' column.
+     * @throws JobPersistenceException if could not encode.
+     */
+    public ByteBuffer toBinary(JobDataMap from) throws JobPersistenceException {
+        try {
+            return ByteBuffer.wrap(serializer.serialize(from.getWrappedMap()));
+        } catch (IOException e) {
+            throw new JobPersistenceException("Could not serialise job data.", e);
+        }
+    }
+
     /**
      * Converts from row to job data map.
+     * Job data from '{@value Constants#JOB_DATA_BINARY}' column is read first.
+     * If a serializer is configured, other columns are read if that one
+     * is empty, so rows stored before are rewritten on next store.
      * If {@code base64} is preferred, tries
      * to decode from '{@value Constants#JOB_DATA}' field.
      * Otherwise, first reads a plain object from 
@@ -55,7 +89,10 @@ public class JobDataConverter {
      * @throws JobPersistenceException if could not decode.
      */
     public boolean toJobData(Row from, JobDataMap to) throws JobPersistenceException {
-            if (base64Preferred) {
+            if (toJobDataFromBinary(from, to)) {
+                return true;
+            }
+            if (base64Preferred && serializer == null) {
                 return toJobDataFromBase64(from, to);
             } else {
                 if (toJobDataFromField(from, to)) {
@@ -65,6 +102,32 @@ public class JobDataConverter {
             }
     }
 
+    /**
+     * Converts from row to job data map
+     * reading binary column '{@value Constants#JOB_DATA_BINARY}'.
+     */
+    private boolean toJobDataFromBinary(Row from, JobDataMap to) throws JobPersistenceException {
+        if (!from.getColumnDefinitions().contains(Constants.JOB_DATA_BINARY)
+                || from.isNull(Constants.JOB_DATA_BINARY)) {
+            return false;
+        }
+        if (serializer == null) {
+            throw new JobPersistenceException("Job data is stored in binary, "
+                    + "but no job data serializer is configured.");
+        }
+        ByteBuffer buffer = from.getBytes(Constants.JOB_DATA_BINARY);
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        Map<String, ?> jobDataMap;
+        try {
+            jobDataMap = serializer.deserialize(bytes);
+        } catch (IOException e) {
+            throw new JobPersistenceException("Could not deserialize job data.", e);
+        }
+        to.putAll(jobDataMap);
+        return true;
+    }
+
     /**
      * Converts from row to job data map
      * reading {@code base64} encoded field
@@ -102,5 +165,9 @@ public class JobDataConverter {
 
     public boolean isBase64Preferred() {
         return base64Preferred;
-}
+    }
+
+    public boolean isBinaryPreferred() {
+        return serializer != null;
+    }
 }
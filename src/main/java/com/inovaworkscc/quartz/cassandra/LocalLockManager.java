@@ -0,0 +1,112 @@
+package com.inovaworkscc.quartz.cassandra;
+
+import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
+import com.inovaworkscc.quartz.cassandra.util.Clock;
+import com.inovaworkscc.quartz.cassandra.util.ExpiryCalculator;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.TriggerKey;
+import org.quartz.spi.OperableTrigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lock manager of a scheduler which isn't clustered. No other scheduler competes
+ * for its triggers and jobs, so locks are kept in memory of this process instead
+ * of the locks table, saving the writes of a lock and an unlock on each fire.
+ */
+public class LocalLockManager extends LockManager {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalLockManager.class);
+
+    private final ConcurrentMap<TriggerKey, Long> triggerLocks = new ConcurrentHashMap<TriggerKey, Long>();
+    private final ConcurrentMap<JobKey, Long> jobLocks = new ConcurrentHashMap<JobKey, Long>();
+    private final Clock clock;
+    private final long jobTimeoutMillis;
+
+    /**
+     * @param jobTimeoutMillis    time after which a job lock is considered expired
+     */
+    public LocalLockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator, JobStoreMetrics metrics,
+                            Clock clock, long jobTimeoutMillis) {
+        super(locksDao, expiryCalculator, metrics);
+        this.clock = clock;
+        this.jobTimeoutMillis = jobTimeoutMillis;
+    }
+
+    @Override
+    public boolean lockJob(JobDetail job) {
+        if (job.isConcurrentExectionDisallowed()) {
+            if (jobLocks.putIfAbsent(job.getKey(), clock.millis()) == null) {
+                return true;
+            }
+            metrics.recordLockConflict();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void unlockJob(JobDetail job) {
+        jobLocks.remove(job.getKey());
+    }
+
+    @Override
+    public void unlockAcquiredTrigger(OperableTrigger trigger) {
+        triggerLocks.remove(trigger.getKey());
+    }
+
+    @Override
+    public void unlockExpired(JobDetail job) {
+        Long lockTime = jobLocks.get(job.getKey());
+        if (lockTime != null && clock.millis() - lockTime > jobTimeoutMillis) {
+            log.debug("Removing expired lock for job {}", job.getKey());
+            jobLocks.remove(job.getKey(), lockTime);
+        }
+    }
+
+    @Override
+    public boolean tryLock(TriggerKey key) {
+        if (triggerLocks.putIfAbsent(key, clock.millis()) == null) {
+            return true;
+        }
+        log.info("Failed to lock trigger {}, it's already locked", key);
+        metrics.recordLockConflict();
+        return false;
+    }
+
+    @Override
+    public Set<TriggerKey> tryLock(Collection<TriggerKey> keys) {
+        Set<TriggerKey> locked = new HashSet<TriggerKey>();
+        for (TriggerKey key : keys) {
+            if (tryLock(key)) {
+                locked.add(key);
+            }
+        }
+        return locked;
+    }
+
+    @Override
+    public void unlockTriggers(List<TriggerKey> keys) {
+        for (TriggerKey key : keys) {
+            triggerLocks.remove(key);
+        }
+    }
+
+    /**
+     * Locks held in memory are never left behind by another scheduler,
+     * so they don't expire.
+     */
+    @Override
+    public boolean relockExpired(TriggerKey key) {
+        return false;
+    }
+}
@@ -3,6 +3,8 @@ package com.inovaworkscc.quartz.cassandra;
 import com.datastax.driver.core.Row;
 import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
 import com.inovaworkscc.quartz.cassandra.db.CassandraDatabaseException;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
+import com.inovaworkscc.quartz.cassandra.metrics.NoOpJobStoreMetrics;
 import com.inovaworkscc.quartz.cassandra.util.ExpiryCalculator;
 import org.quartz.JobDetail;
 import org.quartz.TriggerKey;
@@ -10,27 +12,56 @@ import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
 public class LockManager {
 
     private static final Logger log = LoggerFactory.getLogger(LockManager.class);
 
     private LocksDao locksDao;
     private ExpiryCalculator expiryCalculator;
+    protected final JobStoreMetrics metrics;
 
     public LockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator) {
+        this(locksDao, expiryCalculator, NoOpJobStoreMetrics.INSTANCE);
+    }
+
+    /**
+     * @param metrics    receives lock conflicts and relocks
+     */
+    public LockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator, JobStoreMetrics metrics) {
         this.locksDao = locksDao;
         this.expiryCalculator = expiryCalculator;
+        this.metrics = metrics;
     }
 
     /**
      * Lock job if it doesn't allow concurrent executions.
      *
      * @param job    job to lock
+     * @return false when the job is already locked, true otherwise
      */
-    public void lockJob(JobDetail job) {
+    public boolean lockJob(JobDetail job) {
         if (job.isConcurrentExectionDisallowed()) {
-            locksDao.lockJob(job);
+            if (locksDao.lockJob(job)) {
+                return true;
+            }
+            metrics.recordLockConflict();
+            return false;
         }
+        return true;
+    }
+
+    public void unlockJob(JobDetail job) {
+        locksDao.unlockJob(job);
     }
 
     public void unlockAcquiredTrigger(OperableTrigger trigger) {
@@ -59,14 +90,98 @@ public class LockManager {
      */
     public boolean tryLock(TriggerKey key) {
         try {
-            locksDao.lockTrigger(key);
-            return true;
+            if (locksDao.lockTrigger(key)) {
+                return true;
+            }
         } catch (CassandraDatabaseException e) {
             log.info("Failed to lock trigger {}, reason: {}", key, e.getMessage());
         }
+        metrics.recordLockConflict();
+        return false;
+    }
+
+    /**
+     * Try to lock given triggers, ignoring errors. Triggers of the same group
+     * are locked together in one round trip, falling back to one by one
+     * locking when some of them are already locked.
+     *
+     * @param keys    triggers to lock
+     * @return triggers that were successfully locked
+     */
+    public Set<TriggerKey> tryLock(Collection<TriggerKey> keys) {
+        Map<String, List<TriggerKey>> keysByGroup = new HashMap<String, List<TriggerKey>>();
+        for (TriggerKey key : keys) {
+            List<TriggerKey> group = keysByGroup.get(key.getGroup());
+            if (group == null) {
+                group = new ArrayList<TriggerKey>();
+                keysByGroup.put(key.getGroup(), group);
+            }
+            group.add(key);
+        }
+
+        Set<TriggerKey> locked = new HashSet<TriggerKey>();
+        for (List<TriggerKey> group : keysByGroup.values()) {
+            if (group.size() > 1 && tryLockAll(group)) {
+                locked.addAll(group);
+                continue;
+            }
+            for (TriggerKey key : group) {
+                if (tryLock(key)) {
+                    locked.add(key);
+                }
+            }
+        }
+        return locked;
+    }
+
+    private boolean tryLockAll(List<TriggerKey> keys) {
+        try {
+            return locksDao.lockTriggers(keys);
+        } catch (CassandraDatabaseException e) {
+            log.info("Failed to lock triggers {}, reason: {}", keys, e.getMessage());
+        }
         return false;
     }
 
+    /**
+     * Take over all trigger locks of a defunct scheduler which are old enough to expire,
+     * without checking them one by one.
+     *
+     * @param defunctInstanceId    scheduler whose locks to take over
+     * @return triggers whose locks were taken over
+     */
+    public List<TriggerKey> takeOverTriggerLocks(String defunctInstanceId) {
+        Date expiryDate = expiryCalculator.getTriggerLockExpiryDate();
+        List<Row> expiredLocks = new ArrayList<Row>();
+        for (Row lock : locksDao.findTriggerLocksOf(defunctInstanceId)) {
+            if (lock.getTimestamp(Constants.LOCK_TIME).before(expiryDate)) {
+                expiredLocks.add(lock);
+            }
+        }
+        if (expiredLocks.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return locksDao.relockAll(expiredLocks);
+    }
+
+    /**
+     * @return true when given scheduler still holds any trigger locks
+     */
+    public boolean hasTriggerLocks(String instanceId) {
+        return !locksDao.findTriggerLocksOf(instanceId).isEmpty();
+    }
+
+    /**
+     * Unlock given triggers at once, if they are still locked by this scheduler.
+     *
+     * @param keys    triggers to unlock
+     */
+    public void unlockTriggers(List<TriggerKey> keys) {
+        if (!keys.isEmpty()) {
+            locksDao.unlockTriggers(keys);
+        }
+    }
+
     /**
      * Relock trigger if its lock has expired.
      *
@@ -84,7 +199,11 @@ public class LockManager {
                 // Relock may not be successful when some other scheduler has done
                 // it first.
                 log.info("Trigger {} is expired - re-locking", key);
-                return locksDao.relock(key, existingLock.getTimestamp(Constants.LOCK_TIME));
+                boolean relocked = locksDao.relock(key, existingLock.getTimestamp(Constants.LOCK_TIME));
+                if (relocked) {
+                    metrics.recordRelock();
+                }
+                return relocked;
             } else {
                 log.info("Trigger {} hasn't expired yet. Lock time: {}",
                         key, existingLock.getDate(Constants.LOCK_TIME));
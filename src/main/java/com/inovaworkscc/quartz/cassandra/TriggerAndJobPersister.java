@@ -10,12 +10,16 @@ import java.util.HashMap;
 import org.quartz.JobDetail;
 import org.quartz.JobKey;
 import org.quartz.JobPersistenceException;
+import org.quartz.Trigger;
 import org.quartz.TriggerKey;
 import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TriggerAndJobPersister {
 
@@ -107,6 +111,47 @@ public class TriggerAndJobPersister {
         storeTrigger(newTrigger, jobId, false);
     }
 
+    /**
+     * Store jobs and their triggers in chunks. Each chunk is converted up front
+     * and written with concurrent unlogged batches per partition, instead of
+     * lookups and writes per job and per trigger. Unless replacing, triggers
+     * of a chunk are checked before its jobs are written, so a trigger which
+     * already exists stops the chunk without writing any of it. Earlier chunks
+     * stay stored.
+     *
+     * @param triggersAndJobs    jobs and their triggers
+     * @param replace            whether to replace jobs and triggers which already exist
+     * @param chunkSize          max number of jobs or triggers written at once
+     */
+    public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace,
+                                     int chunkSize) throws JobPersistenceException {
+        List<JobDetail> jobs = new ArrayList<>();
+        List<OperableTrigger> triggers = new ArrayList<>();
+        for (Map.Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
+            jobs.add(entry.getKey());
+            for (Trigger newTrigger : entry.getValue()) {
+                // Simply cast to OperableTrigger as in QuartzScheduler.scheduleJobs
+                triggers.add((OperableTrigger) newTrigger);
+            }
+            if (jobs.size() >= chunkSize || triggers.size() >= chunkSize) {
+                storeChunk(jobs, triggers, replace, chunkSize);
+                jobs.clear();
+                triggers.clear();
+            }
+        }
+        storeChunk(jobs, triggers, replace, chunkSize);
+    }
+
+    /**
+     * Update fire times of a fired or misfired trigger, without replacing
+     * the whole trigger.
+     *
+     * @param trigger    trigger to store
+     */
+    public void storeFireTimes(OperableTrigger trigger) {
+        triggerDao.updateFireTimes(trigger.getKey(), triggerConverter.toFireTimesHashMap(trigger));
+    }
+
     public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting)
             throws JobPersistenceException {
         if (newTrigger.getJobKey() == null) {
@@ -168,6 +213,44 @@ public class TriggerAndJobPersister {
         }
     }
 
+    private void storeChunk(List<JobDetail> jobs, List<OperableTrigger> triggers, boolean replace,
+                            int chunkSize) throws JobPersistenceException {
+        LOG.debug("Storing {} jobs and {} triggers", jobs.size(), triggers.size());
+        if (!replace) {
+            // nothing of the chunk is written when a trigger exists
+            triggerDao.checkNotExisting(triggers);
+        }
+        Map<JobKey, String> jobIds = jobDao.storeJobsInCassandra(jobs, replace);
+
+        List<HashMap<String, Object>> converted = new ArrayList<>(triggers.size());
+        for (OperableTrigger newTrigger : triggers) {
+            converted.add(triggerConverter.toHashMap(newTrigger, getJobId(newTrigger, jobIds)));
+        }
+        // a job may have more triggers than a chunk
+        for (int from = 0; from < converted.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, converted.size());
+            triggerDao.storeAll(converted.subList(from, to), triggers.subList(from, to), replace);
+        }
+    }
+
+    private String getJobId(OperableTrigger newTrigger, Map<JobKey, String> jobIds)
+            throws JobPersistenceException {
+        if (newTrigger.getJobKey() == null) {
+            throw new JobPersistenceException("Trigger must be associated with a job. Please specify a JobKey.");
+        }
+        String jobId = jobIds.get(newTrigger.getJobKey());
+        if (jobId == null) {
+            // job stored before
+            Row row = jobDao.getJob(newTrigger.getJobKey());
+            if (row == null) {
+                throw new JobPersistenceException("Could not find job with key " + newTrigger.getJobKey());
+            }
+            jobId = row.getString(Constants.TRIGGER_JOB_ID);
+            jobIds.put(newTrigger.getJobKey(), jobId);
+        }
+        return jobId;
+    }
+
     private void storeTrigger(OperableTrigger newTrigger, String jobId, boolean replaceExisting)
             throws JobPersistenceException {
         HashMap<String, Object> trigger = triggerConverter.toHashMap(newTrigger, jobId);
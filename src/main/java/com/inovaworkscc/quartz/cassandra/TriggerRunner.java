@@ -4,9 +4,7 @@ import com.datastax.driver.core.Row;
 import com.inovaworkscc.quartz.cassandra.cluster.TriggerRecoverer;
 import com.inovaworkscc.quartz.cassandra.dao.CalendarDao;
 import com.inovaworkscc.quartz.cassandra.dao.JobDao;
-import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
 import com.inovaworkscc.quartz.cassandra.dao.TriggerDao;
-import com.inovaworkscc.quartz.cassandra.db.CassandraDatabaseException;
 import com.inovaworkscc.quartz.cassandra.trigger.MisfireHandler;
 import com.inovaworkscc.quartz.cassandra.trigger.TriggerConverter;
 import org.quartz.*;
@@ -38,17 +36,15 @@ public class TriggerRunner {
     private LockManager lockManager;
     private TriggerRecoverer recoverer;
     private JobDao jobDao;
-    private LocksDao locksDao;
     private CalendarDao calendarDao;
 
-    public TriggerRunner(TriggerAndJobPersister persister, TriggerDao triggerDao, JobDao jobDao, LocksDao locksDao,
+    public TriggerRunner(TriggerAndJobPersister persister, TriggerDao triggerDao, JobDao jobDao,
                          CalendarDao calendarDao, MisfireHandler misfireHandler,
                          TriggerConverter triggerConverter, LockManager lockManager,
                          TriggerRecoverer recoverer) {
         this.persister = persister;
         this.triggerDao = triggerDao;
         this.jobDao = jobDao;
-        this.locksDao = locksDao;
         this.calendarDao = calendarDao;
         this.misfireHandler = misfireHandler;
         this.triggerConverter = triggerConverter;
@@ -94,13 +90,12 @@ public class TriggerRunner {
 
                 if (hasJobDetail(bundle)) {
                     JobDetail job = bundle.getJobDetail();
-                    try {
-                        lockManager.lockJob(job);
+                    if (lockManager.lockJob(job)) {
                         results.add(new TriggerFiredResult(bundle));
-                        persister.storeTrigger(trigger, true);
-                    } catch (CassandraDatabaseException dk) {
+                        persister.storeFireTimes(trigger);
+                    } else {
                         LOG.debug("Job disallows concurrent execution and is already running {}", job.getKey());
-                        locksDao.unlockTrigger(trigger);
+                        lockManager.unlockAcquiredTrigger(trigger);
                         lockManager.unlockExpired(job);
                     }
                 }
@@ -113,43 +108,65 @@ public class TriggerRunner {
             throws JobPersistenceException {
         Map<TriggerKey, OperableTrigger> triggers = new HashMap<TriggerKey, OperableTrigger>();
 
-        for (Row triggerRow : triggerDao.findEligibleToRun(noLaterThanDate)) {
-            if (acquiredEnough(triggers, maxCount)) {
-                break;
+        List<Row> triggerRows = triggerDao.findEligibleToRun(noLaterThanDate, maxCount);
+        int from = 0;
+        while (from < triggerRows.size() && !acquiredEnough(triggers, maxCount)) {
+            // Convert triggers in batches, so their jobs are looked up together
+            int to = Math.min(triggerRows.size(), from + maxCount - triggers.size());
+            List<Row> batch = triggerRows.subList(from, to);
+            from = to;
+
+            List<OperableTrigger> batchTriggers = triggerConverter.toTriggersWithOptionalJob(batch);
+            Set<TriggerKey> locked = lockManager.tryLock(lockableKeys(triggers, batchTriggers));
+            for (OperableTrigger trigger : batchTriggers) {
+                acquireTrigger(trigger, triggers, noLaterThanDate, locked.contains(trigger.getKey()));
             }
+        }
 
-            OperableTrigger trigger = triggerConverter.toTriggerWithOptionalJob(triggerRow);
+        return new ArrayList<OperableTrigger>(triggers.values());
+    }
 
-            if (cannotAcquire(triggers, trigger)) {
-                continue;
+    private List<TriggerKey> lockableKeys(Map<TriggerKey, OperableTrigger> triggers,
+                                          List<OperableTrigger> candidates) {
+        List<TriggerKey> keys = new ArrayList<TriggerKey>(candidates.size());
+        for (OperableTrigger trigger : candidates) {
+            if (!cannotAcquire(triggers, trigger) && trigger.getJobKey() != null) {
+                keys.add(trigger.getKey());
             }
+        }
+        return keys;
+    }
 
-            if (trigger.getJobKey() == null) {
-                LOG.error("Error retrieving job for trigger {}, setting trigger state to ERROR.", trigger.getKey());
-                triggerDao.transferState(trigger.getKey(), Constants.STATE_WAITING, Constants.STATE_ERROR);
-                continue;
-            }
+    private void acquireTrigger(OperableTrigger trigger, Map<TriggerKey, OperableTrigger> triggers,
+                                Date noLaterThanDate, boolean locked)
+            throws JobPersistenceException {
+        if (cannotAcquire(triggers, trigger)) {
+            return;
+        }
 
-            TriggerKey key = trigger.getKey();
-            if (lockManager.tryLock(key)) {
-                if (prepareForFire(noLaterThanDate, trigger)) {
-//                    LOG.info("Acquired trigger: {}", trigger.getKey());
-                    triggers.put(trigger.getKey(), trigger);
-                } else {
-                    lockManager.unlockAcquiredTrigger(trigger);
-                }
-            } else if (lockManager.relockExpired(key)) {
-//                LOG.info("Recovering trigger: {}", trigger.getKey());
-                OperableTrigger recoveryTrigger = recoverer.doRecovery(trigger);
+        if (trigger.getJobKey() == null) {
+            LOG.error("Error retrieving job for trigger {}, setting trigger state to ERROR.", trigger.getKey());
+            triggerDao.transferState(trigger.getKey(), Constants.STATE_WAITING, Constants.STATE_ERROR);
+            return;
+        }
+
+        TriggerKey key = trigger.getKey();
+        if (locked) {
+            if (prepareForFire(noLaterThanDate, trigger)) {
+//                LOG.info("Acquired trigger: {}", trigger.getKey());
+                triggers.put(trigger.getKey(), trigger);
+            } else {
                 lockManager.unlockAcquiredTrigger(trigger);
-                if (recoveryTrigger != null && lockManager.tryLock(recoveryTrigger.getKey())) {
-//                    LOG.info("Acquired trigger: {}", recoveryTrigger.getKey());
-                    triggers.put(recoveryTrigger.getKey(), recoveryTrigger);
-                }
+            }
+        } else if (lockManager.relockExpired(key)) {
+//            LOG.info("Recovering trigger: {}", trigger.getKey());
+            OperableTrigger recoveryTrigger = recoverer.doRecovery(trigger);
+            lockManager.unlockAcquiredTrigger(trigger);
+            if (recoveryTrigger != null && lockManager.tryLock(recoveryTrigger.getKey())) {
+//                LOG.info("Acquired trigger: {}", recoveryTrigger.getKey());
+                triggers.put(recoveryTrigger.getKey(), recoveryTrigger);
             }
         }
-
-        return new ArrayList<OperableTrigger>(triggers.values());
     }
 
     private boolean prepareForFire(Date noLaterThanDate, OperableTrigger trigger)
@@ -212,7 +229,7 @@ public class TriggerRunner {
     private boolean notAcquirableAfterMisfire(Date noLaterThanDate, OperableTrigger trigger)
             throws JobPersistenceException {
         if (misfireHandler.applyMisfire(trigger)) {
-            persister.storeTrigger(trigger, true);
+            persister.storeFireTimes(trigger);
 
 //            LOG.debug("Misfire trigger {}.", trigger.getKey());
 
@@ -236,7 +253,7 @@ public class TriggerRunner {
         try {
             return jobDao.retrieveJob(trigger.getJobKey());
         } catch (JobPersistenceException e) {
-            locksDao.unlockTrigger(trigger);
+            lockManager.unlockAcquiredTrigger(trigger);
             throw e;
         }
     }
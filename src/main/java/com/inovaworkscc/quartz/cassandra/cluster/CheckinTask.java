@@ -13,10 +13,19 @@ public class CheckinTask implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(CheckinTask.class);
 
     private SchedulerDao schedulerDao;
+    private ClusterMembership membership;
     private Runnable errorhandler;
 
     public CheckinTask(SchedulerDao schedulerDao, Runnable errorHandler) {
+        this(schedulerDao, null, errorHandler);
+    }
+
+    /**
+     * @param membership    view to refresh after each check-in, may be null
+     */
+    public CheckinTask(SchedulerDao schedulerDao, ClusterMembership membership, Runnable errorHandler) {
         this.schedulerDao = schedulerDao;
+        this.membership = membership;
         this.errorhandler = errorHandler;
     }
 
@@ -33,6 +42,17 @@ public class CheckinTask implements Runnable {
         } catch (CassandraDatabaseException e) {
             log.error("Node " + schedulerDao.instanceId + " could not check-in: " + e.getMessage(), e);
             errorhandler.run();
+            return;
+        }
+
+        if (membership != null) {
+            try {
+                membership.refresh();
+            } catch (CassandraDatabaseException e) {
+                // not fatal, lookups fall back to the database
+                log.warn("Node " + schedulerDao.instanceId + " could not refresh cluster membership: "
+                        + e.getMessage(), e);
+            }
         }
     }
 }
@@ -5,6 +5,7 @@ import com.inovaworkscc.quartz.cassandra.TriggerAndJobPersister;
 import com.inovaworkscc.quartz.cassandra.dao.JobDao;
 import com.inovaworkscc.quartz.cassandra.dao.LocksDao;
 import com.inovaworkscc.quartz.cassandra.dao.TriggerDao;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
 import com.inovaworkscc.quartz.cassandra.trigger.MisfireHandler;
 import org.quartz.JobPersistenceException;
 import org.quartz.TriggerKey;
@@ -12,10 +13,15 @@ import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
+
 public class TriggerRecoverer {
 
     private static final Logger log = LoggerFactory.getLogger(TriggerRecoverer.class);
 
+    // Number of recovered triggers loaded and unlocked at once
+    private static final int RECOVERY_BATCH_SIZE = 100;
+
     private final LocksDao locksDao;
     private final TriggerAndJobPersister persister;
     private final LockManager lockManager;
@@ -23,11 +29,12 @@ public class TriggerRecoverer {
     private final JobDao jobDao;
     private final RecoveryTriggerFactory recoveryTriggerFactory;
     private final MisfireHandler misfireHandler;
+    private final JobStoreMetrics metrics;
 
     public TriggerRecoverer(LocksDao locksDao, TriggerAndJobPersister persister,
                             LockManager lockManager, TriggerDao triggerDao,
                             JobDao jobDao, RecoveryTriggerFactory recoveryTriggerFactory,
-                            MisfireHandler misfireHandler) {
+                            MisfireHandler misfireHandler, JobStoreMetrics metrics) {
         this.locksDao = locksDao;
         this.persister = persister;
         this.lockManager = lockManager;
@@ -35,6 +42,7 @@ public class TriggerRecoverer {
         this.jobDao = jobDao;
         this.recoveryTriggerFactory = recoveryTriggerFactory;
         this.misfireHandler = misfireHandler;
+        this.metrics = metrics;
     }
 
     public void recover() throws JobPersistenceException {
@@ -53,6 +61,24 @@ public class TriggerRecoverer {
         }
     }
 
+    /**
+     * Recover triggers taken over from a defunct scheduler with
+     * {@link LockManager#takeOverTriggerLocks(String)}, loading and unlocking them in batches.
+     *
+     * @param keys    triggers taken over
+     * @return number of recovered triggers
+     */
+    public int recoverTakenOver(List<TriggerKey> keys) throws JobPersistenceException {
+        for (int from = 0; from < keys.size(); from += RECOVERY_BATCH_SIZE) {
+            List<TriggerKey> batch = keys.subList(from, Math.min(keys.size(), from + RECOVERY_BATCH_SIZE));
+            for (OperableTrigger trigger : triggerDao.getTriggers(batch)) {
+                doRecovery(trigger);
+            }
+            lockManager.unlockTriggers(batch);
+        }
+        return keys.size();
+    }
+
     /**
      * Do recovery procedure after failed run of given trigger.
      *
@@ -80,13 +106,14 @@ public class TriggerRecoverer {
         log.info("Recovering trigger: {}", trigger.getKey());
         OperableTrigger recoveryTrigger = recoveryTriggerFactory.from(trigger);
         persister.storeTrigger(recoveryTrigger, false);
+        metrics.recordRecovery();
         return recoveryTrigger;
     }
 
     private void updateMisfires(OperableTrigger trigger) throws JobPersistenceException {
         if (misfireHandler.applyMisfireOnRecovery(trigger)) {
-            log.info("Misfire applied. Replacing trigger: {}", trigger.getKey());
-            persister.storeTrigger(trigger, true);
+            log.info("Misfire applied. Updating trigger: {}", trigger.getKey());
+            persister.storeFireTimes(trigger);
         } else {
             //TODO should complete trigger?
             log.warn("Recovery misfire not applied for trigger: {}",
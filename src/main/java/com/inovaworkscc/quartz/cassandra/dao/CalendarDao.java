@@ -8,9 +8,11 @@ import org.quartz.Calendar;
 import org.quartz.JobPersistenceException;
 
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
+import com.inovaworkscc.quartz.cassandra.util.CalendarCache;
 import com.inovaworkscc.quartz.cassandra.util.SerialUtils;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.concurrent.ThreadLocalRandom;
 
 import java.util.List;
 
@@ -20,6 +22,7 @@ public class CalendarDao {
 
     static final String CALENDAR_NAME = "name";
     static final String CALENDAR_SERIALIZED_OBJECT = "serializedObject";
+    static final String CALENDAR_VERSION = "version";
     
     public static final String CALENDARS_GET_ALL = CassandraConnectionManager.registerStatement ("CALENDARS_GET_ALL", 
              "SELECT * FROM " + TABLE_NAME_CALENDARS
@@ -34,8 +37,14 @@ public class CalendarDao {
             + CALENDAR_NAME + " = ?"
     );
     
+    public static final String CALENDARS_GET_VERSION = CassandraConnectionManager.registerStatement("CALENDARS_GET_VERSION",
+            "SELECT " + CALENDAR_VERSION + " FROM " + TABLE_NAME_CALENDARS + " WHERE "
+            + CALENDAR_NAME + " = ?"
+    );
+    
     public static final String CALENDARS_INSERT = CassandraConnectionManager.registerStatement("CALENDARS_INSERT",
-            "INSERT INTO " + TABLE_NAME_CALENDARS + " (" + CALENDAR_NAME + ", " + CALENDAR_SERIALIZED_OBJECT + ") VALUES ("
+            "INSERT INTO " + TABLE_NAME_CALENDARS + " (" + CALENDAR_NAME + ", " + CALENDAR_SERIALIZED_OBJECT + ", " + CALENDAR_VERSION + ") VALUES ("
+            + "?, "
             + "?, "
             + "?)"
     );
@@ -53,12 +62,19 @@ public class CalendarDao {
             "SELECT COUNT(*) FROM " + TABLE_NAME_CALENDARS
     );
     
-    public CalendarDao() {}
+    private final CountersDao countersDao;
+    private final CalendarCache calendarCache;
+
+    public CalendarDao(CountersDao countersDao, CalendarCache calendarCache) {
+        this.countersDao = countersDao;
+        this.calendarCache = calendarCache;
+    }
 
     public void clear() {
         
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_DELETE_ALL));
         CassandraConnectionManager.getInstance().execute(boundStatement);   
+        calendarCache.clear();
     }
 
     public long getCount() {
@@ -71,54 +87,102 @@ public class CalendarDao {
         return r.getLong("count");
     }
 
+    public long getEstimatedCount() {
+        return countersDao.get(CountersDao.CALENDARS);
+    }
+
     public boolean remove(String name) {
+        
+        calendarCache.invalidate(name);
+        if (!exists(name)) {
+            return false;
+        }
       
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_DELETE));
         boundStatement.bind(name);
         
-        ResultSet rs = CassandraConnectionManager.getInstance().execute(boundStatement); 
-        return rs.one() != null;
+        CassandraConnectionManager.getInstance().execute(boundStatement); 
+        countersDao.decrement(CountersDao.CALENDARS);
+        return true;
+    }
+
+    private boolean exists(String name) {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_GET));
+        boundStatement.bind(name);
+        
+        return CassandraConnectionManager.getInstance().execute(boundStatement).one() != null;
     }
 
+    /**
+     * Returns calendar with given name. Deserialized calendars are cached and
+     * reused as long as the version stamp of the stored calendar is unchanged.
+     * The returned instance may be shared and must not be modified.
+     */
     public Calendar retrieveCalendar(String calName) throws JobPersistenceException {
         
         if(calName == null)
             return null;
         
-//        try {
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_GET));
+        Calendar calendar = calendarCache.getFresh(calName);
+        if (calendar != null) {
+            return calendar;
+        }
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_GET_VERSION));
         boundStatement.bind(calName);
-
-//            ResultSetFuture rs = CassandraConnectionManager.getInstance().executeAsync(boundStatement);
-        ResultSet rs = CassandraConnectionManager.getInstance().execute(boundStatement);
-        Calendar calendar;
-            
-//            Row r = rs.get().one();
-        Row r = rs.one();
+        Row versionRow = CassandraConnectionManager.getInstance().execute(boundStatement).one();
+        
+        if (versionRow == null) {
+            calendarCache.invalidate(calName);
+            return null;
+        }
+        
+        calendar = calendarCache.getIfVersion(calName, versionRow.getLong(CALENDAR_VERSION));
+        if (calendar != null) {
+            return calendar;
+        }
+        
+        boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_GET));
+        boundStatement.bind(calName);
+        Row r = CassandraConnectionManager.getInstance().execute(boundStatement).one();
 
         if (r != null){
 
             ByteBuffer bb = r.getBytes("serializedObject");
 
             calendar = SerialUtils.deserialize(bb.array(), Calendar.class);
+            
+            // a missing stamp of calendars stored by older versions reads as 0
+            calendarCache.put(calName, r.getLong(CALENDAR_VERSION), calendar);
 
             return calendar;
         }
-//        } catch (InterruptedException ex) {
-//            throw new JobPersistenceException(ex.getMessage(), ex);
-//        } catch (ExecutionException ex) {
-//            throw new JobPersistenceException(ex.getMessage(), ex);
-//        }
-        
         
         return null;
     }
 
     public void store(String name, Calendar calendar) throws JobPersistenceException {
         
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_GET));
-        boundStatement.bind(name, ByteBuffer.wrap(SerialUtils.serialize(calendar)));
+        // the lookup is needed only to count calendars
+        boolean isNew = countersDao.isEnabled() && !exists(name);
+        calendarCache.invalidate(name);
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(CALENDARS_INSERT));
+        boundStatement.bind(name, ByteBuffer.wrap(SerialUtils.serialize(calendar)), newVersion());
         CassandraConnectionManager.getInstance().execute(boundStatement);           
+        
+        if (isNew) {
+            countersDao.increment(CountersDao.CALENDARS);
+        }
+    }
+
+    private long newVersion() {
+        long version;
+        do {
+            version = ThreadLocalRandom.current().nextLong();
+        } while (version == 0);
+        return version;
     }
 
     public List<String> retrieveCalendarNames() {
@@ -0,0 +1,142 @@
+package com.inovaworkscc.quartz.cassandra.dao;
+
+import com.datastax.driver.core.BoundStatement;
+import com.datastax.driver.core.Row;
+import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
+
+import java.util.Date;
+
+import static com.inovaworkscc.quartz.cassandra.Constants.LOCK_INSTANCE_ID;
+import static com.inovaworkscc.quartz.cassandra.Constants.LOCK_TIME;
+
+/**
+ * Keeps approximate numbers of stored jobs, triggers and calendars in a
+ * counter table, so they can be read without counting whole tables.
+ * When approximate counts are disabled the counters aren't updated,
+ * and DAOs skip the reads which tell whether an item is new.
+ */
+public class CountersDao {
+
+    public static final String TABLE_NAME_COUNTERS = "counters";
+    public static final String TABLE_NAME_COUNTERS_RESET = "counters_reset";
+
+    public static final String JOBS = "jobs";
+    public static final String TRIGGERS = "triggers";
+    public static final String CALENDARS = "calendars";
+
+    static final String COUNTER_NAME = "name";
+    static final String COUNTER_VALUE = "value";
+
+    static final String RESET_NAME = "name";
+
+    /**
+     * Seconds the reset claim is kept, nodes started meanwhile don't reset counters.
+     */
+    static final int RESET_CLAIM_TTL = 60;
+
+    public static final String COUNTERS_GET = CassandraConnectionManager.registerStatement("COUNTERS_GET",
+            "SELECT " + COUNTER_VALUE + " FROM " + TABLE_NAME_COUNTERS + " WHERE "
+            + COUNTER_NAME + " = ?"
+    );
+
+    public static final String COUNTERS_ADD = CassandraConnectionManager.registerStatement("COUNTERS_ADD",
+            "UPDATE " + TABLE_NAME_COUNTERS + " SET "
+            + COUNTER_VALUE + " = " + COUNTER_VALUE + " + ? WHERE "
+            + COUNTER_NAME + " = ?"
+    );
+
+    public static final String COUNTERS_DELETE_ALL = CassandraConnectionManager.registerStatement("COUNTERS_DELETE_ALL",
+            "TRUNCATE " + TABLE_NAME_COUNTERS
+    );
+
+    public static final String COUNTERS_CLAIM_RESET = CassandraConnectionManager.registerStatement("COUNTERS_CLAIM_RESET",
+            "INSERT INTO " + TABLE_NAME_COUNTERS_RESET + " ("
+            + RESET_NAME + "," + LOCK_INSTANCE_ID + "," + LOCK_TIME
+            + ") VALUES (?, ?, ?) IF NOT EXISTS USING TTL " + RESET_CLAIM_TTL
+    );
+
+    private final boolean enabled;
+
+    /**
+     * @param enabled    whether counters are maintained
+     */
+    public CountersDao(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void clear() {
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(COUNTERS_DELETE_ALL));
+        CassandraConnectionManager.getInstance().execute(boundStatement);
+    }
+
+    public long get(String name) {
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(COUNTERS_GET));
+        boundStatement.bind(name);
+        Row row = CassandraConnectionManager.getInstance().execute(boundStatement).one();
+
+        return row == null ? 0 : row.getLong(COUNTER_VALUE);
+    }
+
+    /**
+     * Add given delta to the counter. The update is sent without waiting
+     * for its result, counters are not exact anyway.
+     *
+     * @param name     counter to update
+     * @param delta    value to add, negative to subtract
+     */
+    public void add(String name, long delta) {
+
+        if (!enabled) {
+            return;
+        }
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(COUNTERS_ADD));
+        boundStatement.bind(delta, name);
+        CassandraConnectionManager.getInstance().executeAsync(boundStatement);
+    }
+
+    public void increment(String name) {
+        add(name, 1);
+    }
+
+    public void decrement(String name) {
+        add(name, -1);
+    }
+
+    /**
+     * Claim resetting of the counters with a lightweight transaction on a row
+     * of their own table, as a counter table can't hold other columns.
+     * A counter can only be changed by a delta, so concurrent resets
+     * by nodes started together would add up.
+     *
+     * @param instanceId    node which is going to reset counters
+     * @return false when another node has claimed it recently
+     */
+    public boolean claimReset(String instanceId) {
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(COUNTERS_CLAIM_RESET));
+        boundStatement.bind(TABLE_NAME_COUNTERS, instanceId, new Date());
+        return CassandraConnectionManager.getInstance().execute(boundStatement).wasApplied();
+    }
+
+    /**
+     * Bring the counter in line with an exact count.
+     * Should be called only after {@link #claimReset(String)} succeeded.
+     *
+     * @param name     counter to update
+     * @param count    exact number of items
+     */
+    public void reset(String name, long count) {
+
+        long delta = count - get(name);
+        if (delta != 0) {
+            add(name, delta);
+        }
+    }
+}
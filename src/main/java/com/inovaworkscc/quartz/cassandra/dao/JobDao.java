@@ -8,7 +8,9 @@ import com.inovaworkscc.quartz.cassandra.JobConverter;
 import static com.inovaworkscc.quartz.cassandra.JobConverter.*;
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
 import com.inovaworkscc.quartz.cassandra.db.CassandraDatabaseException;
+import com.inovaworkscc.quartz.cassandra.db.PartitionBatches;
 import static com.inovaworkscc.quartz.cassandra.Constants.JOB_DATA;
+import static com.inovaworkscc.quartz.cassandra.Constants.JOB_DATA_BINARY;
 import static com.inovaworkscc.quartz.cassandra.Constants.JOB_DATA_PLAIN;
 import com.inovaworkscc.quartz.cassandra.util.Keys;
 import org.quartz.JobDetail;
@@ -63,6 +65,11 @@ public class JobDao implements GroupedDao{
                     + JOB_ID + " = ?"
     );
     
+    public static final String JOBS_GET_KEY_BY_JOB_ID = CassandraConnectionManager.registerStatement("JOBS_GET_KEY_BY_JOB_ID",
+            "SELECT " + KEY_NAME + ", " + KEY_GROUP + " FROM " + TABLE_NAME_JOBS + " WHERE "
+                    + JOB_ID + " = ?"
+    );
+    
     public static final String JOBS_GET_DISTINCT_KEY_GROUP = CassandraConnectionManager.registerStatement("JOBS_GET_DISTINCT_KEY_GROUP",
             "SELECT DISTINCT " + KEY_GROUP + " FROM " + TABLE_NAME_JOBS
     );
@@ -79,7 +86,8 @@ public class JobDao implements GroupedDao{
     );
 
     public static final String JOBS_INSERT_JOB_DATA = CassandraConnectionManager.registerStatement("JOBS_INSERT_JOB_DATA",
-            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA + ")" + "VALUES ("
+            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA + "," + JOB_DATA_BINARY + ")" + "VALUES ("
+            + "?, "
             + "?, "
             + "?, "
             + "?, "
@@ -88,11 +96,11 @@ public class JobDao implements GroupedDao{
             + "?, "
             + "?, "
             + "?, "
-            + "?)"
+            + "null)"
     );
     
     public static final String JOBS_INSERT_JOB_DATA_PLAIN = CassandraConnectionManager.registerStatement("JOBS_INSERT_JOB_DATA_PLAIN",
-            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA_PLAIN + ")" + "VALUES ("
+            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA_PLAIN + "," + JOB_DATA_BINARY + ")" + "VALUES ("
             + "?, "
             + "?, "
             + "?, "
@@ -101,11 +109,27 @@ public class JobDao implements GroupedDao{
             + "?, "
             + "?, "
             + "?, "
-            + "?)"
+            + "?, "
+            + "null)"
+    );
+    
+    public static final String JOBS_INSERT_JOB_DATA_BINARY = CassandraConnectionManager.registerStatement("JOBS_INSERT_JOB_DATA_BINARY",
+            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA_BINARY + "," + JOB_DATA + "," + JOB_DATA_PLAIN + ")" + "VALUES ("
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "?, "
+            + "null, "
+            + "null)"
     );
     
     public static final String JOBS_INSERT_NO_JOB_DATA_PLAIN = CassandraConnectionManager.registerStatement("JOBS_INSERT_NO_JOB_DATA_PLAIN",
-            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + ")" + "VALUES ("
+            "INSERT INTO " + TABLE_NAME_JOBS + " (" + KEY_NAME + "," + KEY_GROUP + "," + KEY_GROUP + "_index" + "," + JOB_ID + "," + JOB_DESCRIPTION + "," + JOB_CLASS + "," + JOB_DURABILITY + "," + JOB_REQUESTS_RECOVERY + "," + JOB_DATA_BINARY + ")" + "VALUES ("
             + "?, "
             + "?, "
             + "?, "
@@ -113,15 +137,18 @@ public class JobDao implements GroupedDao{
             + "?, "
             + "?, "
             + "?, "
-            + "?)"
+            + "?, "
+            + "null)"
     );
     
     private final QueryHelper queryHelper;
     private final JobConverter jobConverter;
+    private final CountersDao countersDao;
 
-    public JobDao(QueryHelper queryHelper, JobConverter jobConverter) {
+    public JobDao(QueryHelper queryHelper, JobConverter jobConverter, CountersDao countersDao) {
         this.queryHelper = queryHelper;
         this.jobConverter = jobConverter;
+        this.countersDao = countersDao;
     }
 
     public List<Row> clear() {
@@ -155,6 +182,33 @@ public class JobDao implements GroupedDao{
         return r;
     }
     
+    /**
+     * Resolves keys of jobs with given ids. The lookups are sent concurrently,
+     * as jobId is not a primary key column and can't be queried with IN.
+     * 
+     * @param ids ids of jobs
+     * @return job keys by job id, missing jobs are absent from the map
+     */
+    public Map<String, JobKey> getJobKeysByIds(Collection<String> ids) {
+        
+        Map<String, ResultSetFuture> futures = new HashMap<>();
+        for (String id : ids) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(JOBS_GET_KEY_BY_JOB_ID));
+            boundStatement.bind(id);
+            futures.put(id, CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+        
+        Map<String, JobKey> keys = new HashMap<>();
+        futures.forEach((id, rs) -> {
+            Row row = rs.getUninterruptibly().one();
+            if (row != null) {
+                keys.put(id, Keys.toJobKey(row));
+            }
+        });
+        
+        return keys;
+    }
+    
     public Row getJob(JobKey jobKey) {
         
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(JOBS_GET_BY_KEY));
@@ -176,6 +230,10 @@ public class JobDao implements GroupedDao{
         return r.getLong("count");
     }
 
+    public long getEstimatedCount() {
+        return countersDao.get(CountersDao.JOBS);
+    }
+
     public List<String> getGroupNames() {
 
         List<String> ret = new ArrayList<>();
@@ -230,9 +288,16 @@ public class JobDao implements GroupedDao{
 
     public void remove(JobKey jobKey) {
         
+        // the lookup is needed only to count jobs
+        boolean existed = countersDao.isEnabled() && exists(jobKey);
+        
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(JOBS_DELETE_BY_KEY));
         boundStatement.bind(jobKey.getName(), jobKey.getGroup());
         CassandraConnectionManager.getInstance().execute(boundStatement); 
+        
+        if (existed) {
+            countersDao.decrement(CountersDao.JOBS);
+        }
     }
 
     public boolean requestsRecovery(JobKey jobKey) {
@@ -271,6 +336,7 @@ public class JobDao implements GroupedDao{
             jobId = UUID.randomUUID().toString();
             
             storeJob(jobDataMap, key, jobId, newJob);
+            countersDao.increment(CountersDao.JOBS);
         } else {
             jobId = existingJob.getString(JOB_ID);
         }
@@ -278,7 +344,56 @@ public class JobDao implements GroupedDao{
         return jobId;
     }
 
+    /**
+     * Store given jobs. Existing jobs are looked up with concurrent queries and
+     * jobs are written with unlogged batches per partition, all sent at once.
+     * Like {@link #storeJobInCassandra(JobDetail, boolean)}, jobs which already
+     * exist are kept unless replacing, and their ids are returned.
+     *
+     * @param newJobs            jobs to store
+     * @param replaceExisting    whether to replace jobs which already exist
+     * @return ids of stored jobs by their key
+     * @throws JobPersistenceException if job data couldn't be serialized
+     */
+    public Map<JobKey, String> storeJobsInCassandra(List<JobDetail> newJobs, boolean replaceExisting)
+            throws JobPersistenceException {
+
+        List<ResultSetFuture> existing = new ArrayList<>(newJobs.size());
+        for (JobDetail newJob : newJobs) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(JOBS_GET_BY_KEY));
+            boundStatement.bind(newJob.getKey().getName(), newJob.getKey().getGroup());
+            existing.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+
+        Map<JobKey, String> ids = new HashMap<>();
+        PartitionBatches batches = new PartitionBatches();
+        int inserted = 0;
+        for (int i = 0; i < newJobs.size(); i++) {
+            JobDetail newJob = newJobs.get(i);
+            Row existingJob = existing.get(i).getUninterruptibly().one();
+            String jobId = existingJob == null ? UUID.randomUUID().toString() : existingJob.getString(JOB_ID);
+            ids.put(newJob.getKey(), jobId);
+
+            if (existingJob == null || replaceExisting) {
+                batches.add(newJob.getKey().getGroup(), bindJob(newJob.getJobDataMap(), newJob.getKey(), jobId, newJob));
+            }
+            if (existingJob == null) {
+                inserted++;
+            }
+        }
+
+        batches.execute();
+        if (inserted > 0) {
+            countersDao.add(CountersDao.JOBS, inserted);
+        }
+        return ids;
+    }
+
     private void storeJob(JobDataMap jobDataMap, JobKey key, String jobId, JobDetail newJob) throws JobPersistenceException, CassandraDatabaseException {
+        CassandraConnectionManager.getInstance().execute(bindJob(jobDataMap, key, jobId, newJob));
+    }
+
+    private BoundStatement bindJob(JobDataMap jobDataMap, JobKey key, String jobId, JobDetail newJob) throws JobPersistenceException {
         
         BoundStatement boundStatement;
         
@@ -296,7 +411,23 @@ public class JobDao implements GroupedDao{
                     newJob.requestsRecovery()
             );
         }
-        if (jobConverter.jobDataConverter.isBase64Preferred()){
+        if (jobConverter.jobDataConverter.isBinaryPreferred()) {
+            
+            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(JOBS_INSERT_JOB_DATA_BINARY));
+            
+            //keyName, keyGroup, keyGroup_index, jobId, jobDescription, jobClass, durability, requestsRecovery, jobDataBinary
+            boundStatement.bind(
+                    key.getName(),
+                    key.getGroup(),
+                    key.getGroup(),
+                    jobId,
+                    newJob.getDescription(),
+                    newJob.getJobClass().getName(),
+                    newJob.isDurable(),
+                    newJob.requestsRecovery(),
+                    jobConverter.jobDataConverter.toBinary(jobDataMap)
+            );
+        } else if (jobConverter.jobDataConverter.isBase64Preferred()){
             
             String jobDataString;
             try {
@@ -337,7 +468,7 @@ public class JobDao implements GroupedDao{
             );
         }
         
-        CassandraConnectionManager.getInstance().execute(boundStatement);         
+        return boundStatement;
     }
 
     @Override
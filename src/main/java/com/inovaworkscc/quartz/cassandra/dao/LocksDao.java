@@ -1,9 +1,11 @@
 package com.inovaworkscc.quartz.cassandra.dao;
 
+import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Row;
+import com.datastax.driver.core.exceptions.DriverException;
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
 import com.inovaworkscc.quartz.cassandra.db.CassandraDatabaseException;
 import org.quartz.JobDetail;
@@ -14,6 +16,8 @@ import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
@@ -39,7 +43,7 @@ public class LocksDao implements GroupedDao{
     public static final String LOCKS_GET_BY_KEY_LOCK_TYPE = CassandraConnectionManager.registerStatement("LOCKS_GET_BY_KEY_LOCK_TYPE",
             "SELECT * FROM " + TABLE_NAME_LOCKS + " WHERE "
                     + KEY_NAME + " = ? AND "
-                    + KEY_GROUP + " = ? AND"
+                    + KEY_GROUP + " = ? AND "
                     + LOCK_TYPE + " = ?"
     );
     
@@ -50,7 +54,7 @@ public class LocksDao implements GroupedDao{
     );
     
     public static final String LOCKS_GET_BY_INSTANCE_ID = CassandraConnectionManager.registerStatement("LOCKS_GET_BY_INSTANCE_ID",
-            "SELECT " + KEY_NAME + "," + KEY_GROUP + "," + LOCK_TYPE + " FROM " + TABLE_NAME_LOCKS + " WHERE "
+            "SELECT " + KEY_NAME + "," + KEY_GROUP + "," + LOCK_TYPE + "," + LOCK_TIME + " FROM " + TABLE_NAME_LOCKS + " WHERE "
                     + LOCK_INSTANCE_ID + " = ? "
     );
     
@@ -61,7 +65,19 @@ public class LocksDao implements GroupedDao{
             + "?, "
             + "?, "
             + "?, "
-            + "?)"
+            + "?) "
+            + "IF NOT EXISTS"
+    );
+    
+    public static final String LOCKS_RELOCK = CassandraConnectionManager.registerStatement("LOCKS_RELOCK",
+            "UPDATE " + TABLE_NAME_LOCKS + " SET " 
+                + LOCK_INSTANCE_ID + " = ? ,"
+                + LOCK_TIME + " = ? "
+                + "WHERE "
+                + KEY_NAME + " = ? AND "
+                + KEY_GROUP + " = ? AND "
+                + LOCK_TYPE + " = ? "
+                + "IF " + LOCK_TIME + " = ?"
     );
     
     public static final String LOCKS_UPDATE = CassandraConnectionManager.registerStatement("LOCKS_UPDATE",
@@ -75,13 +91,14 @@ public class LocksDao implements GroupedDao{
                 + "IF EXISTS"
     );
     
-    public static final String LOCKS_DELETE = CassandraConnectionManager.registerStatement("LOCKS_DELETE",
+    public static final String LOCKS_DELETE_OWN = CassandraConnectionManager.registerStatement("LOCKS_DELETE_OWN",
         "DELETE FROM " + TABLE_NAME_LOCKS + " WHERE "
             + KEY_NAME + " = ? AND "
             + KEY_GROUP + " = ? AND "
             + LOCK_TYPE + " = ? "
+            + "IF " + LOCK_INSTANCE_ID + " = ?"
     );
-    
+
     public static final String LOCKS_GET_DISTINCT_KEY_GROUP = CassandraConnectionManager.registerStatement("LOCKS_GET_DISTINCT_KEY_GROUP",
             "SELECT DISTINCT " + KEY_GROUP + " FROM " + TABLE_NAME_LOCKS
     );
@@ -191,6 +208,26 @@ public class LocksDao implements GroupedDao{
     }
     
 
+    /**
+     * Find trigger locks held by given scheduler.
+     *
+     * @param instanceId    scheduler whose locks to find
+     * @return lock rows with trigger keys and lock times
+     */
+    public List<Row> findTriggerLocksOf(String instanceId) {
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_GET_BY_INSTANCE_ID));
+        boundStatement.bind(instanceId);
+
+        List<Row> locks = new ArrayList<>();
+        for (Row row : CassandraConnectionManager.getInstance().execute(boundStatement)) {
+            if (LockType.t.name().equals(row.getString(LOCK_TYPE))) {
+                locks.add(row);
+            }
+        }
+        return locks;
+    }
+
     public void lockUpdate(Key key, String type){
     
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_UPDATE));
@@ -198,20 +235,57 @@ public class LocksDao implements GroupedDao{
         CassandraConnectionManager.getInstance().execute(boundStatement); 
     }
     
-    public void lockJob(JobDetail job) {
+    /**
+     * Insert lock for given job, unless one already exists.
+     *
+     * @param job    job to lock
+     * @return true when the lock was inserted
+     */
+    public boolean lockJob(JobDetail job) {
         //LOG.debug("Inserting lock for job {}", job.getKey());
         
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_INSERT));
         boundStatement.bind(job.getKey().getName(), job.getKey().getGroup(), job.getKey().getGroup(), LockType.j.name(), instanceId, clock.now());
-        CassandraConnectionManager.getInstance().execute(boundStatement); 
+        return CassandraConnectionManager.getInstance().execute(boundStatement).wasApplied(); 
     }
 
-    public void lockTrigger(TriggerKey key) {
+    /**
+     * Insert lock for given trigger, unless one already exists.
+     *
+     * @param key    trigger to lock
+     * @return true when the lock was inserted
+     */
+    public boolean lockTrigger(TriggerKey key) {
         //LOG.info("Inserting lock for trigger {}", key);
         
+        return CassandraConnectionManager.getInstance().execute(bindLockTrigger(key, clock.now())).wasApplied();  
+    }
+    
+    /**
+     * Lock triggers of one group in a single round trip.
+     *
+     * <p>Locks of a group share a partition, so the inserts are sent
+     * as one conditional batch, which is applied as a whole or not at all.</p>
+     *
+     * @param keys    triggers to lock, all in the same group
+     * @return true when all triggers were locked, false when none was
+     * because at least one of them is already locked
+     */
+    public boolean lockTriggers(Collection<TriggerKey> keys) {
+        
+        Date lockTime = clock.now();
+        BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        for (TriggerKey key : keys) {
+            batchStatement.add(bindLockTrigger(key, lockTime));
+        }
+        return CassandraConnectionManager.getInstance().execute(batchStatement).wasApplied();
+    }
+    
+    private BoundStatement bindLockTrigger(TriggerKey key, Date lockTime) {
+        
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_INSERT));
-        boundStatement.bind(key.getName(), key.getGroup(), key.getGroup(), LockType.t.name(), instanceId, clock.now());
-        CassandraConnectionManager.getInstance().execute(boundStatement);  
+        boundStatement.bind(key.getName(), key.getGroup(), key.getGroup(), LockType.t.name(), instanceId, lockTime);
+        return boundStatement;
     }
     
     /**
@@ -227,24 +301,16 @@ public class LocksDao implements GroupedDao{
      */
     public boolean relock(TriggerKey key, Date lockTime) {
         
-        boolean ret;
-
         try{
             
-            Row trigerLock = findTriggerLockByTime(key, lockTime);
-        
-            if(trigerLock != null){
-
-                lockTrigger(key);
-
-                ret = true;
-                
-            }else{
-                ret = false;
-            }
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_RELOCK));
+            boundStatement.bind(instanceId, clock.now(), key.getName(), key.getGroup(), LockType.t.name(), lockTime);
+            boolean ret = CassandraConnectionManager.getInstance().execute(boundStatement).wasApplied();
             
-            //LOG.info("Scheduler {} couldn't relock the trigger {} with lock time: {}",
-            //    instanceId, key, lockTime);
+            if (!ret) {
+                LOG.info("Scheduler {} couldn't relock the trigger {} with lock time: {}",
+                    instanceId, key, lockTime);
+            }
                     
             return ret;
         } catch (CassandraDatabaseException e){
@@ -253,6 +319,60 @@ public class LocksDao implements GroupedDao{
         }
     }
 
+    /**
+     * Take over given trigger locks, each iff its <b>lockTime</b> haven't changed.
+     *
+     * <p>Lightweight transactions can't be batched across partitions, so the
+     * conditional updates are all sent at once and their results collected afterwards.</p>
+     *
+     * @param locks    lock rows of other schedulers, with lock times
+     * @return triggers whose locks were taken over
+     */
+    public List<TriggerKey> relockAll(List<Row> locks) {
+
+        Date lockTime = clock.now();
+        List<ResultSetFuture> results = new ArrayList<>(locks.size());
+        for (Row lock : locks) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_RELOCK));
+            boundStatement.bind(instanceId, lockTime, lock.getString(KEY_NAME), lock.getString(KEY_GROUP),
+                    LockType.t.name(), lock.getTimestamp(LOCK_TIME));
+            results.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+
+        List<TriggerKey> relocked = new ArrayList<>(locks.size());
+        for (int i = 0; i < results.size(); i++) {
+            TriggerKey key = toTriggerKey(locks.get(i));
+            try {
+                if (results.get(i).getUninterruptibly().wasApplied()) {
+                    relocked.add(key);
+                }
+            } catch (DriverException e) {
+                LOG.error("Relock of trigger " + key + " failed because: " + e.getMessage(), e);
+            }
+        }
+        LOG.info("Scheduler {} relocked {} of {} triggers.", instanceId, relocked.size(), locks.size());
+        return relocked;
+    }
+
+    /**
+     * Unlock given triggers if they still belong to the current scheduler,
+     * sending all deletes at once.
+     *
+     * @param keys    triggers to unlock
+     */
+    public void unlockTriggers(List<TriggerKey> keys) {
+
+        List<ResultSetFuture> results = new ArrayList<>(keys.size());
+        for (TriggerKey key : keys) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_DELETE_OWN));
+            boundStatement.bind(key.getName(), key.getGroup(), LockType.t.name(), instanceId);
+            results.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+        for (ResultSetFuture result : results) {
+            result.getUninterruptibly();
+        }
+    }
+
     /**
      * Reset lock time on own lock.
      *
@@ -285,10 +405,17 @@ public class LocksDao implements GroupedDao{
         return wasApplied;
     }
 
+    /**
+     * Remove given lock if it's still held by the same scheduler,
+     * so a lock taken meanwhile by another one is kept.
+     *
+     * @param lock    lock row with its owner
+     */
     public void remove(Row lock) {
         
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_DELETE));
-        boundStatement.bind(lock.getString(KEY_NAME), lock.getString(KEY_GROUP), lock.getString(LOCK_TYPE));
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_DELETE_OWN));
+        boundStatement.bind(lock.getString(KEY_NAME), lock.getString(KEY_GROUP), lock.getString(LOCK_TYPE),
+                lock.getString(LOCK_INSTANCE_ID));
         CassandraConnectionManager.getInstance().execute(boundStatement); 
     }
 
@@ -300,23 +427,24 @@ public class LocksDao implements GroupedDao{
     public void unlockTrigger(OperableTrigger trigger) {
 //        LOG.info("Removing trigger lock {}.{}", trigger.getKey(), instanceId);
         
-         List<Row> allLocks = findAllLocks(new Key(trigger.getKey().getName(), trigger.getKey().getGroup()));
-        
-         allLocks.stream().filter((lock) -> (instanceId.equals(lock.getString(LOCK_INSTANCE_ID)))).forEachOrdered((lock) -> {
-             remove(lock);
-        });
+        removeOwn(trigger.getKey(), LockType.t);
         
 //        LOG.info("Trigger lock {}.{} removed.", trigger.getKey(), instanceId);
     }
 
+    /**
+     * Unlock the job if it still belongs to the current scheduler.
+     *
+     * @param job    to unlock
+     */
     public void unlockJob(JobDetail job) {
 //        LOG.debug("Removing lock for job {}", job.getKey());
-        remove(job.getKey(), LockType.j);
+        removeOwn(job.getKey(), LockType.j);
     }
 
-    private void remove(JobKey jobKey, LockType lockType) {
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_DELETE));
-        boundStatement.bind(jobKey.getName(), jobKey.getGroup(), lockType.name());
+    private void removeOwn(Key<?> key, LockType lockType) {
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(LOCKS_DELETE_OWN));
+        boundStatement.bind(key.getName(), key.getGroup(), lockType.name(), instanceId);
         CassandraConnectionManager.getInstance().execute(boundStatement); 
     }
     
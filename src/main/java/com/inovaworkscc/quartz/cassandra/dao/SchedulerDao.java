@@ -18,7 +18,7 @@ public class SchedulerDao {
 
     private static final Logger LOG = LoggerFactory.getLogger(SchedulerDao.class);
 
-    public static final String TABLE_NAME_SCHEDULERS = "paused_trigger_groups";
+    public static final String TABLE_NAME_SCHEDULERS = "schedulers";
     
     public static final String SCHEDULER_NAME_FIELD = "schedulerName";
     public static final String INSTANCE_ID_FIELD = "instanceId";
@@ -26,7 +26,8 @@ public class SchedulerDao {
     public static final String CHECKIN_INTERVAL_FIELD = "checkinInterval";
     
     public static final String SCHEDULERS_GET_ALL = CassandraConnectionManager.registerStatement ("SCHEDULERS_GET_ALL", 
-            "SELECT * FROM " + TABLE_NAME_SCHEDULERS
+            "SELECT * FROM " + TABLE_NAME_SCHEDULERS + " WHERE "
+                    + SCHEDULER_NAME_FIELD + " = ?"
     );
     
     public static final String SCHEDULERS_INSERT = CassandraConnectionManager.registerStatement("SCHEDULERS_INSERT",
@@ -55,7 +56,8 @@ public class SchedulerDao {
     public static final String SCHEDULERS_DELETE = CassandraConnectionManager.registerStatement("SCHEDULERS_DELETE",
             "DELETE FROM " + TABLE_NAME_SCHEDULERS + " WHERE "
             + SCHEDULER_NAME_FIELD + " = ? AND "
-            + INSTANCE_ID_FIELD + " = ?"
+            + INSTANCE_ID_FIELD + " = ? "
+            + "IF " + LAST_CHECKIN_TIME_FIELD + " = ?"
     );
      
     public final String schedulerName;
@@ -117,7 +119,7 @@ public class SchedulerDao {
     }
 
     /**
-     * Return all scheduler instances in ascending order by last check-in time.
+     * Return all instances of this scheduler in ascending order by last check-in time.
      *
      * @return scheduler instances ordered by last check-in time
      */
@@ -125,6 +127,7 @@ public class SchedulerDao {
         final List<Scheduler> schedulers = new LinkedList<>();
         
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(SCHEDULERS_GET_ALL));
+        boundStatement.bind(schedulerName);
         ResultSetFuture rs = CassandraConnectionManager.getInstance().executeAsync(boundStatement); 
         
         rs.getUninterruptibly().forEach(row -> {
@@ -150,26 +153,16 @@ public class SchedulerDao {
      * @return when removed successfully
      */
     public boolean remove(String instanceId, long lastCheckinTime) {
-//        LOG.info("Removing scheduler: {},{},{}",
-//                schedulerName, instanceId, lastCheckinTime);
-        
-        boolean ret = false;
-        
-        Scheduler foundInstance = findInstance(instanceId);
-        if (foundInstance != null) {
-            if(foundInstance.getCheckinInterval() == lastCheckinTime){
-                
-                BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(SCHEDULERS_DELETE));
-                boundStatement.bind(lastCheckinTime, clusterCheckinIntervalMillis, schedulerName, instanceId);
-
-                CassandraConnectionManager.getInstance().execute(boundStatement);
-            }
-        }
+        LOG.info("Removing scheduler: {},{},{}",
+                schedulerName, instanceId, lastCheckinTime);
 
-//        log.info("Result of removing scheduler ({},{},{}): {}",
-//            schedulerName, instanceId, lastCheckinTime, ret);
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(SCHEDULERS_DELETE));
+        boundStatement.bind(schedulerName, instanceId, lastCheckinTime);
+        boolean removed = CassandraConnectionManager.getInstance().execute(boundStatement).wasApplied();
 
-        return ret;
+        LOG.info("Result of removing scheduler ({},{},{}): {}",
+                schedulerName, instanceId, lastCheckinTime, removed);
+        return removed;
     }
 
     private Scheduler toScheduler(Row row) {
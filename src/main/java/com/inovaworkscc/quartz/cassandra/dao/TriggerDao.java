@@ -1,6 +1,5 @@
 package com.inovaworkscc.quartz.cassandra.dao;
 
-import com.datastax.driver.core.BatchStatement;
 import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.ResultSetFuture;
@@ -16,13 +15,17 @@ import org.quartz.impl.matchers.GroupMatcher;
 import org.quartz.spi.OperableTrigger;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.inovaworkscc.quartz.cassandra.db.CassandraConnectionManager;
+import com.inovaworkscc.quartz.cassandra.db.PartitionBatches;
 import com.inovaworkscc.quartz.cassandra.trigger.properties.CalendarIntervalTriggerPropertiesConverter;
 import com.inovaworkscc.quartz.cassandra.trigger.properties.CronTriggerPropertiesConverter;
 import com.inovaworkscc.quartz.cassandra.trigger.properties.DailyTimeIntervalTriggerPropertiesConverter;
@@ -38,6 +41,36 @@ public class TriggerDao implements GroupedDao{
 
     public static final String TABLE_NAME_TRIGGERS = "triggers";
 
+    public static final String TABLE_NAME_TRIGGERS_BY_NEXT_FIRE = "triggers_by_next_fire";
+
+    public static final String TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS = "triggers_by_next_fire_buckets";
+
+    /**
+     * Width of the time buckets of {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE}.
+     */
+    public static final long NEXT_FIRE_BUCKET_MILLIS = 60 * 1000L;
+
+    /**
+     * Number of buckets in a partition of {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS},
+     * so deleted buckets of the past don't pile up as tombstones in a single partition.
+     */
+    public static final long BUCKETS_PER_SHARD = 60;
+
+    /**
+     * Partition of {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS} listing its shards.
+     */
+    private static final int SHARDS = -1;
+
+    /**
+     * Empty buckets are removed only when they are older than this many buckets,
+     * index entries of older buckets are written in steps, see {@link #addNextFireEntries(Map)}.
+     */
+    private static final long REMOVAL_DELAY_BUCKETS = 2;
+
+    private static final String BUCKET = "bucket";
+
+    private static final String BUCKETS_SHARD = "shard";
+
     public static final String TRIGGERS_GET_ALL = CassandraConnectionManager.registerStatement ("TRIGGERS_GET_ALL", 
             "SELECT * FROM " + TABLE_NAME_TRIGGERS
     );
@@ -66,12 +99,18 @@ public class TriggerDao implements GroupedDao{
                     + KEY_GROUP + " = ?"
     );
     
+    public static final String TRIGGERS_GET_IN_NAME = CassandraConnectionManager.registerStatement("TRIGGERS_GET_IN_NAME",
+            "SELECT * FROM " + TABLE_NAME_TRIGGERS + " WHERE "
+                    + KEY_NAME + " IN ? AND "
+                    + KEY_GROUP + " = ?"
+    );
+    
     public static final String TRIGGERS_GET_BY_JOB_ID = CassandraConnectionManager.registerStatement("TRIGGERS_GET_BY_JOB_ID",
             "SELECT * FROM " + TABLE_NAME_TRIGGERS + " WHERE "
                     + Constants.TRIGGER_JOB_ID + " = ?"
     );
     public static final String TRIGGERS_GET_KEY_BY_JOB_ID = CassandraConnectionManager.registerStatement("TRIGGERS_GET_KEY_BY_JOB_ID",
-            "SELECT " + KEY_NAME + "," + KEY_GROUP + " FROM " + TABLE_NAME_TRIGGERS + " WHERE "
+            "SELECT " + KEY_NAME + "," + KEY_GROUP + "," + Constants.TRIGGER_NEXT_FIRE_TIME + " FROM " + TABLE_NAME_TRIGGERS + " WHERE "
                     + Constants.TRIGGER_JOB_ID + " = ?"
     );
     
@@ -97,6 +136,7 @@ public class TriggerDao implements GroupedDao{
                     + Constants.TRIGGER_JOB_ID  + "," 
                     + Constants.JOB_DATA  + "," 
                     + Constants.JOB_DATA_PLAIN  + "," 
+                    + Constants.JOB_DATA_BINARY  + "," 
                     + TriggerConverter.TRIGGER_PRIORITY  + "," 
                     + TriggerConverter.TRIGGER_START_TIME  + "," 
                     + TriggerConverter.TRIGGER_END_TIME  + "," 
@@ -139,6 +179,7 @@ public class TriggerDao implements GroupedDao{
             + "?, "
             + "?, "
             + "?, "
+            + "?, "
             + "?)"
     );
     
@@ -151,6 +192,7 @@ public class TriggerDao implements GroupedDao{
                 + Constants.TRIGGER_JOB_ID + " = ? ,"
                 + Constants.JOB_DATA + " = ? ,"
                 + Constants.JOB_DATA_PLAIN + " = ? ,"
+                + Constants.JOB_DATA_BINARY + " = ? ,"
                 + TriggerConverter.TRIGGER_PRIORITY + " = ? ,"
                 + TriggerConverter.TRIGGER_START_TIME + " = ? ,"
                 + TriggerConverter.TRIGGER_END_TIME + " = ? ,"
@@ -172,6 +214,26 @@ public class TriggerDao implements GroupedDao{
                 + KEY_GROUP + " = ?"
     );
     
+    public static final String TRIGGERS_UPDATE_FIRE_TIMES = CassandraConnectionManager.registerStatement("TRIGGERS_UPDATE_FIRE_TIMES",
+            "UPDATE " + TABLE_NAME_TRIGGERS + " SET " 
+                + Constants.TRIGGER_STATE + " = ? ,"
+                + TriggerConverter.TRIGGER_START_TIME + " = ? ,"
+                + TriggerConverter.TRIGGER_FIRE_INSTANCE_ID + " = ? ,"
+                + TriggerConverter.TRIGGER_PREVIOUS_FIRE_TIME + " = ? ,"
+                + Constants.TRIGGER_NEXT_FIRE_TIME + " = ? ,"
+                + TriggerConverter.TRIGGER_FINAL_FIRE_TIME + " = ? ,"
+                + CalendarIntervalTriggerPropertiesConverter.TRIGGER_TIMES_TRIGGERED + " = ? ,"
+                + SimpleTriggerPropertiesConverter.TRIGGER_REPEAT_COUNT + " = ? "
+                + "WHERE "
+                + KEY_NAME + " = ? AND "
+                + KEY_GROUP + " = ?"
+    );
+    
+    private static final List<String> TYPE_SPECIFIC_FIRE_TIME_COLUMNS = Arrays.asList(
+            CalendarIntervalTriggerPropertiesConverter.TRIGGER_TIMES_TRIGGERED,
+            SimpleTriggerPropertiesConverter.TRIGGER_REPEAT_COUNT
+    );
+    
     public static final String TRIGGERS_UPDATE_STATE = CassandraConnectionManager.registerStatement("TRIGGERS_UPDATE_STATE",
             "UPDATE " + TABLE_NAME_TRIGGERS + " SET " 
                 + Constants.TRIGGER_STATE + " = ? "
@@ -208,18 +270,102 @@ public class TriggerDao implements GroupedDao{
                     + KEY_GROUP + " IN ?"
     );
     
+    public static final String TRIGGERS_GET_NEXT_FIRE_TIME = CassandraConnectionManager.registerStatement("TRIGGERS_GET_NEXT_FIRE_TIME",
+            "SELECT " + Constants.TRIGGER_NEXT_FIRE_TIME + " FROM " + TABLE_NAME_TRIGGERS + " WHERE "
+                    + KEY_NAME + " = ? AND "
+                    + KEY_GROUP + " = ?"
+    );
+    
+    public static final String TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME = CassandraConnectionManager.registerStatement("TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME",
+            "SELECT " + KEY_NAME + "," + KEY_GROUP + "," + Constants.TRIGGER_STATE + "," + Constants.TRIGGER_NEXT_FIRE_TIME + " FROM " + TABLE_NAME_TRIGGERS
+    );
+    
+    public static final String TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME_IN_GROUP = CassandraConnectionManager.registerStatement("TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME_IN_GROUP",
+            "SELECT " + KEY_NAME + "," + KEY_GROUP + "," + Constants.TRIGGER_NEXT_FIRE_TIME + " FROM " + TABLE_NAME_TRIGGERS + " WHERE "
+                    + KEY_GROUP + " = ?"
+    );
+    
+    public static final String TRIGGERS_BY_NEXT_FIRE_INSERT = CassandraConnectionManager.registerStatement("TRIGGERS_BY_NEXT_FIRE_INSERT",
+            "INSERT INTO " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE + " ("
+                    + BUCKET + ","
+                    + Constants.TRIGGER_NEXT_FIRE_TIME + ","
+                    + KEY_GROUP + ","
+                    + KEY_NAME
+                    + ") VALUES (?, ?, ?, ?)"
+    );
+    
+    public static final String TRIGGERS_BY_NEXT_FIRE_DELETE = CassandraConnectionManager.registerStatement("TRIGGERS_BY_NEXT_FIRE_DELETE",
+            "DELETE FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE + " WHERE "
+                    + BUCKET + " = ? AND "
+                    + Constants.TRIGGER_NEXT_FIRE_TIME + " = ? AND "
+                    + KEY_GROUP + " = ? AND "
+                    + KEY_NAME + " = ?"
+    );
+    
+    public static final String TRIGGERS_BY_NEXT_FIRE_GET_DUE = CassandraConnectionManager.registerStatement("TRIGGERS_BY_NEXT_FIRE_GET_DUE",
+            "SELECT * FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE + " WHERE "
+                    + BUCKET + " = ? AND "
+                    + Constants.TRIGGER_NEXT_FIRE_TIME + " <= ?"
+    );
+    
+    public static final String TRIGGERS_BY_NEXT_FIRE_GET_FIRST = CassandraConnectionManager.registerStatement("TRIGGERS_BY_NEXT_FIRE_GET_FIRST",
+            "SELECT " + Constants.TRIGGER_NEXT_FIRE_TIME + " FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE + " WHERE "
+                    + BUCKET + " = ? LIMIT 1"
+    );
+    
+    public static final String TRIGGERS_BY_NEXT_FIRE_DELETE_ALL = CassandraConnectionManager.registerStatement("TRIGGERS_BY_NEXT_FIRE_DELETE_ALL",
+            "TRUNCATE " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE
+    );
+    
+    public static final String BUCKETS_INSERT = CassandraConnectionManager.registerStatement("BUCKETS_INSERT",
+            "INSERT INTO " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS + " ("
+                    + BUCKETS_SHARD + ","
+                    + BUCKET
+                    + ") VALUES (?, ?)"
+    );
+    
+    public static final String BUCKETS_GET_UP_TO = CassandraConnectionManager.registerStatement("BUCKETS_GET_UP_TO",
+            "SELECT " + BUCKET + " FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS + " WHERE "
+                    + BUCKETS_SHARD + " = ? AND "
+                    + BUCKET + " <= ?"
+    );
+    
+    public static final String BUCKETS_GET_FIRST = CassandraConnectionManager.registerStatement("BUCKETS_GET_FIRST",
+            "SELECT " + BUCKET + " FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS + " WHERE "
+                    + BUCKETS_SHARD + " = ? LIMIT 1"
+    );
+    
+    public static final String BUCKETS_DELETE = CassandraConnectionManager.registerStatement("BUCKETS_DELETE",
+            "DELETE FROM " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS + " WHERE "
+                    + BUCKETS_SHARD + " = ? AND "
+                    + BUCKET + " = ?"
+    );
+    
+    public static final String BUCKETS_DELETE_ALL = CassandraConnectionManager.registerStatement("BUCKETS_DELETE_ALL",
+            "TRUNCATE " + TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS
+    );
+    
     private QueryHelper queryHelper;
     private TriggerConverter triggerConverter;
+    private CountersDao countersDao;
 
     public TriggerDao(QueryHelper queryHelper,
-                      TriggerConverter triggerConverter) {
+                      TriggerConverter triggerConverter,
+                      CountersDao countersDao) {
         this.queryHelper = queryHelper;
         this.triggerConverter = triggerConverter;
+        this.countersDao = countersDao;
     }
 
     public void clear() {
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_DELETE_ALL));
         CassandraConnectionManager.getInstance().execute(boundStatement);   
+        
+        boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_BY_NEXT_FIRE_DELETE_ALL));
+        CassandraConnectionManager.getInstance().execute(boundStatement);   
+        
+        boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(BUCKETS_DELETE_ALL));
+        CassandraConnectionManager.getInstance().execute(boundStatement);   
     }
 
     public boolean exists(TriggerKey key) throws JobPersistenceException {
@@ -229,27 +375,100 @@ public class TriggerDao implements GroupedDao{
         return existingTrigger != null;      
     }
 
-    public List<Row> findEligibleToRun(Date noLaterThanDate) {
+    /**
+     * Finds waiting triggers due no later than given date, ordered by their next fire time.
+     * Only the buckets of {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE} up to the one of given
+     * date are read, page by page, until enough triggers are found.
+     *
+     * <p>Entries of triggers which were removed or rescheduled are left behind by writes
+     * and removed here, when they are due.</p>
+     *
+     * @param noLaterThanDate upper bound of next fire time
+     * @param maxCount        max number of triggers to find
+     * @return trigger rows
+     */
+    public List<Row> findEligibleToRun(Date noLaterThanDate, int maxCount) {
         
         List<Row> ret = new ArrayList<>();
         
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_ALL));
-        ResultSetFuture rs = CassandraConnectionManager.getInstance().executeAsync(boundStatement); 
+        long lastBucket = toBucket(noLaterThanDate);
+        long lastRemovableBucket = toBucket(new Date()) - REMOVAL_DELAY_BUCKETS;
+        
+        for (Long bucket : findBucketsUpTo(lastBucket, lastRemovableBucket)) {
+            
+            if (ret.size() >= maxCount) {
+                break;
+            }
+            
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_BY_NEXT_FIRE_GET_DUE));
+            boundStatement.bind(bucket, noLaterThanDate);
+            boundStatement.setFetchSize(maxCount);
+            ResultSet entries = CassandraConnectionManager.getInstance().execute(boundStatement);
+            
+            if (entries.isExhausted()) {
+                if (bucket <= lastRemovableBucket) {
+                    // past buckets never get due entries again, unless a trigger is stored with a past fire time
+                    removeBucket(bucket);
+                }
+                continue;
+            }
+            
+            while (ret.size() < maxCount && !entries.isExhausted()) {
+                List<Row> page = new ArrayList<>();
+                do {
+                    page.add(entries.one());
+                } while (entries.getAvailableWithoutFetching() > 0);
+                addWaiting(page, ret, maxCount);
+            }
+        }
 
-        rs.getUninterruptibly().forEach(row -> {
-            Date triggerNextFireTime = row.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME);
-            String triggerState = row.getString(Constants.TRIGGER_STATE);
+        return ret;
+    }
+
+    private void addWaiting(List<Row> entries, List<Row> ret, int maxCount) {
+        
+        List<ResultSetFuture> futures = new ArrayList<>(entries.size());
+        for (Row entry : entries) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_BY_KEY));
+            boundStatement.bind(entry.getString(KEY_NAME), entry.getString(KEY_GROUP));
+            futures.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+        
+        for (int i = 0; i < entries.size(); i++) {
+            Row entry = entries.get(i);
+            Row row = futures.get(i).getUninterruptibly().one();
+            Date indexedNextFireTime = entry.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME);
             
-            if ((triggerNextFireTime == null || triggerNextFireTime.before(noLaterThanDate) || triggerNextFireTime.equals(noLaterThanDate)) 
-                    && Constants.STATE_WAITING.equals(triggerState)){
-                
+            if (row == null || !indexedNextFireTime.equals(row.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME))) {
+                // entry of a removed or rescheduled trigger
+                removeNextFireEntry(Keys.toTriggerKey(entry), indexedNextFireTime);
+            } else if (Constants.STATE_WAITING.equals(row.getString(Constants.TRIGGER_STATE)) && ret.size() < maxCount) {
                 ret.add(row);
             }
-        });
-        
-        ret.sort((Row o1, Row o2) -> o1.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME).compareTo(o2.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME)));
+        }
+    }
 
-        return ret;
+    /**
+     * Rebuilds {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE} from the triggers table,
+     * for triggers stored before the table existed.
+     */
+    public void reindexNextFireTimes() {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME));
+        ResultSet rs = CassandraConnectionManager.getInstance().execute(boundStatement);
+        
+        Map<TriggerKey, Date> nextFireTimes = new HashMap<>();
+        for (Row row : rs) {
+            Date nextFireTime = row.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME);
+            if (nextFireTime != null && Constants.STATE_WAITING.equals(row.getString(Constants.TRIGGER_STATE))) {
+                nextFireTimes.put(Keys.toTriggerKey(row), nextFireTime);
+            }
+            if (nextFireTimes.size() >= PartitionBatches.DEFAULT_MAX_STATEMENTS * 20) {
+                addNextFireEntries(nextFireTimes);
+                nextFireTimes.clear();
+            }
+        }
+        addNextFireEntries(nextFireTimes);
     }
 
     public Row findTrigger(TriggerKey triggerKey) {
@@ -270,6 +489,10 @@ public class TriggerDao implements GroupedDao{
         return r.getLong("count");
     }
 
+    public long getEstimatedCount() {
+        return countersDao.get(CountersDao.TRIGGERS);
+    }
+
     public List<String> getGroupNames() {
 
         List<String> ret = new ArrayList<>();
@@ -319,14 +542,38 @@ public class TriggerDao implements GroupedDao{
         return triggerConverter.toTrigger(triggerKey, row);
     }
 
+    /**
+     * Load given triggers with a single query per group, sent at once.
+     *
+     * @param triggerKeys    triggers to look up
+     * @return triggers found whose jobs still exist, in no particular order
+     */
+    public List<OperableTrigger> getTriggers(Collection<TriggerKey> triggerKeys) throws JobPersistenceException {
+        
+        Map<String, List<String>> namesByGroup = new HashMap<>();
+        for (TriggerKey key : triggerKeys) {
+            namesByGroup.computeIfAbsent(key.getGroup(), group -> new ArrayList<>()).add(key.getName());
+        }
+        
+        List<ResultSetFuture> futures = new ArrayList<>(namesByGroup.size());
+        for (Map.Entry<String, List<String>> group : namesByGroup.entrySet()) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_IN_NAME));
+            boundStatement.bind(group.getValue(), group.getKey());
+            futures.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+        
+        List<Row> rows = new ArrayList<>(triggerKeys.size());
+        for (ResultSetFuture future : futures) {
+            rows.addAll(future.getUninterruptibly().all());
+        }
+        return triggerConverter.toTriggers(rows);
+    }
+
     public List<OperableTrigger> getTriggersForJob(Row job) throws JobPersistenceException {
-        final List<OperableTrigger> triggers = new LinkedList<OperableTrigger>();
-        if (job != null) {
-            for (Row item : findByJobId(job.getString(JobConverter.JOB_ID))) {
-                triggers.add(triggerConverter.toTrigger(item));
-            }
+        if (job == null) {
+            return new LinkedList<OperableTrigger>();
         }
-        return triggers;
+        return triggerConverter.toTriggers(findByJobId(job.getString(JobConverter.JOB_ID)));
     }
 
     public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
@@ -355,40 +602,12 @@ public class TriggerDao implements GroupedDao{
     public void insert( HashMap<String, Object> trigger, Trigger offendingTrigger)
             throws ObjectAlreadyExistsException, JobPersistenceException {
 
-        OperableTrigger existingTrigger = this.getTrigger(offendingTrigger.getKey());
-        if (existingTrigger == null) {
+        if (findNextFireTime(offendingTrigger.getKey()) == null) {
           
-            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_INSERT));
-            boundStatement.bind(
-                    trigger.get(KEY_NAME),
-                    trigger.get(KEY_GROUP),
-                    trigger.get(KEY_GROUP + "_index"),
-                    trigger.get(Constants.TRIGGER_STATE),
-                    trigger.get(TriggerConverter.TRIGGER_CLASS),
-                    trigger.get(TriggerConverter.TRIGGER_CALENDAR_NAME),
-                    trigger.get(TriggerConverter.TRIGGER_DESCRIPTION),
-                    trigger.get(Constants.TRIGGER_JOB_ID),
-                    trigger.get(Constants.JOB_DATA),
-                    trigger.get(Constants.JOB_DATA_PLAIN),
-                    trigger.get(TriggerConverter.TRIGGER_PRIORITY),
-                    trigger.get(TriggerConverter.TRIGGER_START_TIME),
-                    trigger.get(TriggerConverter.TRIGGER_END_TIME),
-                    trigger.get(CronTriggerPropertiesConverter.TRIGGER_CRON_EXPRESSION),
-                    trigger.get(TriggerConverter.TRIGGER_FIRE_INSTANCE_ID),
-                    trigger.get(TriggerConverter.TRIGGER_PREVIOUS_FIRE_TIME),
-                    trigger.get( Constants.TRIGGER_NEXT_FIRE_TIME),
-                    trigger.get(TriggerConverter.TRIGGER_FINAL_FIRE_TIME),
-                    trigger.get(TriggerConverter.TRIGGER_MISFIRE_INSTRUCTION),
-                    trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_REPEAT_INTERVAL_UNIT),
-                    trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_REPEAT_INTERVAL),
-                    trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_TIMES_TRIGGERED),
-                    trigger.get(CronTriggerPropertiesConverter.TRIGGER_TIMEZONE),
-                    trigger.get(DailyTimeIntervalTriggerPropertiesConverter.TRIGGER_START_TIME_OF_DAY),
-                    trigger.get(DailyTimeIntervalTriggerPropertiesConverter.TRIGGER_END_TIME_OF_DAY),
-                    trigger.get(SimpleTriggerPropertiesConverter.TRIGGER_REPEAT_COUNT)
-            );
-            
-            CassandraConnectionManager.getInstance().execute(boundStatement); 
+            CassandraConnectionManager.getInstance().execute(bindInsert(trigger)); 
+            addNextFireEntries(Collections.singletonMap(offendingTrigger.getKey(),
+                    (Date) trigger.get(Constants.TRIGGER_NEXT_FIRE_TIME)));
+            countersDao.increment(CountersDao.TRIGGERS);
             
         }else{
             throw new ObjectAlreadyExistsException(offendingTrigger);
@@ -396,26 +615,114 @@ public class TriggerDao implements GroupedDao{
     }
 
 
-    public void remove(TriggerKey triggerKey) {
-        
-        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_DELETE_BY_KEY));
-        boundStatement.bind(
-            triggerKey.getName(),
-            triggerKey.getGroup());
-        
-        CassandraConnectionManager.getInstance().execute(boundStatement); 
+    /**
+     * Check that none of given triggers exists yet, with concurrent queries.
+     *
+     * @param newTriggers    triggers to store
+     * @throws ObjectAlreadyExistsException if a trigger already exists
+     */
+    public void checkNotExisting(List<OperableTrigger> newTriggers) throws ObjectAlreadyExistsException {
+
+        List<Row> existingRows = findNextFireTimes(newTriggers);
+        for (int i = 0; i < existingRows.size(); i++) {
+            if (existingRows.get(i) != null) {
+                throw new ObjectAlreadyExistsException(newTriggers.get(i));
+            }
+        }
     }
 
-    public void removeByJobId(Object id) {
-        
-        List<Row> triggersToDelete = findKeyByJobId(id.toString());
-        for (Row row : triggersToDelete) {
-            remove(new TriggerKey(row.getString(KEY_NAME), row.getString(KEY_GROUP)));
+    /**
+     * Store given triggers, written with unlogged batches per partition,
+     * all sent at once, and indexed afterwards. Triggers which aren't replaced
+     * must be checked with {@link #checkNotExisting(List)} before. Existing
+     * triggers are looked up only to count them.
+     *
+     * @param triggers           converted triggers
+     * @param newTriggers        triggers, in the order of converted ones
+     * @param replaceExisting    whether to replace triggers which already exist
+     */
+    public void storeAll(List<HashMap<String, Object>> triggers, List<OperableTrigger> newTriggers,
+                         boolean replaceExisting) {
+
+        List<Row> existingRows = countersDao.isEnabled() ? findNextFireTimes(newTriggers) : null;
+
+        PartitionBatches batches = new PartitionBatches();
+        Map<TriggerKey, Date> nextFireTimes = new HashMap<>();
+        int inserted = 0;
+        for (int i = 0; i < triggers.size(); i++) {
+            HashMap<String, Object> trigger = triggers.get(i);
+            TriggerKey triggerKey = newTriggers.get(i).getKey();
+
+            if (replaceExisting) {
+                batches.add(triggerKey.getGroup(), bindUpsert(triggerKey, trigger));
+            } else {
+                batches.add(triggerKey.getGroup(), bindInsert(trigger));
+            }
+            if (existingRows != null && existingRows.get(i) == null) {
+                inserted++;
+            }
+            nextFireTimes.put(triggerKey, (Date) trigger.get(Constants.TRIGGER_NEXT_FIRE_TIME));
+        }
+
+        batches.execute();
+        addNextFireEntries(nextFireTimes);
+        if (inserted > 0) {
+            countersDao.add(CountersDao.TRIGGERS, inserted);
         }
     }
 
-    public void replace(TriggerKey triggerKey, HashMap<String, Object> trigger) {
-        
+    private List<Row> findNextFireTimes(List<OperableTrigger> triggers) {
+
+        List<ResultSetFuture> futures = new ArrayList<>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_NEXT_FIRE_TIME));
+            boundStatement.bind(trigger.getKey().getName(), trigger.getKey().getGroup());
+            futures.add(CassandraConnectionManager.getInstance().executeAsync(boundStatement));
+        }
+        List<Row> rows = new ArrayList<>(futures.size());
+        for (ResultSetFuture future : futures) {
+            rows.add(future.getUninterruptibly().one());
+        }
+        return rows;
+    }
+
+    private BoundStatement bindInsert(HashMap<String, Object> trigger) {
+
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_INSERT));
+        boundStatement.bind(
+                trigger.get(KEY_NAME),
+                trigger.get(KEY_GROUP),
+                trigger.get(KEY_GROUP + "_index"),
+                trigger.get(Constants.TRIGGER_STATE),
+                trigger.get(TriggerConverter.TRIGGER_CLASS),
+                trigger.get(TriggerConverter.TRIGGER_CALENDAR_NAME),
+                trigger.get(TriggerConverter.TRIGGER_DESCRIPTION),
+                trigger.get(Constants.TRIGGER_JOB_ID),
+                trigger.get(Constants.JOB_DATA),
+                trigger.get(Constants.JOB_DATA_PLAIN),
+                trigger.get(Constants.JOB_DATA_BINARY),
+                trigger.get(TriggerConverter.TRIGGER_PRIORITY),
+                trigger.get(TriggerConverter.TRIGGER_START_TIME),
+                trigger.get(TriggerConverter.TRIGGER_END_TIME),
+                trigger.get(CronTriggerPropertiesConverter.TRIGGER_CRON_EXPRESSION),
+                trigger.get(TriggerConverter.TRIGGER_FIRE_INSTANCE_ID),
+                trigger.get(TriggerConverter.TRIGGER_PREVIOUS_FIRE_TIME),
+                trigger.get( Constants.TRIGGER_NEXT_FIRE_TIME),
+                trigger.get(TriggerConverter.TRIGGER_FINAL_FIRE_TIME),
+                trigger.get(TriggerConverter.TRIGGER_MISFIRE_INSTRUCTION),
+                trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_REPEAT_INTERVAL_UNIT),
+                trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_REPEAT_INTERVAL),
+                trigger.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_TIMES_TRIGGERED),
+                trigger.get(CronTriggerPropertiesConverter.TRIGGER_TIMEZONE),
+                trigger.get(DailyTimeIntervalTriggerPropertiesConverter.TRIGGER_START_TIME_OF_DAY),
+                trigger.get(DailyTimeIntervalTriggerPropertiesConverter.TRIGGER_END_TIME_OF_DAY),
+                trigger.get(SimpleTriggerPropertiesConverter.TRIGGER_REPEAT_COUNT)
+        );
+        return boundStatement;
+    }
+
+    private BoundStatement bindUpsert(TriggerKey triggerKey, HashMap<String, Object> trigger) {
+
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPSERT));
         boundStatement.bind(
                 trigger.get(Constants.TRIGGER_STATE),
@@ -425,6 +732,7 @@ public class TriggerDao implements GroupedDao{
                 trigger.get(Constants.TRIGGER_JOB_ID),
                 trigger.get(Constants.JOB_DATA),
                 trigger.get(Constants.JOB_DATA_PLAIN),
+                trigger.get(Constants.JOB_DATA_BINARY),
                 trigger.get(TriggerConverter.TRIGGER_PRIORITY),
                 trigger.get(TriggerConverter.TRIGGER_START_TIME),
                 trigger.get(TriggerConverter.TRIGGER_END_TIME),
@@ -444,27 +752,115 @@ public class TriggerDao implements GroupedDao{
                 triggerKey.getName(),
                 triggerKey.getGroup()
         );
+        return boundStatement;
+    }
 
+    /**
+     * Remove trigger. Its entry in {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE}
+     * is removed once it's due, see {@link #findEligibleToRun(Date, int)}.
+     */
+    public void remove(TriggerKey triggerKey) {
+        
+        // the lookup is needed only to count triggers
+        boolean existed = countersDao.isEnabled() && findNextFireTime(triggerKey) != null;
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_DELETE_BY_KEY));
+        boundStatement.bind(
+            triggerKey.getName(),
+            triggerKey.getGroup());
         CassandraConnectionManager.getInstance().execute(boundStatement); 
+        
+        if (existed) {
+            countersDao.decrement(CountersDao.TRIGGERS);
+        }
     }
 
-    public void setState(TriggerKey triggerKey, String state, boolean upsert) {
+    /**
+     * Remove triggers of given job along with their entries in {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE},
+     * which are known from the lookup of the triggers anyway.
+     */
+    public void removeByJobId(Object id) {
         
-        BoundStatement boundStatement;
+        List<Row> triggersToDelete = findKeyByJobId(id.toString());
         
-        if (upsert) {
-            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPSERT_STATE));
-        }else {
-            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPDATE_STATE));
+        PartitionBatches batches = new PartitionBatches();
+        for (Row row : triggersToDelete) {
+            TriggerKey triggerKey = Keys.toTriggerKey(row);
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_DELETE_BY_KEY));
+            boundStatement.bind(triggerKey.getName(), triggerKey.getGroup());
+            batches.add(triggerKey.getGroup(), boundStatement);
+            
+            Date nextFireTime = row.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME);
+            if (nextFireTime != null) {
+                batches.add(Arrays.asList(TABLE_NAME_TRIGGERS_BY_NEXT_FIRE, toBucket(nextFireTime)),
+                        bindRemoveNextFireEntry(triggerKey, nextFireTime));
+            }
         }
+        batches.execute();
         
+        if (!triggersToDelete.isEmpty()) {
+            countersDao.add(CountersDao.TRIGGERS, -triggersToDelete.size());
+        }
+    }
+
+    /**
+     * Replace or insert trigger. The entry of its previous next fire time
+     * is removed once it's due, see {@link #findEligibleToRun(Date, int)}.
+     */
+    public void replace(TriggerKey triggerKey, HashMap<String, Object> trigger) {
+        
+        CassandraConnectionManager.getInstance().execute(bindUpsert(triggerKey, trigger)); 
+        addNextFireEntries(Collections.singletonMap(triggerKey, (Date) trigger.get(Constants.TRIGGER_NEXT_FIRE_TIME)));
+    }
+
+    /**
+     * Update only the columns which change when trigger fires or misfires.
+     * The entry of its previous next fire time is removed once it's due,
+     * see {@link #findEligibleToRun(Date, int)}.
+     * 
+     * @param triggerKey    key of trigger to update
+     * @param fields        fire time fields of the trigger
+     */
+    public void updateFireTimes(TriggerKey triggerKey, HashMap<String, Object> fields) {
+        
+        Date nextFireTime = (Date) fields.get(Constants.TRIGGER_NEXT_FIRE_TIME);
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPDATE_FIRE_TIMES));
         boundStatement.bind(
-            state,
-            triggerKey.getName(),
-            triggerKey.getGroup()
+                fields.get(Constants.TRIGGER_STATE),
+                fields.get(TriggerConverter.TRIGGER_START_TIME),
+                fields.get(TriggerConverter.TRIGGER_FIRE_INSTANCE_ID),
+                fields.get(TriggerConverter.TRIGGER_PREVIOUS_FIRE_TIME),
+                nextFireTime,
+                fields.get(TriggerConverter.TRIGGER_FINAL_FIRE_TIME),
+                fields.get(CalendarIntervalTriggerPropertiesConverter.TRIGGER_TIMES_TRIGGERED),
+                fields.get(SimpleTriggerPropertiesConverter.TRIGGER_REPEAT_COUNT),
+                triggerKey.getName(),
+                triggerKey.getGroup()
         );
-
+        // columns of other trigger types are left unset, binding null would write tombstones
+        for (String column : TYPE_SPECIFIC_FIRE_TIME_COLUMNS) {
+            if (fields.get(column) == null) {
+                boundStatement.unset(column);
+            }
+        }
         CassandraConnectionManager.getInstance().execute(boundStatement); 
+        
+        addNextFireEntries(Collections.singletonMap(triggerKey, nextFireTime));
+    }
+
+    /**
+     * Set state of trigger. Only waiting triggers are kept in {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE},
+     * so its entry is removed or added along.
+     */
+    public void setState(TriggerKey triggerKey, String state, boolean upsert) {
+        
+        updateState(triggerKey, state, upsert);
+        
+        Row row = findNextFireTime(triggerKey);
+        if (row != null) {
+            updateNextFireEntries(Collections.singletonList(row), triggerKey.getGroup(), state);
+        }
     }
 
     public void transferState(TriggerKey triggerKey, String oldState, String newState) {
@@ -487,8 +883,9 @@ public class TriggerDao implements GroupedDao{
         List<Row> foundJob = findByJobId(jobId);
         
         foundJob.forEach((row) -> {
-            setState(new TriggerKey(row.getString(KEY_NAME), row.getString(KEY_GROUP)), state, false);
+            updateState(Keys.toTriggerKey(row), state, false);
         });
+        updateNextFireEntries(foundJob, null, state);
     }
 
     public void setStateInGroups(List<String> groups, String state) {
@@ -499,6 +896,58 @@ public class TriggerDao implements GroupedDao{
         setStates(matcher, state);
     }
 
+    private void updateState(TriggerKey triggerKey, String state, boolean upsert) {
+        
+        BoundStatement boundStatement;
+        
+        if (upsert) {
+            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPSERT_STATE));
+        }else {
+            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPDATE_STATE));
+        }
+        
+        boundStatement.bind(
+            state,
+            triggerKey.getName(),
+            triggerKey.getGroup()
+        );
+
+        CassandraConnectionManager.getInstance().execute(boundStatement); 
+    }
+
+    /**
+     * Add entries of triggers which became waiting, remove entries of others.
+     *
+     * @param rows     trigger rows with keys and next fire times
+     * @param group    group of the triggers, or null when rows have group column
+     * @param state    new state of the triggers
+     */
+    private void updateNextFireEntries(List<Row> rows, String group, String state) {
+        
+        Map<TriggerKey, Date> nextFireTimes = new HashMap<>();
+        for (Row row : rows) {
+            Date nextFireTime = row.getTimestamp(Constants.TRIGGER_NEXT_FIRE_TIME);
+            if (nextFireTime != null) {
+                TriggerKey triggerKey = group == null
+                        ? Keys.toTriggerKey(row)
+                        : new TriggerKey(row.getString(KEY_NAME), group);
+                nextFireTimes.put(triggerKey, nextFireTime);
+            }
+        }
+        
+        if (Constants.STATE_WAITING.equals(state)) {
+            addNextFireEntries(nextFireTimes);
+            return;
+        }
+        
+        PartitionBatches batches = new PartitionBatches();
+        for (Map.Entry<TriggerKey, Date> entry : nextFireTimes.entrySet()) {
+            batches.add(Arrays.asList(TABLE_NAME_TRIGGERS_BY_NEXT_FIRE, toBucket(entry.getValue())),
+                    bindRemoveNextFireEntry(entry.getKey(), entry.getValue()));
+        }
+        batches.execute();
+    }
+
     private List<Row> findByJobId(String jobId) {
         
         BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_BY_JOB_ID));
@@ -527,28 +976,183 @@ public class TriggerDao implements GroupedDao{
     }
 
    
+    private Row findNextFireTime(TriggerKey triggerKey) {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_NEXT_FIRE_TIME));
+        boundStatement.bind(triggerKey.getName(), triggerKey.getGroup());
+        return CassandraConnectionManager.getInstance().execute(boundStatement).one();
+    }
+    
+    /**
+     * Find buckets up to given one, in shards listed in the {@link #SHARDS} partition.
+     * Empty shards which are old enough are removed.
+     */
+    private List<Long> findBucketsUpTo(long lastBucket, long lastRemovableBucket) {
+        
+        List<Long> buckets = new ArrayList<>();
+        
+        for (Long shard : findBucketRows(SHARDS, toShard(lastBucket))) {
+            List<Long> shardBuckets = findBucketRows(shard.intValue(), lastBucket);
+            if (shardBuckets.isEmpty() && shard < toShard(lastRemovableBucket)) {
+                removeBucketRow(SHARDS, shard, shard.intValue());
+            }
+            buckets.addAll(shardBuckets);
+        }
+        return buckets;
+    }
+    
+    private List<Long> findBucketRows(int shard, long last) {
+        
+        List<Long> buckets = new ArrayList<>();
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(BUCKETS_GET_UP_TO));
+        boundStatement.bind(shard, last);
+        ResultSet rs = CassandraConnectionManager.getInstance().execute(boundStatement);
+        
+        for (Row row : rs) {
+            buckets.add(row.getLong(BUCKET));
+        }
+        return buckets;
+    }
+    
+    private void removeBucket(long bucket) {
+        
+        // an entry may have been added concurrently, keep its bucket visible
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_BY_NEXT_FIRE_GET_FIRST));
+        boundStatement.bind(bucket);
+        removeBucketRow(toShard(bucket), bucket, boundStatement);
+    }
+    
+    private void removeBucketRow(int shard, long bucket, int childShard) {
+        
+        // a bucket may have been added concurrently, keep its shard visible
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(BUCKETS_GET_FIRST));
+        boundStatement.bind(childShard);
+        removeBucketRow(shard, bucket, boundStatement);
+    }
+    
+    /**
+     * Remove row of an empty bucket or shard, then restore it if the bucket
+     * or shard got a row meanwhile. Writers add rows to a bucket before the bucket
+     * itself, see {@link #addNextFireEntries(Map)}.
+     */
+    private void removeBucketRow(int shard, long bucket, BoundStatement findFirstChild) {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(BUCKETS_DELETE));
+        boundStatement.bind(shard, bucket);
+        CassandraConnectionManager.getInstance().execute(boundStatement);
+        
+        if (CassandraConnectionManager.getInstance().execute(findFirstChild).one() != null) {
+            CassandraConnectionManager.getInstance().execute(bindBucket(shard, bucket));
+        }
+    }
+    
+    /**
+     * Index waiting triggers in {@link #TABLE_NAME_TRIGGERS_BY_NEXT_FIRE}, after their rows were written,
+     * so an entry never points to a trigger which isn't written yet.
+     *
+     * <p>Rows of buckets and shards are written along. Removal of an empty bucket or shard relies on
+     * an entry being written before its bucket, and a bucket before its shard. Only old buckets
+     * and shards are removed, so entries of past buckets are written in these steps, others at once.</p>
+     *
+     * @param nextFireTimes    next fire times by trigger, null ones are skipped
+     */
+    private void addNextFireEntries(Map<TriggerKey, Date> nextFireTimes) {
+        
+        long currentBucket = toBucket(new Date());
+        boolean past = false;
+        Set<Long> buckets = new HashSet<>();
+        PartitionBatches batches = new PartitionBatches();
+        
+        for (Map.Entry<TriggerKey, Date> entry : nextFireTimes.entrySet()) {
+            Date nextFireTime = entry.getValue();
+            if (nextFireTime == null) {
+                continue;
+            }
+            long bucket = toBucket(nextFireTime);
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_BY_NEXT_FIRE_INSERT));
+            boundStatement.bind(bucket, nextFireTime, entry.getKey().getGroup(), entry.getKey().getName());
+            batches.add(Arrays.asList(TABLE_NAME_TRIGGERS_BY_NEXT_FIRE, bucket), boundStatement);
+            buckets.add(bucket);
+            past |= bucket < currentBucket;
+        }
+        
+        if (past) {
+            batches.execute();
+        }
+        Set<Integer> shards = new HashSet<>();
+        for (Long bucket : buckets) {
+            batches.add(Arrays.asList(TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS, toShard(bucket)), bindBucket(toShard(bucket), bucket));
+            shards.add(toShard(bucket));
+        }
+        
+        if (past) {
+            batches.execute();
+        }
+        for (Integer shard : shards) {
+            batches.add(Arrays.asList(TABLE_NAME_TRIGGERS_BY_NEXT_FIRE_BUCKETS, SHARDS), bindBucket(SHARDS, shard));
+        }
+        batches.execute();
+    }
+    
+    private BoundStatement bindBucket(int shard, long bucket) {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(BUCKETS_INSERT));
+        boundStatement.bind(shard, bucket);
+        return boundStatement;
+    }
+    
+    private BoundStatement bindRemoveNextFireEntry(TriggerKey triggerKey, Date nextFireTime) {
+        
+        BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_BY_NEXT_FIRE_DELETE));
+        boundStatement.bind(toBucket(nextFireTime), nextFireTime, triggerKey.getGroup(), triggerKey.getName());
+        return boundStatement;
+    }
+    
+    private void removeNextFireEntry(TriggerKey triggerKey, Date nextFireTime) {
+        CassandraConnectionManager.getInstance().execute(bindRemoveNextFireEntry(triggerKey, nextFireTime));
+    }
+    
+    private static long toBucket(Date date) {
+        return date.getTime() / NEXT_FIRE_BUCKET_MILLIS;
+    }
+    
+    private static int toShard(long bucket) {
+        return (int) (bucket / BUCKETS_PER_SHARD);
+    }
+   
     private void setStates(List<String> groups, String state) {
 
-        BatchStatement batchStatement = new BatchStatement(BatchStatement.Type.UNLOGGED);
+        PartitionBatches batches = new PartitionBatches();
+        Map<String, List<Row>> rowsByGroup = new HashMap<>();
         
-        groups.stream().map((groupName) -> {
+        for (String groupName : groups) {
 
-            List<String> groupNamesName = getGroupNamesName(groupName);
+            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_GET_KEY_AND_NEXT_FIRE_TIME_IN_GROUP));
+            boundStatement.bind(groupName);
+            List<Row> rows = CassandraConnectionManager.getInstance().execute(boundStatement).all();
+            if (rows.isEmpty()) {
+                continue;
+            }
+            rowsByGroup.put(groupName, rows);
 
-            BoundStatement boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPDATE_STATE_IN_NAME));
+            List<String> names = new ArrayList<>(rows.size());
+            for (Row row : rows) {
+                names.add(row.getString(KEY_NAME));
+            }
+            boundStatement = new BoundStatement(CassandraConnectionManager.getInstance().getStatement(TRIGGERS_UPDATE_STATE_IN_NAME));
             boundStatement.bind(
                     state,
-                    groupNamesName,
+                    names,
                     groupName
             );
-            
-            return boundStatement;
-            
-        }).forEachOrdered((boundStatement) -> {
-            batchStatement.add(boundStatement);
-        });
+            batches.add(groupName, boundStatement);
+        }
         
-        CassandraConnectionManager.getInstance().execute(batchStatement);
+        batches.execute();
+        for (Map.Entry<String, List<Row>> rows : rowsByGroup.entrySet()) {
+            updateNextFireEntries(rows.getValue(), rows.getKey(), state);
+        }
     }
 
     private void setStates(GroupMatcher<TriggerKey> matcher, String state) {
@@ -55,6 +55,8 @@ public class CassandraConnectionManager {
     
     private static final Boolean LOCK_GET_STATEMENT=Boolean.TRUE;
 
+    private static final ThreadLocal<int[]> ROUND_TRIPS = ThreadLocal.withInitial(() -> new int[1]);
+
     /**
      * Call before getInstance to set CONTACT_POINT, PORT and KEYSPACE_NAME
      * @param contactPoint
@@ -260,6 +262,16 @@ public class CassandraConnectionManager {
         return statement;
     }
 
+    /**
+     * Difference of values taken before and after a call gives the number
+     * of statements the call sent to the cluster.
+     *
+     * @return number of statements executed by the current thread so far
+     */
+    public static int getRoundTrips() {
+        return ROUND_TRIPS.get()[0];
+    }
+
     public ResultSet execute(Statement stmt) {
         return this.execute(stmt, false);
     }
@@ -271,6 +283,7 @@ public class CassandraConnectionManager {
      * @return
      */
     public ResultSet execute(Statement stmt, boolean retryOnceOnNoHostAvailable) {
+        ROUND_TRIPS.get()[0]++;
         try {
             if (session == null) {
                 restartDatabaseConnection();
@@ -327,6 +340,7 @@ public class CassandraConnectionManager {
      * @return
      */
     public ResultSet execute(String query, boolean retryOnceOnNoHostAvailable) {
+        ROUND_TRIPS.get()[0]++;
         try {
             if (session == null) {
                 restartDatabaseConnection();
@@ -394,6 +408,7 @@ public class CassandraConnectionManager {
      * @return
      */
     public ResultSetFuture executeAsync(Statement stmt, boolean retryOnceOnNoHostAvailable) {
+        ROUND_TRIPS.get()[0]++;
         try {
             if (session == null) {
                 restartDatabaseConnection();
@@ -443,6 +458,7 @@ public class CassandraConnectionManager {
      * @return
      */
     public ResultSetFuture executeAsync(String stmt, boolean retryOnceOnNoHostAvailable) {
+        ROUND_TRIPS.get()[0]++;
         try {
             if (session == null) {
                 restartDatabaseConnection();
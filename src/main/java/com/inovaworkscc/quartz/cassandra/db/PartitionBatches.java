@@ -0,0 +1,69 @@
+package com.inovaworkscc.quartz.cassandra.db;
+
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
+import com.datastax.driver.core.Statement;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unlogged batches of statements grouped by the partition they write to.
+ * A batch of one partition is applied as a single mutation, unlike a batch
+ * spanning partitions, so it saves round trips without loading the coordinator.
+ * Batches are split after a number of statements to stay below the batch size
+ * limit of Cassandra, and all are sent at once.
+ */
+public class PartitionBatches {
+
+    public static final int DEFAULT_MAX_STATEMENTS = 50;
+
+    private final int maxStatements;
+    private final Map<Object, BatchStatement> open = new HashMap<>();
+    private final List<BatchStatement> batches = new ArrayList<>();
+
+    public PartitionBatches() {
+        this(DEFAULT_MAX_STATEMENTS);
+    }
+
+    /**
+     * @param maxStatements    max number of statements in a batch
+     */
+    public PartitionBatches(int maxStatements) {
+        this.maxStatements = maxStatements;
+    }
+
+    /**
+     * @param partitionKey    value of the partition key written by the statement,
+     *                        should be distinct from keys of other tables
+     */
+    public void add(Object partitionKey, Statement statement) {
+        BatchStatement batch = open.get(partitionKey);
+        if (batch == null) {
+            batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            batches.add(batch);
+            open.put(partitionKey, batch);
+        }
+        batch.add(statement);
+        if (batch.size() >= maxStatements) {
+            open.remove(partitionKey);
+        }
+    }
+
+    /**
+     * Send all batches at once and wait for them.
+     */
+    public void execute() {
+        List<ResultSetFuture> results = new ArrayList<>(batches.size());
+        for (BatchStatement batch : batches) {
+            results.add(CassandraConnectionManager.getInstance().executeAsync(batch));
+        }
+        for (ResultSetFuture result : results) {
+            result.getUninterruptibly();
+        }
+        open.clear();
+        batches.clear();
+    }
+}
@@ -0,0 +1,55 @@
+package com.inovaworkscc.quartz.cassandra.metrics;
+
+/**
+ * Receives timings and counters of the job store.
+ *
+ * <p>Implementations are called from scheduler threads while the store
+ * is working, so they must be thread safe and should not block.
+ * Configure the implementation with {@code org.quartz.jobStore.metricsClass}
+ * property, it must have a public no-arg constructor.
+ */
+public interface JobStoreMetrics {
+
+    String ACQUIRE_NEXT_TRIGGERS = "acquireNextTriggers";
+    String TRIGGERS_FIRED = "triggersFired";
+    String TRIGGERED_JOB_COMPLETE = "triggeredJobComplete";
+
+    /**
+     * Record one call of a JobStore operation.
+     *
+     * @param operation         one of {@link #ACQUIRE_NEXT_TRIGGERS}, {@link #TRIGGERS_FIRED}
+     *                          or {@link #TRIGGERED_JOB_COMPLETE}
+     * @param durationNanos     how long the call took
+     * @param dbRoundTrips      number of commands sent to the database during the call
+     */
+    void recordOperation(String operation, long durationNanos, int dbRoundTrips);
+
+    /**
+     * Record how late a trigger fired.
+     *
+     * @param lagMillis    actual fire time minus scheduled fire time
+     */
+    void recordFireLag(long lagMillis);
+
+    /**
+     * Record failed attempt to lock a trigger or a job locked by another scheduler.
+     */
+    void recordLockConflict();
+
+    /**
+     * Record trigger whose expired lock was taken over by this scheduler.
+     */
+    void recordRelock();
+
+    /**
+     * Record trigger recovered after failed run of its job.
+     */
+    void recordRecovery();
+
+    /**
+     * Record misfired trigger.
+     *
+     * @param triggerGroup    group of the trigger
+     */
+    void recordMisfire(String triggerGroup);
+}
@@ -1,6 +1,7 @@
 package com.inovaworkscc.quartz.cassandra.trigger;
 
 import com.inovaworkscc.quartz.cassandra.dao.CalendarDao;
+import com.inovaworkscc.quartz.cassandra.metrics.JobStoreMetrics;
 import org.quartz.Calendar;
 import org.quartz.JobPersistenceException;
 import org.quartz.Trigger;
@@ -17,11 +18,14 @@ public class MisfireHandler {
     private final CalendarDao calendarDao;
     private final SchedulerSignaler signaler;
     private final long misfireThreshold;
+    private final JobStoreMetrics metrics;
 
-    public MisfireHandler(CalendarDao calendarDao, SchedulerSignaler signaler, long misfireThreshold) {
+    public MisfireHandler(CalendarDao calendarDao, SchedulerSignaler signaler, long misfireThreshold,
+                          JobStoreMetrics metrics) {
         this.calendarDao = calendarDao;
         this.signaler = signaler;
         this.misfireThreshold = misfireThreshold;
+        this.metrics = metrics;
     }
 
     /**
@@ -40,6 +44,7 @@ public class MisfireHandler {
             cal = retrieveCalendar(trigger);
         }
 
+        metrics.recordMisfire(trigger.getKey().getGroup());
         signaler.notifyTriggerListenersMisfired(trigger);
 
         trigger.updateAfterMisfire(cal);
@@ -55,6 +60,7 @@ public class MisfireHandler {
 
         org.quartz.Calendar cal = retrieveCalendar(trigger);
 
+        metrics.recordMisfire(trigger.getKey().getGroup());
         signaler.notifyTriggerListenersMisfired((OperableTrigger) trigger.clone());
 
         trigger.updateAfterMisfire(cal);
@@ -4,13 +4,32 @@ import com.datastax.driver.core.Row;
 import com.inovaworkscc.quartz.cassandra.JobDataConverter;
 import com.inovaworkscc.quartz.cassandra.Constants;
 import com.inovaworkscc.quartz.cassandra.dao.JobDao;
+import com.inovaworkscc.quartz.cassandra.trigger.properties.CalendarIntervalTriggerPropertiesConverter;
+import com.inovaworkscc.quartz.cassandra.trigger.properties.CronTriggerPropertiesConverter;
+import com.inovaworkscc.quartz.cassandra.trigger.properties.DailyTimeIntervalTriggerPropertiesConverter;
+import com.inovaworkscc.quartz.cassandra.trigger.properties.SimpleTriggerPropertiesConverter;
 import static com.inovaworkscc.quartz.cassandra.util.Keys.KEY_GROUP;
 import static com.inovaworkscc.quartz.cassandra.util.Keys.KEY_NAME;
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import org.quartz.Job;
 import org.quartz.JobKey;
 import org.quartz.JobPersistenceException;
 import org.quartz.TriggerKey;
+import org.quartz.impl.triggers.CalendarIntervalTriggerImpl;
+import org.quartz.impl.triggers.CronTriggerImpl;
+import org.quartz.impl.triggers.DailyTimeIntervalTriggerImpl;
+import org.quartz.impl.triggers.SimpleTriggerImpl;
 import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -30,12 +49,37 @@ public class TriggerConverter {
 
     private static final Logger log = LoggerFactory.getLogger(TriggerConverter.class);
 
+    /**
+     * Factories of triggers by their class name, so the class is loaded once.
+     * Quartz triggers are created without reflection.
+     */
+    private final ConcurrentMap<String, Callable<OperableTrigger>> triggerFactories =
+            new ConcurrentHashMap<String, Callable<OperableTrigger>>();
+
+    private final List<TriggerPropertiesConverter> propertiesConverters =
+            new CopyOnWriteArrayList<TriggerPropertiesConverter>(Arrays.asList(
+                    new SimpleTriggerPropertiesConverter(),
+                    new CalendarIntervalTriggerPropertiesConverter(),
+                    new CronTriggerPropertiesConverter(),
+                    new DailyTimeIntervalTriggerPropertiesConverter()));
+
+    /**
+     * Converters found for trigger classes. Whether a converter can handle
+     * a trigger depends only on its class, so it's looked up once per class.
+     */
+    private final ConcurrentMap<Class<?>, TriggerPropertiesConverter> convertersByClass =
+            new ConcurrentHashMap<Class<?>, TriggerPropertiesConverter>();
+
     private JobDao jobDao;
     private final JobDataConverter jobDataConverter;
 
     public TriggerConverter(JobDao jobDao, JobDataConverter jobDataConverter) {
         this.jobDao = jobDao;
         this.jobDataConverter = jobDataConverter;
+        triggerFactories.put(SimpleTriggerImpl.class.getName(), SimpleTriggerImpl::new);
+        triggerFactories.put(CronTriggerImpl.class.getName(), CronTriggerImpl::new);
+        triggerFactories.put(CalendarIntervalTriggerImpl.class.getName(), CalendarIntervalTriggerImpl::new);
+        triggerFactories.put(DailyTimeIntervalTriggerImpl.class.getName(), DailyTimeIntervalTriggerImpl::new);
     }
 
     /**
@@ -53,11 +97,33 @@ public class TriggerConverter {
         HashMap<String, Object> trigger = convertToHashMap(newTrigger, jobId);
         jobDataConverter.toHashMap(newTrigger.getJobDataMap(), trigger);
 
-        TriggerPropertiesConverter tpd = TriggerPropertiesConverter.getConverterFor(newTrigger);
+        TriggerPropertiesConverter tpd = getPropertiesConverter(newTrigger);
         trigger = tpd.injectExtraPropertiesForInsert(newTrigger, trigger);
         return trigger;
     }
 
+    /**
+     * Converts only fields which change when trigger fires or misfires,
+     * so a stored trigger can be updated without writing all its columns
+     * and serializing its job data map again.
+     * @param trigger
+     * @return 
+     */
+    public HashMap<String, Object> toFireTimesHashMap(OperableTrigger trigger) {
+        
+        HashMap<String, Object> fields = new HashMap<>();
+        
+        fields.put(Constants.TRIGGER_STATE, Constants.STATE_WAITING);
+        fields.put(TRIGGER_FINAL_FIRE_TIME, trigger.getFinalFireTime());
+        fields.put(TRIGGER_FIRE_INSTANCE_ID, trigger.getFireInstanceId());
+        fields.put(Constants.TRIGGER_NEXT_FIRE_TIME, trigger.getNextFireTime());
+        fields.put(TRIGGER_PREVIOUS_FIRE_TIME, trigger.getPreviousFireTime());
+        fields.put(TRIGGER_START_TIME, trigger.getStartTime());
+
+        TriggerPropertiesConverter tpd = getPropertiesConverter(trigger);
+        return tpd.injectExtraPropertiesForFire(trigger, fields);
+    }
+
     /**
      * Restore trigger from Cassandra Row.
      *
@@ -86,17 +152,7 @@ public class TriggerConverter {
      * or could not deserialize job data map.
      */
     public OperableTrigger toTriggerWithOptionalJob(TriggerKey triggerKey, Row triggerRow) throws JobPersistenceException {
-        OperableTrigger trigger = createNewInstance(triggerRow);
-
-        TriggerPropertiesConverter tpd = TriggerPropertiesConverter.getConverterFor(trigger);
-
-        loadCommonProperties(triggerKey, triggerRow, trigger);
-
-        jobDataConverter.toJobData(triggerRow, trigger.getJobDataMap());
-
-        loadStartAndEndTimes(triggerRow, trigger);
-
-        tpd.setExtraPropertiesAfterInstantiation(trigger, triggerRow);
+        OperableTrigger trigger = toTriggerWithoutJob(triggerKey, triggerRow);
 
         String jobId = triggerRow.getString(Constants.TRIGGER_JOB_ID);
         Row job = jobDao.getById(jobId);
@@ -107,6 +163,53 @@ public class TriggerConverter {
         return trigger;
     }
 
+    /**
+     * Restore triggers from Cassandra Rows, skipping ones without associated job.
+     *
+     * @param triggerRows cassandra {@link Row}s to read from.
+     * @return triggers in the order of given rows
+     * @throws JobPersistenceException if could not construct trigger instance
+     * or could not deserialize job data map.
+     * @see #toTriggersWithOptionalJob(List)
+     */
+    public List<OperableTrigger> toTriggers(List<Row> triggerRows) throws JobPersistenceException {
+        List<OperableTrigger> triggers = toTriggersWithOptionalJob(triggerRows);
+        triggers.removeIf(trigger -> trigger.getJobKey() == null);
+        return triggers;
+    }
+
+    /**
+     * Restore triggers from Cassandra Rows. Keys of their jobs are resolved
+     * together, each distinct job is looked up once.
+     *
+     * @param triggerRows cassandra {@link Row}s to read from.
+     * @return triggers in the order of given rows, even if no associated job exists
+     * @throws JobPersistenceException if could not construct trigger instance
+     * or could not deserialize job data map.
+     */
+    public List<OperableTrigger> toTriggersWithOptionalJob(List<Row> triggerRows) throws JobPersistenceException {
+        Set<String> jobIds = new HashSet<>();
+        for (Row triggerRow : triggerRows) {
+            String jobId = triggerRow.getString(Constants.TRIGGER_JOB_ID);
+            if (jobId != null) {
+                jobIds.add(jobId);
+            }
+        }
+        Map<String, JobKey> jobKeys = jobDao.getJobKeysByIds(jobIds);
+
+        List<OperableTrigger> triggers = new ArrayList<>(triggerRows.size());
+        for (Row triggerRow : triggerRows) {
+            TriggerKey key = new TriggerKey(triggerRow.getString(KEY_NAME), triggerRow.getString(KEY_GROUP));
+            OperableTrigger trigger = toTriggerWithoutJob(key, triggerRow);
+            JobKey jobKey = jobKeys.get(triggerRow.getString(Constants.TRIGGER_JOB_ID));
+            if (jobKey != null) {
+                trigger.setJobKey(jobKey);
+            }
+            triggers.add(trigger);
+        }
+        return triggers;
+    }
+
     public OperableTrigger toTrigger(Row row) throws JobPersistenceException {
         TriggerKey key = new TriggerKey(row.getString(KEY_NAME), row.getString(KEY_GROUP));
         return toTrigger(key, row);
@@ -117,6 +220,21 @@ public class TriggerConverter {
         return toTriggerWithOptionalJob(key, row);
     }
 
+    private OperableTrigger toTriggerWithoutJob(TriggerKey triggerKey, Row triggerRow) throws JobPersistenceException {
+        OperableTrigger trigger = createNewInstance(triggerRow);
+
+        TriggerPropertiesConverter tpd = getPropertiesConverter(trigger);
+
+        loadCommonProperties(triggerKey, triggerRow, trigger);
+
+        jobDataConverter.toJobData(triggerRow, trigger.getJobDataMap());
+
+        loadStartAndEndTimes(triggerRow, trigger);
+
+        tpd.setExtraPropertiesAfterInstantiation(trigger, triggerRow);
+        return trigger;
+    }
+
     private HashMap<String, Object> convertToHashMap(OperableTrigger newTrigger, String jobId) {
         HashMap<String, Object> trigger = new HashMap();
         
@@ -140,13 +258,57 @@ public class TriggerConverter {
         return trigger;
     }
 
+    /**
+     * Registers factory of triggers of given class, used instead of loading
+     * the class and calling its constructor reflectively.
+     */
+    public void registerTriggerFactory(String triggerClassName, Callable<OperableTrigger> factory) {
+        triggerFactories.put(triggerClassName, factory);
+    }
+
+    /**
+     * Registers converter of a custom trigger type. It takes precedence over
+     * converters registered before, including the built-in ones.
+     * A converter of the same class is registered only once.
+     */
+    public synchronized void registerPropertiesConverter(TriggerPropertiesConverter converter) {
+        for (TriggerPropertiesConverter registered : propertiesConverters) {
+            if (registered.getClass() == converter.getClass()) {
+                return;
+            }
+        }
+        propertiesConverters.add(0, converter);
+        convertersByClass.clear();
+    }
+
+    /**
+     * Returns properties converter for given trigger or null when not found.
+     * @param trigger    a trigger instance
+     * @return converter or null
+     */
+    private TriggerPropertiesConverter getPropertiesConverter(OperableTrigger trigger) {
+        TriggerPropertiesConverter found = convertersByClass.get(trigger.getClass());
+        if (found != null) {
+            return found;
+        }
+        for (TriggerPropertiesConverter converter : propertiesConverters) {
+            if (converter.canHandle(trigger)) {
+                convertersByClass.put(trigger.getClass(), converter);
+                return converter;
+            }
+        }
+        return null;
+    }
+
     private OperableTrigger createNewInstance(Row triggerRow) throws JobPersistenceException {
         String triggerClassName = triggerRow.getString(TRIGGER_CLASS);
+        Callable<OperableTrigger> factory = triggerFactories.get(triggerClassName);
         try {
-            @SuppressWarnings("unchecked")
-            Class<OperableTrigger> triggerClass = (Class<OperableTrigger>) getTriggerClassLoader()
-                    .loadClass(triggerClassName);
-            return triggerClass.newInstance();
+            if (factory == null) {
+                factory = createTriggerFactory(triggerClassName);
+                triggerFactories.putIfAbsent(triggerClassName, factory);
+            }
+            return factory.call();
         } catch (ClassNotFoundException e) {
             throw new JobPersistenceException("Could not find trigger class " + triggerClassName);
         } catch (Exception e) {
@@ -154,6 +316,15 @@ public class TriggerConverter {
         }
     }
 
+    private Callable<OperableTrigger> createTriggerFactory(String triggerClassName)
+            throws ClassNotFoundException, NoSuchMethodException {
+        @SuppressWarnings("unchecked")
+        Class<OperableTrigger> triggerClass = (Class<OperableTrigger>) getTriggerClassLoader()
+                .loadClass(triggerClassName);
+        final Constructor<OperableTrigger> constructor = triggerClass.getConstructor();
+        return constructor::newInstance;
+    }
+
     private ClassLoader getTriggerClassLoader() {
         return Job.class.getClassLoader();
     }
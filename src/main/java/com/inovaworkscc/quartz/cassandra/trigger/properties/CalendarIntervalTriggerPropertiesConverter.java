@@ -31,6 +31,16 @@ public class CalendarIntervalTriggerPropertiesConverter extends TriggerPropertie
         return neu;
     }
 
+    @Override
+    public HashMap<String, Object> injectExtraPropertiesForFire(OperableTrigger trigger, HashMap<String, Object> original) {
+        CalendarIntervalTriggerImpl t = (CalendarIntervalTriggerImpl) trigger;
+
+        HashMap<String, Object> neu = new HashMap<> (original);
+        neu.put(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+        
+        return neu;
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Row stored) {
         
@@ -2,6 +2,7 @@ package com.inovaworkscc.quartz.cassandra.trigger.properties;
 
 import com.datastax.driver.core.Row;
 import com.inovaworkscc.quartz.cassandra.trigger.TriggerPropertiesConverter;
+import com.inovaworkscc.quartz.cassandra.util.ScheduleCache;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
@@ -20,6 +21,8 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
     public static final String TRIGGER_START_TIME_OF_DAY = "startTimeOfDay";
     public static final String TRIGGER_END_TIME_OF_DAY = "endTimeOfDay";
 
+    private final ScheduleCache schedules = new ScheduleCache(ScheduleCache.DEFAULT_MAX_SIZE);
+
     @Override
     protected boolean canHandle(OperableTrigger trigger) {
         return ((trigger instanceof DailyTimeIntervalTrigger)
@@ -57,6 +60,16 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
         return new TimeOfDay(calendar.get(Calendar.HOUR_OF_DAY), calendar.get(Calendar.MINUTE), calendar.get(Calendar.SECOND));
     }
 
+    @Override
+    public HashMap<String, Object> injectExtraPropertiesForFire(OperableTrigger trigger, HashMap<String, Object> original) {
+        DailyTimeIntervalTriggerImpl t = (DailyTimeIntervalTriggerImpl) trigger;
+
+        HashMap<String, Object> neu = new HashMap<> (original);
+        neu.put(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+        
+        return neu;
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Row stored) {
 
@@ -83,24 +96,26 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
         if (!stored.isNull(TRIGGER_START_TIME_OF_DAY)) {
 
             //getTime comes in nano seconds
-            long startTOD = stored.getTime(TRIGGER_START_TIME_OF_DAY)/1000000;
-            
-            Date date = new Date(startTOD);
-            Calendar calendar = GregorianCalendar.getInstance(); // creates a new calendar instance
-            calendar.setTime(date);
-            
-            t.setStartTimeOfDay(fromCalendar(calendar));
+            t.setStartTimeOfDay(fromNanoSinceMidnight(stored.getTime(TRIGGER_START_TIME_OF_DAY)));
         }
         if (!stored.isNull(TRIGGER_END_TIME_OF_DAY)) {
             
             //getTime comes in nano seconds
-            long endTOD = stored.getTime(TRIGGER_END_TIME_OF_DAY)/1000000;
+            t.setEndTimeOfDay(fromNanoSinceMidnight(stored.getTime(TRIGGER_END_TIME_OF_DAY)));
+        }
+    }
+
+    private TimeOfDay fromNanoSinceMidnight(long nanos) {
 
-            Date date = new Date(endTOD);
+        TimeOfDay timeOfDay = schedules.getTimeOfDay(nanos);
+        if (timeOfDay == null) {
+            Date date = new Date(nanos / 1000000);
             Calendar calendar = GregorianCalendar.getInstance(); // creates a new calendar instance
             calendar.setTime(date);
-            
-            t.setEndTimeOfDay(fromCalendar(calendar));
+
+            timeOfDay = fromCalendar(calendar);
+            schedules.putTimeOfDay(nanos, timeOfDay);
         }
+        return timeOfDay;
     }
 }
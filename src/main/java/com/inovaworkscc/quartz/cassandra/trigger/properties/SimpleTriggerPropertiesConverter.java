@@ -31,6 +31,18 @@ public class SimpleTriggerPropertiesConverter extends TriggerPropertiesConverter
         return neu;
     }
 
+    @Override
+    public HashMap<String, Object> injectExtraPropertiesForFire(OperableTrigger trigger, HashMap<String, Object> original) {
+        SimpleTrigger t = (SimpleTrigger) trigger;
+
+        // misfire instructions may reset repeat count
+        HashMap<String, Object> neu = new HashMap<> (original);
+        neu.put(TRIGGER_REPEAT_COUNT, t.getRepeatCount());
+        neu.put(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+        
+        return neu;
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Row stored) {
 
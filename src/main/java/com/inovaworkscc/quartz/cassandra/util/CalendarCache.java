@@ -0,0 +1,83 @@
+package com.inovaworkscc.quartz.cassandra.util;
+
+import org.quartz.Calendar;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache of deserialized calendars, keyed by calendar name.
+ * Each entry remembers the version stamp of the stored calendar it was read from
+ * and when that version was last confirmed against the database.
+ */
+public class CalendarCache {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private static class Entry {
+        final Calendar calendar;
+        final long version;
+        long checkedAt;
+
+        Entry(Calendar calendar, long version, long checkedAt) {
+            this.calendar = calendar;
+            this.version = version;
+            this.checkedAt = checkedAt;
+        }
+    }
+
+    private final Clock clock;
+    private final long maxStalenessMillis;
+    private final Map<String, Entry> entries;
+
+    /**
+     * @param clock                 provides current time
+     * @param maxStalenessMillis    how long a cached calendar is used without checking its version
+     * @param maxSize               max number of cached calendars, least recently used are evicted
+     */
+    public CalendarCache(Clock clock, long maxStalenessMillis, final int maxSize) {
+        this.clock = clock;
+        this.maxStalenessMillis = maxStalenessMillis;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @return cached calendar if its version was confirmed within the staleness bound, null otherwise
+     */
+    public synchronized Calendar getFresh(String name) {
+        Entry entry = entries.get(name);
+        if (entry != null && clock.millis() - entry.checkedAt < maxStalenessMillis) {
+            return entry.calendar;
+        }
+        return null;
+    }
+
+    /**
+     * @return cached calendar if it has given version, null otherwise
+     */
+    public synchronized Calendar getIfVersion(String name, long version) {
+        Entry entry = entries.get(name);
+        if (entry != null && entry.version == version) {
+            entry.checkedAt = clock.millis();
+            return entry.calendar;
+        }
+        return null;
+    }
+
+    public synchronized void put(String name, long version, Calendar calendar) {
+        entries.put(name, new Entry(calendar, version, clock.millis()));
+    }
+
+    public synchronized void invalidate(String name) {
+        entries.remove(name);
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+    }
+}
@@ -0,0 +1,17 @@
+package com.inovaworkscc.quartz.cassandra.util;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Encodes job data maps of jobs and triggers into bytes stored in
+ * '{@value com.inovaworkscc.quartz.cassandra.Constants#JOB_DATA_BINARY}' field.
+ * Implementations need a public no-arg constructor to be configured
+ * by class name, see {@link CompactJobDataSerializer}.
+ */
+public interface JobDataSerializer {
+
+    byte[] serialize(Map<String, ?> jobData) throws IOException;
+
+    Map<String, ?> deserialize(byte[] bytes) throws IOException;
+}
@@ -0,0 +1,79 @@
+package com.inovaworkscc.quartz.cassandra.util;
+
+import org.quartz.CronExpression;
+import org.quartz.TimeOfDay;
+
+import java.text.ParseException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Bounded cache of parsed schedule properties shared by triggers loaded from the database.
+ * Many triggers usually share a few time zones and times of day, so each of them
+ * is looked up once instead of every time a trigger is loaded.
+ *
+ * <p>Cron expressions aren't cached. Triggers change the time zone of their
+ * expression in place, and copying one parses it again, so each loaded trigger
+ * parses its own.</p>
+ */
+public class ScheduleCache {
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    private final Map<String, TimeZone> timeZones;
+    private final Map<Long, TimeOfDay> timesOfDay;
+
+    /**
+     * @param maxSize    max number of cached values of each kind, least recently used are evicted
+     */
+    public ScheduleCache(int maxSize) {
+        this.timeZones = createLruMap(maxSize);
+        this.timesOfDay = createLruMap(maxSize);
+    }
+
+    /**
+     * Parses expression and sets its time zone, looked up in the cache.
+     *
+     * @param timeZoneId    time zone ID or null for the default time zone
+     * @return new expression owned by the caller
+     */
+    public CronExpression newCronExpression(String expression, String timeZoneId) throws ParseException {
+        CronExpression cronExpression = new CronExpression(expression);
+        cronExpression.setTimeZone(timeZoneId == null ? TimeZone.getDefault() : getTimeZone(timeZoneId));
+        return cronExpression;
+    }
+
+    /**
+     * @return copy of the time zone, which is mutable
+     */
+    public synchronized TimeZone getTimeZone(String id) {
+        TimeZone timeZone = timeZones.get(id);
+        if (timeZone == null) {
+            timeZone = TimeZone.getTimeZone(id);
+            timeZones.put(id, timeZone);
+        }
+        return (TimeZone) timeZone.clone();
+    }
+
+    /**
+     * @param key    any value identifying the time of day in the stored form
+     * @return cached time of day or null
+     */
+    public synchronized TimeOfDay getTimeOfDay(long key) {
+        return timesOfDay.get(key);
+    }
+
+    public synchronized void putTimeOfDay(long key, TimeOfDay timeOfDay) {
+        timesOfDay.put(key, timeOfDay);
+    }
+
+    private static <K, V> Map<K, V> createLruMap(final int maxSize) {
+        return new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+}
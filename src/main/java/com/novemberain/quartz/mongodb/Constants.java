@@ -4,13 +4,21 @@ public interface Constants {
 
   String JOB_DATA = "jobData";
   String JOB_DATA_PLAIN = "jobDataPlain";
+  String JOB_DATA_BINARY = "jobDataBinary";
   String TRIGGER_NEXT_FIRE_TIME = "nextFireTime";
   String TRIGGER_JOB_ID = "jobId";
   String TRIGGER_STATE = "state";
+  String TRIGGER_MISFIRE_INSTRUCTION = "misfireInstruction";
+  String TRIGGER_BUCKET = "bucket";
+  String TRIGGER_BUCKET_COUNT = "bucketCount";
+  String TRIGGER_WRITER = "writer";
   String LOCK_INSTANCE_ID = "instanceId";
   String LOCK_TIME = "time";
+  String LOCK_RECOVERED_FROM = "recoveredFrom";
+  String LOCK_STATE_ON_RELEASE = "stateOnRelease";
 
   String STATE_WAITING = "waiting";
+  String STATE_ACQUIRED = "acquired";
   String STATE_DELETED = "deleted";
   String STATE_COMPLETE = "complete";
   String STATE_PAUSED = "paused";
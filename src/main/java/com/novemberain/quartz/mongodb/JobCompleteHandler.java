@@ -1,7 +1,6 @@
 package com.novemberain.quartz.mongodb;
 
 import com.novemberain.quartz.mongodb.dao.JobDao;
-import com.novemberain.quartz.mongodb.dao.LocksDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
 import org.quartz.JobDetail;
 import org.quartz.JobPersistenceException;
@@ -19,15 +18,15 @@ public class JobCompleteHandler {
     private final TriggerAndJobPersister persister;
     private final SchedulerSignaler signaler;
     private final JobDao jobDao;
-    private final LocksDao locksDao;
+    private final LockManager lockManager;
     private TriggerDao triggerDao;
 
     public JobCompleteHandler(TriggerAndJobPersister persister, SchedulerSignaler signaler,
-                              JobDao jobDao, LocksDao locksDao, TriggerDao triggerDao) {
+                              JobDao jobDao, LockManager lockManager, TriggerDao triggerDao) {
         this.persister = persister;
         this.signaler = signaler;
         this.jobDao = jobDao;
-        this.locksDao = locksDao;
+        this.lockManager = lockManager;
         this.triggerDao = triggerDao;
     }
 
@@ -47,16 +46,15 @@ public class JobCompleteHandler {
         }
 
         if (job.isConcurrentExectionDisallowed()) {
-            locksDao.unlockJob(job);
+            lockManager.unlockJob(job);
         }
 
         try {
             process(trigger, executionInstruction);
+            lockManager.unlockAcquiredTrigger(trigger);
         } catch (JobPersistenceException e) {
             throw new RuntimeException(e);
         }
-
-        locksDao.unlockTrigger(trigger);
     }
 
     private boolean isTriggerDeletionRequested(CompletedExecutionInstruction triggerInstCode) {
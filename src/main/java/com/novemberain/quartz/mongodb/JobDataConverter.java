@@ -1,7 +1,9 @@
 package com.novemberain.quartz.mongodb;
 
+import com.novemberain.quartz.mongodb.util.JobDataSerializer;
 import com.novemberain.quartz.mongodb.util.SerialUtils;
 import org.bson.Document;
+import org.bson.types.Binary;
 import org.quartz.JobDataMap;
 import org.quartz.JobPersistenceException;
 
@@ -14,13 +16,26 @@ import java.util.Map;
 public class JobDataConverter {
 
 	private final boolean base64Preferred;
+	private final JobDataSerializer serializer;
 
 	/**
 	 * Constructs an instance of converter.
 	 * @param base64Preferred if preferred way to store job details is {@code base64}.
 	 */
 	public JobDataConverter(final boolean base64Preferred) {
+		this(base64Preferred, null);
+	}
+
+	/**
+	 * Constructs an instance of converter.
+	 * @param base64Preferred if preferred way to store job details is {@code base64}.
+	 * @param serializer if not null, job data is stored in binary
+	 *                   '{@value Constants#JOB_DATA_BINARY}' field encoded by it,
+	 *                   and the other fields are only read.
+	 */
+	public JobDataConverter(final boolean base64Preferred, final JobDataSerializer serializer) {
 		this.base64Preferred = base64Preferred;
+		this.serializer = serializer;
 	}
 
 	/**
@@ -35,7 +50,13 @@ public class JobDataConverter {
 		if (from.isEmpty()) {
 			return;
 		}
-		if (base64Preferred) {
+		if (serializer != null) {
+			try {
+				to.put(Constants.JOB_DATA_BINARY, serializer.serialize(from.getWrappedMap()));
+			} catch (IOException e) {
+				throw new JobPersistenceException("Could not serialise job data.", e);
+			}
+		} else if (base64Preferred) {
 			String jobDataString;
 			try {
 				jobDataString = SerialUtils.serialize(from);
@@ -50,6 +71,9 @@ public class JobDataConverter {
 
 	/**
 	 * Converts from document to job data map.
+	 * Job data from '{@value Constants#JOB_DATA_BINARY}' field is read first.
+	 * If a serializer is configured, other fields are read if that one
+	 * is missing, so documents stored before are rewritten on next store.
 	 * If {@code base64} is preferred, tries
 	 * to decode from '{@value Constants#JOB_DATA}' field.
 	 * Otherwise, first reads a plain object from 
@@ -61,7 +85,10 @@ public class JobDataConverter {
 	 * @throws JobPersistenceException if could not decode.
 	 */
 	public boolean toJobData(Document from, JobDataMap to) throws JobPersistenceException {
-		if (base64Preferred) {
+		if (toJobDataFromBinary(from, to)) {
+			return true;
+		}
+		if (base64Preferred && serializer == null) {
 			return toJobDataFromBase64(from, to);
 		} else {
 			if (toJobDataFromField(from, to)) {
@@ -71,6 +98,30 @@ public class JobDataConverter {
 		}
 	}
 
+	/**
+	 * Converts from document to job data map
+	 * reading binary field '{@value Constants#JOB_DATA_BINARY}'.
+	 */
+	private boolean toJobDataFromBinary(Document from, JobDataMap to) throws JobPersistenceException {
+		Object binary = from.get(Constants.JOB_DATA_BINARY);
+		if (binary == null) {
+			return false;
+		}
+		if (serializer == null) {
+			throw new JobPersistenceException("Job data is stored in binary, "
+					+ "but no job data serializer is configured.");
+		}
+		byte[] bytes = binary instanceof Binary ? ((Binary) binary).getData() : (byte[]) binary;
+		Map<String, ?> jobDataMap;
+		try {
+			jobDataMap = serializer.deserialize(bytes);
+		} catch (IOException e) {
+			throw new JobPersistenceException("Could not deserialize job data.", e);
+		}
+		to.putAll(jobDataMap);
+		return true;
+	}
+
 	/**
 	 * Converts from document to job data map
 	 * reading {@code base64} encoded field
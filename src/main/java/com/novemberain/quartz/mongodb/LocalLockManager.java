@@ -0,0 +1,130 @@
+package com.novemberain.quartz.mongodb;
+
+import com.novemberain.quartz.mongodb.dao.LocksDao;
+import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
+import com.novemberain.quartz.mongodb.util.Clock;
+import com.novemberain.quartz.mongodb.util.ExpiryCalculator;
+import org.quartz.JobDetail;
+import org.quartz.JobKey;
+import org.quartz.JobPersistenceException;
+import org.quartz.TriggerKey;
+import org.quartz.spi.OperableTrigger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Lock manager of a scheduler which isn't clustered. No other scheduler competes
+ * for its triggers and jobs, so locks are kept in memory of this process instead
+ * of the locks collection, saving the writes of a lock and an unlock on each fire.
+ *
+ * <p>Triggers locked in their documents are still locked there, as their state
+ * is stored anyway. Locks taken by a previous run of the scheduler are released
+ * on startup, see {@link LockManager#releaseOwnTriggers()}.</p>
+ */
+public class LocalLockManager extends LockManager {
+
+    private static final Logger log = LoggerFactory.getLogger(LocalLockManager.class);
+
+    private final ConcurrentMap<TriggerKey, Long> triggerLocks = new ConcurrentHashMap<TriggerKey, Long>();
+    private final ConcurrentMap<JobKey, Long> jobLocks = new ConcurrentHashMap<JobKey, Long>();
+    private final long jobTimeoutMillis;
+
+    /**
+     * @param jobTimeoutMillis    time after which a job lock is considered expired
+     */
+    public LocalLockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator,
+                            TriggerDao triggerDao, TriggerAndJobPersister persister,
+                            Clock clock, boolean triggerLockInDocument, JobStoreMetrics metrics,
+                            TriggerLookahead lookahead, long jobTimeoutMillis) {
+        super(locksDao, expiryCalculator, triggerDao, persister, clock, triggerLockInDocument, metrics, lookahead);
+        this.jobTimeoutMillis = jobTimeoutMillis;
+    }
+
+    @Override
+    public boolean tryLockJob(JobDetail job) {
+        if (!job.isConcurrentExectionDisallowed()) {
+            return true;
+        }
+        if (jobLocks.putIfAbsent(job.getKey(), clock.millis()) != null) {
+            metrics.recordLockConflict();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void unlockJob(JobDetail job) {
+        jobLocks.remove(job.getKey());
+    }
+
+    @Override
+    public void unlockExpired(JobDetail job) {
+        Long lockTime = jobLocks.get(job.getKey());
+        if (lockTime != null && clock.millis() - lockTime > jobTimeoutMillis) {
+            log.debug("Removing expired lock for job {}", job.getKey());
+            jobLocks.remove(job.getKey(), lockTime);
+        }
+    }
+
+    @Override
+    public void unlockAcquiredTrigger(OperableTrigger trigger) throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            super.unlockAcquiredTrigger(trigger);
+        } else {
+            triggerLocks.remove(trigger.getKey());
+        }
+    }
+
+    @Override
+    public void unlockReleasedTriggers(List<OperableTrigger> triggers) throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            super.unlockReleasedTriggers(triggers);
+            return;
+        }
+        for (OperableTrigger trigger : triggers) {
+            triggerLocks.remove(trigger.getKey());
+        }
+    }
+
+    @Override
+    public void unlockTriggers(List<TriggerKey> keys) throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            super.unlockTriggers(keys);
+            return;
+        }
+        for (TriggerKey key : keys) {
+            triggerLocks.remove(key);
+        }
+    }
+
+    @Override
+    public boolean tryLock(TriggerKey key) {
+        if (triggerLockInDocument) {
+            return super.tryLock(key);
+        }
+        if (triggerLocks.putIfAbsent(key, clock.millis()) != null) {
+            metrics.recordLockConflict();
+            log.info("Failed to lock trigger {}, it's already locked", key);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Locks held in memory are never left behind by another scheduler,
+     * so they don't expire.
+     */
+    @Override
+    public boolean relockExpired(TriggerKey key) {
+        if (triggerLockInDocument) {
+            return super.relockExpired(key);
+        }
+        return false;
+    }
+}
@@ -2,24 +2,69 @@ package com.novemberain.quartz.mongodb;
 
 import com.mongodb.MongoWriteException;
 import com.novemberain.quartz.mongodb.dao.LocksDao;
+import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
+import com.novemberain.quartz.mongodb.metrics.NoOpJobStoreMetrics;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
+import com.novemberain.quartz.mongodb.util.Clock;
 import com.novemberain.quartz.mongodb.util.ExpiryCalculator;
+import com.novemberain.quartz.mongodb.util.Keys;
 import org.bson.Document;
 import org.quartz.JobDetail;
+import org.quartz.JobPersistenceException;
 import org.quartz.TriggerKey;
 import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
 public class LockManager {
 
     private static final Logger log = LoggerFactory.getLogger(LockManager.class);
 
     private LocksDao locksDao;
     private ExpiryCalculator expiryCalculator;
+    private TriggerDao triggerDao;
+    private TriggerAndJobPersister persister;
+    protected final Clock clock;
+    protected final boolean triggerLockInDocument;
+    protected final JobStoreMetrics metrics;
+    private final TriggerLookahead lookahead;
 
     public LockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator) {
+        this(locksDao, expiryCalculator, null, null, Clock.SYSTEM_CLOCK, false,
+                NoOpJobStoreMetrics.INSTANCE, null);
+    }
+
+    /**
+     * @param triggerLockInDocument when true triggers are locked by moving them
+     *                              to ACQUIRED state in the triggers collection,
+     *                              and the locks collection is used only for jobs
+     * @param metrics               receives lock conflicts and relocks
+     * @param lookahead             told about triggers released by this scheduler, may be null
+     */
+    public LockManager(LocksDao locksDao, ExpiryCalculator expiryCalculator,
+                       TriggerDao triggerDao, TriggerAndJobPersister persister,
+                       Clock clock, boolean triggerLockInDocument, JobStoreMetrics metrics,
+                       TriggerLookahead lookahead) {
         this.locksDao = locksDao;
         this.expiryCalculator = expiryCalculator;
+        this.triggerDao = triggerDao;
+        this.persister = persister;
+        this.clock = clock;
+        this.triggerLockInDocument = triggerLockInDocument;
+        this.metrics = metrics;
+        this.lookahead = lookahead;
+    }
+
+    public boolean isTriggerLockInDocument() {
+        return triggerLockInDocument;
     }
 
     /**
@@ -29,12 +74,236 @@ public class LockManager {
      */
     public void lockJob(JobDetail job) {
         if (job.isConcurrentExectionDisallowed()) {
-            locksDao.lockJob(job);
+            try {
+                locksDao.lockJob(job);
+            } catch (MongoWriteException e) {
+                metrics.recordLockConflict();
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Lock job if it doesn't allow concurrent executions, ignoring conflicts.
+     *
+     * @param job    job to lock
+     * @return false when the job is already locked, true otherwise
+     */
+    public boolean tryLockJob(JobDetail job) {
+        try {
+            lockJob(job);
+            return true;
+        } catch (MongoWriteException e) {
+            return false;
+        }
+    }
+
+    public void unlockJob(JobDetail job) {
+        locksDao.unlockJob(job);
+    }
+
+    public void unlockAcquiredTrigger(OperableTrigger trigger) throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            triggerDao.release(trigger.getKey(), locksDao.instanceId);
+            if (lookahead != null) {
+                lookahead.offer(trigger.getKey(), trigger.getNextFireTime());
+            }
+        } else {
+            locksDao.unlockTrigger(trigger);
+        }
+    }
+
+    /**
+     * Unlock triggers whose fire times were stored with {@link #storeAcquiredTriggers(List)}.
+     *
+     * @param triggers    triggers to unlock
+     */
+    public void unlockReleasedTriggers(List<OperableTrigger> triggers) throws JobPersistenceException {
+        if (triggers.isEmpty()) {
+            return;
+        }
+        List<TriggerKey> keys = new ArrayList<TriggerKey>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            keys.add(trigger.getKey());
+        }
+        if (triggerLockInDocument) {
+            triggerDao.releaseAll(keys, locksDao.instanceId);
+            if (lookahead != null) {
+                for (OperableTrigger trigger : triggers) {
+                    lookahead.offer(trigger.getKey(), trigger.getNextFireTime());
+                }
+            }
+        } else {
+            locksDao.unlockTriggers(keys);
+        }
+    }
+
+    /**
+     * Unlock given triggers at once, if they are still locked by this scheduler.
+     *
+     * @param keys    triggers to unlock
+     */
+    public void unlockTriggers(List<TriggerKey> keys) throws JobPersistenceException {
+        if (keys.isEmpty()) {
+            return;
+        }
+        if (triggerLockInDocument) {
+            triggerDao.releaseAll(keys, locksDao.instanceId);
+            if (lookahead != null) {
+                // fire times of the released triggers aren't known here
+                lookahead.invalidate();
+            }
+        } else {
+            locksDao.unlockTriggers(keys);
+        }
+    }
+
+    /**
+     * Take over all trigger locks of a defunct scheduler which are old enough to expire,
+     * without checking them one by one.
+     *
+     * @param defunctInstanceId    scheduler whose locks to take over
+     * @return number of locks taken over
+     */
+    public long takeOverTriggerLocks(String defunctInstanceId) {
+        Date expiryDate = expiryCalculator.getTriggerLockExpiryDate();
+        if (triggerLockInDocument) {
+            return triggerDao.takeOver(defunctInstanceId, expiryDate, locksDao.instanceId, clock.now());
+        }
+        return locksDao.takeOverTriggerLocks(defunctInstanceId, expiryDate);
+    }
+
+    /**
+     * Find triggers locked by this scheduler in {@link #takeOverTriggerLocks(String)}.
+     *
+     * @param defunctInstanceId    scheduler the locks were taken from
+     */
+    public List<TriggerKey> findTriggersTakenOverFrom(String defunctInstanceId) {
+        if (!triggerLockInDocument) {
+            return locksDao.findTriggerLocksTakenOverFrom(defunctInstanceId);
+        }
+        List<TriggerKey> keys = new LinkedList<TriggerKey>();
+        for (Document doc : triggerDao.findTakenOver(locksDao.instanceId, defunctInstanceId)) {
+            keys.add(Keys.toTriggerKey(doc));
+        }
+        return keys;
+    }
+
+    /**
+     * @return true when given scheduler still holds any trigger locks
+     */
+    public boolean hasTriggerLocks(String instanceId) {
+        if (triggerLockInDocument) {
+            return triggerDao.findAcquiredBy(instanceId).first() != null;
+        }
+        return locksDao.hasTriggerLocks(instanceId);
+    }
+
+    /**
+     * Store fire times of trigger acquired by this scheduler without losing the lock on it.
+     * A trigger locked in its document is updated only while this scheduler still owns it.
+     *
+     * @param trigger    trigger to store
+     */
+    public void storeAcquiredTrigger(OperableTrigger trigger) {
+        if (triggerLockInDocument) {
+            storeAcquiredTriggers(Collections.singletonList(trigger));
+        } else {
+            persister.storeFireTimes(trigger);
+        }
+    }
+
+    /**
+     * Store fire times of triggers acquired by this scheduler without losing the locks on them.
+     * Triggers locked in their documents are updated only while this scheduler still owns them.
+     *
+     * @param triggers    triggers to store
+     * @return errors of triggers that couldn't be stored, by their index
+     */
+    public Map<Integer, String> storeAcquiredTriggers(List<OperableTrigger> triggers) {
+        if (triggerLockInDocument) {
+            return persister.storeAcquiredFireTimes(triggers, locksDao.instanceId, clock.now());
+        }
+        return persister.storeFireTimes(triggers);
+    }
+
+    /**
+     * Try to acquire trigger found by eligibility query.
+     * Works only when triggers are locked in their documents.
+     *
+     * @param triggerDoc         candidate trigger document
+     * @param noLaterThanDate    the trigger must be due to fire not later than this
+     * @return acquired trigger document or null when the trigger is not eligible anymore
+     */
+    public Document tryAcquire(Document triggerDoc, Date noLaterThanDate) {
+        Document acquired = triggerDao.acquire(triggerDoc.get("_id"), noLaterThanDate,
+                locksDao.instanceId, clock.now());
+        if (acquired == null) {
+            metrics.recordLockConflict();
+            log.info("Failed to acquire trigger {}", Keys.toTriggerKey(triggerDoc));
+        }
+        return acquired;
+    }
+
+    /**
+     * Try to acquire candidate trigger taken from {@link TriggerLookahead}.
+     * Works only when triggers are locked in their documents.
+     *
+     * @param key                candidate trigger
+     * @param noLaterThanDate    the trigger must be due to fire not later than this
+     * @return acquired trigger document or null when the trigger is not eligible anymore
+     */
+    public Document tryAcquire(TriggerKey key, Date noLaterThanDate) {
+        Document acquired = triggerDao.acquire(key, noLaterThanDate, locksDao.instanceId, clock.now());
+        if (acquired == null) {
+            metrics.recordLockConflict();
+            log.info("Failed to acquire trigger {}", key);
         }
+        return acquired;
     }
 
-    public void unlockAcquiredTrigger(OperableTrigger trigger) {
-        locksDao.unlockTrigger(trigger);
+    /**
+     * Find triggers acquired so long ago that they may belong to a defunct scheduler.
+     * Works only when triggers are locked in their documents.
+     */
+    public Iterable<Document> findExpiredAcquiredTriggers() {
+        return triggerDao.findAcquiredBefore(expiryCalculator.getTriggerLockExpiryDate());
+    }
+
+    /**
+     * Find triggers locked by this scheduler.
+     */
+    public List<TriggerKey> findOwnTriggersLocks() {
+        if (!triggerLockInDocument) {
+            return locksDao.findOwnTriggersLocks();
+        }
+        List<TriggerKey> keys = new LinkedList<TriggerKey>();
+        for (Document doc : triggerDao.findAcquiredBy(locksDao.instanceId)) {
+            keys.add(Keys.toTriggerKey(doc));
+        }
+        return keys;
+    }
+
+    /**
+     * Reset lock time on own trigger lock.
+     *
+     * @param key    trigger whose lock to refresh
+     * @return true on successful update
+     */
+    public boolean updateOwnLock(TriggerKey key) throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            return triggerDao.updateOwnLock(key, locksDao.instanceId, clock.now());
+        }
+        return locksDao.updateOwnLock(key);
+    }
+
+    /**
+     * Release all triggers left acquired by this scheduler, e.g. after a crash.
+     */
+    public void releaseOwnTriggers() throws JobPersistenceException {
+        if (triggerLockInDocument) {
+            triggerDao.releaseAll(locksDao.instanceId);
+        }
     }
 
     /**
@@ -58,10 +327,18 @@ public class LockManager {
      * @return true when successfully locked, false otherwise
      */
     public boolean tryLock(TriggerKey key) {
+        if (triggerLockInDocument) {
+            if (triggerDao.acquire(key, locksDao.instanceId, clock.now())) {
+                return true;
+            }
+            metrics.recordLockConflict();
+            return false;
+        }
         try {
             locksDao.lockTrigger(key);
             return true;
         } catch (MongoWriteException e) {
+            metrics.recordLockConflict();
             log.info("Failed to lock trigger {}, reason: {}", key, e.getError());
         }
         return false;
@@ -74,7 +351,24 @@ public class LockManager {
      * @return true when successfully relocked
      */
     public boolean relockExpired(TriggerKey key) {
-        Document existingLock = locksDao.findTriggerLock(key);
+        Document existingLock = triggerLockInDocument
+                ? triggerDao.findAcquired(key)
+                : locksDao.findTriggerLock(key);
+        return relockExpired(key, existingLock);
+    }
+
+    /**
+     * Relock acquired trigger if its lock has expired.
+     * Works only when triggers are locked in their documents.
+     *
+     * @param triggerDoc    acquired trigger document
+     * @return true when successfully relocked
+     */
+    public boolean relockExpired(Document triggerDoc) {
+        return relockExpired(Keys.toTriggerKey(triggerDoc), triggerDoc);
+    }
+
+    private boolean relockExpired(TriggerKey key, Document existingLock) {
         if (existingLock != null) {
             if (expiryCalculator.isTriggerLockExpired(existingLock)) {
                 // When a scheduler is defunct then its triggers become expired
@@ -84,7 +378,14 @@ public class LockManager {
                 // Relock may not be successful when some other scheduler has done
                 // it first.
                 log.info("Trigger {} is expired - re-locking", key);
-                return locksDao.relock(key, existingLock.getDate(Constants.LOCK_TIME));
+                Date lockTime = existingLock.getDate(Constants.LOCK_TIME);
+                boolean relocked = triggerLockInDocument
+                        ? triggerDao.relock(key, lockTime, locksDao.instanceId, clock.now())
+                        : locksDao.relock(key, lockTime);
+                if (relocked) {
+                    metrics.recordRelock();
+                }
+                return relocked;
             } else {
                 log.info("Trigger {} hasn't expired yet. Lock time: {}",
                         key, existingLock.getDate(Constants.LOCK_TIME));
@@ -15,6 +15,9 @@ import com.mongodb.MongoException;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
 import com.novemberain.quartz.mongodb.db.MongoConnector;
+import com.novemberain.quartz.mongodb.db.OperationContext;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
+import com.novemberain.quartz.mongodb.trigger.TriggerChangeWatcher;
 import com.novemberain.quartz.mongodb.util.Keys;
 import org.bson.Document;
 import org.quartz.*;
@@ -23,6 +26,8 @@ import org.quartz.Trigger.CompletedExecutionInstruction;
 import org.quartz.Trigger.TriggerState;
 import org.quartz.impl.matchers.GroupMatcher;
 import org.quartz.spi.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.BufferedInputStream;
 import java.io.File;
@@ -30,10 +35,11 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.*;
-import java.util.Map.Entry;
 
 public class MongoDBJobStore implements JobStore, Constants {
 
+    private static final Logger log = LoggerFactory.getLogger(MongoDBJobStore.class);
+
     private MongoStoreAssembler assembler = new MongoStoreAssembler();
 
     MongoConnector mongoConnector;
@@ -49,12 +55,27 @@ public class MongoDBJobStore implements JobStore, Constants {
     String username;
     String password;
     long misfireThreshold = 5000;
+    long misfireSweepIntervalMillis = 0;
+    int maxMisfiresToHandleAtATime = 20;
     long triggerTimeoutMillis = 10 * 60 * 1000L;
     long jobTimeoutMillis = 10 * 60 * 1000L;
     private boolean clustered = false;
     long clusterCheckinIntervalMillis = 7500;
+    int triggerBucketCount = 0;
+    boolean watchTriggerChanges = false;
     boolean jobDataAsBase64 = true;
+    boolean triggerLockInDocument = false;
+    long triggerLookaheadMillis = 0;
+    long triggerLookaheadReloadMillis = 1000;
+    boolean approximateCounts = false;
+    long calendarMaxStalenessMillis = 0;
     String checkInErrorHandler = null;
+    String metricsClass = null;
+    String jobDataSerializerClass = null;
+    String triggerPropertiesConverterClasses = null;
+    int bulkWriteChunkSize = 1000;
+    long slowCommandThresholdMillis = 0;
+    JobStoreMetrics metrics;
 
     // Options for the Mongo client.
     Boolean mongoOptionSocketKeepAlive;
@@ -116,9 +137,17 @@ public class MongoDBJobStore implements JobStore, Constants {
                 throw new SchedulerConfigException("Cannot recover triggers", e);
             }
             assembler.checkinExecutor.start();
+            assembler.defunctSchedulerRecoverer.start();
         }
 
         ensureIndexes();
+
+        if (assembler.misfireSweeper != null) {
+            assembler.misfireSweeper.start();
+        }
+        if (assembler.triggerChangeWatcher != null) {
+            assembler.triggerChangeWatcher.start();
+        }
     }
 
     private Properties loadProperties(ClassLoadHelper loadHelper) {
@@ -159,6 +188,13 @@ public class MongoDBJobStore implements JobStore, Constants {
     @Override
     public void shutdown() {
         assembler.checkinExecutor.shutdown();
+        assembler.defunctSchedulerRecoverer.shutdown();
+        if (assembler.misfireSweeper != null) {
+            assembler.misfireSweeper.shutdown();
+        }
+        if (assembler.triggerChangeWatcher != null) {
+            assembler.triggerChangeWatcher.shutdown();
+        }
         assembler.mongoConnector.close();
     }
 
@@ -200,6 +236,25 @@ public class MongoDBJobStore implements JobStore, Constants {
         this.clusterCheckinIntervalMillis = clusterCheckinInterval;
     }
 
+    /**
+     * Partition triggers into this number of buckets, spread over live
+     * instances of the cluster, so each instance acquires triggers mostly
+     * from its own buckets. Must be the same on all instances.
+     * 0, the default, disables partitioning. Ignored when not clustered.
+     */
+    public void setTriggerBucketCount(int triggerBucketCount) {
+        this.triggerBucketCount = triggerBucketCount;
+    }
+
+    /**
+     * Watch the triggers collection with a change stream, so triggers stored
+     * by other instances of the cluster are signaled to this one. Needs a
+     * replica set. Defaults to false. Ignored when not clustered.
+     */
+    public void setWatchTriggerChanges(boolean watchTriggerChanges) {
+        this.watchTriggerChanges = watchTriggerChanges;
+    }
+
     public boolean isJobDataAsBase64() {
 
         return jobDataAsBase64;
@@ -227,6 +282,45 @@ public class MongoDBJobStore implements JobStore, Constants {
         this.jobDataAsBase64 = jobDataAsBase64;
     }
 
+    public String getJobDataSerializerClass() {
+        return jobDataSerializerClass;
+    }
+
+    /**
+     * Class name of {@link com.novemberain.quartz.mongodb.util.JobDataSerializer}
+     * implementation, e.g. {@link com.novemberain.quartz.mongodb.util.CompactJobDataSerializer}.
+     * When set, job data is stored in binary '{@value Constants#JOB_DATA_BINARY}' field
+     * instead, and job data stored before is read as configured by
+     * {@link #setJobDataAsBase64(boolean)} until it's stored again.
+     */
+    public void setJobDataSerializerClass(String jobDataSerializerClass) {
+        this.jobDataSerializerClass = jobDataSerializerClass;
+    }
+
+    public int getBulkWriteChunkSize() {
+        return bulkWriteChunkSize;
+    }
+
+    /**
+     * Max number of jobs or triggers written at once by
+     * {@link #storeJobsAndTriggers(Map, boolean)}.
+     */
+    public void setBulkWriteChunkSize(int bulkWriteChunkSize) {
+        this.bulkWriteChunkSize = bulkWriteChunkSize;
+    }
+
+    public String getTriggerPropertiesConverterClasses() {
+        return triggerPropertiesConverterClasses;
+    }
+
+    /**
+     * Comma separated class names of {@link com.novemberain.quartz.mongodb.trigger.TriggerPropertiesConverter}
+     * implementations of custom trigger types. They need a public no-arg constructor.
+     */
+    public void setTriggerPropertiesConverterClasses(String triggerPropertiesConverterClasses) {
+        this.triggerPropertiesConverterClasses = triggerPropertiesConverterClasses;
+    }
+
     public String getCheckInErrorHandler() {
         return checkInErrorHandler;
     }
@@ -235,97 +329,121 @@ public class MongoDBJobStore implements JobStore, Constants {
         this.checkInErrorHandler = checkInErrorHandler;
     }
 
+    public String getMetricsClass() {
+        return metricsClass;
+    }
+
+    /**
+     * Class name of {@link JobStoreMetrics} implementation to create,
+     * e.g. {@link com.novemberain.quartz.mongodb.metrics.MicrometerJobStoreMetrics}.
+     * Metrics are ignored by default.
+     */
+    public void setMetricsClass(String metricsClass) {
+        this.metricsClass = metricsClass;
+    }
+
+    public long getSlowCommandThresholdMillis() {
+        return slowCommandThresholdMillis;
+    }
+
+    /**
+     * MongoDB commands taking at least this long are logged and reported to metrics
+     * with the shape of their filter. 0, the default, disables it.
+     */
+    public void setSlowCommandThresholdMillis(long slowCommandThresholdMillis) {
+        this.slowCommandThresholdMillis = slowCommandThresholdMillis;
+    }
+
+    /**
+     * Use given metrics instead of creating one from {@link #setMetricsClass(String)}.
+     * Must be called before {@link #initialize(ClassLoadHelper, SchedulerSignaler)}.
+     */
+    public void setMetrics(JobStoreMetrics metrics) {
+        this.metrics = metrics;
+    }
+
     /**
      * Job and Trigger storage Methods
      */
     @Override
     public void storeJobAndTrigger(JobDetail newJob, OperableTrigger newTrigger)
             throws JobPersistenceException {
-        assembler.persister.storeJobAndTrigger(newJob, newTrigger);
+        track("storeJobAndTrigger", () -> assembler.persister.storeJobAndTrigger(newJob, newTrigger));
     }
 
     @Override
     public void storeJob(JobDetail newJob, boolean replaceExisting)
             throws JobPersistenceException {
-        assembler.jobDao.storeJobInMongo(newJob, replaceExisting);
+        track("storeJob", () -> assembler.jobDao.storeJobInMongo(newJob, replaceExisting));
     }
 
     @Override
     public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace)
             throws JobPersistenceException {
-        for (Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
-
-            JobDetail newJob = entry.getKey();
-            Set<? extends Trigger> triggers = entry.getValue();
-            assembler.jobDao.storeJobInMongo(newJob, replace);
-
-            // Store all triggers of the job.
-            for (Trigger newTrigger : triggers) {
-                // Simply cast to OperableTrigger as in QuartzScheduler.scheduleJobs
-                // http://www.programcreek.com/java-api-examples/index.php?api=org.quartz.spi.OperableTrigger
-                assembler.persister.storeTrigger((OperableTrigger) newTrigger, replace);
-            }
-        }
+        track("storeJobsAndTriggers", () -> assembler.persister.storeJobsAndTriggers(
+                triggersAndJobs, replace, bulkWriteChunkSize));
     }
 
     @Override
     public boolean removeJob(JobKey jobKey) throws JobPersistenceException {
-        return assembler.persister.removeJob(jobKey);
+        return track("removeJob", () -> assembler.persister.removeJob(jobKey));
     }
 
     @Override
     public boolean removeJobs(List<JobKey> jobKeys) throws JobPersistenceException {
-        return assembler.persister.removeJobs(jobKeys);
+        return track("removeJobs", () -> assembler.persister.removeJobs(jobKeys));
     }
 
     @Override
     public JobDetail retrieveJob(JobKey jobKey) throws JobPersistenceException {
-        return assembler.jobDao.retrieveJob(jobKey);
+        return track("retrieveJob", () -> assembler.jobDao.retrieveJob(jobKey));
     }
 
     @Override
     public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting)
             throws JobPersistenceException {
-        assembler.persister.storeTrigger(newTrigger, replaceExisting);
+        track("storeTrigger", () -> assembler.persister.storeTrigger(newTrigger, replaceExisting));
     }
 
     @Override
     public boolean removeTrigger(TriggerKey triggerKey) throws JobPersistenceException {
-        return assembler.persister.removeTrigger(triggerKey);
+        return track("removeTrigger", () -> assembler.persister.removeTrigger(triggerKey));
     }
 
     @Override
     public boolean removeTriggers(List<TriggerKey> triggerKeys) throws JobPersistenceException {
-        return assembler.persister.removeTriggers(triggerKeys);
+        return track("removeTriggers", () -> assembler.persister.removeTriggers(triggerKeys));
     }
 
     @Override
     public boolean replaceTrigger(TriggerKey triggerKey, OperableTrigger newTrigger) throws JobPersistenceException {
-        return assembler.persister.replaceTrigger(triggerKey, newTrigger);
+        return track("replaceTrigger", () -> assembler.persister.replaceTrigger(triggerKey, newTrigger));
     }
 
     @Override
     public OperableTrigger retrieveTrigger(TriggerKey triggerKey) throws JobPersistenceException {
-        return assembler.triggerDao.getTrigger(triggerKey);
+        return track("retrieveTrigger", () -> assembler.triggerDao.getTrigger(triggerKey));
     }
 
     @Override
     public boolean checkExists(JobKey jobKey) throws JobPersistenceException {
-        return assembler.jobDao.exists(jobKey);
+        return track("checkExists", () -> assembler.jobDao.exists(jobKey));
     }
 
     @Override
     public boolean checkExists(TriggerKey triggerKey) throws JobPersistenceException {
-        return assembler.triggerDao.exists(Keys.toFilter(triggerKey));
+        return track("checkExists", () -> assembler.triggerDao.exists(Keys.toFilter(triggerKey)));
     }
 
     @Override
     public void clearAllSchedulingData() throws JobPersistenceException {
-        assembler.jobDao.clear();
-        assembler.triggerDao.clear();
-        assembler.calendarDao.clear();
-        assembler.pausedJobGroupsDao.remove();
-        assembler.pausedTriggerGroupsDao.remove();
+        track("clearAllSchedulingData", () -> {
+            assembler.jobDao.clear();
+            assembler.triggerDao.clear();
+            assembler.calendarDao.clear();
+            assembler.pausedJobGroupsDao.remove();
+            assembler.pausedTriggerGroupsDao.remove();
+        });
     }
 
     @Override
@@ -336,92 +454,100 @@ public class MongoDBJobStore implements JobStore, Constants {
             throw new UnsupportedOperationException("Updating triggers is not supported.");
         }
 
-        assembler.calendarDao.store(name, calendar);
+        track("storeCalendar", () -> assembler.calendarDao.store(name, calendar));
     }
 
     @Override
     public boolean removeCalendar(String calName) throws JobPersistenceException {
-        return assembler.calendarDao.remove(calName);
+        return track("removeCalendar", () -> assembler.calendarDao.remove(calName));
     }
 
     @Override
     public Calendar retrieveCalendar(String calName) throws JobPersistenceException {
-        return assembler.calendarDao.retrieveCalendar(calName);
+        // cached calendars are shared, don't let callers modify them
+        Calendar calendar = track("retrieveCalendar", () -> assembler.calendarDao.retrieveCalendar(calName));
+        return calendar == null ? null : (Calendar) calendar.clone();
     }
 
     @Override
     public int getNumberOfJobs() throws JobPersistenceException {
-        return assembler.jobDao.getCount();
+        return track("getNumberOfJobs", () -> approximateCounts
+                ? assembler.jobDao.getEstimatedCount()
+                : assembler.jobDao.getCount());
     }
 
     @Override
     public int getNumberOfTriggers() throws JobPersistenceException {
-        return assembler.triggerDao.getCount();
+        return track("getNumberOfTriggers", () -> approximateCounts
+                ? assembler.triggerDao.getEstimatedCount()
+                : assembler.triggerDao.getCount());
     }
 
     @Override
     public int getNumberOfCalendars() throws JobPersistenceException {
-        return assembler.calendarDao.getCount();
+        return track("getNumberOfCalendars", () -> approximateCounts
+                ? assembler.calendarDao.getEstimatedCount()
+                : assembler.calendarDao.getCount());
     }
 
     @Override
     public Set<JobKey> getJobKeys(GroupMatcher<JobKey> matcher) throws JobPersistenceException {
-        return assembler.jobDao.getJobKeys(matcher);
+        return track("getJobKeys", () -> assembler.jobDao.getJobKeys(matcher));
     }
 
     @Override
     public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException {
-        return assembler.triggerDao.getTriggerKeys(matcher);
+        return track("getTriggerKeys", () -> assembler.triggerDao.getTriggerKeys(matcher));
     }
 
     @Override
     public List<String> getJobGroupNames() throws JobPersistenceException {
-        return assembler.jobDao.getGroupNames();
+        return track("getJobGroupNames", () -> assembler.jobDao.getGroupNames());
     }
 
     @Override
     public List<String> getTriggerGroupNames() throws JobPersistenceException {
-        return assembler.triggerDao.getGroupNames();
+        return track("getTriggerGroupNames", () -> assembler.triggerDao.getGroupNames());
     }
 
     @Override
     public List<String> getCalendarNames() throws JobPersistenceException {
-        return assembler.calendarDao.retrieveCalendarNames();
+        return track("getCalendarNames", () -> assembler.calendarDao.retrieveCalendarNames());
     }
 
     @Override
     public List<OperableTrigger> getTriggersForJob(JobKey jobKey) throws JobPersistenceException {
-        return assembler.persister.getTriggersForJob(jobKey);
+        return track("getTriggersForJob", () -> assembler.persister.getTriggersForJob(jobKey));
     }
 
     @Override
     public TriggerState getTriggerState(TriggerKey triggerKey) throws JobPersistenceException {
-        return assembler.triggerStateManager.getState(triggerKey);
+        return track("getTriggerState", () -> assembler.triggerStateManager.getState(triggerKey));
     }
 
     @Override
     public void pauseTrigger(TriggerKey triggerKey) throws JobPersistenceException {
-        assembler.triggerStateManager.pause(triggerKey);
+        track("pauseTrigger", () -> assembler.triggerStateManager.pause(triggerKey));
     }
 
     @Override
     public Collection<String> pauseTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException {
-        return assembler.triggerStateManager.pause(matcher);
+        return track("pauseTriggers", () -> assembler.triggerStateManager.pause(matcher));
     }
 
     @Override
     public void resumeTrigger(TriggerKey triggerKey) throws JobPersistenceException {
-        assembler.triggerStateManager.resume(triggerKey);
+        track("resumeTrigger", () -> assembler.triggerStateManager.resume(triggerKey));
     }
 
     @Override
     public Collection<String> resumeTriggers(GroupMatcher<TriggerKey> matcher) throws JobPersistenceException {
-        return assembler.triggerStateManager.resume(matcher);
+        return track("resumeTriggers", () -> assembler.triggerStateManager.resume(matcher));
     }
 
     @Override
     public Set<String> getPausedTriggerGroups() throws JobPersistenceException {
-        return assembler.triggerStateManager.getPausedTriggerGroups();
+        return track("getPausedTriggerGroups", () -> assembler.triggerStateManager.getPausedTriggerGroups());
     }
 
     // only for tests
@@ -431,60 +557,118 @@ public class MongoDBJobStore implements JobStore, Constants {
 
     @Override
     public void pauseAll() throws JobPersistenceException {
-        assembler.triggerStateManager.pauseAll();
+        track("pauseAll", () -> assembler.triggerStateManager.pauseAll());
     }
 
     @Override
     public void resumeAll() throws JobPersistenceException {
-        assembler.triggerStateManager.resumeAll();
+        track("resumeAll", () -> assembler.triggerStateManager.resumeAll());
     }
 
     @Override
     public void pauseJob(JobKey jobKey) throws JobPersistenceException {
-        assembler.triggerStateManager.pauseJob(jobKey);
+        track("pauseJob", () -> assembler.triggerStateManager.pauseJob(jobKey));
     }
 
     @Override
     public Collection<String> pauseJobs(GroupMatcher<JobKey> groupMatcher) throws JobPersistenceException {
-        return assembler.triggerStateManager.pauseJobs(groupMatcher);
+        return track("pauseJobs", () -> assembler.triggerStateManager.pauseJobs(groupMatcher));
     }
 
     @Override
     public void resumeJob(JobKey jobKey) throws JobPersistenceException {
-        assembler.triggerStateManager.resume(jobKey);
+        track("resumeJob", () -> assembler.triggerStateManager.resume(jobKey));
     }
 
     @Override
     public Collection<String> resumeJobs(GroupMatcher<JobKey> groupMatcher) throws JobPersistenceException {
-        return assembler.triggerStateManager.resumeJobs(groupMatcher);
+        return track("resumeJobs", () -> assembler.triggerStateManager.resumeJobs(groupMatcher));
     }
 
     @Override
     public List<OperableTrigger> acquireNextTriggers(long noLaterThan, int maxCount, long timeWindow)
             throws JobPersistenceException {
-        return assembler.triggerRunner.acquireNext(noLaterThan, maxCount, timeWindow);
+        TriggerChangeWatcher watcher = assembler.triggerChangeWatcher;
+        if (watcher != null) {
+            watcher.onAcquiring();
+        }
+        List<OperableTrigger> acquired = track(JobStoreMetrics.ACQUIRE_NEXT_TRIGGERS,
+                () -> assembler.triggerRunner.acquireNext(noLaterThan, maxCount, timeWindow));
+        if (watcher != null) {
+            watcher.onAcquired(noLaterThan, acquired);
+        }
+        return acquired;
     }
 
     @Override
     public void releaseAcquiredTrigger(OperableTrigger trigger) {
-        assembler.lockManager.unlockAcquiredTrigger(trigger);
+        try {
+            track("releaseAcquiredTrigger", () -> assembler.lockManager.unlockAcquiredTrigger(trigger));
+        } catch (JobPersistenceException e) {
+            // recovered once its lock expires
+            log.error("Could not release trigger " + trigger.getKey(), e);
+        }
     }
 
     @Override
     public void resetTriggerFromErrorState(TriggerKey triggerKey) {
-        assembler.triggerStateManager.resetTriggerFromErrorState(triggerKey);
+        track("resetTriggerFromErrorState",
+                () -> assembler.triggerStateManager.resetTriggerFromErrorState(triggerKey));
     }
 
     @Override
     public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers)
             throws JobPersistenceException {
-        return assembler.triggerRunner.triggersFired(triggers);
+        List<TriggerFiredResult> results = track(JobStoreMetrics.TRIGGERS_FIRED,
+                () -> assembler.triggerRunner.triggersFired(triggers));
+        recordFireLags(results);
+        return results;
     }
 
     @Override
     public void triggeredJobComplete(OperableTrigger trigger, JobDetail job,
                                      CompletedExecutionInstruction triggerInstCode) {
-        assembler.jobCompleteHandler.jobComplete(trigger, job, triggerInstCode);
+        track(JobStoreMetrics.TRIGGERED_JOB_COMPLETE,
+                () -> assembler.jobCompleteHandler.jobComplete(trigger, job, triggerInstCode));
+    }
+
+    private interface StoreCall<T, E extends Exception> {
+        T call() throws E;
+    }
+
+    private interface StoreAction<E extends Exception> {
+        void run() throws E;
+    }
+
+    /**
+     * Run the call attributing database commands it sends to given operation.
+     */
+    private <T, E extends Exception> T track(String operation, StoreCall<T, E> call) throws E {
+        OperationContext context = assembler.commandTracker.begin(operation);
+        try {
+            return call.call();
+        } finally {
+            assembler.commandTracker.end(context);
+        }
+    }
+
+    private <E extends Exception> void track(String operation, StoreAction<E> action) throws E {
+        OperationContext context = assembler.commandTracker.begin(operation);
+        try {
+            action.run();
+        } finally {
+            assembler.commandTracker.end(context);
+        }
+    }
+
+    private void recordFireLags(List<TriggerFiredResult> results) {
+        for (TriggerFiredResult result : results) {
+            TriggerFiredBundle bundle = result.getTriggerFiredBundle();
+            if (bundle != null && bundle.getScheduledFireTime() != null) {
+                assembler.metrics.recordFireLag(
+                        bundle.getFireTime().getTime() - bundle.getScheduledFireTime().getTime());
+            }
+        }
     }
 
     @Override
@@ -551,6 +735,21 @@ public class MongoDBJobStore implements JobStore, Constants {
         this.misfireThreshold = misfireThreshold;
     }
 
+    /**
+     * Apply misfire instructions in a background sweep with this interval,
+     * instead of during acquisition. 0, the default, disables the sweep.
+     */
+    public void setMisfireSweepIntervalMillis(long misfireSweepIntervalMillis) {
+        this.misfireSweepIntervalMillis = misfireSweepIntervalMillis;
+    }
+
+    /**
+     * Max number of misfired triggers handled by the sweep in one batch. Defaults to 20.
+     */
+    public void setMaxMisfiresToHandleAtATime(int maxMisfiresToHandleAtATime) {
+        this.maxMisfiresToHandleAtATime = maxMisfiresToHandleAtATime;
+    }
+
     public void setTriggerTimeoutMillis(long triggerTimeoutMillis) {
         this.triggerTimeoutMillis = triggerTimeoutMillis;
     }
@@ -559,6 +758,58 @@ public class MongoDBJobStore implements JobStore, Constants {
         this.jobTimeoutMillis = jobTimeoutMillis;
     }
 
+    /**
+     * Lock triggers by moving them to ACQUIRED state in their own documents,
+     * so each trigger is acquired in a single round trip and the locks collection
+     * is used only for jobs. All nodes in a cluster must use the same setting.
+     *
+     * @param triggerLockInDocument true to lock triggers in place, defaults to false
+     */
+    public void setTriggerLockInDocument(boolean triggerLockInDocument) {
+        this.triggerLockInDocument = triggerLockInDocument;
+    }
+
+    /**
+     * Keep keys of triggers due within this window in memory and acquire triggers
+     * from there, instead of querying them on each acquisition. Should be longer than
+     * {@code org.quartz.scheduler.idleWaitTime}, or triggers are queried as before.
+     * Works only with {@link #setTriggerLockInDocument(boolean) triggerLockInDocument}.
+     * 0, the default, disables the lookahead.
+     */
+    public void setTriggerLookaheadMillis(long triggerLookaheadMillis) {
+        this.triggerLookaheadMillis = triggerLookaheadMillis;
+    }
+
+    /**
+     * How often the lookahead is loaded again, to pick up triggers changed by other
+     * instances. Can be raised when watching trigger changes. Defaults to 1000 ms.
+     */
+    public void setTriggerLookaheadReloadMillis(long triggerLookaheadReloadMillis) {
+        this.triggerLookaheadReloadMillis = triggerLookaheadReloadMillis;
+    }
+
+    /**
+     * Report numbers of jobs, triggers and calendars from collection metadata
+     * instead of counting documents. Counts may be off after an unclean shutdown
+     * or while chunks migrate in a sharded cluster.
+     *
+     * @param approximateCounts true to use estimated counts, defaults to false
+     */
+    public void setApproximateCounts(boolean approximateCounts) {
+        this.approximateCounts = approximateCounts;
+    }
+
+    /**
+     * Deserialized calendars are cached. By default the version stamp of a cached
+     * calendar is checked on each use, so changes made by other nodes are seen
+     * immediately. A positive value skips the check for that many millis.
+     *
+     * @param calendarMaxStalenessMillis how long a cached calendar is used without checking
+     */
+    public void setCalendarMaxStalenessMillis(long calendarMaxStalenessMillis) {
+        this.calendarMaxStalenessMillis = calendarMaxStalenessMillis;
+    }
+
     /**
      * Initializes the indexes for the scheduler collections.
      *
@@ -578,8 +829,15 @@ public class MongoDBJobStore implements JobStore, Constants {
             assembler.jobDao.createIndex();
             assembler.triggerDao.createIndex();
             assembler.locksDao.createIndex(isClustered());
+            if (!isClustered()) {
+                assembler.lockManager.releaseOwnTriggers();
+            }
             assembler.calendarDao.createIndex();
             assembler.schedulerDao.createIndex();
+            if (assembler.triggerBuckets != null) {
+                assembler.triggerDao.createBucketIndex();
+                assembler.triggerDao.assignBuckets(assembler.triggerBuckets.getBucketCount());
+            }
 
             try {
                 // Drop the old indexes that were declared as name then group rather than group then name
@@ -591,6 +849,8 @@ public class MongoDBJobStore implements JobStore, Constants {
             }
         } catch (MongoException e) {
             throw new SchedulerConfigException("Error while initializing the indexes", e);
+        } catch (JobPersistenceException e) {
+            throw new SchedulerConfigException("Cannot release own triggers", e);
         }
     }
 
@@ -5,16 +5,26 @@ import com.novemberain.quartz.mongodb.cluster.*;
 import com.novemberain.quartz.mongodb.dao.*;
 import com.novemberain.quartz.mongodb.db.MongoConnector;
 import com.novemberain.quartz.mongodb.db.MongoConnectorBuilder;
+import com.novemberain.quartz.mongodb.db.CommandTracker;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
+import com.novemberain.quartz.mongodb.metrics.NoOpJobStoreMetrics;
 import com.novemberain.quartz.mongodb.trigger.MisfireHandler;
+import com.novemberain.quartz.mongodb.trigger.MisfireSweeper;
+import com.novemberain.quartz.mongodb.trigger.TriggerChangeWatcher;
 import com.novemberain.quartz.mongodb.trigger.TriggerConverter;
+import com.novemberain.quartz.mongodb.trigger.TriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
+import com.novemberain.quartz.mongodb.util.CalendarCache;
 import com.novemberain.quartz.mongodb.util.Clock;
 import com.novemberain.quartz.mongodb.util.ExpiryCalculator;
+import com.novemberain.quartz.mongodb.util.JobDataSerializer;
 import com.novemberain.quartz.mongodb.util.QueryHelper;
 import org.bson.Document;
 import org.quartz.SchedulerConfigException;
 import org.quartz.spi.ClassLoadHelper;
 import org.quartz.spi.SchedulerSignaler;
 
+import java.lang.reflect.InvocationTargetException;
 import java.util.Properties;
 
 public class MongoStoreAssembler {
@@ -36,6 +46,15 @@ public class MongoStoreAssembler {
 
     public TriggerRecoverer triggerRecoverer;
     public CheckinExecutor checkinExecutor;
+    public ClusterMembership clusterMembership;
+    public TriggerBuckets triggerBuckets;
+    public DefunctSchedulerRecoverer defunctSchedulerRecoverer;
+    public MisfireSweeper misfireSweeper;
+    public TriggerChangeWatcher triggerChangeWatcher;
+    public TriggerLookahead triggerLookahead;
+
+    public JobStoreMetrics metrics;
+    public CommandTracker commandTracker;
 
     private QueryHelper queryHelper = new QueryHelper();
     private TriggerConverter triggerConverter;
@@ -44,27 +63,39 @@ public class MongoStoreAssembler {
                       SchedulerSignaler signaler, Properties quartzProps)
         throws SchedulerConfigException, ClassNotFoundException,
         IllegalAccessException, InstantiationException {
+        metrics = createMetrics(jobStore, loadHelper);
+        commandTracker = new CommandTracker(metrics, jobStore.slowCommandThresholdMillis);
+
         mongoConnector = createMongoConnector(jobStore);
 
-        JobDataConverter jobDataConverter = new JobDataConverter(jobStore.isJobDataAsBase64());
+        JobDataConverter jobDataConverter = new JobDataConverter(jobStore.isJobDataAsBase64(),
+                createJobDataSerializer(jobStore, loadHelper));
 
         jobDao = createJobDao(jobStore, loadHelper, jobDataConverter);
 
-        triggerConverter = new TriggerConverter(jobDao, jobDataConverter);
+        int bucketCount = jobStore.isClustered() ? jobStore.triggerBucketCount : 0;
+        triggerConverter = new TriggerConverter(jobDao, jobDataConverter, bucketCount);
+        registerTriggerPropertiesConverters(jobStore, loadHelper);
 
         triggerDao = createTriggerDao(jobStore);
+        triggerLookahead = createTriggerLookahead(jobStore);
         calendarDao = createCalendarDao(jobStore);
         locksDao = createLocksDao(jobStore);
         pausedJobGroupsDao = createPausedJobGroupsDao(jobStore);
         pausedTriggerGroupsDao = createPausedTriggerGroupsDao(jobStore);
         schedulerDao = createSchedulerDao(jobStore);
+        clusterMembership = new ClusterMembership(schedulerDao, Clock.SYSTEM_CLOCK);
+        if (bucketCount > 0) {
+            triggerBuckets = new TriggerBuckets(bucketCount, jobStore.instanceId,
+                    clusterMembership, Clock.SYSTEM_CLOCK);
+        }
 
         persister = createTriggerAndJobPersister();
 
-        jobCompleteHandler = createJobCompleteHandler(signaler);
-
         lockManager = createLockManager(jobStore);
 
+        jobCompleteHandler = createJobCompleteHandler(signaler);
+
         triggerStateManager = createTriggerStateManager();
 
         MisfireHandler misfireHandler = createMisfireHandler(jobStore, signaler);
@@ -72,13 +103,20 @@ public class MongoStoreAssembler {
         RecoveryTriggerFactory recoveryTriggerFactory
                 = new RecoveryTriggerFactory(jobStore.instanceId);
 
-        triggerRecoverer = new TriggerRecoverer(locksDao, persister,
+        triggerRecoverer = new TriggerRecoverer(persister,
                 lockManager, triggerDao, jobDao, recoveryTriggerFactory,
-                misfireHandler);
+                misfireHandler, metrics);
+
+        triggerRunner = createTriggerRunner(jobStore, misfireHandler);
 
-        triggerRunner = createTriggerRunner(misfireHandler);
+        misfireSweeper = createMisfireSweeper(jobStore, misfireHandler, signaler);
+
+        triggerChangeWatcher = createTriggerChangeWatcher(jobStore, signaler);
 
         checkinExecutor = createCheckinExecutor(jobStore, loadHelper, quartzProps);
+
+        defunctSchedulerRecoverer = new DefunctSchedulerRecoverer(clusterMembership, schedulerDao,
+                lockManager, triggerRecoverer, jobStore.clusterCheckinIntervalMillis);
     }
 
     private CheckinExecutor createCheckinExecutor(MongoDBJobStore jobStore, ClassLoadHelper loadHelper,
@@ -99,11 +137,63 @@ public class MongoStoreAssembler {
             aClass = loadHelper.loadClass(jobStore.getCheckInErrorHandler());
         }
         errorHandler = (Runnable) aClass.newInstance();
-        return new CheckinTask(schedulerDao, errorHandler);
+        return new CheckinTask(schedulerDao, clusterMembership, triggerBuckets, errorHandler);
+    }
+
+    private JobStoreMetrics createMetrics(MongoDBJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.metrics != null) {
+            return jobStore.metrics;
+        }
+        if (jobStore.getMetricsClass() == null) {
+            return NoOpJobStoreMetrics.INSTANCE;
+        }
+        return (JobStoreMetrics) newInstance(loadHelper, jobStore.getMetricsClass());
+    }
+
+    /**
+     * Create instance of a configured class with its no-arg constructor.
+     * Failures of the constructor are reported with their own cause.
+     */
+    private static Object newInstance(ClassLoadHelper loadHelper, String className)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        try {
+            return loadHelper.loadClass(className).getDeclaredConstructor().newInstance();
+        } catch (NoSuchMethodException e) {
+            InstantiationException ie = new InstantiationException(className + " has no constructor without arguments");
+            ie.initCause(e);
+            throw ie;
+        } catch (InvocationTargetException e) {
+            InstantiationException ie = new InstantiationException("Constructor of " + className + " failed: "
+                    + e.getCause());
+            ie.initCause(e.getCause());
+            throw ie;
+        }
+    }
+
+    private JobDataSerializer createJobDataSerializer(MongoDBJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.getJobDataSerializerClass() == null) {
+            return null;
+        }
+        return (JobDataSerializer) newInstance(loadHelper, jobStore.getJobDataSerializerClass());
+    }
+
+    private void registerTriggerPropertiesConverters(MongoDBJobStore jobStore, ClassLoadHelper loadHelper)
+        throws ClassNotFoundException, IllegalAccessException, InstantiationException {
+        if (jobStore.getTriggerPropertiesConverterClasses() == null) {
+            return;
+        }
+        for (String className : jobStore.getTriggerPropertiesConverterClasses().split(",")) {
+            triggerConverter.registerPropertiesConverter(
+                    (TriggerPropertiesConverter) newInstance(loadHelper, className.trim()));
+        }
     }
 
     private CalendarDao createCalendarDao(MongoDBJobStore jobStore) {
-        return new CalendarDao(getCollection(jobStore, "calendars"));
+        CalendarCache calendarCache = new CalendarCache(Clock.SYSTEM_CLOCK,
+                jobStore.calendarMaxStalenessMillis, CalendarCache.DEFAULT_MAX_SIZE);
+        return new CalendarDao(getCollection(jobStore, "calendars"), calendarCache);
     }
 
     private JobDao createJobDao(MongoDBJobStore jobStore, ClassLoadHelper loadHelper, JobDataConverter jobDataConverter) {
@@ -112,7 +202,7 @@ public class MongoStoreAssembler {
     }
 
     private JobCompleteHandler createJobCompleteHandler(SchedulerSignaler signaler) {
-        return new JobCompleteHandler(persister, signaler, jobDao, locksDao, triggerDao);
+        return new JobCompleteHandler(persister, signaler, jobDao, lockManager, triggerDao);
     }
 
     private LocksDao createLocksDao(MongoDBJobStore jobStore) {
@@ -120,17 +210,23 @@ public class MongoStoreAssembler {
     }
 
     private LockManager createLockManager(MongoDBJobStore jobStore) {
-        ExpiryCalculator expiryCalculator = new ExpiryCalculator(schedulerDao,
+        ExpiryCalculator expiryCalculator = new ExpiryCalculator(clusterMembership,
                 Clock.SYSTEM_CLOCK, jobStore.jobTimeoutMillis, jobStore.triggerTimeoutMillis);
-        return new LockManager(locksDao, expiryCalculator);
+        if (!jobStore.isClustered()) {
+            return new LocalLockManager(locksDao, expiryCalculator, triggerDao, persister,
+                    Clock.SYSTEM_CLOCK, jobStore.triggerLockInDocument, metrics, triggerLookahead,
+                    jobStore.jobTimeoutMillis);
+        }
+        return new LockManager(locksDao, expiryCalculator, triggerDao, persister,
+                Clock.SYSTEM_CLOCK, jobStore.triggerLockInDocument, metrics, triggerLookahead);
     }
 
     private MisfireHandler createMisfireHandler(MongoDBJobStore jobStore, SchedulerSignaler signaler) {
-        return new MisfireHandler(calendarDao, signaler, jobStore.misfireThreshold);
+        return new MisfireHandler(calendarDao, signaler, jobStore.misfireThreshold, metrics);
     }
 
     private MongoConnector createMongoConnector(MongoDBJobStore jobStore) throws SchedulerConfigException {
-        return MongoConnectorBuilder.builder()
+        MongoConnectorBuilder builder = MongoConnectorBuilder.builder()
                 .withConnector(jobStore.mongoConnector)
                 .withDatabase(jobStore.mongoDatabase)
                 .withClient(jobStore.mongo)
@@ -146,8 +242,12 @@ public class MongoStoreAssembler {
                 .withThreadsAllowedToBlockForConnectionMultiplier(
                         jobStore.mongoOptionThreadsAllowedToBlockForConnectionMultiplier)
                 .withSSL(jobStore.mongoOptionEnableSSL, jobStore.mongoOptionSslInvalidHostNameAllowed)
-                .withWriteTimeout(jobStore.mongoOptionWriteConcernTimeoutMillis)
-                .build();
+                .withWriteTimeout(jobStore.mongoOptionWriteConcernTimeoutMillis);
+        if (metrics != NoOpJobStoreMetrics.INSTANCE || jobStore.slowCommandThresholdMillis > 0) {
+            // measuring command sizes isn't free, do it only when someone listens
+            builder.withCommandListener(commandTracker);
+        }
+        return builder.build();
     }
 
     private PausedJobGroupsDao createPausedJobGroupsDao(MongoDBJobStore jobStore) {
@@ -165,21 +265,51 @@ public class MongoStoreAssembler {
     }
 
     private TriggerAndJobPersister createTriggerAndJobPersister() {
-        return new TriggerAndJobPersister(triggerDao, jobDao, triggerConverter);
+        return new TriggerAndJobPersister(triggerDao, jobDao, triggerConverter, triggerLookahead);
     }
 
     private TriggerDao createTriggerDao(MongoDBJobStore jobStore) {
-        return new TriggerDao(getCollection(jobStore, "triggers"), queryHelper, triggerConverter);
+        // watchers skip changes stamped by their own node
+        String writer = jobStore.isClustered() && jobStore.watchTriggerChanges ? jobStore.instanceId : null;
+        return new TriggerDao(getCollection(jobStore, "triggers"), queryHelper, triggerConverter, writer);
+    }
+
+    private MisfireSweeper createMisfireSweeper(MongoDBJobStore jobStore, MisfireHandler misfireHandler,
+                                                SchedulerSignaler signaler) {
+        if (jobStore.misfireSweepIntervalMillis <= 0) {
+            return null;
+        }
+        return new MisfireSweeper(triggerDao, triggerConverter, persister, lockManager,
+                misfireHandler, signaler, commandTracker,
+                jobStore.misfireSweepIntervalMillis, jobStore.maxMisfiresToHandleAtATime);
+    }
+
+    private TriggerLookahead createTriggerLookahead(MongoDBJobStore jobStore) {
+        if (!jobStore.triggerLockInDocument || jobStore.triggerLookaheadMillis <= 0) {
+            return null;
+        }
+        return new TriggerLookahead(triggerDao, Clock.SYSTEM_CLOCK,
+                jobStore.triggerLookaheadMillis, jobStore.triggerLookaheadReloadMillis);
+    }
+
+    private TriggerChangeWatcher createTriggerChangeWatcher(MongoDBJobStore jobStore,
+                                                            SchedulerSignaler signaler) {
+        if (!jobStore.isClustered() || !jobStore.watchTriggerChanges) {
+            return null;
+        }
+        return new TriggerChangeWatcher(triggerDao.getCollection(), signaler,
+                jobStore.clusterCheckinIntervalMillis, jobStore.instanceId, triggerLookahead);
     }
 
-    private TriggerRunner createTriggerRunner(MisfireHandler misfireHandler) {
-        return new TriggerRunner(persister, triggerDao, jobDao, locksDao, calendarDao,
-                misfireHandler, triggerConverter, lockManager, triggerRecoverer);
+    private TriggerRunner createTriggerRunner(MongoDBJobStore jobStore, MisfireHandler misfireHandler) {
+        return new TriggerRunner(persister, triggerDao, jobDao, calendarDao,
+                misfireHandler, triggerConverter, lockManager, triggerRecoverer,
+                jobStore.misfireSweepIntervalMillis > 0, triggerBuckets, triggerLookahead);
     }
 
     private TriggerStateManager createTriggerStateManager() {
         return new TriggerStateManager(triggerDao, jobDao,
-                pausedJobGroupsDao, pausedTriggerGroupsDao, queryHelper);
+                pausedJobGroupsDao, pausedTriggerGroupsDao, queryHelper, triggerLookahead);
     }
 
     private MongoCollection<Document> getCollection(MongoDBJobStore jobStore, String name) {
@@ -3,6 +3,7 @@ package com.novemberain.quartz.mongodb;
 import com.novemberain.quartz.mongodb.dao.JobDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
 import com.novemberain.quartz.mongodb.trigger.TriggerConverter;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
 import com.novemberain.quartz.mongodb.util.Keys;
 import org.bson.Document;
 import org.bson.conversions.Bson;
@@ -10,12 +11,17 @@ import org.bson.types.ObjectId;
 import org.quartz.JobDetail;
 import org.quartz.JobKey;
 import org.quartz.JobPersistenceException;
+import org.quartz.Trigger;
 import org.quartz.TriggerKey;
 import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 public class TriggerAndJobPersister {
 
@@ -24,11 +30,21 @@ public class TriggerAndJobPersister {
     private final TriggerDao triggerDao;
     private final JobDao jobDao;
     private TriggerConverter triggerConverter;
+    private final TriggerLookahead lookahead;
 
     public TriggerAndJobPersister(TriggerDao triggerDao, JobDao jobDao, TriggerConverter triggerConverter) {
+        this(triggerDao, jobDao, triggerConverter, null);
+    }
+
+    /**
+     * @param lookahead    told about stored triggers, may be null
+     */
+    public TriggerAndJobPersister(TriggerDao triggerDao, JobDao jobDao, TriggerConverter triggerConverter,
+                                  TriggerLookahead lookahead) {
         this.triggerDao = triggerDao;
         this.jobDao = jobDao;
         this.triggerConverter = triggerConverter;
+        this.lookahead = lookahead;
     }
 
     public List<OperableTrigger> getTriggersForJob(JobKey jobKey) throws JobPersistenceException {
@@ -109,6 +125,36 @@ public class TriggerAndJobPersister {
         storeTrigger(newTrigger, jobId, false);
     }
 
+    /**
+     * Store jobs and their triggers in chunks. Each chunk is converted up front
+     * and written with one bulk write of jobs and one of triggers, instead of
+     * a lookup and a write per job and per trigger. Unless replacing, this isn't
+     * atomic: when a trigger already exists, jobs of its chunk, triggers of its
+     * chunk which didn't exist and earlier chunks stay stored.
+     *
+     * @param triggersAndJobs    jobs and their triggers
+     * @param replace            whether to replace jobs and triggers which already exist
+     * @param chunkSize          max number of jobs or triggers written at once
+     */
+    public void storeJobsAndTriggers(Map<JobDetail, Set<? extends Trigger>> triggersAndJobs, boolean replace,
+                                     int chunkSize) throws JobPersistenceException {
+        List<JobDetail> jobs = new ArrayList<JobDetail>();
+        List<OperableTrigger> triggers = new ArrayList<OperableTrigger>();
+        for (Map.Entry<JobDetail, Set<? extends Trigger>> entry : triggersAndJobs.entrySet()) {
+            jobs.add(entry.getKey());
+            for (Trigger newTrigger : entry.getValue()) {
+                // Simply cast to OperableTrigger as in QuartzScheduler.scheduleJobs
+                triggers.add((OperableTrigger) newTrigger);
+            }
+            if (jobs.size() >= chunkSize || triggers.size() >= chunkSize) {
+                storeChunk(jobs, triggers, replace, chunkSize);
+                jobs.clear();
+                triggers.clear();
+            }
+        }
+        storeChunk(jobs, triggers, replace, chunkSize);
+    }
+
     public void storeTrigger(OperableTrigger newTrigger, boolean replaceExisting)
             throws JobPersistenceException {
         if (newTrigger.getJobKey() == null) {
@@ -123,6 +169,57 @@ public class TriggerAndJobPersister {
         }
     }
 
+    /**
+     * Update fire times of a fired or misfired trigger, without replacing
+     * the whole trigger document.
+     *
+     * @param trigger    trigger to store
+     */
+    public void storeFireTimes(OperableTrigger trigger) {
+        triggerDao.update(trigger.getKey(), createFireTimesUpdate(trigger, new Document()));
+    }
+
+    /**
+     * Update fire times of given triggers in one bulk write.
+     *
+     * @param triggers    triggers to store
+     * @return errors of triggers that couldn't be stored, by their index
+     */
+    public Map<Integer, String> storeFireTimes(List<OperableTrigger> triggers) {
+        return triggerDao.updateAll(getKeys(triggers), createFireTimesUpdates(triggers, new Document()));
+    }
+
+    /**
+     * Update fire times of triggers locked in their documents, in one bulk write.
+     * Triggers which aren't acquired by given scheduler anymore are left as they are.
+     *
+     * @param triggers      triggers to store
+     * @param instanceId    scheduler which acquired the triggers
+     * @param lockTime      new lock time of the triggers
+     * @return errors of triggers that couldn't be stored, by their index
+     */
+    public Map<Integer, String> storeAcquiredFireTimes(List<OperableTrigger> triggers, String instanceId,
+                                                       Date lockTime) {
+        return triggerDao.updateAllAcquired(getKeys(triggers), instanceId,
+                createFireTimesUpdates(triggers, new Document(Constants.LOCK_TIME, lockTime)));
+    }
+
+    private List<TriggerKey> getKeys(List<OperableTrigger> triggers) {
+        List<TriggerKey> keys = new ArrayList<TriggerKey>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            keys.add(trigger.getKey());
+        }
+        return keys;
+    }
+
+    private List<Bson> createFireTimesUpdates(List<OperableTrigger> triggers, Document lockFields) {
+        List<Bson> updates = new ArrayList<Bson>(triggers.size());
+        for (OperableTrigger trigger : triggers) {
+            updates.add(createFireTimesUpdate(trigger, lockFields));
+        }
+        return updates;
+    }
+
     private void copyOldJobDataMap(OperableTrigger newTrigger, OperableTrigger trigger) {
         // Copy across the job data map from the old trigger to the new one.
         newTrigger.getJobDataMap().putAll(trigger.getJobDataMap());
@@ -166,6 +263,52 @@ public class TriggerAndJobPersister {
         }
     }
 
+    private Bson createFireTimesUpdate(OperableTrigger trigger, Document lockFields) {
+        Document fields = triggerConverter.toFireTimesDocument(trigger);
+        fields.putAll(lockFields);
+        return new Document("$set", fields);
+    }
+
+    private void storeChunk(List<JobDetail> jobs, List<OperableTrigger> triggers, boolean replace,
+                            int chunkSize) throws JobPersistenceException {
+        log.debug("Storing {} jobs and {} triggers", jobs.size(), triggers.size());
+        Map<JobKey, ObjectId> jobIds = jobDao.storeJobsInMongo(jobs, replace);
+
+        List<Document> docs = new ArrayList<Document>(triggers.size());
+        for (OperableTrigger newTrigger : triggers) {
+            docs.add(triggerConverter.toDocument(newTrigger, getJobId(newTrigger, jobIds)));
+        }
+        // a job may have more triggers than a chunk
+        for (int from = 0; from < docs.size(); from += chunkSize) {
+            int to = Math.min(from + chunkSize, docs.size());
+            triggerDao.storeAll(docs.subList(from, to), triggers.subList(from, to), replace);
+        }
+
+        if (lookahead != null) {
+            for (OperableTrigger newTrigger : triggers) {
+                lookahead.offer(newTrigger.getKey(), newTrigger.getNextFireTime());
+            }
+        }
+    }
+
+    private ObjectId getJobId(OperableTrigger newTrigger, Map<JobKey, ObjectId> jobIds)
+            throws JobPersistenceException {
+        if (newTrigger.getJobKey() == null) {
+            throw new JobPersistenceException("Trigger must be associated with a job. Please specify a JobKey.");
+        }
+        ObjectId jobId = jobIds.get(newTrigger.getJobKey());
+        if (jobId == null) {
+            // job stored before
+            Document doc = jobDao.getJob(Keys.toFilter(newTrigger.getJobKey()));
+            if (doc == null) {
+                throw new JobPersistenceException("Could not find job with key " + newTrigger.getJobKey());
+            }
+            jobId = doc.getObjectId("_id");
+            jobIds.put(newTrigger.getJobKey(), jobId);
+        }
+        return jobId;
+    }
+
     private void storeTrigger(OperableTrigger newTrigger, ObjectId jobId, boolean replaceExisting)
             throws JobPersistenceException {
         Document trigger = triggerConverter.toDocument(newTrigger, jobId);
@@ -175,5 +318,8 @@ public class TriggerAndJobPersister {
         } else {
             triggerDao.insert(trigger, newTrigger);
         }
+        if (lookahead != null) {
+            lookahead.offer(newTrigger.getKey(), newTrigger.getNextFireTime());
+        }
     }
 }
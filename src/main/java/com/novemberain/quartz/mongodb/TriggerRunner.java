@@ -1,13 +1,16 @@
 package com.novemberain.quartz.mongodb;
 
-import com.mongodb.MongoWriteException;
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import com.novemberain.quartz.mongodb.cluster.TriggerBuckets;
 import com.novemberain.quartz.mongodb.cluster.TriggerRecoverer;
 import com.novemberain.quartz.mongodb.dao.CalendarDao;
 import com.novemberain.quartz.mongodb.dao.JobDao;
-import com.novemberain.quartz.mongodb.dao.LocksDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
 import com.novemberain.quartz.mongodb.trigger.MisfireHandler;
 import com.novemberain.quartz.mongodb.trigger.TriggerConverter;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
+import com.novemberain.quartz.mongodb.util.Keys;
 import org.bson.Document;
 import org.quartz.*;
 import org.quartz.Calendar;
@@ -38,22 +41,44 @@ public class TriggerRunner {
     private LockManager lockManager;
     private TriggerRecoverer recoverer;
     private JobDao jobDao;
-    private LocksDao locksDao;
     private CalendarDao calendarDao;
+    private boolean misfiresSwept;
+    private TriggerBuckets buckets;
+    private TriggerLookahead lookahead;
 
-    public TriggerRunner(TriggerAndJobPersister persister, TriggerDao triggerDao, JobDao jobDao, LocksDao locksDao,
+    public TriggerRunner(TriggerAndJobPersister persister, TriggerDao triggerDao, JobDao jobDao,
                          CalendarDao calendarDao, MisfireHandler misfireHandler,
                          TriggerConverter triggerConverter, LockManager lockManager,
                          TriggerRecoverer recoverer) {
+        this(persister, triggerDao, jobDao, calendarDao, misfireHandler, triggerConverter,
+                lockManager, recoverer, false, null, null);
+    }
+
+    /**
+     * @param misfiresSwept    when true misfired triggers are left to
+     *                         {@link com.novemberain.quartz.mongodb.trigger.MisfireSweeper}
+     *                         instead of being handled during acquisition
+     * @param buckets          when not null only triggers in own buckets and ones
+     *                         not leased by their owners are acquired
+     * @param lookahead        when not null and triggers are locked in their documents,
+     *                         candidates are taken from it instead of querying eligible triggers
+     */
+    public TriggerRunner(TriggerAndJobPersister persister, TriggerDao triggerDao, JobDao jobDao,
+                         CalendarDao calendarDao, MisfireHandler misfireHandler,
+                         TriggerConverter triggerConverter, LockManager lockManager,
+                         TriggerRecoverer recoverer, boolean misfiresSwept, TriggerBuckets buckets,
+                         TriggerLookahead lookahead) {
         this.persister = persister;
         this.triggerDao = triggerDao;
         this.jobDao = jobDao;
-        this.locksDao = locksDao;
         this.calendarDao = calendarDao;
         this.misfireHandler = misfireHandler;
         this.triggerConverter = triggerConverter;
         this.lockManager = lockManager;
         this.recoverer = recoverer;
+        this.misfiresSwept = misfiresSwept;
+        this.buckets = buckets;
+        this.lookahead = lookahead;
     }
 
     public List<OperableTrigger> acquireNext(long noLaterThan, int maxCount, long timeWindow)
@@ -63,7 +88,9 @@ public class TriggerRunner {
         log.debug("Finding up to {} triggers which have time less than {}",
                 maxCount, noLaterThanDate);
 
-        List<OperableTrigger> triggers = acquireNextTriggers(noLaterThanDate, maxCount);
+        List<OperableTrigger> triggers = lockManager.isTriggerLockInDocument()
+                ? acquireNextTriggersInDocuments(noLaterThanDate, maxCount)
+                : acquireNextTriggers(noLaterThanDate, maxCount);
 
         // Because we are handling a batch, we may have done multiple queries and while the result for each
         // query is in fire order, the result for the whole might not be, so sort them again
@@ -73,62 +100,209 @@ public class TriggerRunner {
         return triggers;
     }
 
+    /**
+     * Fire given triggers. Updated triggers are stored together, after all
+     * bundles are created, and the results are in the order of given triggers.
+     * Quartz releases triggers whose result has no bundle.
+     * Job data of the triggers, left out when they were acquired, is loaded first.
+     */
     public List<TriggerFiredResult> triggersFired(List<OperableTrigger> triggers)
             throws JobPersistenceException {
         List<TriggerFiredResult> results = new ArrayList<TriggerFiredResult>(triggers.size());
+        List<Integer> firedIndexes = new ArrayList<Integer>(triggers.size());
+        Map<TriggerKey, JobPersistenceException> jobDataErrors = loadJobData(triggers);
 
-        for (OperableTrigger trigger : triggers) {
-            log.debug("Fired trigger {}", trigger.getKey());
+        try {
+            for (OperableTrigger trigger : triggers) {
+                log.debug("Fired trigger {}", trigger.getKey());
+
+                JobPersistenceException jobDataError = jobDataErrors.get(trigger.getKey());
+                if (jobDataError != null) {
+                    // don't retry the trigger on every acquisition
+                    log.error("Error restoring job data of trigger " + trigger.getKey()
+                            + ", setting trigger state to ERROR.", jobDataError);
+                    triggerDao.transferState(trigger.getKey(), lockManager.isTriggerLockInDocument()
+                            ? Constants.STATE_ACQUIRED : Constants.STATE_WAITING, Constants.STATE_ERROR);
+                    results.add(new TriggerFiredResult(jobDataError));
+                    continue;
+                }
 
-            TriggerFiredBundle bundle = createTriggerFiredBundle(trigger);
+                TriggerFiredBundle bundle = createTriggerFiredBundle(trigger);
 
-            if (hasJobDetail(bundle)) {
-                JobDetail job = bundle.getJobDetail();
-                try {
-                    lockManager.lockJob(job);
-                    results.add(new TriggerFiredResult(bundle));
-                    persister.storeTrigger(trigger, true);
-                } catch (MongoWriteException dk) {
+                if (hasJobDetail(bundle)) {
+                    JobDetail job = bundle.getJobDetail();
+                    if (lockManager.tryLockJob(job)) {
+                        firedIndexes.add(results.size());
+                        results.add(new TriggerFiredResult(bundle));
+                        continue;
+                    }
                     log.debug("Job disallows concurrent execution and is already running {}", job.getKey());
-                    locksDao.unlockTrigger(trigger);
                     lockManager.unlockExpired(job);
                 }
+                results.add(new TriggerFiredResult((TriggerFiredBundle) null));
             }
 
+            storeFiredTriggers(results, firedIndexes);
+        } catch (JobPersistenceException | RuntimeException e) {
+            try {
+                releaseFiredTriggers(triggers, results, firedIndexes);
+            } catch (JobPersistenceException | RuntimeException releaseError) {
+                // left to expire, the original failure is the one to report
+                e.addSuppressed(releaseError);
+            }
+            throw e;
         }
         return results;
     }
 
+    /**
+     * Undo firing of triggers after a failure which isn't specific to some of them.
+     * Jobs locked so far are unlocked and triggers which weren't released yet are,
+     * so they can fire again without waiting for their locks to expire.
+     */
+    private void releaseFiredTriggers(List<OperableTrigger> triggers, List<TriggerFiredResult> results,
+                                      List<Integer> firedIndexes) throws JobPersistenceException {
+        List<TriggerKey> keys = new ArrayList<TriggerKey>();
+        for (int index : firedIndexes) {
+            TriggerFiredBundle bundle = results.get(index).getTriggerFiredBundle();
+            if (bundle == null) {
+                // failed to store, its job is already unlocked
+                continue;
+            }
+            if (bundle.getJobDetail().isConcurrentExectionDisallowed()) {
+                lockManager.unlockJob(bundle.getJobDetail());
+            }
+            keys.add(triggers.get(index).getKey());
+        }
+        for (int index = results.size(); index < triggers.size(); index++) {
+            keys.add(triggers.get(index).getKey());
+        }
+        lockManager.unlockTriggers(keys);
+    }
+
+    private void storeFiredTriggers(List<TriggerFiredResult> results, List<Integer> firedIndexes) {
+        List<OperableTrigger> firedTriggers = new ArrayList<OperableTrigger>(firedIndexes.size());
+        for (int index : firedIndexes) {
+            firedTriggers.add(results.get(index).getTriggerFiredBundle().getTrigger());
+        }
+
+        Map<Integer, String> errors = lockManager.storeAcquiredTriggers(firedTriggers);
+        for (Map.Entry<Integer, String> error : errors.entrySet()) {
+            int index = firedIndexes.get(error.getKey());
+            TriggerFiredBundle bundle = results.get(index).getTriggerFiredBundle();
+            log.error("Could not store fired trigger {}: {}", bundle.getTrigger().getKey(), error.getValue());
+
+            if (bundle.getJobDetail().isConcurrentExectionDisallowed()) {
+                lockManager.unlockJob(bundle.getJobDetail());
+            }
+            results.set(index, new TriggerFiredResult(new JobPersistenceException(
+                    "Could not store fired trigger " + bundle.getTrigger().getKey() + ": " + error.getValue())));
+        }
+    }
+
     private List<OperableTrigger> acquireNextTriggers(Date noLaterThanDate, int maxCount)
             throws JobPersistenceException {
         Map<TriggerKey, OperableTrigger> triggers = new HashMap<TriggerKey, OperableTrigger>();
 
-        for (Document triggerDoc : triggerDao.findEligibleToRun(noLaterThanDate)) {
-            if (acquiredEnough(triggers, maxCount)) {
-                break;
-            }
+        // Triggers without next fire time are queried separately,
+        // so the query for eligible ones can be served by an index.
+        acquireNextTriggers(triggerDao.findWithoutNextFireTime(), triggers, noLaterThanDate, maxCount);
+        acquireNextTriggers(findEligibleToRun(noLaterThanDate), triggers, noLaterThanDate, maxCount);
 
-            OperableTrigger trigger = triggerConverter.toTriggerWithOptionalJob(triggerDoc);
+        return new ArrayList<OperableTrigger>(triggers.values());
+    }
 
-            if (cannotAcquire(triggers, trigger)) {
-                continue;
+    private void acquireNextTriggers(FindIterable<Document> triggerDocs, Map<TriggerKey, OperableTrigger> triggers,
+                                     Date noLaterThanDate, int maxCount)
+            throws JobPersistenceException {
+        try (MongoCursor<Document> cursor = triggerDocs.iterator()) {
+            while (cursor.hasNext() && !acquiredEnough(triggers, maxCount)) {
+                // Convert triggers in batches, so their jobs are looked up together
+                List<Document> batch = nextBatch(cursor, maxCount - triggers.size());
+                for (OperableTrigger trigger : triggerConverter.toTriggersWithOptionalJob(batch)) {
+                    acquireTrigger(trigger, triggers, noLaterThanDate);
+                }
             }
+        }
+    }
 
-            if (trigger.getJobKey() == null) {
-                log.error("Error retrieving job for trigger {}, setting trigger state to ERROR.", trigger.getKey());
-                triggerDao.transferState(trigger.getKey(), Constants.STATE_WAITING, Constants.STATE_ERROR);
-                continue;
+    private void acquireTrigger(OperableTrigger trigger, Map<TriggerKey, OperableTrigger> triggers,
+                                Date noLaterThanDate)
+            throws JobPersistenceException {
+        if (cannotAcquire(triggers, trigger)) {
+            return;
+        }
+
+        if (trigger.getJobKey() == null) {
+            log.error("Error retrieving job for trigger {}, setting trigger state to ERROR.", trigger.getKey());
+            triggerDao.transferState(trigger.getKey(), Constants.STATE_WAITING, Constants.STATE_ERROR);
+            return;
+        }
+
+        TriggerKey key = trigger.getKey();
+        if (lockManager.tryLock(key)) {
+            if (prepareForFire(noLaterThanDate, trigger)) {
+                log.info("Acquired trigger: {}", trigger.getKey());
+                triggers.put(trigger.getKey(), trigger);
+            } else {
+                lockManager.unlockAcquiredTrigger(trigger);
+            }
+        } else if (lockManager.relockExpired(key)) {
+            log.info("Recovering trigger: {}", trigger.getKey());
+            // recovery trigger takes over the job data
+            loadJobData(Collections.singletonList(trigger));
+            OperableTrigger recoveryTrigger = recoverer.doRecovery(trigger);
+            lockManager.unlockAcquiredTrigger(trigger);
+            if (recoveryTrigger != null && lockManager.tryLock(recoveryTrigger.getKey())) {
+                log.info("Acquired trigger: {}", recoveryTrigger.getKey());
+                triggers.put(recoveryTrigger.getKey(), recoveryTrigger);
             }
+        }
+    }
 
-            TriggerKey key = trigger.getKey();
+    /**
+     * Acquires triggers by claiming each of them with a single atomic update
+     * of its document, without inserting trigger locks.
+     */
+    private List<OperableTrigger> acquireNextTriggersInDocuments(Date noLaterThanDate, int maxCount)
+            throws JobPersistenceException {
+        Map<TriggerKey, OperableTrigger> triggers = new HashMap<TriggerKey, OperableTrigger>();
+
+        for (Document triggerDoc : triggerDao.findWithoutNextFireTime()) {
+            TriggerKey key = Keys.toTriggerKey(triggerDoc);
             if (lockManager.tryLock(key)) {
-                if (prepareForFire(noLaterThanDate, trigger)) {
-                    log.info("Acquired trigger: {}", trigger.getKey());
-                    triggers.put(trigger.getKey(), trigger);
-                } else {
-                    lockManager.unlockAcquiredTrigger(trigger);
+                log.info("Removing trigger {} as it has no next fire time.", key);
+                persister.removeTrigger(key);
+            }
+        }
+
+        if (lookahead != null && lookahead.covers(noLaterThanDate)) {
+            acquireFromLookahead(triggers, noLaterThanDate, maxCount);
+        } else {
+            try (MongoCursor<Document> cursor = findEligibleToRun(noLaterThanDate).iterator()) {
+                while (cursor.hasNext() && !acquiredEnough(triggers, maxCount)) {
+                    List<Document> acquired = new ArrayList<Document>();
+                    while (cursor.hasNext() && acquired.size() < maxCount - triggers.size()) {
+                        Document triggerDoc = lockManager.tryAcquire(cursor.next(), noLaterThanDate);
+                        if (triggerDoc != null) {
+                            acquired.add(triggerDoc);
+                        }
+                    }
+                    prepareAcquiredForFire(acquired, triggers, noLaterThanDate);
+                }
+            }
+        }
+
+        for (Document triggerDoc : lockManager.findExpiredAcquiredTriggers()) {
+            if (acquiredEnough(triggers, maxCount)) {
+                break;
+            }
+
+            if (lockManager.relockExpired(triggerDoc)) {
+                OperableTrigger trigger = toAcquiredTrigger(triggerDoc);
+                if (trigger == null) {
+                    continue;
                 }
-            } else if (lockManager.relockExpired(key)) {
                 log.info("Recovering trigger: {}", trigger.getKey());
                 OperableTrigger recoveryTrigger = recoverer.doRecovery(trigger);
                 lockManager.unlockAcquiredTrigger(trigger);
@@ -142,6 +316,114 @@ public class TriggerRunner {
         return new ArrayList<OperableTrigger>(triggers.values());
     }
 
+    /**
+     * Claims candidates taken from the lookahead, without querying eligible triggers.
+     */
+    private void acquireFromLookahead(Map<TriggerKey, OperableTrigger> triggers, Date noLaterThanDate,
+                                      int maxCount) throws JobPersistenceException {
+        while (!acquiredEnough(triggers, maxCount)) {
+            List<TriggerKey> candidates = lookahead.takeDue(noLaterThanDate, getMisfireTime(),
+                    getQueryBuckets(), maxCount - triggers.size());
+            if (candidates.isEmpty()) {
+                return;
+            }
+
+            List<Document> acquired = new ArrayList<Document>(candidates.size());
+            for (TriggerKey key : candidates) {
+                Document triggerDoc = lockManager.tryAcquire(key, noLaterThanDate);
+                if (triggerDoc != null) {
+                    acquired.add(triggerDoc);
+                }
+            }
+            prepareAcquiredForFire(acquired, triggers, noLaterThanDate);
+        }
+    }
+
+    private void prepareAcquiredForFire(List<Document> acquired, Map<TriggerKey, OperableTrigger> triggers,
+                                        Date noLaterThanDate) throws JobPersistenceException {
+        for (OperableTrigger trigger : toAcquiredTriggers(acquired)) {
+            if (trigger.getJobKey() == null) {
+                log.error("Error retrieving job for trigger {}, setting trigger state to ERROR.",
+                        trigger.getKey());
+                triggerDao.transferState(trigger.getKey(), Constants.STATE_ACQUIRED, Constants.STATE_ERROR);
+                continue;
+            }
+
+            if (prepareForFire(noLaterThanDate, trigger)) {
+                log.info("Acquired trigger: {}", trigger.getKey());
+                triggers.put(trigger.getKey(), trigger);
+            } else {
+                lockManager.unlockAcquiredTrigger(trigger);
+            }
+        }
+    }
+
+    private FindIterable<Document> findEligibleToRun(Date noLaterThanDate) {
+        return triggerDao.findEligibleToRun(noLaterThanDate, getMisfireTime(), getQueryBuckets());
+    }
+
+    private Date getMisfireTime() {
+        return misfiresSwept ? misfireHandler.getMisfireTime() : null;
+    }
+
+    private List<Integer> getQueryBuckets() {
+        return buckets == null ? null : buckets.getQueryBuckets();
+    }
+
+    private List<OperableTrigger> toAcquiredTriggers(List<Document> triggerDocs) {
+        try {
+            return triggerConverter.toTriggersWithOptionalJob(triggerDocs);
+        } catch (JobPersistenceException e) {
+            // fall back to one by one conversion to put aside the broken ones
+            List<OperableTrigger> triggers = new ArrayList<OperableTrigger>(triggerDocs.size());
+            for (Document triggerDoc : triggerDocs) {
+                OperableTrigger trigger = toAcquiredTrigger(triggerDoc);
+                if (trigger != null) {
+                    triggers.add(trigger);
+                }
+            }
+            return triggers;
+        }
+    }
+
+    private OperableTrigger toAcquiredTrigger(Document triggerDoc) {
+        try {
+            return triggerConverter.toTriggerWithOptionalJob(triggerDoc);
+        } catch (JobPersistenceException e) {
+            // don't leave the trigger acquired forever nor retry it on every acquisition
+            TriggerKey key = Keys.toTriggerKey(triggerDoc);
+            log.error("Error restoring trigger " + key + ", setting trigger state to ERROR.", e);
+            triggerDao.transferState(key, Constants.STATE_ACQUIRED, Constants.STATE_ERROR);
+            return null;
+        }
+    }
+
+    /**
+     * Decode job data of given triggers with one query.
+     *
+     * @return errors of triggers whose job data couldn't be decoded, by their key
+     */
+    private Map<TriggerKey, JobPersistenceException> loadJobData(List<OperableTrigger> triggers) {
+        Map<TriggerKey, JobPersistenceException> errors = new HashMap<TriggerKey, JobPersistenceException>();
+        if (triggers.isEmpty()) {
+            return errors;
+        }
+
+        Map<TriggerKey, OperableTrigger> triggersByKey = new HashMap<TriggerKey, OperableTrigger>();
+        for (OperableTrigger trigger : triggers) {
+            triggersByKey.put(trigger.getKey(), trigger);
+        }
+        for (Document triggerDoc : triggerDao.findJobData(triggersByKey.keySet())) {
+            OperableTrigger trigger = triggersByKey.get(Keys.toTriggerKey(triggerDoc));
+            try {
+                triggerConverter.loadJobData(triggerDoc, trigger);
+            } catch (JobPersistenceException e) {
+                errors.put(trigger.getKey(), e);
+            }
+        }
+        return errors;
+    }
+
     private boolean prepareForFire(Date noLaterThanDate, OperableTrigger trigger)
             throws JobPersistenceException {
         //TODO don't remove when recovering trigger
@@ -155,6 +437,14 @@ public class TriggerRunner {
         return true;
     }
 
+    private List<Document> nextBatch(Iterator<Document> cursor, int size) {
+        List<Document> batch = new ArrayList<Document>(size);
+        while (cursor.hasNext() && batch.size() < size) {
+            batch.add(cursor.next());
+        }
+        return batch;
+    }
+
     private boolean acquiredEnough(Map<TriggerKey, OperableTrigger> triggers, int maxCount) {
         return maxCount <= triggers.size();
     }
@@ -181,7 +471,7 @@ public class TriggerRunner {
         Date prevFireTime = trigger.getPreviousFireTime();
         trigger.triggered(cal);
 
-        return new TriggerFiredBundle(retrieveJob(trigger), trigger, cal,
+        return new TriggerFiredBundle(jobDao.retrieveJob(trigger.getJobKey()), trigger, cal,
                 isRecovering(trigger), new Date(),
                 trigger.getPreviousFireTime(), prevFireTime,
                 trigger.getNextFireTime());
@@ -202,7 +492,7 @@ public class TriggerRunner {
     private boolean notAcquirableAfterMisfire(Date noLaterThanDate, OperableTrigger trigger)
             throws JobPersistenceException {
         if (misfireHandler.applyMisfire(trigger)) {
-            persister.storeTrigger(trigger, true);
+            lockManager.storeAcquiredTrigger(trigger);
 
             log.debug("Misfire trigger {}.", trigger.getKey());
 
@@ -221,13 +511,4 @@ public class TriggerRunner {
         }
         return false;
     }
-
-    private JobDetail retrieveJob(OperableTrigger trigger) throws JobPersistenceException {
-        try {
-            return jobDao.retrieveJob(trigger.getJobKey());
-        } catch (JobPersistenceException e) {
-            locksDao.unlockTrigger(trigger);
-            throw e;
-        }
-    }
 }
@@ -4,6 +4,7 @@ import com.novemberain.quartz.mongodb.dao.JobDao;
 import com.novemberain.quartz.mongodb.dao.PausedJobGroupsDao;
 import com.novemberain.quartz.mongodb.dao.PausedTriggerGroupsDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.trigger.TriggerLookahead;
 import com.novemberain.quartz.mongodb.util.GroupHelper;
 import com.novemberain.quartz.mongodb.util.QueryHelper;
 import com.novemberain.quartz.mongodb.util.TriggerGroupHelper;
@@ -24,16 +25,28 @@ public class TriggerStateManager {
     private PausedJobGroupsDao pausedJobGroupsDao;
     private final PausedTriggerGroupsDao pausedTriggerGroupsDao;
     private final QueryHelper queryHelper;
+    private final TriggerLookahead lookahead;
 
     public TriggerStateManager(TriggerDao triggerDao, JobDao jobDao,
                                PausedJobGroupsDao pausedJobGroupsDao,
                                PausedTriggerGroupsDao pausedTriggerGroupsDao,
                                QueryHelper queryHelper) {
+        this(triggerDao, jobDao, pausedJobGroupsDao, pausedTriggerGroupsDao, queryHelper, null);
+    }
+
+    /**
+     * @param lookahead    invalidated when triggers are resumed, may be null
+     */
+    public TriggerStateManager(TriggerDao triggerDao, JobDao jobDao,
+                               PausedJobGroupsDao pausedJobGroupsDao,
+                               PausedTriggerGroupsDao pausedTriggerGroupsDao,
+                               QueryHelper queryHelper, TriggerLookahead lookahead) {
         this.triggerDao = triggerDao;
         this.jobDao = jobDao;
         this.pausedJobGroupsDao = pausedJobGroupsDao;
         this.pausedTriggerGroupsDao = pausedTriggerGroupsDao;
         this.queryHelper = queryHelper;
+        this.lookahead = lookahead;
     }
 
     public Set<String> getPausedTriggerGroups() {
@@ -83,10 +96,12 @@ public class TriggerStateManager {
     public void resume(TriggerKey triggerKey) {
         // TODO: port blocking behavior and misfired triggers handling from StdJDBCDelegate in Quartz
         triggerDao.setState(triggerKey, Constants.STATE_WAITING);
+        resumed();
     }
 
     public Collection<String> resume(GroupMatcher<TriggerKey> matcher) {
         triggerDao.setStateInMatching(matcher, Constants.STATE_WAITING);
+        resumed();
 
         final GroupHelper groupHelper = new GroupHelper(triggerDao.getCollection(), queryHelper);
         final Set<String> set = groupHelper.groupsThatMatch(matcher);
@@ -98,11 +113,13 @@ public class TriggerStateManager {
         final ObjectId jobId = jobDao.getJob(jobKey).getObjectId("_id");
         // TODO: port blocking behavior and misfired triggers handling from StdJDBCDelegate in Quartz
         triggerDao.setStateByJobId(jobId, Constants.STATE_WAITING);
+        resumed();
     }
 
     public void resumeAll() {
         final GroupHelper groupHelper = new GroupHelper(triggerDao.getCollection(), queryHelper);
         triggerDao.setStateInAll(Constants.STATE_WAITING);
+        resumed();
         pausedTriggerGroupsDao.unpauseGroups(groupHelper.allGroups());
     }
 
@@ -110,6 +127,7 @@ public class TriggerStateManager {
         final TriggerGroupHelper groupHelper = new TriggerGroupHelper(triggerDao.getCollection(), queryHelper);
         List<String> groups = groupHelper.groupsForJobIds(jobDao.idsOfMatching(groupMatcher));
         triggerDao.setStateInGroups(groups, Constants.STATE_WAITING);
+        resumed();
         pausedJobGroupsDao.unpauseGroups(groups);
         return groups;
     }
@@ -125,6 +143,14 @@ public class TriggerStateManager {
             newState = Constants.STATE_PAUSED;
         }
         triggerDao.transferState(triggerKey, Constants.STATE_ERROR, newState);
+        resumed();
+    }
+
+    private void resumed() {
+        if (lookahead != null) {
+            // resumed triggers may be due before the next reload
+            lookahead.invalidate();
+        }
     }
 
     private TriggerState getTriggerState(String value) {
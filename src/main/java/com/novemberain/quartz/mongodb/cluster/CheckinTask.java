@@ -13,10 +13,31 @@ public class CheckinTask implements Runnable {
     private static final Logger log = LoggerFactory.getLogger(CheckinTask.class);
 
     private SchedulerDao schedulerDao;
+    private ClusterMembership membership;
+    private TriggerBuckets buckets;
     private Runnable errorhandler;
 
     public CheckinTask(SchedulerDao schedulerDao, Runnable errorHandler) {
+        this(schedulerDao, null, errorHandler);
+    }
+
+    /**
+     * @param membership    view to refresh after each check-in, may be null
+     */
+    public CheckinTask(SchedulerDao schedulerDao, ClusterMembership membership, Runnable errorHandler) {
+        this(schedulerDao, membership, null, errorHandler);
+    }
+
+    /**
+     * @param membership    view to refresh after each check-in, may be null
+     * @param buckets       trigger buckets to lease on check-in and rebalance
+     *                      after each refresh, null when triggers aren't partitioned
+     */
+    public CheckinTask(SchedulerDao schedulerDao, ClusterMembership membership, TriggerBuckets buckets,
+                       Runnable errorHandler) {
         this.schedulerDao = schedulerDao;
+        this.membership = membership;
+        this.buckets = buckets;
         this.errorhandler = errorHandler;
     }
 
@@ -29,10 +50,28 @@ public class CheckinTask implements Runnable {
     public void run() {
         log.debug("Node {}:{} checks-in.", schedulerDao.schedulerName, schedulerDao.instanceId);
         try {
-            schedulerDao.checkIn();
+            if (buckets == null) {
+                schedulerDao.checkIn();
+            } else {
+                schedulerDao.checkIn(buckets.getOwnBuckets());
+            }
         } catch (MongoException e) {
             log.error("Node " + schedulerDao.instanceId + " could not check-in: " + e.getMessage(), e);
             errorhandler.run();
+            return;
+        }
+
+        if (membership != null) {
+            try {
+                membership.refresh();
+                if (buckets != null) {
+                    buckets.rebalance();
+                }
+            } catch (MongoException e) {
+                // not fatal, lookups fall back to the database
+                log.warn("Node " + schedulerDao.instanceId + " could not refresh cluster membership: "
+                        + e.getMessage(), e);
+            }
         }
     }
 }
@@ -0,0 +1,86 @@
+package com.novemberain.quartz.mongodb.cluster;
+
+import com.novemberain.quartz.mongodb.dao.SchedulerDao;
+import com.novemberain.quartz.mongodb.util.Clock;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * View of scheduler instances in the cluster, refreshed with one read on each check-in,
+ * so liveness of lock owners can be told without reading the schedulers collection.
+ *
+ * <p>Instances are looked up in the database only when they aren't known yet,
+ * and before one is declared defunct, as the view can be a check-in interval old.
+ * Before the first refresh every lookup goes to the database.</p>
+ */
+public class ClusterMembership {
+
+    private static final Logger log = LoggerFactory.getLogger(ClusterMembership.class);
+
+    private final SchedulerDao schedulerDao;
+    private final Clock clock;
+
+    private volatile Map<String, Scheduler> instances;
+
+    public ClusterMembership(SchedulerDao schedulerDao, Clock clock) {
+        this.schedulerDao = schedulerDao;
+        this.clock = clock;
+    }
+
+    /**
+     * Replace the view with current check-ins of this scheduler's instances.
+     */
+    public void refresh() {
+        Map<String, Scheduler> current = new LinkedHashMap<String, Scheduler>();
+        for (Scheduler scheduler : schedulerDao.getAllByCheckinTime()) {
+            if (schedulerDao.schedulerName.equals(scheduler.getName())) {
+                current.put(scheduler.getInstanceId(), scheduler);
+            }
+        }
+        instances = current;
+        log.debug("Refreshed cluster membership: {}", current.keySet());
+    }
+
+    /**
+     * @return instances as of the last refresh, in ascending order by last check-in time
+     */
+    public List<Scheduler> getInstances() {
+        Map<String, Scheduler> view = instances;
+        if (view == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(new ArrayList<Scheduler>(view.values()));
+    }
+
+    /**
+     * Tell if given instance is another scheduler which stopped checking in.
+     *
+     * @param instanceId    instance to check
+     * @return false for unknown instances, this instance, and instances alive in the view
+     */
+    public boolean isDefunct(String instanceId) {
+        Map<String, Scheduler> view = instances;
+        Scheduler scheduler = view == null ? null : view.get(instanceId);
+        if (scheduler != null && !isDefunct(scheduler)) {
+            return false;
+        }
+
+        // confirm with the latest check-in, the instance may have checked in since the refresh
+        scheduler = schedulerDao.findInstance(instanceId);
+        if (scheduler == null) {
+            log.debug("No such scheduler: {}", instanceId);
+            return false;
+        }
+        return isDefunct(scheduler);
+    }
+
+    private boolean isDefunct(Scheduler scheduler) {
+        return scheduler.isDefunct(clock.millis()) && schedulerDao.isNotSelf(scheduler);
+    }
+}
@@ -0,0 +1,100 @@
+package com.novemberain.quartz.mongodb.cluster;
+
+import com.novemberain.quartz.mongodb.LockManager;
+import com.novemberain.quartz.mongodb.dao.SchedulerDao;
+import org.quartz.JobPersistenceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Periodically takes over triggers of defunct schedulers instead of waiting
+ * for acquisition to stumble upon them one by one. All expired trigger locks of
+ * a defunct scheduler are reassigned at once, the triggers are recovered and
+ * the scheduler is removed from the cluster when it holds no more locks.
+ */
+public class DefunctSchedulerRecoverer implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(DefunctSchedulerRecoverer.class);
+
+    private final ClusterMembership membership;
+    private final SchedulerDao schedulerDao;
+    private final LockManager lockManager;
+    private final TriggerRecoverer recoverer;
+    private final long intervalMillis;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param intervalMillis    pause between looking for defunct schedulers
+     */
+    public DefunctSchedulerRecoverer(ClusterMembership membership, SchedulerDao schedulerDao,
+                                     LockManager lockManager, TriggerRecoverer recoverer, long intervalMillis) {
+        this.membership = membership;
+        this.schedulerDao = schedulerDao;
+        this.lockManager = lockManager;
+        this.recoverer = recoverer;
+        this.intervalMillis = intervalMillis;
+    }
+
+    /**
+     * Start looking for defunct schedulers, after the first check-in refreshed the membership.
+     */
+    public synchronized void start() {
+        log.info("Starting recovery of defunct schedulers for instance: {}", schedulerDao.instanceId);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this, intervalMillis, intervalMillis, MILLISECONDS);
+    }
+
+    public synchronized void shutdown() {
+        if (executor != null) {
+            log.info("Stopping recovery of defunct schedulers for instance: {}", schedulerDao.instanceId);
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        for (Scheduler scheduler : membership.getInstances()) {
+            try {
+                if (membership.isDefunct(scheduler.getInstanceId())) {
+                    recover(scheduler);
+                }
+            } catch (Exception e) {
+                // an exception would cancel further runs
+                log.error("Failed to recover defunct scheduler " + scheduler.getInstanceId(), e);
+            }
+        }
+    }
+
+    /**
+     * Take over and recover triggers of given defunct scheduler.
+     *
+     * @return true when the scheduler was removed from the cluster
+     */
+    boolean recover(Scheduler scheduler) throws JobPersistenceException {
+        String instanceId = scheduler.getInstanceId();
+        long takenOver = lockManager.takeOverTriggerLocks(instanceId);
+        if (takenOver > 0) {
+            log.info("Took over {} triggers of defunct scheduler {}.", takenOver, instanceId);
+        }
+
+        // also picks up triggers left behind by an earlier failed run
+        int recovered = recoverer.recoverTakenOver(instanceId);
+        if (recovered > 0) {
+            log.info("Recovered {} triggers of defunct scheduler {}.", recovered, instanceId);
+        }
+
+        // Locks that haven't expired yet are taken over by a later run,
+        // until then the scheduler is needed to tell they belong to a defunct one.
+        if (lockManager.hasTriggerLocks(instanceId)) {
+            return false;
+        }
+        return schedulerDao.remove(instanceId, scheduler.getLastCheckinTime());
+    }
+}
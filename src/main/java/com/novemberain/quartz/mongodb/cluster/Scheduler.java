@@ -1,5 +1,7 @@
 package com.novemberain.quartz.mongodb.cluster;
 
+import java.util.List;
+
 public class Scheduler {
 
     public static final long TIME_EPSILON = 7500L;
@@ -7,12 +9,22 @@ public class Scheduler {
     private final String instanceId;
     private final long lastCheckinTime;
     private final long checkinInterval;
+    private final List<Integer> buckets;
 
     public Scheduler(String name, String instanceId, long lastCheckinTime, long checkinInterval) {
+        this(name, instanceId, lastCheckinTime, checkinInterval, null);
+    }
+
+    /**
+     * @param buckets    trigger buckets leased by the scheduler, null when it leases none
+     */
+    public Scheduler(String name, String instanceId, long lastCheckinTime, long checkinInterval,
+                     List<Integer> buckets) {
         this.name = name;
         this.instanceId = instanceId;
         this.lastCheckinTime = lastCheckinTime;
         this.checkinInterval = checkinInterval;
+        this.buckets = buckets;
     }
 
     public String getName() {
@@ -31,6 +43,10 @@ public class Scheduler {
         return checkinInterval;
     }
 
+    public List<Integer> getBuckets() {
+        return buckets;
+    }
+
     /**
      * Return true if scheduler is defunct for given time.
      * @param time    time to compare with
@@ -0,0 +1,117 @@
+package com.novemberain.quartz.mongodb.cluster;
+
+import com.novemberain.quartz.mongodb.util.Clock;
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partitions triggers into a fixed number of buckets and spreads them over
+ * live scheduler instances, so nodes don't compete for the same triggers.
+ *
+ * <p>Each trigger has a stable bucket computed from its key. On each check-in
+ * buckets are assigned round-robin to live instances sorted by instanceId, and
+ * the instance leases its buckets in its scheduler document. Buckets their new
+ * owner hasn't leased yet, e.g. while it hasn't seen a join or leave, are queried
+ * by every instance until it does, including the instance which owned them before.</p>
+ *
+ * <p>Buckets only narrow down the query for eligible triggers,
+ * acquisition still relies on trigger locks.</p>
+ */
+public class TriggerBuckets {
+
+    private static final Logger log = LoggerFactory.getLogger(TriggerBuckets.class);
+
+    private final int bucketCount;
+    private final String instanceId;
+    private final ClusterMembership membership;
+    private final Clock clock;
+
+    private volatile List<Integer> ownBuckets;
+    private volatile List<Integer> queryBuckets;
+
+    public TriggerBuckets(int bucketCount, String instanceId, ClusterMembership membership, Clock clock) {
+        this.bucketCount = bucketCount;
+        this.instanceId = instanceId;
+        this.membership = membership;
+        this.clock = clock;
+    }
+
+    /**
+     * @return bucket of given trigger, between 0 and bucketCount - 1
+     */
+    public static int bucketOf(TriggerKey key, int bucketCount) {
+        // String.hashCode() is specified, so all nodes agree on the bucket
+        return Math.floorMod((key.getGroup() + '.' + key.getName()).hashCode(), bucketCount);
+    }
+
+    public int getBucketCount() {
+        return bucketCount;
+    }
+
+    /**
+     * Assign buckets to live instances in the membership view, which should be just refreshed.
+     */
+    public void rebalance() {
+        long now = clock.millis();
+        List<String> live = new ArrayList<String>();
+        Map<String, List<Integer>> leases = new HashMap<String, List<Integer>>();
+        for (Scheduler scheduler : membership.getInstances()) {
+            boolean self = instanceId.equals(scheduler.getInstanceId());
+            if (self || !scheduler.isDefunct(now)) {
+                live.add(scheduler.getInstanceId());
+                if (!self && scheduler.getBuckets() != null) {
+                    leases.put(scheduler.getInstanceId(), scheduler.getBuckets());
+                }
+            }
+        }
+        if (!live.contains(instanceId)) {
+            live.add(instanceId);
+        }
+        Collections.sort(live);
+
+        int index = live.indexOf(instanceId);
+        List<Integer> own = new ArrayList<Integer>();
+        List<Integer> query = new ArrayList<Integer>();
+        for (int bucket = 0; bucket < bucketCount; bucket++) {
+            int owner = bucket % live.size();
+            if (owner == index) {
+                own.add(bucket);
+                query.add(bucket);
+            } else if (!isLeased(leases.get(live.get(owner)), bucket)) {
+                // a lease of the previous owner doesn't count, it may have dropped the bucket already
+                query.add(bucket);
+            }
+        }
+
+        log.debug("Instance {} owns {} of {} buckets among {} live instances, {} not leased by their owners.",
+                instanceId, own.size(), bucketCount, live.size(), query.size() - own.size());
+        ownBuckets = Collections.unmodifiableList(own);
+        queryBuckets = Collections.unmodifiableList(query);
+    }
+
+    private static boolean isLeased(List<Integer> lease, int bucket) {
+        return lease != null && lease.contains(bucket);
+    }
+
+    /**
+     * @return buckets to lease on check-in, null before the first rebalance
+     */
+    public List<Integer> getOwnBuckets() {
+        return ownBuckets;
+    }
+
+    /**
+     * @return own buckets and ones not leased by their owners to query for eligible triggers,
+     *         null before the first rebalance to query all of them
+     */
+    public List<Integer> getQueryBuckets() {
+        return queryBuckets;
+    }
+}
@@ -3,8 +3,8 @@ package com.novemberain.quartz.mongodb.cluster;
 import com.novemberain.quartz.mongodb.LockManager;
 import com.novemberain.quartz.mongodb.TriggerAndJobPersister;
 import com.novemberain.quartz.mongodb.dao.JobDao;
-import com.novemberain.quartz.mongodb.dao.LocksDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
 import com.novemberain.quartz.mongodb.trigger.MisfireHandler;
 import org.quartz.JobPersistenceException;
 import org.quartz.TriggerKey;
@@ -12,33 +12,38 @@ import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class TriggerRecoverer {
 
     private static final Logger log = LoggerFactory.getLogger(TriggerRecoverer.class);
 
-    private final LocksDao locksDao;
+    // Number of recovered triggers loaded and unlocked at once
+    private static final int RECOVERY_BATCH_SIZE = 100;
+
     private final TriggerAndJobPersister persister;
     private final LockManager lockManager;
     private final TriggerDao triggerDao;
     private final JobDao jobDao;
     private final RecoveryTriggerFactory recoveryTriggerFactory;
     private final MisfireHandler misfireHandler;
+    private final JobStoreMetrics metrics;
 
-    public TriggerRecoverer(LocksDao locksDao, TriggerAndJobPersister persister,
-                            LockManager lockManager, TriggerDao triggerDao,
+    public TriggerRecoverer(TriggerAndJobPersister persister, LockManager lockManager, TriggerDao triggerDao,
                             JobDao jobDao, RecoveryTriggerFactory recoveryTriggerFactory,
-                            MisfireHandler misfireHandler) {
-        this.locksDao = locksDao;
+                            MisfireHandler misfireHandler, JobStoreMetrics metrics) {
         this.persister = persister;
         this.lockManager = lockManager;
         this.triggerDao = triggerDao;
         this.jobDao = jobDao;
         this.recoveryTriggerFactory = recoveryTriggerFactory;
         this.misfireHandler = misfireHandler;
+        this.metrics = metrics;
     }
 
     public void recover() throws JobPersistenceException {
-        for (TriggerKey key : locksDao.findOwnTriggersLocks()) {
+        for (TriggerKey key : lockManager.findOwnTriggersLocks()) {
             OperableTrigger trigger = triggerDao.getTrigger(key);
             if (trigger == null) {
                 continue;
@@ -46,13 +51,32 @@ public class TriggerRecoverer {
 
             // Make the trigger's lock fresh for other nodes,
             // so they don't recover it.
-            if (locksDao.updateOwnLock(trigger.getKey())) {
+            if (lockManager.updateOwnLock(trigger.getKey())) {
                 doRecovery(trigger);
                 lockManager.unlockAcquiredTrigger(trigger);
             }
         }
     }
 
+    /**
+     * Recover triggers taken over from a defunct scheduler with
+     * {@link LockManager#takeOverTriggerLocks(String)}, loading and unlocking them in batches.
+     *
+     * @param defunctInstanceId    scheduler the triggers were taken from
+     * @return number of recovered triggers
+     */
+    public int recoverTakenOver(String defunctInstanceId) throws JobPersistenceException {
+        List<TriggerKey> keys = new ArrayList<TriggerKey>(lockManager.findTriggersTakenOverFrom(defunctInstanceId));
+        for (int from = 0; from < keys.size(); from += RECOVERY_BATCH_SIZE) {
+            List<TriggerKey> batch = keys.subList(from, Math.min(keys.size(), from + RECOVERY_BATCH_SIZE));
+            for (OperableTrigger trigger : triggerDao.getTriggers(batch)) {
+                doRecovery(trigger);
+            }
+            lockManager.unlockTriggers(batch);
+        }
+        return keys.size();
+    }
+
     /**
      * Do recovery procedure after failed run of given trigger.
      *
@@ -80,13 +104,14 @@ public class TriggerRecoverer {
         log.info("Recovering trigger: {}", trigger.getKey());
         OperableTrigger recoveryTrigger = recoveryTriggerFactory.from(trigger);
         persister.storeTrigger(recoveryTrigger, false);
+        metrics.recordRecovery();
         return recoveryTrigger;
     }
 
     private void updateMisfires(OperableTrigger trigger) throws JobPersistenceException {
         if (misfireHandler.applyMisfireOnRecovery(trigger)) {
-            log.info("Misfire applied. Replacing trigger: {}", trigger.getKey());
-            persister.storeTrigger(trigger, true);
+            log.info("Misfire applied. Updating trigger: {}", trigger.getKey());
+            lockManager.storeAcquiredTrigger(trigger);
         } else {
             //TODO should complete trigger?
             log.warn("Recovery misfire not applied for trigger: {}",
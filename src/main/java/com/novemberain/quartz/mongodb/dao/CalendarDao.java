@@ -11,24 +11,35 @@ import com.mongodb.client.MongoIterable;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Projections;
+import com.novemberain.quartz.mongodb.util.CalendarCache;
+import com.novemberain.quartz.mongodb.util.Clock;
 import com.novemberain.quartz.mongodb.util.SerialUtils;
 
 import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 public class CalendarDao {
 
     static final String CALENDAR_NAME = "name";
     static final String CALENDAR_SERIALIZED_OBJECT = "serializedObject";
+    static final String CALENDAR_VERSION = "version";
 
     private final MongoCollection<Document> calendarCollection;
+    private final CalendarCache calendarCache;
 
     public CalendarDao(MongoCollection<Document> calendarCollection) {
+        this(calendarCollection, new CalendarCache(Clock.SYSTEM_CLOCK, 0, CalendarCache.DEFAULT_MAX_SIZE));
+    }
+
+    public CalendarDao(MongoCollection<Document> calendarCollection, CalendarCache calendarCache) {
         this.calendarCollection = calendarCollection;
+        this.calendarCache = calendarCache;
     }
 
     public void clear() {
         calendarCollection.deleteMany(new Document());
+        calendarCache.clear();
     }
 
     public void createIndex() {
@@ -43,8 +54,16 @@ public class CalendarDao {
         return (int) calendarCollection.count();
     }
 
+    /**
+     * Count from collection metadata, without scanning the collection.
+     */
+    public int getEstimatedCount() {
+        return (int) calendarCollection.estimatedDocumentCount();
+    }
+
     public boolean remove(String name) {
         Bson searchObj = Filters.eq(CALENDAR_NAME, name);
+        calendarCache.invalidate(name);
         if (calendarCollection.count(searchObj) > 0) {
             calendarCollection.deleteMany(searchObj);
             return true;
@@ -52,24 +71,66 @@ public class CalendarDao {
         return false;
     }
 
+    /**
+     * Returns calendar with given name. Deserialized calendars are cached and
+     * reused as long as the version stamp of the stored calendar is unchanged.
+     * The returned instance may be shared and must not be modified.
+     */
     public Calendar retrieveCalendar(String calName) throws JobPersistenceException {
-        if (calName != null) {
-            Bson searchObj = Filters.eq(CALENDAR_NAME, calName);
-            Document doc = calendarCollection.find(searchObj).first();
-            if (doc != null) {
-                Binary serializedCalendar = doc.get(CALENDAR_SERIALIZED_OBJECT, Binary.class);
-                return SerialUtils.deserialize(serializedCalendar, Calendar.class);
-            }
+        if (calName == null) {
+            return null;
+        }
+
+        Calendar calendar = calendarCache.getFresh(calName);
+        if (calendar != null) {
+            return calendar;
+        }
+
+        Bson searchObj = Filters.eq(CALENDAR_NAME, calName);
+        Document versionDoc = calendarCollection.find(searchObj)
+                .projection(Projections.include(CALENDAR_VERSION)).first();
+        if (versionDoc == null) {
+            calendarCache.invalidate(calName);
+            return null;
         }
-        return null;
+
+        calendar = calendarCache.getIfVersion(calName, getVersion(versionDoc));
+        if (calendar != null) {
+            return calendar;
+        }
+
+        Document doc = calendarCollection.find(searchObj).first();
+        if (doc == null) {
+            return null;
+        }
+        Binary serializedCalendar = doc.get(CALENDAR_SERIALIZED_OBJECT, Binary.class);
+        calendar = SerialUtils.deserialize(serializedCalendar, Calendar.class);
+        calendarCache.put(calName, getVersion(doc), calendar);
+        return calendar;
     }
 
     public void store(String name, Calendar calendar) throws JobPersistenceException {
         Document doc = new Document(CALENDAR_NAME, name)
-            .append(CALENDAR_SERIALIZED_OBJECT, SerialUtils.serialize(calendar));
+            .append(CALENDAR_SERIALIZED_OBJECT, SerialUtils.serialize(calendar))
+            .append(CALENDAR_VERSION, newVersion());
+        calendarCache.invalidate(name);
         calendarCollection.insertOne(doc);
     }
 
+    private long getVersion(Document doc) {
+        // calendars stored by older versions have no stamp
+        Long version = doc.getLong(CALENDAR_VERSION);
+        return version == null ? 0 : version;
+    }
+
+    private long newVersion() {
+        long version;
+        do {
+            version = ThreadLocalRandom.current().nextLong();
+        } while (version == 0);
+        return version;
+    }
+
     public List<String> retrieveCalendarNames() {
         return calendarCollection
                 .find()
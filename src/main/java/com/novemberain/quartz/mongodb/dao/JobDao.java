@@ -1,9 +1,19 @@
 package com.novemberain.quartz.mongodb.dao;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.bulk.BulkWriteUpsert;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.novemberain.quartz.mongodb.JobConverter;
 import com.novemberain.quartz.mongodb.util.GroupHelper;
@@ -61,6 +71,23 @@ public class JobDao {
         return jobCollection.find(Filters.eq("_id", id)).first();
     }
 
+    /**
+     * Resolve keys of jobs with given ids using a single query.
+     *
+     * @param ids    ids of jobs
+     * @return job keys by job id, missing jobs are absent from the map
+     */
+    public Map<Object, JobKey> getJobKeysByIds(Collection<?> ids) {
+        Map<Object, JobKey> keys = new HashMap<Object, JobKey>();
+        if (ids.isEmpty()) {
+            return keys;
+        }
+        for (Document doc : jobCollection.find(Filters.in("_id", ids)).projection(Keys.KEY_AND_GROUP_FIELDS)) {
+            keys.put(doc.get("_id"), Keys.toJobKey(doc));
+        }
+        return keys;
+    }
+
     public Document getJob(Bson keyObject) {
         return jobCollection.find(keyObject).first();
     }
@@ -73,6 +100,13 @@ public class JobDao {
         return (int) jobCollection.count();
     }
 
+    /**
+     * Count from collection metadata, without scanning the collection.
+     */
+    public int getEstimatedCount() {
+        return (int) jobCollection.estimatedDocumentCount();
+    }
+
     public List<String> getGroupNames() {
         return jobCollection.distinct(KEY_GROUP, String.class).into(new ArrayList<String>());
     }
@@ -140,6 +174,71 @@ public class JobDao {
         return objectId;
     }
 
+    /**
+     * Store given jobs with a single unordered bulk write. Like
+     * {@link #storeJobInMongo(JobDetail, boolean)}, jobs which already exist
+     * are kept unless replacing, and their ids are returned.
+     *
+     * @param newJobs            jobs to store
+     * @param replaceExisting    whether to replace jobs which already exist
+     * @return ids of stored jobs by their key
+     * @throws JobPersistenceException if a job couldn't be stored
+     */
+    public Map<JobKey, ObjectId> storeJobsInMongo(List<JobDetail> newJobs, boolean replaceExisting)
+            throws JobPersistenceException {
+        Map<JobKey, ObjectId> ids = new HashMap<JobKey, ObjectId>();
+        if (newJobs.isEmpty()) {
+            return ids;
+        }
+
+        List<WriteModel<Document>> requests = new ArrayList<WriteModel<Document>>(newJobs.size());
+        for (JobDetail newJob : newJobs) {
+            JobKey key = newJob.getKey();
+            Document job = jobConverter.toDocument(newJob, key);
+            if (replaceExisting) {
+                requests.add(new ReplaceOneModel<Document>(toFilter(key), job, new ReplaceOptions().upsert(true)));
+            } else {
+                // id is known without reading write results
+                ObjectId id = new ObjectId();
+                job.put("_id", id);
+                ids.put(key, id);
+                requests.add(new InsertOneModel<Document>(job));
+            }
+        }
+
+        BulkWriteResult result;
+        try {
+            result = jobCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                JobKey key = newJobs.get(error.getIndex()).getKey();
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw new JobPersistenceException("Could not store job " + key + ": " + error.getMessage());
+                }
+                // Fine, stored meanwhile, find it below.
+                ids.remove(key);
+            }
+            result = e.getWriteResult();
+        }
+        for (BulkWriteUpsert upsert : result.getUpserts()) {
+            ids.put(newJobs.get(upsert.getIndex()).getKey(), upsert.getId().asObjectId().getValue());
+        }
+
+        // Replaced jobs keep their ids.
+        List<Bson> missing = new ArrayList<Bson>();
+        for (JobDetail newJob : newJobs) {
+            if (!ids.containsKey(newJob.getKey())) {
+                missing.add(toFilter(newJob.getKey()));
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (Document doc : jobCollection.find(Filters.or(missing)).projection(Keys.KEY_AND_GROUP_FIELDS)) {
+                ids.put(Keys.toJobKey(doc), doc.getObjectId("_id"));
+            }
+        }
+        return ids;
+    }
+
     private Collection<Document> findMatching(GroupMatcher<JobKey> matcher) {
         return groupHelper.inGroupsThatMatch(matcher);
     }
@@ -17,11 +17,14 @@ import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
 import java.util.List;
 
 import static com.novemberain.quartz.mongodb.Constants.LOCK_INSTANCE_ID;
+import static com.novemberain.quartz.mongodb.Constants.LOCK_RECOVERED_FROM;
+import static com.novemberain.quartz.mongodb.Constants.LOCK_TIME;
 import static com.novemberain.quartz.mongodb.util.Keys.*;
 
 public class LocksDao {
@@ -80,6 +83,27 @@ public class LocksDao {
         return keys;
     }
 
+    /**
+     * Find trigger locks taken over by the current scheduler from given defunct one.
+     */
+    public List<TriggerKey> findTriggerLocksTakenOverFrom(String defunctInstanceId) {
+        final List<TriggerKey> keys = new LinkedList<>();
+        final Bson filter = Filters.and(
+                createTriggersLocksFilter(instanceId),
+                Filters.eq(LOCK_RECOVERED_FROM, defunctInstanceId));
+        for (Document doc : locksCollection.find(filter)) {
+            keys.add(toTriggerKey(doc));
+        }
+        return keys;
+    }
+
+    /**
+     * @return true when given scheduler holds any trigger locks
+     */
+    public boolean hasTriggerLocks(String instanceId) {
+        return locksCollection.find(createTriggersLocksFilter(instanceId)).first() != null;
+    }
+
     public void lockJob(JobDetail job) {
         log.debug("Inserting lock for job {}", job.getKey());
         Document lock = createJobLock(job.getKey(), instanceId, clock.now());
@@ -123,6 +147,29 @@ public class LocksDao {
         return false;
     }
 
+    /**
+     * Take over trigger locks of a defunct scheduler with one update.
+     * The locks are marked with the scheduler they were taken from,
+     * so they can be told apart from the current scheduler's own locks.
+     *
+     * @param defunctInstanceId    scheduler whose locks to take over
+     * @param expiryDate           only locks taken before this date are taken over
+     * @return number of locks taken over
+     */
+    public long takeOverTriggerLocks(String defunctInstanceId, Date expiryDate) {
+        UpdateResult updateResult = locksCollection.updateMany(
+                Filters.and(
+                        createTriggersLocksFilter(defunctInstanceId),
+                        Filters.lt(LOCK_TIME, expiryDate)),
+                new Document("$set", new Document()
+                        .append(LOCK_INSTANCE_ID, instanceId)
+                        .append(LOCK_TIME, clock.now())
+                        .append(LOCK_RECOVERED_FROM, defunctInstanceId)));
+        log.info("Scheduler {} took over {} trigger locks of {}.",
+                instanceId, updateResult.getModifiedCount(), defunctInstanceId);
+        return updateResult.getModifiedCount();
+    }
+
     /**
      * Reset lock time on own lock.
      *
@@ -164,6 +211,20 @@ public class LocksDao {
         log.info("Trigger lock {}.{} removed.", trigger.getKey(), instanceId);
     }
 
+    /**
+     * Unlock given triggers with one delete, if they still belong to the current scheduler.
+     *
+     * @param keys    triggers to unlock
+     */
+    public void unlockTriggers(List<TriggerKey> keys) {
+        List<Bson> filters = new ArrayList<>(keys.size());
+        for (TriggerKey key : keys) {
+            filters.add(toFilter(key, instanceId));
+        }
+        log.info("Removing {} trigger locks of {}.", keys.size(), instanceId);
+        remove(Filters.or(filters));
+    }
+
     public void unlockJob(JobDetail job) {
         log.debug("Removing lock for job {}", job.getKey());
         remove(createJobLockFilter(job.getKey()));
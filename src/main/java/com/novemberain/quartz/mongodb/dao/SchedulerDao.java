@@ -25,6 +25,7 @@ public class SchedulerDao {
     public static final String INSTANCE_ID_FIELD = "instanceId";
     public static final String LAST_CHECKIN_TIME_FIELD = "lastCheckinTime";
     public static final String CHECKIN_INTERVAL_FIELD = "checkinInterval";
+    public static final String BUCKETS_FIELD = "buckets";
 
     public final MongoCollection<Document> schedulerCollection;
 
@@ -59,13 +60,22 @@ public class SchedulerDao {
      * Checks-in in cluster to inform other nodes that its alive.
      */
     public void checkIn() {
+        checkIn(null);
+    }
+
+    /**
+     * Checks-in in cluster, leasing given trigger buckets.
+     *
+     * @param buckets    trigger buckets owned by this node, null when not partitioned
+     */
+    public void checkIn(List<Integer> buckets) {
         long lastCheckinTime = clock.millis();
 
         log.debug("Saving node data: name='{}', id='{}', checkin time={}, interval={}",
                 schedulerName, instanceId, lastCheckinTime, clusterCheckinIntervalMillis);
 
         // If not found Mongo will create a new entry with content from filter and update.
-        Document update = createUpdateClause(lastCheckinTime);
+        Document update = createUpdateClause(lastCheckinTime, buckets);
 
         UpdateResult result = schedulerCollection
                 .updateOne(schedulerFilter, update, new UpdateOptions().upsert(true));
@@ -148,10 +158,14 @@ public class SchedulerDao {
                 Filters.eq(INSTANCE_ID_FIELD, instanceId));
     }
 
-    private Document createUpdateClause(long lastCheckinTime) {
-        return new Document("$set", new Document()
+    private Document createUpdateClause(long lastCheckinTime, List<Integer> buckets) {
+        Document fields = new Document()
                     .append(LAST_CHECKIN_TIME_FIELD, lastCheckinTime)
-                    .append(CHECKIN_INTERVAL_FIELD, clusterCheckinIntervalMillis));
+                    .append(CHECKIN_INTERVAL_FIELD, clusterCheckinIntervalMillis);
+        if (buckets != null) {
+            fields.append(BUCKETS_FIELD, buckets);
+        }
+        return new Document("$set", fields);
     }
 
     private Block<Document> createResultConverter(final List<Scheduler> schedulers) {
@@ -163,11 +177,13 @@ public class SchedulerDao {
         };
     }
 
+    @SuppressWarnings("unchecked")
     private Scheduler toScheduler(Document document) {
         return new Scheduler(
                 document.getString(SCHEDULER_NAME_FIELD),
                 document.getString(INSTANCE_ID_FIELD),
                 document.getLong(LAST_CHECKIN_TIME_FIELD),
-                document.getLong(CHECKIN_INTERVAL_FIELD));
+                document.getLong(CHECKIN_INTERVAL_FIELD),
+                (List<Integer>) document.get(BUCKETS_FIELD, List.class));
     }
 }
@@ -1,13 +1,28 @@
 package com.novemberain.quartz.mongodb.dao;
 
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoWriteException;
+import com.mongodb.bulk.BulkWriteError;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.InsertOneModel;
+import com.mongodb.client.model.Indexes;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.ReplaceOneModel;
 import com.mongodb.client.model.ReplaceOptions;
-import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateManyModel;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.UpdateResult;
 import com.novemberain.quartz.mongodb.Constants;
+import com.novemberain.quartz.mongodb.cluster.TriggerBuckets;
 import com.novemberain.quartz.mongodb.trigger.TriggerConverter;
 import com.novemberain.quartz.mongodb.util.Keys;
 import com.novemberain.quartz.mongodb.util.QueryHelper;
@@ -24,34 +39,134 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.mongodb.client.model.Sorts.ascending;
 import static com.novemberain.quartz.mongodb.util.Keys.KEY_GROUP;
+import static com.novemberain.quartz.mongodb.util.Keys.KEY_NAME;
 import static com.novemberain.quartz.mongodb.util.Keys.toFilter;
 
 public class TriggerDao {
 
     private static final Logger log = LoggerFactory.getLogger(TriggerDao.class);
 
+    private static final int BUCKET_ASSIGNMENT_BATCH_SIZE = 1000;
+
+    // Attempts to replace or release a trigger which keeps changing meanwhile
+    private static final int MAX_WRITE_ATTEMPTS = 10;
+
+    /**
+     * Acquisition doesn't need job data, it's loaded with {@link #findJobData(Collection)}
+     * only for triggers which are fired.
+     */
+    private static final Bson WITHOUT_JOB_DATA = Projections.exclude(
+            Constants.JOB_DATA, Constants.JOB_DATA_PLAIN, Constants.JOB_DATA_BINARY);
+
+    /**
+     * Fields of an acquired trigger kept when it's replaced.
+     */
+    private static final List<String> LOCK_FIELDS = Arrays.asList(
+            Constants.TRIGGER_STATE, Constants.LOCK_INSTANCE_ID, Constants.LOCK_TIME,
+            Constants.LOCK_RECOVERED_FROM, Constants.LOCK_STATE_ON_RELEASE);
+
     private MongoCollection<Document> triggerCollection;
     private QueryHelper queryHelper;
     private TriggerConverter triggerConverter;
+    private final String writer;
+    private final AtomicLong writes = new AtomicLong();
 
     public TriggerDao(MongoCollection<Document> triggerCollection, QueryHelper queryHelper,
                       TriggerConverter triggerConverter) {
+        this(triggerCollection, queryHelper, triggerConverter, null);
+    }
+
+    /**
+     * @param writer    scheduler which stamps triggers it stores or reschedules,
+     *                  see {@link #isWrittenBy(String, String)}, null to not stamp them
+     */
+    public TriggerDao(MongoCollection<Document> triggerCollection, QueryHelper queryHelper,
+                      TriggerConverter triggerConverter, String writer) {
         this.triggerCollection = triggerCollection;
         this.queryHelper = queryHelper;
         this.triggerConverter = triggerConverter;
+        this.writer = writer;
+    }
+
+    /**
+     * Tell whether a trigger was last stored, rescheduled or had its state set by given scheduler.
+     * The stamp changes with every write, so it shows up among updated fields of a change stream.
+     *
+     * @param stamp         value of {@link Constants#TRIGGER_WRITER}, may be null
+     * @param instanceId    scheduler to check
+     */
+    public static boolean isWrittenBy(String stamp, String instanceId) {
+        return stamp != null && stamp.startsWith(instanceId + ':');
     }
 
     public void createIndex() {
         triggerCollection.createIndex(Keys.KEY_AND_GROUP_FIELDS,
                 new IndexOptions().unique(true));
+
+        // Serves the eligibility query: equality on state, then range and sort on next fire time
+        triggerCollection.createIndex(
+                Indexes.ascending(Constants.TRIGGER_STATE, Constants.TRIGGER_NEXT_FIRE_TIME));
+
+        // Serves the part of that query looking for misfired triggers which ignore misfires.
+        // Partial, so writes of other triggers don't pay for it.
+        triggerCollection.createIndex(
+                Indexes.ascending(Constants.TRIGGER_STATE, Constants.TRIGGER_MISFIRE_INSTRUCTION,
+                        Constants.TRIGGER_NEXT_FIRE_TIME),
+                new IndexOptions().partialFilterExpression(Filters.eq(Constants.TRIGGER_MISFIRE_INSTRUCTION,
+                        Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY)));
+    }
+
+    /**
+     * Serves the eligibility query of partitioned triggers,
+     * which looks up the own buckets merged by next fire time.
+     */
+    public void createBucketIndex() {
+        triggerCollection.createIndex(Indexes.ascending(
+                Constants.TRIGGER_STATE, Constants.TRIGGER_BUCKET, Constants.TRIGGER_NEXT_FIRE_TIME));
+    }
+
+    /**
+     * Set bucket of triggers stored before partitioning was enabled,
+     * or with a different number of buckets. Triggers store the number of buckets
+     * next to their bucket, so only those which need a new one are read.
+     *
+     * @return number of triggers updated
+     */
+    public int assignBuckets(int bucketCount) {
+        List<TriggerKey> keys = new ArrayList<TriggerKey>();
+        List<Bson> updates = new ArrayList<Bson>();
+        int updated = 0;
+        for (Document doc : triggerCollection.find(Filters.ne(Constants.TRIGGER_BUCKET_COUNT, bucketCount))
+                .projection(Projections.include(KEY_NAME, KEY_GROUP))) {
+            TriggerKey key = Keys.toTriggerKey(doc);
+            int bucket = TriggerBuckets.bucketOf(key, bucketCount);
+            keys.add(key);
+            updates.add(new Document("$set", new Document(Constants.TRIGGER_BUCKET, bucket)
+                    .append(Constants.TRIGGER_BUCKET_COUNT, bucketCount)));
+            if (updates.size() == BUCKET_ASSIGNMENT_BATCH_SIZE) {
+                updated += updates.size() - updateAll(keys, updates).size();
+                keys.clear();
+                updates.clear();
+            }
+        }
+        updated += updates.size() - updateAll(keys, updates).size();
+        if (updated > 0) {
+            log.info("Assigned buckets to {} triggers.", updated);
+        }
+        return updated;
     }
 
     public void dropIndex() {
@@ -72,11 +187,247 @@ public class TriggerDao {
     }
 
     public FindIterable<Document> findEligibleToRun(Date noLaterThanDate) {
-        Bson query = createNextTriggerQuery(noLaterThanDate);
-        if (log.isInfoEnabled()) {
+        return findEligibleToRun(noLaterThanDate, null);
+    }
+
+    /**
+     * Find triggers due to fire not later than given date, leaving out the ones
+     * misfired before given time unless they ignore misfires.
+     *
+     * @param noLaterThanDate    triggers must be due to fire not later than this
+     * @param misfireTime        triggers due before this are left out, null to include them
+     */
+    public FindIterable<Document> findEligibleToRun(Date noLaterThanDate, Date misfireTime) {
+        return findEligibleToRun(noLaterThanDate, misfireTime, null);
+    }
+
+    /**
+     * Find eligible triggers in given buckets only, without their job data.
+     *
+     * @param buckets    buckets to look in, null to look in all of them. Triggers without
+     *                   a bucket, stored by a node not partitioning them, are always included.
+     */
+    public FindIterable<Document> findEligibleToRun(Date noLaterThanDate, Date misfireTime,
+                                                    List<Integer> buckets) {
+        Bson query = createEligibleQuery(null, noLaterThanDate, misfireTime, buckets);
+        if (log.isDebugEnabled()) {
             log.debug("Found {} triggers which are eligible to be run.", getCount(query));
         }
-        return triggerCollection.find(query).sort(ascending(Constants.TRIGGER_NEXT_FIRE_TIME));
+        return triggerCollection.find(query)
+                .projection(WITHOUT_JOB_DATA)
+                .sort(ascending(Constants.TRIGGER_NEXT_FIRE_TIME));
+    }
+
+    /**
+     * Find keys and next fire times of eligible triggers due after given date,
+     * with the same conditions as {@link #findEligibleToRun(Date, Date, List)}.
+     *
+     * @param after    triggers must be due after this, null to include all due ones
+     */
+    public FindIterable<Document> findEligibleFireTimes(Date after, Date noLaterThanDate, Date misfireTime,
+                                                        List<Integer> buckets) {
+        Bson query = createEligibleQuery(after, noLaterThanDate, misfireTime, buckets);
+        return triggerCollection.find(query).projection(Projections.include(
+                KEY_NAME, KEY_GROUP, Constants.TRIGGER_NEXT_FIRE_TIME, Constants.TRIGGER_BUCKET));
+    }
+
+    /**
+     * Claim eligible trigger for given scheduler in a single round trip.
+     *
+     * <p>The trigger is moved from WAITING to ACQUIRED and stamped with
+     * the owner's instanceId and lock time, so no separate lock document
+     * is needed.</p>
+     *
+     * @param id                 trigger document's id
+     * @param noLaterThanDate    trigger must be due to fire not later than this
+     * @param instanceId         id of the acquiring scheduler
+     * @param lockTime           time of the acquisition
+     * @return the acquired trigger document without job data or null when it's no longer eligible
+     */
+    public Document acquire(Object id, Date noLaterThanDate, String instanceId, Date lockTime) {
+        return triggerCollection.findOneAndUpdate(
+                Filters.and(Filters.eq("_id", id), createNextTriggerQuery(noLaterThanDate)),
+                createAcquireUpdateDocument(instanceId, lockTime),
+                createAcquireOptions());
+    }
+
+    /**
+     * Claim eligible trigger by its key, like {@link #acquire(Object, Date, String, Date)}.
+     *
+     * @return the acquired trigger document without job data or null when it's no longer eligible
+     */
+    public Document acquire(TriggerKey triggerKey, Date noLaterThanDate, String instanceId, Date lockTime) {
+        return triggerCollection.findOneAndUpdate(
+                Filters.and(toFilter(triggerKey), createNextTriggerQuery(noLaterThanDate)),
+                createAcquireUpdateDocument(instanceId, lockTime),
+                createAcquireOptions());
+    }
+
+    /**
+     * Find job data of given triggers, which is left out when they are acquired.
+     * Triggers without job data aren't returned.
+     *
+     * @param triggerKeys    triggers to look up, not empty
+     * @return documents with trigger keys and job data fields only
+     */
+    public FindIterable<Document> findJobData(Collection<TriggerKey> triggerKeys) {
+        return triggerCollection.find(Filters.and(
+                toKeysFilter(triggerKeys),
+                Filters.or(
+                        Filters.exists(Constants.JOB_DATA),
+                        Filters.exists(Constants.JOB_DATA_PLAIN),
+                        Filters.exists(Constants.JOB_DATA_BINARY))))
+                .projection(Projections.include(KEY_NAME, KEY_GROUP,
+                        Constants.JOB_DATA, Constants.JOB_DATA_PLAIN, Constants.JOB_DATA_BINARY));
+    }
+
+    /**
+     * Claim waiting trigger regardless of its next fire time.
+     *
+     * @return true when the trigger was acquired
+     */
+    public boolean acquire(TriggerKey triggerKey, String instanceId, Date lockTime) {
+        UpdateResult result = triggerCollection.updateOne(
+                Filters.and(
+                        toFilter(triggerKey),
+                        Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_WAITING)),
+                createAcquireUpdateDocument(instanceId, lockTime));
+        return result.getModifiedCount() == 1;
+    }
+
+    public Document findAcquired(TriggerKey triggerKey) {
+        return findTrigger(Filters.and(
+                toFilter(triggerKey),
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)));
+    }
+
+    public FindIterable<Document> findAcquiredBy(String instanceId) {
+        return triggerCollection.find(createAcquiredFilter(instanceId));
+    }
+
+    public FindIterable<Document> findAcquiredBefore(Date lockTime) {
+        return triggerCollection.find(Filters.and(
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED),
+                Filters.lt(Constants.LOCK_TIME, lockTime)));
+    }
+
+    /**
+     * Take over acquired trigger iff its lock time haven't changed,
+     * using the same "Update document if current" pattern as lock documents.
+     *
+     * @return true when relocked by given scheduler
+     */
+    public boolean relock(TriggerKey triggerKey, Date oldLockTime, String instanceId, Date lockTime) {
+        UpdateResult result = triggerCollection.updateOne(
+                Filters.and(
+                        toFilter(triggerKey),
+                        Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED),
+                        Filters.eq(Constants.LOCK_TIME, oldLockTime)),
+                Keys.createLockUpdateDocument(instanceId, lockTime));
+        return result.getModifiedCount() == 1;
+    }
+
+    /**
+     * Reset lock time of a trigger acquired by given scheduler.
+     *
+     * @return true when the trigger is still owned by the scheduler
+     */
+    public boolean updateOwnLock(TriggerKey triggerKey, String instanceId, Date lockTime) {
+        UpdateResult result = triggerCollection.updateOne(
+                Filters.and(toFilter(triggerKey), createAcquiredFilter(instanceId)),
+                Keys.createLockUpdateDocument(instanceId, lockTime));
+        return result.getModifiedCount() == 1;
+    }
+
+    /**
+     * Move trigger back to WAITING if it's still acquired by given scheduler,
+     * or to the state it was paused or resumed to while it was acquired.
+     */
+    public void release(TriggerKey triggerKey, String instanceId) throws JobPersistenceException {
+        release(triggerKey, instanceId, Constants.STATE_WAITING);
+    }
+
+    /**
+     * Move given triggers back to WAITING if they are still acquired by given scheduler,
+     * or to the states they were paused or resumed to while they were acquired.
+     */
+    public void releaseAll(List<TriggerKey> triggerKeys, String instanceId) throws JobPersistenceException {
+        Bson keysFilter = toKeysFilter(triggerKeys);
+        UpdateResult result = triggerCollection.updateMany(
+                Filters.and(keysFilter, createReleaseFilter(instanceId, Constants.STATE_WAITING)),
+                createReleaseUpdateDocument(Constants.STATE_WAITING));
+        if (result.getMatchedCount() < triggerKeys.size()) {
+            releaseToStatesOnRelease(keysFilter, instanceId);
+        }
+    }
+
+    /**
+     * Take over triggers acquired by a defunct scheduler with one update.
+     * The triggers are marked with the scheduler they were taken from,
+     * so they can be told apart from triggers acquired by the new owner.
+     *
+     * @param defunctInstanceId    scheduler whose triggers to take over
+     * @param expiryDate           only triggers acquired before this date are taken over
+     * @param instanceId           new owner
+     * @param lockTime             new lock time
+     * @return number of triggers taken over
+     */
+    public long takeOver(String defunctInstanceId, Date expiryDate, String instanceId, Date lockTime) {
+        UpdateResult result = triggerCollection.updateMany(
+                Filters.and(
+                        createAcquiredFilter(defunctInstanceId),
+                        Filters.lt(Constants.LOCK_TIME, expiryDate)),
+                new Document("$set", new Document()
+                        .append(Constants.LOCK_INSTANCE_ID, instanceId)
+                        .append(Constants.LOCK_TIME, lockTime)
+                        .append(Constants.LOCK_RECOVERED_FROM, defunctInstanceId)));
+        return result.getModifiedCount();
+    }
+
+    public FindIterable<Document> findTakenOver(String instanceId, String defunctInstanceId) {
+        return triggerCollection.find(Filters.and(
+                createAcquiredFilter(instanceId),
+                Filters.eq(Constants.LOCK_RECOVERED_FROM, defunctInstanceId)));
+    }
+
+    /**
+     * Move all triggers acquired by given scheduler back to WAITING,
+     * or to the states they were paused or resumed to while they were acquired.
+     */
+    public void releaseAll(String instanceId) throws JobPersistenceException {
+        triggerCollection.updateMany(createReleaseFilter(instanceId, Constants.STATE_WAITING),
+                createReleaseUpdateDocument(Constants.STATE_WAITING));
+        releaseToStatesOnRelease(new Document(), instanceId);
+    }
+
+    /**
+     * Find waiting triggers that will never fire again, without their job data.
+     * They are kept out of {@link #findEligibleToRun(Date)} so that query can be
+     * served by the index.
+     */
+    public FindIterable<Document> findWithoutNextFireTime() {
+        return triggerCollection.find(Filters.and(
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_WAITING),
+                Filters.eq(Constants.TRIGGER_NEXT_FIRE_TIME, null)))
+                .projection(WITHOUT_JOB_DATA);
+    }
+
+    /**
+     * Find waiting triggers due before given time, which have misfire instructions to apply.
+     * Served by the same index as {@link #findEligibleToRun(Date)}.
+     *
+     * @param misfireTime    triggers due before this have misfired
+     * @param limit          max number of triggers to return
+     * @return misfired trigger documents, the earliest first
+     */
+    public List<Document> findMisfired(Date misfireTime, int limit) {
+        return triggerCollection.find(Filters.and(
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_WAITING),
+                Filters.lt(Constants.TRIGGER_NEXT_FIRE_TIME, misfireTime),
+                Filters.ne(Constants.TRIGGER_MISFIRE_INSTRUCTION, Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY)))
+                .sort(ascending(Constants.TRIGGER_NEXT_FIRE_TIME))
+                .limit(limit)
+                .into(new ArrayList<Document>(limit));
     }
 
     public Document findTrigger(Bson filter) {
@@ -87,6 +438,13 @@ public class TriggerDao {
         return (int) triggerCollection.count();
     }
 
+    /**
+     * Count from collection metadata, without scanning the collection.
+     */
+    public int getEstimatedCount() {
+        return (int) triggerCollection.estimatedDocumentCount();
+    }
+
     public List<String> getGroupNames() {
         return triggerCollection.distinct(KEY_GROUP, String.class).into(new ArrayList<String>());
     }
@@ -104,14 +462,23 @@ public class TriggerDao {
         return triggerConverter.toTrigger(triggerKey, doc);
     }
 
+    /**
+     * Load given triggers with a single query.
+     *
+     * @param triggerKeys    triggers to look up, not empty
+     * @return triggers found whose jobs still exist, in no particular order
+     */
+    public List<OperableTrigger> getTriggers(Collection<TriggerKey> triggerKeys) throws JobPersistenceException {
+        List<Document> docs = triggerCollection.find(toKeysFilter(triggerKeys)).into(new ArrayList<Document>());
+        return triggerConverter.toTriggers(docs);
+    }
+
     public List<OperableTrigger> getTriggersForJob(Document doc) throws JobPersistenceException {
-        final List<OperableTrigger> triggers = new LinkedList<OperableTrigger>();
-        if (doc != null) {
-            for (Document item : findByJobId(doc.get("_id"))) {
-                triggers.add(triggerConverter.toTrigger(item));
-            }
+        if (doc == null) {
+            return new LinkedList<OperableTrigger>();
         }
-        return triggers;
+        List<Document> items = findByJobId(doc.get("_id")).into(new ArrayList<Document>());
+        return triggerConverter.toTriggers(items);
     }
 
     public Set<TriggerKey> getTriggerKeys(GroupMatcher<TriggerKey> matcher) {
@@ -134,12 +501,65 @@ public class TriggerDao {
     public void insert(Document trigger, Trigger offendingTrigger)
             throws ObjectAlreadyExistsException {
         try {
-            triggerCollection.insertOne(trigger);
+            triggerCollection.insertOne(stamp(trigger));
         } catch (MongoWriteException key) {
             throw new ObjectAlreadyExistsException(offendingTrigger);
         }
     }
 
+    /**
+     * Store given triggers with a single unordered bulk write,
+     * so a trigger which already exists doesn't stop the others.
+     * Unless replacing, triggers which didn't exist stay stored
+     * when {@link ObjectAlreadyExistsException} is thrown.
+     *
+     * @param triggers           trigger documents
+     * @param newTriggers        triggers, in the order of documents
+     * @param replaceExisting    whether to replace triggers which already exist
+     * @throws ObjectAlreadyExistsException if a trigger already exists and isn't replaced
+     * @throws JobPersistenceException if a trigger couldn't be stored
+     */
+    public void storeAll(List<Document> triggers, List<OperableTrigger> newTriggers, boolean replaceExisting)
+            throws JobPersistenceException {
+        if (triggers.isEmpty()) {
+            return;
+        }
+
+        List<WriteModel<Document>> requests = new ArrayList<WriteModel<Document>>(triggers.size());
+        for (int i = 0; i < triggers.size(); i++) {
+            Document trigger = stamp(triggers.get(i));
+            if (replaceExisting) {
+                trigger.remove("_id");
+                // an acquired trigger fails as a duplicate and is replaced with its lock below
+                requests.add(new ReplaceOneModel<Document>(
+                        Filters.and(toFilter(newTriggers.get(i).getKey()),
+                                Filters.ne(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                        trigger, new ReplaceOptions().upsert(true)));
+            } else {
+                requests.add(new InsertOneModel<Document>(trigger));
+            }
+        }
+
+        try {
+            triggerCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                OperableTrigger offendingTrigger = newTriggers.get(error.getIndex());
+                boolean duplicate = ErrorCategory.fromErrorCode(error.getCode()) == ErrorCategory.DUPLICATE_KEY;
+                if (duplicate && replaceExisting) {
+                    Document trigger = triggers.get(error.getIndex());
+                    trigger.remove("_id");
+                    replace(offendingTrigger.getKey(), trigger);
+                } else if (duplicate) {
+                    throw new ObjectAlreadyExistsException(offendingTrigger);
+                } else {
+                    throw new JobPersistenceException("Could not store trigger " + offendingTrigger.getKey()
+                            + ": " + error.getMessage());
+                }
+            }
+        }
+    }
+
     public void remove(Bson filter) {
         triggerCollection.deleteMany(filter);
     }
@@ -152,14 +572,127 @@ public class TriggerDao {
         triggerCollection.deleteMany(Filters.eq(Constants.TRIGGER_JOB_ID, id));
     }
 
-    public void replace(TriggerKey triggerKey, Document trigger) {
-        triggerCollection.replaceOne(toFilter(triggerKey), trigger, new ReplaceOptions().upsert(true));
+    /**
+     * Replace or insert trigger. An acquired trigger keeps its state and lock,
+     * so the scheduler which acquired it still owns it.
+     *
+     * @throws JobPersistenceException when the trigger kept changing on every attempt
+     */
+    public void replace(TriggerKey triggerKey, Document trigger) throws JobPersistenceException {
+        stamp(trigger);
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            UpdateResult result = triggerCollection.replaceOne(
+                    Filters.and(toFilter(triggerKey), Filters.ne(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                    trigger);
+            if (result.getMatchedCount() == 1) {
+                return;
+            }
+
+            Document acquired = findAcquired(triggerKey);
+            if (acquired == null) {
+                try {
+                    triggerCollection.insertOne(trigger);
+                    return;
+                } catch (MongoWriteException e) {
+                    if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY) {
+                        throw e;
+                    }
+                    // inserted or released meanwhile, try again
+                    trigger.remove("_id");
+                    continue;
+                }
+            }
+
+            Document locked = new Document(trigger);
+            for (String field : LOCK_FIELDS) {
+                if (acquired.containsKey(field)) {
+                    locked.put(field, acquired.get(field));
+                }
+            }
+            // replaced only if the lock didn't change meanwhile
+            result = triggerCollection.replaceOne(
+                    Filters.and(
+                            toFilter(triggerKey),
+                            Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED),
+                            Filters.eq(Constants.LOCK_INSTANCE_ID, acquired.get(Constants.LOCK_INSTANCE_ID)),
+                            Filters.eq(Constants.LOCK_TIME, acquired.get(Constants.LOCK_TIME))),
+                    locked);
+            if (result.getMatchedCount() == 1) {
+                return;
+            }
+        }
+        throw new JobPersistenceException("Could not replace trigger " + triggerKey
+                + ", it changed on each of " + MAX_WRITE_ATTEMPTS + " attempts");
+    }
+
+    public void update(TriggerKey triggerKey, Bson update) {
+        triggerCollection.updateOne(toFilter(triggerKey), update);
+    }
+
+    /**
+     * Update given triggers with a single unordered bulk write,
+     * so a failed update doesn't stop the others.
+     *
+     * @param triggerKeys    keys of triggers to update
+     * @param updates        update documents, in the order of keys
+     * @return errors of failed updates by their index in given lists
+     */
+    public Map<Integer, String> updateAll(List<TriggerKey> triggerKeys, List<Bson> updates) {
+        return updateAll(triggerKeys, null, updates);
+    }
+
+    /**
+     * Update given triggers which are still acquired by given scheduler,
+     * with a single unordered bulk write. Triggers acquired by another
+     * scheduler or released meanwhile are left as they are.
+     *
+     * @param triggerKeys    keys of triggers to update
+     * @param instanceId     scheduler which acquired the triggers
+     * @param updates        update documents, in the order of keys
+     * @return errors of failed updates by their index in given lists
+     */
+    public Map<Integer, String> updateAllAcquired(List<TriggerKey> triggerKeys, String instanceId,
+                                                  List<Bson> updates) {
+        return updateAll(triggerKeys, createAcquiredFilter(instanceId), updates);
+    }
+
+    private Map<Integer, String> updateAll(List<TriggerKey> triggerKeys, Bson condition, List<Bson> updates) {
+        Map<Integer, String> errors = new HashMap<Integer, String>();
+        if (updates.isEmpty()) {
+            return errors;
+        }
+
+        List<UpdateOneModel<Document>> requests = new ArrayList<UpdateOneModel<Document>>(updates.size());
+        for (int i = 0; i < updates.size(); i++) {
+            Bson filter = toFilter(triggerKeys.get(i));
+            if (condition != null) {
+                filter = Filters.and(filter, condition);
+            }
+            requests.add(new UpdateOneModel<Document>(filter, stamp(updates.get(i))));
+        }
+
+        try {
+            triggerCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            for (BulkWriteError error : e.getWriteErrors()) {
+                errors.put(error.getIndex(), error.getMessage());
+            }
+        }
+        return errors;
     }
 
+    /**
+     * Set state of a trigger. An acquired trigger stays acquired until it's released,
+     * then it moves to the new state.
+     */
     public void setState(TriggerKey triggerKey, String state) {
-        triggerCollection.updateOne(
-                Keys.toFilter(triggerKey),
-                createTriggerStateUpdateDocument(state));
+        triggerCollection.bulkWrite(Arrays.asList(
+                new UpdateOneModel<Document>(
+                        Filters.and(Keys.toFilter(triggerKey), Filters.ne(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                        stamp(createTriggerStateUpdateDocument(state))),
+                new UpdateOneModel<Document>(
+                        Filters.and(Keys.toFilter(triggerKey), Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                        stamp(createStateOnReleaseUpdateDocument(state)))));
     }
 
     public void transferState(TriggerKey triggerKey, String oldState, String newState) {
@@ -167,7 +700,7 @@ public class TriggerDao {
                 Filters.and(
                         Keys.toFilter(triggerKey),
                         Filters.eq(Constants.TRIGGER_STATE, oldState)),
-                createTriggerStateUpdateDocument(newState));
+                stamp(createTriggerStateUpdateDocument(newState)));
     }
 
 
@@ -189,17 +722,107 @@ public class TriggerDao {
 
     private Bson createNextTriggerQuery(Date noLaterThanDate) {
         return Filters.and(
-                Filters.or(
-                        Filters.eq(Constants.TRIGGER_NEXT_FIRE_TIME, null),
-                        Filters.lte(Constants.TRIGGER_NEXT_FIRE_TIME, noLaterThanDate)
-                ),
-                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_WAITING));
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_WAITING),
+                Filters.lte(Constants.TRIGGER_NEXT_FIRE_TIME, noLaterThanDate));
+    }
+
+    /**
+     * Triggers misfired before misfireTime are left to the misfire sweep, unless they ignore
+     * misfires. Each branch of the query has its own range on next fire time, so the planner
+     * bounds both by an index and merges them in fire time order.
+     */
+    private Bson createEligibleQuery(Date after, Date noLaterThanDate, Date misfireTime, List<Integer> buckets) {
+        if (misfireTime == null) {
+            return createEligibleBranch(after, noLaterThanDate, buckets);
+        }
+        Bson onTime = Filters.and(createEligibleBranch(after, noLaterThanDate, buckets),
+                Filters.gte(Constants.TRIGGER_NEXT_FIRE_TIME, misfireTime));
+        Bson ignoringMisfires = Filters.and(createEligibleBranch(after, noLaterThanDate, buckets),
+                Filters.eq(Constants.TRIGGER_MISFIRE_INSTRUCTION, Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY),
+                Filters.lt(Constants.TRIGGER_NEXT_FIRE_TIME, misfireTime));
+        return Filters.or(onTime, ignoringMisfires);
+    }
+
+    private Bson createEligibleBranch(Date after, Date noLaterThanDate, List<Integer> buckets) {
+        Bson query = createNextTriggerQuery(noLaterThanDate);
+        if (after != null) {
+            query = Filters.and(query, Filters.gt(Constants.TRIGGER_NEXT_FIRE_TIME, after));
+        }
+        if (buckets != null) {
+            List<Integer> values = new ArrayList<Integer>(buckets);
+            values.add(null);
+            query = Filters.and(query, Filters.in(Constants.TRIGGER_BUCKET, values));
+        }
+        return query;
+    }
+
+    private Bson createAcquiredFilter(String instanceId) {
+        return Filters.and(
+                Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED),
+                Filters.eq(Constants.LOCK_INSTANCE_ID, instanceId));
+    }
+
+    private Bson createAcquireUpdateDocument(String instanceId, Date lockTime) {
+        return new Document()
+                .append("$set", new Document()
+                        .append(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)
+                        .append(Constants.LOCK_INSTANCE_ID, instanceId)
+                        .append(Constants.LOCK_TIME, lockTime))
+                .append("$unset", new Document(Constants.LOCK_RECOVERED_FROM, ""));
+    }
+
+    private FindOneAndUpdateOptions createAcquireOptions() {
+        return new FindOneAndUpdateOptions()
+                .projection(WITHOUT_JOB_DATA)
+                .returnDocument(ReturnDocument.AFTER);
+    }
+
+    private Bson createReleaseFilter(String instanceId, String state) {
+        // WAITING is the default and isn't stored
+        return Filters.and(createAcquiredFilter(instanceId), Constants.STATE_WAITING.equals(state)
+                ? Filters.exists(Constants.LOCK_STATE_ON_RELEASE, false)
+                : Filters.eq(Constants.LOCK_STATE_ON_RELEASE, state));
+    }
+
+    private Bson createReleaseUpdateDocument(String state) {
+        return new Document()
+                .append("$set", new Document(Constants.TRIGGER_STATE, state))
+                .append("$unset", new Document()
+                        .append(Constants.LOCK_INSTANCE_ID, "")
+                        .append(Constants.LOCK_TIME, "")
+                        .append(Constants.LOCK_RECOVERED_FROM, "")
+                        .append(Constants.LOCK_STATE_ON_RELEASE, ""));
+    }
+
+    private Bson createStateOnReleaseUpdateDocument(String state) {
+        if (Constants.STATE_WAITING.equals(state)) {
+            return new Document("$unset", new Document(Constants.LOCK_STATE_ON_RELEASE, ""));
+        }
+        return new Document("$set", new Document(Constants.LOCK_STATE_ON_RELEASE, state));
     }
 
     private Bson createTriggerStateUpdateDocument(String state) {
         return new Document("$set", new Document(Constants.TRIGGER_STATE, state));
     }
 
+    private Document stamp(Document trigger) {
+        if (writer != null) {
+            trigger.put(Constants.TRIGGER_WRITER, nextStamp());
+        }
+        return trigger;
+    }
+
+    private Bson stamp(Bson update) {
+        if (writer == null) {
+            return update;
+        }
+        return Updates.combine(update, Updates.set(Constants.TRIGGER_WRITER, nextStamp()));
+    }
+
+    private String nextStamp() {
+        return writer + ':' + writes.incrementAndGet();
+    }
+
     private FindIterable<Document> findByJobId(Object jobId) {
         return triggerCollection.find(Filters.eq(Constants.TRIGGER_JOB_ID, jobId));
     }
@@ -213,13 +836,66 @@ public class TriggerDao {
     }
 
     private void setStates(Bson filter, String state) {
-        triggerCollection.updateMany(filter, createTriggerStateUpdateDocument(state));
+        // acquired triggers are set to the new state when they're released
+        triggerCollection.bulkWrite(Arrays.asList(
+                new UpdateManyModel<Document>(
+                        Filters.and(filter, Filters.ne(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                        stamp(createTriggerStateUpdateDocument(state))),
+                new UpdateManyModel<Document>(
+                        Filters.and(filter, Filters.eq(Constants.TRIGGER_STATE, Constants.STATE_ACQUIRED)),
+                        stamp(createStateOnReleaseUpdateDocument(state)))));
     }
 
     private void setStates(GroupMatcher<TriggerKey> matcher, String state) {
-        triggerCollection.updateMany(
-                queryHelper.matchingKeysConditionFor(matcher),
-                createTriggerStateUpdateDocument(state),
-                new UpdateOptions().upsert(false));
+        setStates(queryHelper.matchingKeysConditionFor(matcher), state);
+    }
+
+    /**
+     * Release trigger to given state, or to another one if it was
+     * paused or resumed meanwhile.
+     */
+    private void release(TriggerKey triggerKey, String instanceId, String state)
+            throws JobPersistenceException {
+        for (int attempt = 0; attempt < MAX_WRITE_ATTEMPTS; attempt++) {
+            UpdateResult result = triggerCollection.updateOne(
+                    Filters.and(toFilter(triggerKey), createReleaseFilter(instanceId, state)),
+                    createReleaseUpdateDocument(state));
+            if (result.getMatchedCount() == 1) {
+                return;
+            }
+            Document acquired = triggerCollection
+                    .find(Filters.and(toFilter(triggerKey), createAcquiredFilter(instanceId)))
+                    .projection(Projections.include(Constants.LOCK_STATE_ON_RELEASE))
+                    .first();
+            if (acquired == null) {
+                return;
+            }
+            state = getStateOnRelease(acquired);
+        }
+        throw new JobPersistenceException("Could not release trigger " + triggerKey
+                + ", its state changed on each of " + MAX_WRITE_ATTEMPTS + " attempts");
+    }
+
+    private void releaseToStatesOnRelease(Bson filter, String instanceId) throws JobPersistenceException {
+        FindIterable<Document> triggers = triggerCollection
+                .find(Filters.and(filter, createAcquiredFilter(instanceId),
+                        Filters.exists(Constants.LOCK_STATE_ON_RELEASE)))
+                .projection(Projections.include(KEY_NAME, KEY_GROUP, Constants.LOCK_STATE_ON_RELEASE));
+        for (Document trigger : triggers.into(new ArrayList<Document>())) {
+            release(Keys.toTriggerKey(trigger), instanceId, getStateOnRelease(trigger));
+        }
+    }
+
+    private String getStateOnRelease(Document trigger) {
+        String state = trigger.getString(Constants.LOCK_STATE_ON_RELEASE);
+        return state == null ? Constants.STATE_WAITING : state;
+    }
+
+    private Bson toKeysFilter(Collection<TriggerKey> triggerKeys) {
+        List<Bson> filters = new ArrayList<Bson>(triggerKeys.size());
+        for (TriggerKey key : triggerKeys) {
+            filters.add(toFilter(key));
+        }
+        return Filters.or(filters);
     }
 }
@@ -0,0 +1,204 @@
+package com.novemberain.quartz.mongodb.db;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
+import org.bson.BsonArray;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Attributes commands sent by the driver to the JobStore operation running
+ * on the same thread, and reports them to {@link JobStoreMetrics} when the
+ * operation ends. The sync driver notifies command listeners on the thread
+ * executing the command. Commands sent outside of JobStore methods,
+ * e.g. by the cluster check-in, are not tracked.
+ *
+ * <p>Commands taking at least the slow command threshold are reported
+ * with the shape of their filter, i.e. the filter with values replaced by
+ * {@code ?}, so they can be told apart without logging job data. The filter
+ * is kept while the command runs, as the command document is released once
+ * it's sent, and described only when the command turns out to be slow.
+ */
+public class CommandTracker implements CommandListener {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandTracker.class);
+
+    private final ThreadLocal<OperationContext> current = new ThreadLocal<OperationContext>();
+    private final JobStoreMetrics metrics;
+    private final long slowCommandThresholdNanos;
+
+    /**
+     * @param metrics                        receives operations and slow commands
+     * @param slowCommandThresholdMillis     commands taking at least this long are reported
+     *                                       as slow, 0 disables it
+     */
+    public CommandTracker(JobStoreMetrics metrics, long slowCommandThresholdMillis) {
+        this.metrics = metrics;
+        this.slowCommandThresholdNanos = TimeUnit.MILLISECONDS.toNanos(slowCommandThresholdMillis);
+    }
+
+    /**
+     * Start attributing commands of this thread to given operation.
+     *
+     * @param operation    name of the JobStore method
+     * @return context to pass to {@link #end(OperationContext)}, null when
+     *         called within another operation, which keeps its commands
+     */
+    public OperationContext begin(String operation) {
+        if (current.get() != null) {
+            return null;
+        }
+        OperationContext context = new OperationContext(operation, System.nanoTime());
+        current.set(context);
+        return context;
+    }
+
+    /**
+     * Stop attributing commands to the operation and report it.
+     *
+     * @param context    result of {@link #begin(String)}
+     */
+    public void end(OperationContext context) {
+        if (context == null) {
+            return;
+        }
+        current.remove();
+        metrics.recordOperation(context.getOperation(), System.nanoTime() - context.getStartNanos(),
+                context.getCommands());
+        metrics.recordCommands(context.getOperation(), context.getCommandNanos());
+    }
+
+    /**
+     * @return operation running on this thread or null
+     */
+    public OperationContext current() {
+        return current.get();
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        OperationContext context = current.get();
+        if (context == null) {
+            return;
+        }
+        context.commandStarted();
+        if (slowCommandThresholdNanos > 0) {
+            BsonValue collection = event.getCommand().get(event.getCommandName());
+            context.pendingCollection = collection != null && collection.isString()
+                    ? collection.asString().getValue() : "";
+            context.pendingFilter = filterOf(event.getCommandName(), event.getCommand());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        finished(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        finished(event.getCommandName(), event.getElapsedTime(TimeUnit.NANOSECONDS));
+    }
+
+    private void finished(String commandName, long elapsedNanos) {
+        OperationContext context = current.get();
+        if (context == null) {
+            return;
+        }
+        context.commandFinished(elapsedNanos);
+        if (slowCommandThresholdNanos > 0 && elapsedNanos >= slowCommandThresholdNanos) {
+            String shape = shapeOf(context.pendingFilter);
+            log.warn("Slow {} of {} during {} took {} ms, filter: {}", commandName, context.pendingCollection,
+                    context.getOperation(), TimeUnit.NANOSECONDS.toMillis(elapsedNanos), shape);
+            metrics.recordSlowCommand(context.getOperation(), commandName, context.pendingCollection,
+                    shape, elapsedNanos);
+        }
+        context.pendingFilter = null;
+    }
+
+    /**
+     * Describe filter of given command, with values replaced by {@code ?}.
+     *
+     * @param commandName    name of the command
+     * @param command        command sent to the server
+     * @return shape of the filter, empty document for commands without filter
+     */
+    static String filterShape(String commandName, BsonDocument command) {
+        return shapeOf(filterOf(commandName, command));
+    }
+
+    private static BsonValue filterOf(String commandName, BsonDocument command) {
+        BsonValue filter;
+        switch (commandName) {
+            case "find":
+                filter = command.get("filter");
+                break;
+            case "update":
+                filter = firstStatementField(command, "updates", "q");
+                break;
+            case "delete":
+                filter = firstStatementField(command, "deletes", "q");
+                break;
+            case "aggregate":
+                filter = command.get("pipeline");
+                break;
+            default:
+                // count, distinct, findAndModify
+                filter = command.get("query");
+        }
+        return filter;
+    }
+
+    private static String shapeOf(BsonValue filter) {
+        StringBuilder shape = new StringBuilder();
+        appendShape(filter == null ? new BsonDocument() : filter, shape);
+        return shape.toString();
+    }
+
+    private static BsonValue firstStatementField(BsonDocument command, String statements, String field) {
+        BsonValue value = command.get(statements);
+        if (value == null || !value.isArray() || value.asArray().isEmpty()) {
+            return null;
+        }
+        BsonValue statement = value.asArray().get(0);
+        return statement.isDocument() ? statement.asDocument().get(field) : null;
+    }
+
+    private static void appendShape(BsonValue value, StringBuilder shape) {
+        if (value.isDocument()) {
+            shape.append('{');
+            String separator = "";
+            for (Map.Entry<String, BsonValue> entry : value.asDocument().entrySet()) {
+                shape.append(separator).append(entry.getKey()).append(": ");
+                appendShape(entry.getValue(), shape);
+                separator = ", ";
+            }
+            shape.append('}');
+        } else if (value.isArray()) {
+            BsonArray array = value.asArray();
+            if (array.isEmpty() || !array.get(0).isDocument()) {
+                // values of e.g. $in, their number doesn't change the shape
+                shape.append("[?]");
+                return;
+            }
+            shape.append('[');
+            String separator = "";
+            for (BsonValue element : array) {
+                shape.append(separator);
+                appendShape(element, shape);
+                separator = ", ";
+            }
+            shape.append(']');
+        } else {
+            shape.append('?');
+        }
+    }
+}
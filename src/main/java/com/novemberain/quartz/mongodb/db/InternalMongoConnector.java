@@ -44,7 +44,23 @@ public class InternalMongoConnector implements MongoConnector {
      */
     public InternalMongoConnector(final WriteConcern writeConcern, final String uri,
                                   final String dbName) throws SchedulerConfigException {
-        this(writeConcern, createClient(uri), dbName);
+        this(writeConcern, uri, MongoClientOptions.builder(), dbName);
+    }
+
+    /**
+     * Constructs an instance of {@link InternalMongoConnector} from connection URI.
+     *
+     * @param writeConcern instance of {@link WriteConcern}. Each {@link MongoCollection} produced by
+     *                     {@link #getCollection(String)} will be configured with this write concern.
+     * @param uri          MongoDB connection URI.
+     * @param options      default options, overridden by options given in the URI.
+     * @param dbName       name of the database that will be used to produce collections.
+     * @throws SchedulerConfigException if failed to create instance of MongoClient.
+     */
+    public InternalMongoConnector(final WriteConcern writeConcern, final String uri,
+                                  final MongoClientOptions.Builder options,
+                                  final String dbName) throws SchedulerConfigException {
+        this(writeConcern, createClient(uri, options), dbName);
     }
 
     /**
@@ -88,10 +104,11 @@ public class InternalMongoConnector implements MongoConnector {
     /**
      * Creates an instance of MongoClient from string URI wrapping exception.
      */
-    private static MongoClient createClient(final String uri) throws SchedulerConfigException {
+    private static MongoClient createClient(final String uri, final MongoClientOptions.Builder options)
+            throws SchedulerConfigException {
         final MongoClientURI mongoUri;
         try {
-            mongoUri = new MongoClientURI(uri);
+            mongoUri = new MongoClientURI(uri, options);
         } catch (final MongoException e) {
             throw new SchedulerConfigException("Invalid mongo client uri.", e);
         }
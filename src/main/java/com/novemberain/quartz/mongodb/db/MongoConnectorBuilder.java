@@ -2,6 +2,7 @@ package com.novemberain.quartz.mongodb.db;
 
 import com.mongodb.*;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.event.CommandListener;
 import org.quartz.SchedulerConfigException;
 
 import java.util.ArrayList;
@@ -33,6 +34,7 @@ public class MongoConnectorBuilder {
     private Integer threadsAllowedToBlockForConnectionMultiplier;
     private Boolean enableSSL;
     private Boolean sslInvalidHostNameAllowed;
+    private final List<CommandListener> commandListeners = new ArrayList<>();
 
     /**
      * Use {@link #builder()}.
@@ -83,7 +85,8 @@ public class MongoConnectorBuilder {
         if (uri != null) {
             // User passed URI.
             validateForUri();
-            return new InternalMongoConnector(writeConcern, uri, dbName);
+            return new InternalMongoConnector(writeConcern, uri, addCommandListeners(MongoClientOptions.builder()),
+                    dbName);
         }
 
         checkNotNull(addresses, "At least one MongoDB address or a MongoDB URI must be specified.");
@@ -117,7 +120,7 @@ public class MongoConnectorBuilder {
     }
 
     private MongoClientOptions createOptions() {
-        final MongoClientOptions.Builder optionsBuilder = MongoClientOptions.builder();
+        final MongoClientOptions.Builder optionsBuilder = addCommandListeners(MongoClientOptions.builder());
         if (maxConnectionsPerHost != null) {
             optionsBuilder.connectionsPerHost(maxConnectionsPerHost);
         }
@@ -143,6 +146,13 @@ public class MongoConnectorBuilder {
         return optionsBuilder.build();
     }
 
+    private MongoClientOptions.Builder addCommandListeners(final MongoClientOptions.Builder optionsBuilder) {
+        for (final CommandListener listener : commandListeners) {
+            optionsBuilder.addCommandListener(listener);
+        }
+        return optionsBuilder;
+    }
+
     private WriteConcern createWriteConcern() throws SchedulerConfigException {
         // Use MAJORITY to make sure that writes (locks, updates, check-ins)
         // are propagated to secondaries in a Replica Set. It allows us to
@@ -294,4 +304,13 @@ public class MongoConnectorBuilder {
         this.sslInvalidHostNameAllowed = sslInvalidHostNameAllowed;
         return this;
     }
+
+    /**
+     * Adds listener of commands sent by the client this builder creates.
+     * Ignored when the connector, database or client is passed in.
+     */
+    public MongoConnectorBuilder withCommandListener(final CommandListener listener) {
+        this.commandListeners.add(listener);
+        return this;
+    }
 }
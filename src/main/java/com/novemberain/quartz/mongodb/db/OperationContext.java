@@ -0,0 +1,56 @@
+package com.novemberain.quartz.mongodb.db;
+
+import org.bson.BsonValue;
+
+/**
+ * Commands sent to the server during one JobStore operation.
+ */
+public class OperationContext {
+
+    private final String operation;
+    private final long startNanos;
+    private int commands;
+    private long commandNanos;
+
+    // filter of the command in flight, known only when slow commands are reported
+    String pendingCollection;
+    BsonValue pendingFilter;
+
+    OperationContext(String operation, long startNanos) {
+        this.operation = operation;
+        this.startNanos = startNanos;
+    }
+
+    void commandStarted() {
+        commands++;
+    }
+
+    void commandFinished(long elapsedNanos) {
+        commandNanos += elapsedNanos;
+    }
+
+    /**
+     * @return name of the JobStore method
+     */
+    public String getOperation() {
+        return operation;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return number of commands sent, i.e. round trips
+     */
+    public int getCommands() {
+        return commands;
+    }
+
+    /**
+     * @return time from sending commands to receiving their replies, as seen by the driver
+     */
+    public long getCommandNanos() {
+        return commandNanos;
+    }
+}
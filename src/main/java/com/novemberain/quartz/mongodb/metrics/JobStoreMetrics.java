@@ -0,0 +1,74 @@
+package com.novemberain.quartz.mongodb.metrics;
+
+/**
+ * Receives timings and counters of the job store.
+ *
+ * <p>Implementations are called from scheduler threads while the store
+ * is working, so they must be thread safe and should not block.
+ * Configure the implementation with {@code org.quartz.jobStore.metricsClass}
+ * property, it must have a public no-arg constructor.
+ */
+public interface JobStoreMetrics {
+
+    String ACQUIRE_NEXT_TRIGGERS = "acquireNextTriggers";
+    String TRIGGERS_FIRED = "triggersFired";
+    String TRIGGERED_JOB_COMPLETE = "triggeredJobComplete";
+
+    /**
+     * Record one call of a JobStore operation.
+     *
+     * @param operation         name of the JobStore method, e.g. {@link #ACQUIRE_NEXT_TRIGGERS}
+     * @param durationNanos     how long the call took
+     * @param dbRoundTrips      number of commands sent to the database during the call
+     */
+    void recordOperation(String operation, long durationNanos, int dbRoundTrips);
+
+    /**
+     * Record commands sent to the database during one call of a JobStore operation.
+     *
+     * @param operation         name of the JobStore method
+     * @param commandNanos      total time of the commands, as seen by the driver
+     */
+    void recordCommands(String operation, long commandNanos);
+
+    /**
+     * Record command which took longer than the slow command threshold.
+     *
+     * @param operation         name of the JobStore method
+     * @param command           name of the command, e.g. {@code find}
+     * @param collection        collection the command was sent to
+     * @param filterShape       filter of the command with values replaced by {@code ?}
+     * @param durationNanos     time of the command, as seen by the driver
+     */
+    void recordSlowCommand(String operation, String command, String collection, String filterShape,
+                           long durationNanos);
+
+    /**
+     * Record how late a trigger fired.
+     *
+     * @param lagMillis    actual fire time minus scheduled fire time
+     */
+    void recordFireLag(long lagMillis);
+
+    /**
+     * Record failed attempt to lock a trigger or a job locked by another scheduler.
+     */
+    void recordLockConflict();
+
+    /**
+     * Record trigger whose expired lock was taken over by this scheduler.
+     */
+    void recordRelock();
+
+    /**
+     * Record trigger recovered after failed run of its job.
+     */
+    void recordRecovery();
+
+    /**
+     * Record misfired trigger.
+     *
+     * @param triggerGroup    group of the trigger
+     */
+    void recordMisfire(String triggerGroup);
+}
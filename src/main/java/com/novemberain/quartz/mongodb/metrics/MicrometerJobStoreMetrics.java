@@ -0,0 +1,110 @@
+package com.novemberain.quartz.mongodb.metrics;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Metrics;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes job store metrics to a Micrometer registry.
+ * Requires {@code io.micrometer:micrometer-core} on the classpath.
+ *
+ * <p>Meters, all tagged with {@code store=mongodb}:
+ * <ul>
+ *     <li>{@code quartz.jobstore.operation} - timer of JobStore calls, tagged with {@code operation}</li>
+ *     <li>{@code quartz.jobstore.db.round.trips} - database commands per JobStore call,
+ *     tagged with {@code operation}</li>
+ *     <li>{@code quartz.jobstore.db.command.time} - timer of database commands per JobStore call,
+ *     tagged with {@code operation}</li>
+ *     <li>{@code quartz.jobstore.db.slow.commands} - timer of slow commands, tagged with
+ *     {@code operation}, {@code command}, {@code collection} and filter {@code shape}</li>
+ *     <li>{@code quartz.jobstore.fire.lag} - timer of actual minus scheduled fire time</li>
+ *     <li>{@code quartz.jobstore.lock.conflicts}, {@code quartz.jobstore.relocks},
+ *     {@code quartz.jobstore.recoveries} - counters</li>
+ *     <li>{@code quartz.jobstore.misfires} - counter tagged with trigger {@code group}</li>
+ * </ul>
+ */
+public class MicrometerJobStoreMetrics implements JobStoreMetrics {
+
+    private static final String STORE_TAG = "store";
+    private static final String STORE = "mongodb";
+
+    private final MeterRegistry registry;
+    private final Timer fireLag;
+    private final Counter lockConflicts;
+    private final Counter relocks;
+    private final Counter recoveries;
+
+    /**
+     * Uses {@link Metrics#globalRegistry}, for configuration with {@code metricsClass} property.
+     */
+    public MicrometerJobStoreMetrics() {
+        this(Metrics.globalRegistry);
+    }
+
+    public MicrometerJobStoreMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        this.fireLag = Timer.builder("quartz.jobstore.fire.lag")
+                .tag(STORE_TAG, STORE)
+                .publishPercentileHistogram()
+                .register(registry);
+        this.lockConflicts = registry.counter("quartz.jobstore.lock.conflicts", STORE_TAG, STORE);
+        this.relocks = registry.counter("quartz.jobstore.relocks", STORE_TAG, STORE);
+        this.recoveries = registry.counter("quartz.jobstore.recoveries", STORE_TAG, STORE);
+    }
+
+    @Override
+    public void recordOperation(String operation, long durationNanos, int dbRoundTrips) {
+        Timer.builder("quartz.jobstore.operation")
+                .tags(STORE_TAG, STORE, "operation", operation)
+                .publishPercentileHistogram()
+                .register(registry)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+        DistributionSummary.builder("quartz.jobstore.db.round.trips")
+                .tags(STORE_TAG, STORE, "operation", operation)
+                .register(registry)
+                .record(dbRoundTrips);
+    }
+
+    @Override
+    public void recordCommands(String operation, long commandNanos) {
+        registry.timer("quartz.jobstore.db.command.time", STORE_TAG, STORE, "operation", operation)
+                .record(commandNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordSlowCommand(String operation, String command, String collection, String filterShape,
+                                  long durationNanos) {
+        registry.timer("quartz.jobstore.db.slow.commands", STORE_TAG, STORE, "operation", operation,
+                "command", command, "collection", collection, "shape", filterShape)
+                .record(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordFireLag(long lagMillis) {
+        fireLag.record(Math.max(0, lagMillis), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void recordLockConflict() {
+        lockConflicts.increment();
+    }
+
+    @Override
+    public void recordRelock() {
+        relocks.increment();
+    }
+
+    @Override
+    public void recordRecovery() {
+        recoveries.increment();
+    }
+
+    @Override
+    public void recordMisfire(String triggerGroup) {
+        registry.counter("quartz.jobstore.misfires", STORE_TAG, STORE, "group", triggerGroup).increment();
+    }
+}
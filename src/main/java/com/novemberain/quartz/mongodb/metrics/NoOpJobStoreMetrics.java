@@ -0,0 +1,42 @@
+package com.novemberain.quartz.mongodb.metrics;
+
+/**
+ * Default metrics, which ignores everything.
+ */
+public class NoOpJobStoreMetrics implements JobStoreMetrics {
+
+    public static final NoOpJobStoreMetrics INSTANCE = new NoOpJobStoreMetrics();
+
+    @Override
+    public void recordOperation(String operation, long durationNanos, int dbRoundTrips) {
+    }
+
+    @Override
+    public void recordCommands(String operation, long commandNanos) {
+    }
+
+    @Override
+    public void recordSlowCommand(String operation, String command, String collection, String filterShape,
+                                  long durationNanos) {
+    }
+
+    @Override
+    public void recordFireLag(long lagMillis) {
+    }
+
+    @Override
+    public void recordLockConflict() {
+    }
+
+    @Override
+    public void recordRelock() {
+    }
+
+    @Override
+    public void recordRecovery() {
+    }
+
+    @Override
+    public void recordMisfire(String triggerGroup) {
+    }
+}
@@ -1,6 +1,7 @@
 package com.novemberain.quartz.mongodb.trigger;
 
 import com.novemberain.quartz.mongodb.dao.CalendarDao;
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics;
 import org.quartz.Calendar;
 import org.quartz.JobPersistenceException;
 import org.quartz.Trigger;
@@ -17,11 +18,14 @@ public class MisfireHandler {
     private final CalendarDao calendarDao;
     private final SchedulerSignaler signaler;
     private final long misfireThreshold;
+    private final JobStoreMetrics metrics;
 
-    public MisfireHandler(CalendarDao calendarDao, SchedulerSignaler signaler, long misfireThreshold) {
+    public MisfireHandler(CalendarDao calendarDao, SchedulerSignaler signaler, long misfireThreshold,
+                          JobStoreMetrics metrics) {
         this.calendarDao = calendarDao;
         this.signaler = signaler;
         this.misfireThreshold = misfireThreshold;
+        this.metrics = metrics;
     }
 
     /**
@@ -40,6 +44,7 @@ public class MisfireHandler {
             cal = retrieveCalendar(trigger);
         }
 
+        metrics.recordMisfire(trigger.getKey().getGroup());
         signaler.notifyTriggerListenersMisfired(trigger);
 
         trigger.updateAfterMisfire(cal);
@@ -55,6 +60,7 @@ public class MisfireHandler {
 
         org.quartz.Calendar cal = retrieveCalendar(trigger);
 
+        metrics.recordMisfire(trigger.getKey().getGroup());
         signaler.notifyTriggerListenersMisfired((OperableTrigger) trigger.clone());
 
         trigger.updateAfterMisfire(cal);
@@ -67,6 +73,13 @@ public class MisfireHandler {
         return true;
     }
 
+    /**
+     * @return triggers due to fire before this time have misfired
+     */
+    public Date getMisfireTime() {
+        return new Date(calculateMisfireTime());
+    }
+
     private long calculateMisfireTime() {
         long misfireTime = System.currentTimeMillis();
         if (misfireThreshold > 0) {
@@ -0,0 +1,193 @@
+package com.novemberain.quartz.mongodb.trigger;
+
+import com.novemberain.quartz.mongodb.Constants;
+import com.novemberain.quartz.mongodb.LockManager;
+import com.novemberain.quartz.mongodb.TriggerAndJobPersister;
+import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.db.CommandTracker;
+import com.novemberain.quartz.mongodb.db.OperationContext;
+import com.novemberain.quartz.mongodb.util.Keys;
+import org.bson.Document;
+import org.quartz.JobPersistenceException;
+import org.quartz.TriggerKey;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Applies misfire instructions to misfired triggers in the background,
+ * so acquisition doesn't have to. Misfired triggers are found with the
+ * index used for acquisition, handled in batches and stored with bulk writes.
+ */
+public class MisfireSweeper implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(MisfireSweeper.class);
+
+    // Pause between batches, so a flood of misfires doesn't flood listeners too
+    private static final long BATCH_PAUSE_MILLIS = 50;
+
+    private final TriggerDao triggerDao;
+    private final TriggerConverter triggerConverter;
+    private final TriggerAndJobPersister persister;
+    private final LockManager lockManager;
+    private final MisfireHandler misfireHandler;
+    private final SchedulerSignaler signaler;
+    private final CommandTracker commandTracker;
+    private final long sweepIntervalMillis;
+    private final int maxMisfiresAtATime;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * @param sweepIntervalMillis    pause between sweeps
+     * @param maxMisfiresAtATime     max number of triggers handled in one batch
+     */
+    public MisfireSweeper(TriggerDao triggerDao, TriggerConverter triggerConverter,
+                          TriggerAndJobPersister persister, LockManager lockManager,
+                          MisfireHandler misfireHandler, SchedulerSignaler signaler,
+                          CommandTracker commandTracker, long sweepIntervalMillis, int maxMisfiresAtATime) {
+        this.triggerDao = triggerDao;
+        this.triggerConverter = triggerConverter;
+        this.persister = persister;
+        this.lockManager = lockManager;
+        this.misfireHandler = misfireHandler;
+        this.signaler = signaler;
+        this.commandTracker = commandTracker;
+        this.sweepIntervalMillis = sweepIntervalMillis;
+        this.maxMisfiresAtATime = maxMisfiresAtATime;
+    }
+
+    /**
+     * Start sweeping misfired triggers periodically.
+     */
+    public synchronized void start() {
+        log.info("Starting misfire sweeper with interval of {} ms.", sweepIntervalMillis);
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.scheduleWithFixedDelay(this, 0, sweepIntervalMillis, MILLISECONDS);
+    }
+
+    /**
+     * Stop sweeping misfired triggers.
+     */
+    public synchronized void shutdown() {
+        if (executor != null) {
+            log.info("Stopping misfire sweeper.");
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    @Override
+    public void run() {
+        OperationContext context = commandTracker.begin("misfireSweep");
+        try {
+            while (sweep()) {
+                Thread.sleep(BATCH_PAUSE_MILLIS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            // an exception would cancel further sweeps
+            log.error("Failed to handle misfired triggers.", e);
+        } finally {
+            commandTracker.end(context);
+        }
+    }
+
+    /**
+     * Handle one batch of misfired triggers.
+     *
+     * @return true when there may be more misfired triggers to handle
+     */
+    boolean sweep() throws JobPersistenceException {
+        List<Document> misfiredDocs = triggerDao.findMisfired(misfireHandler.getMisfireTime(), maxMisfiresAtATime);
+        if (misfiredDocs.isEmpty()) {
+            return false;
+        }
+
+        List<OperableTrigger> updated = new ArrayList<OperableTrigger>(misfiredDocs.size());
+        List<OperableTrigger> released = new ArrayList<OperableTrigger>(misfiredDocs.size());
+        int removed = 0;
+        Date earliestNewFireTime = null;
+        for (OperableTrigger trigger : toTriggers(misfiredDocs)) {
+            if (trigger.getJobKey() == null) {
+                log.error("Error retrieving job for trigger {}, setting trigger state to ERROR.", trigger.getKey());
+                triggerDao.transferState(trigger.getKey(), Constants.STATE_WAITING, Constants.STATE_ERROR);
+                continue;
+            }
+
+            // Acquisition doesn't see misfired triggers anymore,
+            // so take over ones left locked by a defunct scheduler here.
+            if (!lockManager.tryLock(trigger.getKey()) && !lockManager.relockExpired(trigger.getKey())) {
+                // being acquired, or handled by another scheduler
+                continue;
+            }
+
+            if (!misfireHandler.applyMisfire(trigger)) {
+                released.add(trigger);
+            } else if (persister.removeTriggerWithoutNextFireTime(trigger)) {
+                log.debug("Removed misfired trigger {} as it has no next fire time.", trigger.getKey());
+                released.add(trigger);
+                removed++;
+            } else {
+                updated.add(trigger);
+                Date nextFireTime = trigger.getNextFireTime();
+                if (earliestNewFireTime == null || nextFireTime.before(earliestNewFireTime)) {
+                    earliestNewFireTime = nextFireTime;
+                }
+            }
+        }
+
+        storeUpdated(updated);
+        for (OperableTrigger trigger : released) {
+            lockManager.unlockAcquiredTrigger(trigger);
+        }
+
+        if (earliestNewFireTime != null) {
+            log.debug("Handled {} misfired triggers.", updated.size());
+            signaler.signalSchedulingChange(earliestNewFireTime.getTime());
+        }
+        // Released triggers left unchanged are still misfired and would be found again,
+        // so only a batch which moved some triggers out of the misfired ones is followed by another.
+        return misfiredDocs.size() == maxMisfiresAtATime && (!updated.isEmpty() || removed > 0);
+    }
+
+    private void storeUpdated(List<OperableTrigger> triggers) throws JobPersistenceException {
+        Map<Integer, String> errors = lockManager.storeAcquiredTriggers(triggers);
+        for (Map.Entry<Integer, String> error : errors.entrySet()) {
+            // retried by a later sweep, or recovered once its lock expires
+            log.error("Could not store misfired trigger {}: {}",
+                    triggers.get(error.getKey()).getKey(), error.getValue());
+        }
+        lockManager.unlockReleasedTriggers(triggers);
+    }
+
+    private List<OperableTrigger> toTriggers(List<Document> triggerDocs) {
+        try {
+            return triggerConverter.toTriggersWithOptionalJob(triggerDocs);
+        } catch (JobPersistenceException e) {
+            // fall back to one by one conversion to put aside the broken ones
+            List<OperableTrigger> triggers = new ArrayList<OperableTrigger>(triggerDocs.size());
+            for (Document triggerDoc : triggerDocs) {
+                try {
+                    triggers.add(triggerConverter.toTriggerWithOptionalJob(triggerDoc));
+                } catch (JobPersistenceException ex) {
+                    TriggerKey key = Keys.toTriggerKey(triggerDoc);
+                    log.error("Error restoring trigger " + key + ", setting trigger state to ERROR.", ex);
+                    triggerDao.transferState(key, Constants.STATE_WAITING, Constants.STATE_ERROR);
+                }
+            }
+            return triggers;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.novemberain.quartz.mongodb.trigger;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.UpdateDescription;
+import com.novemberain.quartz.mongodb.Constants;
+import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.util.Keys;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+import org.quartz.spi.OperableTrigger;
+import org.quartz.spi.SchedulerSignaler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Watches the triggers collection with a change stream and signals the local
+ * scheduler when another node stores a waiting trigger, so it doesn't have to wait
+ * for its idle wait time to pass to notice triggers scheduled by other nodes.
+ *
+ * <p>Only changes firing before the planned wake-up of the scheduler are signaled,
+ * which is the earliest acquired trigger, or the end of its idle wait. Changes
+ * made by this node are skipped, the scheduler knows about them. Updated triggers
+ * aren't looked up, so the stream carries only their changed fields: a resumed
+ * trigger signals a general scheduling change, as its fire time isn't known.
+ * Changes missed while the stream was broken are covered the same way.</p>
+ *
+ * <p>Change streams need a replica set or a sharded cluster.</p>
+ */
+public class TriggerChangeWatcher implements Runnable {
+
+    private static final Logger log = LoggerFactory.getLogger(TriggerChangeWatcher.class);
+
+    private static final String FULL_DOCUMENT = "fullDocument.";
+    private static final String UPDATED_FIELDS = "updateDescription.updatedFields.";
+
+    private final MongoCollection<Document> triggerCollection;
+    private final SchedulerSignaler signaler;
+    private final long retryIntervalMillis;
+    private final String instanceId;
+    private final TriggerLookahead lookahead;
+
+    private volatile boolean running;
+    private volatile MongoCursor<ChangeStreamDocument<Document>> cursor;
+    private Thread thread;
+    private boolean missedChanges;
+    private long plannedWakeUp = Long.MAX_VALUE;
+
+    /**
+     * @param retryIntervalMillis    pause before watching again after the change stream failed
+     */
+    public TriggerChangeWatcher(MongoCollection<Document> triggerCollection, SchedulerSignaler signaler,
+                                long retryIntervalMillis) {
+        this(triggerCollection, signaler, retryIntervalMillis, null, null);
+    }
+
+    /**
+     * @param instanceId    scheduler whose changes are skipped, see {@link TriggerDao#isWrittenBy(String, String)},
+     *                      may be null
+     * @param lookahead     receives inserted and replaced triggers, may be null
+     */
+    public TriggerChangeWatcher(MongoCollection<Document> triggerCollection, SchedulerSignaler signaler,
+                                long retryIntervalMillis, String instanceId, TriggerLookahead lookahead) {
+        this.triggerCollection = triggerCollection;
+        this.signaler = signaler;
+        this.retryIntervalMillis = retryIntervalMillis;
+        this.instanceId = instanceId;
+        this.lookahead = lookahead;
+    }
+
+    public synchronized void start() {
+        log.info("Starting to watch trigger changes.");
+        running = true;
+        thread = new Thread(this, "quartz-trigger-change-watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void shutdown() {
+        if (thread != null) {
+            log.info("Stopping to watch trigger changes.");
+            running = false;
+            MongoCursor<ChangeStreamDocument<Document>> current = cursor;
+            if (current != null) {
+                current.close();
+            }
+            thread.interrupt();
+            thread = null;
+        }
+    }
+
+    /**
+     * Called before the scheduler acquires triggers. Changes made meanwhile
+     * may be missed by the acquisition, so all of them can be signaled.
+     */
+    public synchronized void onAcquiring() {
+        plannedWakeUp = Long.MAX_VALUE;
+    }
+
+    /**
+     * Called after the scheduler acquired triggers, to plan its wake-up.
+     *
+     * @param noLaterThan    end of the idle wait, when no trigger was acquired
+     * @param acquired       acquired triggers
+     */
+    public synchronized void onAcquired(long noLaterThan, List<OperableTrigger> acquired) {
+        long wakeUp = noLaterThan;
+        for (OperableTrigger trigger : acquired) {
+            if (trigger.getNextFireTime() != null) {
+                wakeUp = Math.min(wakeUp, trigger.getNextFireTime().getTime());
+            }
+        }
+        // keep a change signaled during the acquisition
+        plannedWakeUp = Math.min(plannedWakeUp, wakeUp);
+    }
+
+    @Override
+    public void run() {
+        while (running) {
+            try {
+                watch();
+            } catch (RuntimeException e) {
+                // also thrown when the cursor is closed on shutdown
+                if (!running) {
+                    break;
+                }
+                log.warn("Failed to watch trigger changes, retrying in " + retryIntervalMillis + " ms: "
+                        + e.getMessage(), e);
+                missedChanges = true;
+            }
+
+            try {
+                Thread.sleep(retryIntervalMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+    }
+
+    private void watch() {
+        cursor = triggerCollection.watch(createPipeline()).iterator();
+        try {
+            if (missedChanges) {
+                // changes made while the stream was broken weren't signaled
+                missedChanges = false;
+                signalGeneralChange();
+            }
+            while (running && cursor.hasNext()) {
+                onChange(cursor.next());
+            }
+        } finally {
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    void onChange(ChangeStreamDocument<Document> change) {
+        Document trigger = change.getFullDocument();
+        if (trigger != null) {
+            // inserted or replaced
+            if (isOwn(trigger.getString(Constants.TRIGGER_WRITER))) {
+                return;
+            }
+            if (lookahead != null) {
+                lookahead.offer(trigger);
+            }
+            Date nextFireTime = trigger.getDate(Constants.TRIGGER_NEXT_FIRE_TIME);
+            if (nextFireTime != null) {
+                signal(nextFireTime.getTime());
+            }
+            return;
+        }
+
+        UpdateDescription update = change.getUpdateDescription();
+        if (update == null || update.getUpdatedFields() == null) {
+            return;
+        }
+        BsonDocument fields = update.getUpdatedFields();
+        BsonValue writer = fields.get(Constants.TRIGGER_WRITER);
+        if (writer != null && writer.isString() && isOwn(writer.asString().getValue())) {
+            return;
+        }
+        BsonValue nextFireTime = fields.get(Constants.TRIGGER_NEXT_FIRE_TIME);
+        if (nextFireTime != null) {
+            if (nextFireTime.isDateTime()) {
+                signal(nextFireTime.asDateTime().getValue());
+            }
+        } else if (!isRelease(update)) {
+            // resumed, its fire time isn't known without looking it up
+            signalGeneralChange();
+        }
+    }
+
+    private boolean isOwn(String stamp) {
+        return instanceId != null && TriggerDao.isWrittenBy(stamp, instanceId);
+    }
+
+    /**
+     * A released trigger was rescheduled while it was acquired, which was signaled then.
+     */
+    private boolean isRelease(UpdateDescription update) {
+        List<String> removedFields = update.getRemovedFields();
+        return removedFields != null && removedFields.contains(Constants.LOCK_INSTANCE_ID);
+    }
+
+    private synchronized void signal(long nextFireTime) {
+        if (nextFireTime < plannedWakeUp) {
+            log.debug("Signaling trigger change, next fire time: {}", nextFireTime);
+            plannedWakeUp = nextFireTime;
+            signaler.signalSchedulingChange(nextFireTime);
+        }
+    }
+
+    private synchronized void signalGeneralChange() {
+        if (lookahead != null) {
+            lookahead.invalidate();
+        }
+        // the scheduler looks up triggers again and plans a new wake-up
+        plannedWakeUp = Long.MIN_VALUE;
+        signaler.signalSchedulingChange(0L);
+    }
+
+    /**
+     * Match triggers inserted or replaced as waiting, triggers set to waiting and rescheduled
+     * triggers whose state didn't change, and keep only fields needed to signal them.
+     */
+    private static List<Bson> createPipeline() {
+        return Arrays.asList(
+                Aggregates.match(Filters.or(
+                        Filters.and(
+                                Filters.in("operationType", Arrays.asList("insert", "replace")),
+                                Filters.eq(FULL_DOCUMENT + Constants.TRIGGER_STATE, Constants.STATE_WAITING)),
+                        Filters.eq(UPDATED_FIELDS + Constants.TRIGGER_STATE, Constants.STATE_WAITING),
+                        Filters.and(
+                                Filters.exists(UPDATED_FIELDS + Constants.TRIGGER_NEXT_FIRE_TIME),
+                                Filters.exists(UPDATED_FIELDS + Constants.TRIGGER_STATE, false)))),
+                Aggregates.project(Projections.include(
+                        "operationType",
+                        FULL_DOCUMENT + Keys.KEY_NAME,
+                        FULL_DOCUMENT + Keys.KEY_GROUP,
+                        FULL_DOCUMENT + Constants.TRIGGER_NEXT_FIRE_TIME,
+                        FULL_DOCUMENT + Constants.TRIGGER_BUCKET,
+                        FULL_DOCUMENT + Constants.TRIGGER_WRITER,
+                        UPDATED_FIELDS + Constants.TRIGGER_NEXT_FIRE_TIME,
+                        UPDATED_FIELDS + Constants.TRIGGER_WRITER,
+                        "updateDescription.removedFields")));
+    }
+}
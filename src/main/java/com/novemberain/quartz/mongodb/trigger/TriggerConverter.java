@@ -2,18 +2,41 @@ package com.novemberain.quartz.mongodb.trigger;
 
 import com.novemberain.quartz.mongodb.Constants;
 import com.novemberain.quartz.mongodb.JobDataConverter;
+import com.novemberain.quartz.mongodb.cluster.TriggerBuckets;
 import com.novemberain.quartz.mongodb.dao.JobDao;
 import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.trigger.properties.CalendarIntervalTriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.trigger.properties.CronTriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.trigger.properties.DailyTimeIntervalTriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.trigger.properties.SimpleTriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.util.Keys;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.quartz.Job;
 import org.quartz.JobKey;
 import org.quartz.JobPersistenceException;
 import org.quartz.TriggerKey;
+import org.quartz.impl.triggers.CalendarIntervalTriggerImpl;
+import org.quartz.impl.triggers.CronTriggerImpl;
+import org.quartz.impl.triggers.DailyTimeIntervalTriggerImpl;
+import org.quartz.impl.triggers.SimpleTriggerImpl;
 import org.quartz.spi.OperableTrigger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.lang.reflect.Constructor;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import static com.novemberain.quartz.mongodb.util.Keys.KEY_GROUP;
 import static com.novemberain.quartz.mongodb.util.Keys.KEY_NAME;
 
@@ -25,19 +48,52 @@ public class TriggerConverter {
     private static final String TRIGGER_END_TIME = "endTime";
     private static final String TRIGGER_FINAL_FIRE_TIME = "finalFireTime";
     private static final String TRIGGER_FIRE_INSTANCE_ID = "fireInstanceId";
-    private static final String TRIGGER_MISFIRE_INSTRUCTION = "misfireInstruction";
     private static final String TRIGGER_PREVIOUS_FIRE_TIME = "previousFireTime";
     private static final String TRIGGER_PRIORITY = "priority";
     private static final String TRIGGER_START_TIME = "startTime";
 
     private static final Logger log = LoggerFactory.getLogger(TriggerConverter.class);
 
+    /**
+     * Factories of triggers by their class name, so the class is loaded once.
+     * Quartz triggers are created without reflection.
+     */
+    private final ConcurrentMap<String, Callable<OperableTrigger>> triggerFactories =
+            new ConcurrentHashMap<String, Callable<OperableTrigger>>();
+
+    private final List<TriggerPropertiesConverter> propertiesConverters =
+            new CopyOnWriteArrayList<TriggerPropertiesConverter>(Arrays.asList(
+                    new SimpleTriggerPropertiesConverter(),
+                    new CalendarIntervalTriggerPropertiesConverter(),
+                    new CronTriggerPropertiesConverter(),
+                    new DailyTimeIntervalTriggerPropertiesConverter()));
+
+    /**
+     * Converters found for trigger classes. Whether a converter can handle
+     * a trigger depends only on its class, so it's looked up once per class.
+     */
+    private final ConcurrentMap<Class<?>, TriggerPropertiesConverter> convertersByClass =
+            new ConcurrentHashMap<Class<?>, TriggerPropertiesConverter>();
+
     private JobDao jobDao;
     private final JobDataConverter jobDataConverter;
+    private final int bucketCount;
 
     public TriggerConverter(JobDao jobDao, JobDataConverter jobDataConverter) {
+        this(jobDao, jobDataConverter, 0);
+    }
+
+    /**
+     * @param bucketCount    number of buckets triggers are partitioned into, 0 when not partitioned
+     */
+    public TriggerConverter(JobDao jobDao, JobDataConverter jobDataConverter, int bucketCount) {
         this.jobDao = jobDao;
         this.jobDataConverter = jobDataConverter;
+        triggerFactories.put(SimpleTriggerImpl.class.getName(), SimpleTriggerImpl::new);
+        triggerFactories.put(CronTriggerImpl.class.getName(), CronTriggerImpl::new);
+        triggerFactories.put(CalendarIntervalTriggerImpl.class.getName(), CalendarIntervalTriggerImpl::new);
+        triggerFactories.put(DailyTimeIntervalTriggerImpl.class.getName(), DailyTimeIntervalTriggerImpl::new);
+        this.bucketCount = bucketCount;
     }
 
     /**
@@ -50,11 +106,28 @@ public class TriggerConverter {
         Document trigger = convertToBson(newTrigger, jobId);
         jobDataConverter.toDocument(newTrigger.getJobDataMap(), trigger);
 
-        TriggerPropertiesConverter tpd = TriggerPropertiesConverter.getConverterFor(newTrigger);
+        TriggerPropertiesConverter tpd = getPropertiesConverter(newTrigger);
         trigger = tpd.injectExtraPropertiesForInsert(newTrigger, trigger);
         return trigger;
     }
 
+    /**
+     * Converts only fields which change when trigger fires or misfires,
+     * so a stored trigger can be updated without replacing whole document
+     * and serializing its job data map again.
+     */
+    public Document toFireTimesDocument(OperableTrigger trigger) {
+        Document fields = new Document();
+        fields.put(TRIGGER_FINAL_FIRE_TIME, trigger.getFinalFireTime());
+        fields.put(TRIGGER_FIRE_INSTANCE_ID, trigger.getFireInstanceId());
+        fields.put(Constants.TRIGGER_NEXT_FIRE_TIME, trigger.getNextFireTime());
+        fields.put(TRIGGER_PREVIOUS_FIRE_TIME, trigger.getPreviousFireTime());
+        fields.put(TRIGGER_START_TIME, trigger.getStartTime());
+
+        TriggerPropertiesConverter tpd = getPropertiesConverter(trigger);
+        return tpd.injectExtraPropertiesForFire(trigger, fields);
+    }
+
     /**
      * Restore trigger from Mongo Document.
      *
@@ -83,17 +156,7 @@ public class TriggerConverter {
      * or could not deserialize job data map.
      */
     public OperableTrigger toTriggerWithOptionalJob(TriggerKey triggerKey, Document triggerDoc) throws JobPersistenceException {
-        OperableTrigger trigger = createNewInstance(triggerDoc);
-
-        TriggerPropertiesConverter tpd = TriggerPropertiesConverter.getConverterFor(trigger);
-
-        loadCommonProperties(triggerKey, triggerDoc, trigger);
-
-        jobDataConverter.toJobData(triggerDoc, trigger.getJobDataMap());
-
-        loadStartAndEndTimes(triggerDoc, trigger);
-
-        tpd.setExtraPropertiesAfterInstantiation(trigger, triggerDoc);
+        OperableTrigger trigger = toTriggerWithoutJob(triggerKey, triggerDoc);
 
         Object jobId = triggerDoc.get(Constants.TRIGGER_JOB_ID);
         Document job = jobDao.getById(jobId);
@@ -104,6 +167,69 @@ public class TriggerConverter {
         return trigger;
     }
 
+    /**
+     * Restore triggers from Mongo Documents, skipping ones without associated job.
+     *
+     * @param triggerDocs mongo {@link Document}s to read from.
+     * @return triggers in the order of given documents
+     * @throws JobPersistenceException if could not construct trigger instance
+     * or could not deserialize job data map.
+     * @see #toTriggersWithOptionalJob(List)
+     */
+    public List<OperableTrigger> toTriggers(List<Document> triggerDocs) throws JobPersistenceException {
+        List<OperableTrigger> triggers = toTriggersWithOptionalJob(triggerDocs);
+        Iterator<OperableTrigger> it = triggers.iterator();
+        while (it.hasNext()) {
+            if (it.next().getJobKey() == null) {
+                it.remove();
+            }
+        }
+        return triggers;
+    }
+
+    /**
+     * Restore triggers from Mongo Documents. Keys of their jobs are resolved
+     * with a single query instead of a query per trigger.
+     *
+     * @param triggerDocs mongo {@link Document}s to read from.
+     * @return triggers in the order of given documents, even if no associated job exists
+     * @throws JobPersistenceException if could not construct trigger instance
+     * or could not deserialize job data map.
+     */
+    public List<OperableTrigger> toTriggersWithOptionalJob(List<Document> triggerDocs)
+            throws JobPersistenceException {
+        Set<Object> jobIds = new HashSet<Object>();
+        for (Document triggerDoc : triggerDocs) {
+            Object jobId = triggerDoc.get(Constants.TRIGGER_JOB_ID);
+            if (jobId != null) {
+                jobIds.add(jobId);
+            }
+        }
+        Map<Object, JobKey> jobKeys = jobDao.getJobKeysByIds(jobIds);
+
+        List<OperableTrigger> triggers = new ArrayList<OperableTrigger>(triggerDocs.size());
+        for (Document triggerDoc : triggerDocs) {
+            OperableTrigger trigger = toTriggerWithoutJob(Keys.toTriggerKey(triggerDoc), triggerDoc);
+            JobKey jobKey = jobKeys.get(triggerDoc.get(Constants.TRIGGER_JOB_ID));
+            if (jobKey != null) {
+                trigger.setJobKey(jobKey);
+            }
+            triggers.add(trigger);
+        }
+        return triggers;
+    }
+
+    /**
+     * Decode job data of trigger restored from document without it.
+     *
+     * @param triggerDoc mongo {@link Document} with job data fields.
+     * @param trigger trigger whose {@link org.quartz.JobDataMap} to populate.
+     * @throws JobPersistenceException if could not deserialize job data map.
+     */
+    public void loadJobData(Document triggerDoc, OperableTrigger trigger) throws JobPersistenceException {
+        jobDataConverter.toJobData(triggerDoc, trigger.getJobDataMap());
+    }
+
     public OperableTrigger toTrigger(Document doc) throws JobPersistenceException {
         TriggerKey key = new TriggerKey(doc.getString(KEY_NAME), doc.getString(KEY_GROUP));
         return toTrigger(key, doc);
@@ -114,6 +240,22 @@ public class TriggerConverter {
         return toTriggerWithOptionalJob(key, doc);
     }
 
+    private OperableTrigger toTriggerWithoutJob(TriggerKey triggerKey, Document triggerDoc)
+            throws JobPersistenceException {
+        OperableTrigger trigger = createNewInstance(triggerDoc);
+
+        TriggerPropertiesConverter tpd = getPropertiesConverter(trigger);
+
+        loadCommonProperties(triggerKey, triggerDoc, trigger);
+
+        jobDataConverter.toJobData(triggerDoc, trigger.getJobDataMap());
+
+        loadStartAndEndTimes(triggerDoc, trigger);
+
+        tpd.setExtraPropertiesAfterInstantiation(trigger, triggerDoc);
+        return trigger;
+    }
+
     private Document convertToBson(OperableTrigger newTrigger, ObjectId jobId) {
         Document trigger = new Document();
         trigger.put(Constants.TRIGGER_STATE, Constants.STATE_WAITING);
@@ -126,21 +268,69 @@ public class TriggerConverter {
         trigger.put(Constants.TRIGGER_JOB_ID, jobId);
         trigger.put(KEY_NAME, newTrigger.getKey().getName());
         trigger.put(KEY_GROUP, newTrigger.getKey().getGroup());
-        trigger.put(TRIGGER_MISFIRE_INSTRUCTION, newTrigger.getMisfireInstruction());
+        trigger.put(Constants.TRIGGER_MISFIRE_INSTRUCTION, newTrigger.getMisfireInstruction());
         trigger.put(Constants.TRIGGER_NEXT_FIRE_TIME, newTrigger.getNextFireTime());
         trigger.put(TRIGGER_PREVIOUS_FIRE_TIME, newTrigger.getPreviousFireTime());
         trigger.put(TRIGGER_PRIORITY, newTrigger.getPriority());
         trigger.put(TRIGGER_START_TIME, newTrigger.getStartTime());
+        if (bucketCount > 0) {
+            trigger.put(Constants.TRIGGER_BUCKET, TriggerBuckets.bucketOf(newTrigger.getKey(), bucketCount));
+            trigger.put(Constants.TRIGGER_BUCKET_COUNT, bucketCount);
+        }
         return trigger;
     }
 
+    /**
+     * Registers factory of triggers of given class, used instead of loading
+     * the class and calling its constructor reflectively.
+     */
+    public void registerTriggerFactory(String triggerClassName, Callable<OperableTrigger> factory) {
+        triggerFactories.put(triggerClassName, factory);
+    }
+
+    /**
+     * Registers converter of a custom trigger type. It takes precedence over
+     * converters registered before, including the built-in ones.
+     * A converter of the same class is registered only once.
+     */
+    public synchronized void registerPropertiesConverter(TriggerPropertiesConverter converter) {
+        for (TriggerPropertiesConverter registered : propertiesConverters) {
+            if (registered.getClass() == converter.getClass()) {
+                return;
+            }
+        }
+        propertiesConverters.add(0, converter);
+        convertersByClass.clear();
+    }
+
+    /**
+     * Returns properties converter for given trigger or null when not found.
+     * @param trigger    a trigger instance
+     * @return converter or null
+     */
+    private TriggerPropertiesConverter getPropertiesConverter(OperableTrigger trigger) {
+        TriggerPropertiesConverter found = convertersByClass.get(trigger.getClass());
+        if (found != null) {
+            return found;
+        }
+        for (TriggerPropertiesConverter converter : propertiesConverters) {
+            if (converter.canHandle(trigger)) {
+                convertersByClass.put(trigger.getClass(), converter);
+                return converter;
+            }
+        }
+        return null;
+    }
+
     private OperableTrigger createNewInstance(Document triggerDoc) throws JobPersistenceException {
         String triggerClassName = triggerDoc.getString(TRIGGER_CLASS);
+        Callable<OperableTrigger> factory = triggerFactories.get(triggerClassName);
         try {
-            @SuppressWarnings("unchecked")
-            Class<OperableTrigger> triggerClass = (Class<OperableTrigger>) getTriggerClassLoader()
-                    .loadClass(triggerClassName);
-            return triggerClass.newInstance();
+            if (factory == null) {
+                factory = createTriggerFactory(triggerClassName);
+                triggerFactories.putIfAbsent(triggerClassName, factory);
+            }
+            return factory.call();
         } catch (ClassNotFoundException e) {
             throw new JobPersistenceException("Could not find trigger class " + triggerClassName);
         } catch (Exception e) {
@@ -148,6 +338,15 @@ public class TriggerConverter {
         }
     }
 
+    private Callable<OperableTrigger> createTriggerFactory(String triggerClassName)
+            throws ClassNotFoundException, NoSuchMethodException {
+        @SuppressWarnings("unchecked")
+        Class<OperableTrigger> triggerClass = (Class<OperableTrigger>) getTriggerClassLoader()
+                .loadClass(triggerClassName);
+        final Constructor<OperableTrigger> constructor = triggerClass.getConstructor();
+        return constructor::newInstance;
+    }
+
     private ClassLoader getTriggerClassLoader() {
         return Job.class.getClassLoader();
     }
@@ -157,7 +356,7 @@ public class TriggerConverter {
         trigger.setCalendarName(triggerDoc.getString(TRIGGER_CALENDAR_NAME));
         trigger.setDescription(triggerDoc.getString(TRIGGER_DESCRIPTION));
         trigger.setFireInstanceId(triggerDoc.getString(TRIGGER_FIRE_INSTANCE_ID));
-        trigger.setMisfireInstruction(triggerDoc.getInteger(TRIGGER_MISFIRE_INSTRUCTION));
+        trigger.setMisfireInstruction(triggerDoc.getInteger(Constants.TRIGGER_MISFIRE_INSTRUCTION));
         trigger.setNextFireTime(triggerDoc.getDate(Constants.TRIGGER_NEXT_FIRE_TIME));
         trigger.setPreviousFireTime(triggerDoc.getDate(TRIGGER_PREVIOUS_FIRE_TIME));
         trigger.setPriority(triggerDoc.getInteger(TRIGGER_PRIORITY));
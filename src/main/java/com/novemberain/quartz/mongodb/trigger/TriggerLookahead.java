@@ -0,0 +1,174 @@
+package com.novemberain.quartz.mongodb.trigger;
+
+import com.novemberain.quartz.mongodb.Constants;
+import com.novemberain.quartz.mongodb.dao.TriggerDao;
+import com.novemberain.quartz.mongodb.util.Clock;
+import com.novemberain.quartz.mongodb.util.Keys;
+import org.bson.Document;
+import org.quartz.TriggerKey;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Node-local lookahead of triggers due within a window, so acquisition takes
+ * candidates from memory and only claims them in the database, instead of
+ * querying and converting the same upcoming triggers on each call.
+ *
+ * <p>Only keys and next fire times are kept. The window is extended with
+ * a query for triggers due after the loaded part, and the whole lookahead
+ * is reloaded periodically to pick up changes it wasn't told about.
+ * Triggers stored or released by this node, and triggers inserted or replaced
+ * by other nodes watched by {@link TriggerChangeWatcher}, are offered as they
+ * happen. Triggers resumed by other nodes make it reload.</p>
+ *
+ * <p>Candidates can be stale, so it works only with triggers locked in their
+ * documents, where the claim checks the trigger is still eligible.</p>
+ */
+public class TriggerLookahead {
+
+    private static final Logger log = LoggerFactory.getLogger(TriggerLookahead.class);
+
+    private final TriggerDao triggerDao;
+    private final Clock clock;
+    private final long windowMillis;
+    private final long reloadIntervalMillis;
+
+    private final TreeSet<Candidate> candidates = new TreeSet<Candidate>();
+    private final Map<TriggerKey, Candidate> candidatesByKey = new HashMap<TriggerKey, Candidate>();
+    private boolean loaded;
+    private long loadedAt;
+    private long loadedUntil;
+    private List<Integer> loadedBuckets;
+
+    /**
+     * @param windowMillis            how far ahead of now triggers are loaded
+     * @param reloadIntervalMillis    how often all triggers in the window are loaded again
+     */
+    public TriggerLookahead(TriggerDao triggerDao, Clock clock, long windowMillis, long reloadIntervalMillis) {
+        this.triggerDao = triggerDao;
+        this.clock = clock;
+        this.windowMillis = windowMillis;
+        this.reloadIntervalMillis = reloadIntervalMillis;
+    }
+
+    /**
+     * @return true when triggers due not later than given date can be taken from the lookahead
+     */
+    public boolean covers(Date noLaterThanDate) {
+        return noLaterThanDate.getTime() <= clock.millis() + windowMillis;
+    }
+
+    /**
+     * Take candidates due not later than given date out of the lookahead, loading it first if needed.
+     *
+     * @param misfireTime    candidates are loaded like in {@link TriggerDao#findEligibleToRun(Date, Date, List)}
+     * @param buckets        see {@link TriggerDao#findEligibleToRun(Date, Date, List)}
+     * @param maxCount       max number of candidates to take
+     * @return keys of due triggers, the earliest first
+     */
+    public synchronized List<TriggerKey> takeDue(Date noLaterThanDate, Date misfireTime, List<Integer> buckets,
+                                                 int maxCount) {
+        long now = clock.millis();
+        if (!loaded || now - loadedAt >= reloadIntervalMillis || !sameBuckets(buckets)) {
+            reload(now, misfireTime, buckets);
+        } else if (loadedUntil < now + windowMillis) {
+            load(new Date(loadedUntil), now + windowMillis, misfireTime, buckets);
+        }
+
+        List<TriggerKey> due = new ArrayList<TriggerKey>();
+        while (due.size() < maxCount && !candidates.isEmpty()
+                && candidates.first().nextFireTime <= noLaterThanDate.getTime()) {
+            Candidate candidate = candidates.pollFirst();
+            candidatesByKey.remove(candidate.key);
+            due.add(candidate.key);
+        }
+        return due;
+    }
+
+    /**
+     * Put trigger with given next fire time into the lookahead, replacing what was known about it.
+     *
+     * @param nextFireTime    new next fire time, null to forget the trigger
+     */
+    public synchronized void offer(TriggerKey key, Date nextFireTime) {
+        Candidate previous = candidatesByKey.remove(key);
+        if (previous != null) {
+            candidates.remove(previous);
+        }
+        if (loaded && nextFireTime != null && nextFireTime.getTime() <= loadedUntil) {
+            Candidate candidate = new Candidate(key, nextFireTime.getTime());
+            candidates.add(candidate);
+            candidatesByKey.put(key, candidate);
+        }
+    }
+
+    /**
+     * Put waiting trigger into the lookahead, unless it's in a bucket this node doesn't look into.
+     *
+     * @param triggerDoc    trigger document with key, next fire time and optional bucket
+     */
+    public synchronized void offer(Document triggerDoc) {
+        Integer bucket = triggerDoc.getInteger(Constants.TRIGGER_BUCKET);
+        if (bucket != null && loadedBuckets != null && !loadedBuckets.contains(bucket)) {
+            return;
+        }
+        offer(Keys.toTriggerKey(triggerDoc), triggerDoc.getDate(Constants.TRIGGER_NEXT_FIRE_TIME));
+    }
+
+    /**
+     * Load the whole window again on next acquisition, after many triggers changed at once.
+     */
+    public synchronized void invalidate() {
+        loaded = false;
+    }
+
+    private void reload(long now, Date misfireTime, List<Integer> buckets) {
+        candidates.clear();
+        candidatesByKey.clear();
+        loadedAt = now;
+        loadedBuckets = buckets;
+        loaded = true;
+        load(null, now + windowMillis, misfireTime, buckets);
+        log.debug("Loaded {} triggers due in next {} ms.", candidates.size(), windowMillis);
+    }
+
+    private void load(Date after, long until, Date misfireTime, List<Integer> buckets) {
+        for (Document doc : triggerDao.findEligibleFireTimes(after, new Date(until), misfireTime, buckets)) {
+            TriggerKey key = Keys.toTriggerKey(doc);
+            if (!candidatesByKey.containsKey(key)) {
+                Candidate candidate = new Candidate(key, doc.getDate(Constants.TRIGGER_NEXT_FIRE_TIME).getTime());
+                candidates.add(candidate);
+                candidatesByKey.put(key, candidate);
+            }
+        }
+        loadedUntil = until;
+    }
+
+    private boolean sameBuckets(List<Integer> buckets) {
+        return buckets == null ? loadedBuckets == null : buckets.equals(loadedBuckets);
+    }
+
+    private static final class Candidate implements Comparable<Candidate> {
+
+        private final TriggerKey key;
+        private final long nextFireTime;
+
+        private Candidate(TriggerKey key, long nextFireTime) {
+            this.key = key;
+            this.nextFireTime = nextFireTime;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            int result = Long.compare(nextFireTime, other.nextFireTime);
+            return result != 0 ? result : key.compareTo(other.key);
+        }
+    }
+}
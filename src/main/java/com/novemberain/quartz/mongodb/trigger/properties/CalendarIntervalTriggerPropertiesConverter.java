@@ -28,6 +28,14 @@ public class CalendarIntervalTriggerPropertiesConverter extends TriggerPropertie
                 .append(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
     }
 
+    @Override
+    public Document injectExtraPropertiesForFire(OperableTrigger trigger, Document original) {
+        CalendarIntervalTriggerImpl t = (CalendarIntervalTriggerImpl) trigger;
+
+        return new Document(original)
+                .append(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Document stored) {
         CalendarIntervalTriggerImpl t = (CalendarIntervalTriggerImpl) trigger;
@@ -1,20 +1,21 @@
 package com.novemberain.quartz.mongodb.trigger.properties;
 
 import com.novemberain.quartz.mongodb.trigger.TriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.util.ScheduleCache;
 import org.bson.Document;
-import org.quartz.CronExpression;
 import org.quartz.CronTrigger;
 import org.quartz.impl.triggers.CronTriggerImpl;
 import org.quartz.spi.OperableTrigger;
 
 import java.text.ParseException;
-import java.util.TimeZone;
 
 public class CronTriggerPropertiesConverter extends TriggerPropertiesConverter {
 
     private static final String TRIGGER_CRON_EXPRESSION = "cronExpression";
     private static final String TRIGGER_TIMEZONE = "timezone";
 
+    private final ScheduleCache schedules = new ScheduleCache(ScheduleCache.DEFAULT_MAX_SIZE);
+
     @Override
     protected boolean canHandle(OperableTrigger trigger) {
         return ((trigger instanceof CronTriggerImpl)
@@ -35,17 +36,19 @@ public class CronTriggerPropertiesConverter extends TriggerPropertiesConverter {
         CronTriggerImpl t = (CronTriggerImpl) trigger;
 
         String expression = stored.getString(TRIGGER_CRON_EXPRESSION);
+        String tz = stored.getString(TRIGGER_TIMEZONE);
         if (expression != null) {
             try {
-                t.setCronExpression(new CronExpression(expression));
+                // sets time zone of the trigger too
+                t.setCronExpression(schedules.newCronExpression(expression, tz));
+                return;
             } catch (ParseException e) {
                 // no good handling strategy and
                 // checked exceptions route sucks just as much.
             }
         }
-        String tz = stored.getString(TRIGGER_TIMEZONE);
         if (tz != null) {
-            t.setTimeZone(TimeZone.getTimeZone(tz));
+            t.setTimeZone(schedules.getTimeZone(tz));
         }
     }
 }
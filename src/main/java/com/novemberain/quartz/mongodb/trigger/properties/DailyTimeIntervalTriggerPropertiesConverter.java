@@ -1,6 +1,7 @@
 package com.novemberain.quartz.mongodb.trigger.properties;
 
 import com.novemberain.quartz.mongodb.trigger.TriggerPropertiesConverter;
+import com.novemberain.quartz.mongodb.util.ScheduleCache;
 import org.bson.Document;
 import org.quartz.DailyTimeIntervalTrigger;
 import org.quartz.TimeOfDay;
@@ -16,6 +17,8 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
     private static final String TRIGGER_START_TIME_OF_DAY = "startTimeOfDay";
     private static final String TRIGGER_END_TIME_OF_DAY = "endTimeOfDay";
 
+    private final ScheduleCache schedules = new ScheduleCache(ScheduleCache.DEFAULT_MAX_SIZE);
+
     @Override
     protected boolean canHandle(OperableTrigger trigger) {
         return ((trigger instanceof DailyTimeIntervalTrigger)
@@ -41,6 +44,14 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
                 append("second", tod.getSecond());
     }
 
+    @Override
+    public Document injectExtraPropertiesForFire(OperableTrigger trigger, Document original) {
+        DailyTimeIntervalTriggerImpl t = (DailyTimeIntervalTriggerImpl) trigger;
+
+        return new Document(original)
+                .append(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Document stored) {
         DailyTimeIntervalTriggerImpl t = (DailyTimeIntervalTriggerImpl) trigger;
@@ -69,6 +80,16 @@ public class DailyTimeIntervalTriggerPropertiesConverter extends TriggerProperti
     }
 
     private TimeOfDay fromDocument(Document tod) {
-        return new TimeOfDay(tod.getInteger("hour"), tod.getInteger("minute"), tod.getInteger("second"));
+        int hour = tod.getInteger("hour");
+        int minute = tod.getInteger("minute");
+        int second = tod.getInteger("second");
+        long secondOfDay = hour * 3600L + minute * 60L + second;
+
+        TimeOfDay timeOfDay = schedules.getTimeOfDay(secondOfDay);
+        if (timeOfDay == null) {
+            timeOfDay = new TimeOfDay(hour, minute, second);
+            schedules.putTimeOfDay(secondOfDay, timeOfDay);
+        }
+        return timeOfDay;
     }
 }
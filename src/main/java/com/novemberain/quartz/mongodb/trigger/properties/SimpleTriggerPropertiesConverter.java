@@ -28,6 +28,16 @@ public class SimpleTriggerPropertiesConverter extends TriggerPropertiesConverter
                 .append(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
     }
 
+    @Override
+    public Document injectExtraPropertiesForFire(OperableTrigger trigger, Document original) {
+        SimpleTrigger t = (SimpleTrigger) trigger;
+
+        // misfire instructions may reset repeat count
+        return new Document(original)
+                .append(TRIGGER_REPEAT_COUNT, t.getRepeatCount())
+                .append(TRIGGER_TIMES_TRIGGERED, t.getTimesTriggered());
+    }
+
     @Override
     public void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Document stored) {
         SimpleTriggerImpl t = (SimpleTriggerImpl) trigger;
@@ -1,26 +1,30 @@
 package com.novemberain.quartz.mongodb.util;
 
 import com.novemberain.quartz.mongodb.Constants;
-import com.novemberain.quartz.mongodb.cluster.Scheduler;
+import com.novemberain.quartz.mongodb.cluster.ClusterMembership;
 import com.novemberain.quartz.mongodb.dao.SchedulerDao;
 import org.bson.Document;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
 import java.util.Date;
 
 public class ExpiryCalculator {
 
-    private static final Logger log = LoggerFactory.getLogger(ExpiryCalculator.class);
-
-    private final SchedulerDao schedulerDao;
+    private final ClusterMembership membership;
     private final Clock clock;
     private final long jobTimeoutMillis;
     private final long triggerTimeoutMillis;
 
     public ExpiryCalculator(SchedulerDao schedulerDao, Clock clock,
                             long jobTimeoutMillis, long triggerTimeoutMillis) {
-        this.schedulerDao = schedulerDao;
+        this(new ClusterMembership(schedulerDao, clock), clock, jobTimeoutMillis, triggerTimeoutMillis);
+    }
+
+    /**
+     * @param membership    view of the cluster telling whether lock owners are defunct
+     */
+    public ExpiryCalculator(ClusterMembership membership, Clock clock,
+                            long jobTimeoutMillis, long triggerTimeoutMillis) {
+        this.membership = membership;
         this.clock = clock;
         this.jobTimeoutMillis = jobTimeoutMillis;
         this.triggerTimeoutMillis = triggerTimeoutMillis;
@@ -32,16 +36,14 @@ public class ExpiryCalculator {
 
     public boolean isTriggerLockExpired(Document lock) {
         String schedulerId = lock.getString(Constants.LOCK_INSTANCE_ID);
-        return isLockExpired(lock, triggerTimeoutMillis) && hasDefunctScheduler(schedulerId);
+        return isLockExpired(lock, triggerTimeoutMillis) && membership.isDefunct(schedulerId);
     }
 
-    private boolean hasDefunctScheduler(String schedulerId) {
-        Scheduler scheduler = schedulerDao.findInstance(schedulerId);
-        if (scheduler == null) {
-            log.debug("No such scheduler: {}", schedulerId);
-            return false;
-        }
-        return scheduler.isDefunct(clock.millis()) && schedulerDao.isNotSelf(scheduler);
+    /**
+     * @return trigger locks taken before this date are old enough to expire
+     */
+    public Date getTriggerLockExpiryDate() {
+        return new Date(clock.millis() - triggerTimeoutMillis);
     }
 
     private boolean isLockExpired(Document lock, long timeoutMillis) {
@@ -0,0 +1,73 @@
+package com.novemberain.quartz.mongodb
+
+import org.bson.Document
+import org.quartz.Job
+import org.quartz.JobExecutionContext
+import org.quartz.spi.ClassLoadHelper
+import spock.lang.Specification
+
+class JobConverterTest extends Specification {
+
+    def loadHelper = Mock(ClassLoadHelper)
+    def converter = new JobConverter(loadHelper, new JobDataConverter(true))
+
+    def 'should load job classes with the current class loader'() {
+        given:
+        def first = new SampleJobLoader()
+        def second = new SampleJobLoader()
+        loadHelper.getClassLoader() >>> [first, second, first]
+
+        when:
+        def fromFirst = converter.toJobDetail(createJobDoc()).jobClass
+        def fromSecond = converter.toJobDetail(createJobDoc()).jobClass
+        def fromFirstAgain = converter.toJobDetail(createJobDoc()).jobClass
+
+        then: 'each loader is asked once'
+        fromFirst.classLoader.is(first)
+        fromSecond.classLoader.is(second)
+        fromFirstAgain.is(fromFirst)
+        first.loads == 1
+        second.loads == 1
+    }
+
+    def createJobDoc() {
+        new Document('keyName', 'name')
+                .append('keyGroup', 'group')
+                .append('jobClass', SampleJob.name)
+    }
+
+    static class SampleJob implements Job {
+
+        @Override
+        void execute(JobExecutionContext context) {
+        }
+    }
+
+    /**
+     * Defines its own copy of {@link SampleJob}.
+     */
+    static class SampleJobLoader extends ClassLoader {
+
+        int loads
+
+        SampleJobLoader() {
+            super(JobConverterTest.classLoader)
+        }
+
+        @Override
+        protected Class<?> loadClass(String name, boolean resolve) {
+            if (name != SampleJob.name) {
+                return super.loadClass(name, resolve)
+            }
+            loads++
+            synchronized (getClassLoadingLock(name)) {
+                def loaded = findLoadedClass(name)
+                if (loaded == null) {
+                    def bytes = parent.getResourceAsStream(name.replace('.', '/') + '.class').bytes
+                    loaded = defineClass(name, bytes, 0, bytes.length)
+                }
+                return loaded
+            }
+        }
+    }
+}
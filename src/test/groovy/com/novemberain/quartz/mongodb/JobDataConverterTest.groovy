@@ -1,5 +1,7 @@
 package com.novemberain.quartz.mongodb
 
+import com.novemberain.quartz.mongodb.util.CompactJobDataSerializer
+import com.novemberain.quartz.mongodb.util.SerialUtils
 import groovy.transform.EqualsAndHashCode
 import groovy.transform.ToString
 import org.bson.Document
@@ -11,6 +13,7 @@ class JobDataConverterTest extends Specification {
 
     def converterBase64 = new JobDataConverter(true)
     def converterPlain = new JobDataConverter(false)
+    def converterBinary = new JobDataConverter(true, new CompactJobDataSerializer())
 
     def "empty job data doesn't modify the document"() {
         given:
@@ -116,6 +119,42 @@ class JobDataConverterTest extends Specification {
         jobDataMap.getWrappedMap() == createJobDataWithSerializableContent().getWrappedMap()
     }
 
+    def "binary encode and decode works"() {
+        given:
+        def doc = new Document()
+        def jobDataMap = new JobDataMap()
+        when:
+        converterBinary.toDocument(createJobDataWithSerializableContent(), doc)
+        def result = converterBinary.toJobData(doc, jobDataMap)
+        then:
+        doc.keySet() == [Constants.JOB_DATA_BINARY] as Set
+        result
+        jobDataMap.getWrappedMap() == createJobDataWithSerializableContent().getWrappedMap()
+    }
+
+    def "binary decode falls back to plain and base64"() {
+        given:
+        def plainDoc = new Document(Constants.JOB_DATA_PLAIN, createJobDataWithSimpleContent().getWrappedMap())
+        def base64Doc = new Document(Constants.JOB_DATA, SerialUtils.serialize(createJobDataWithSerializableContent()))
+        def fromPlain = new JobDataMap()
+        def fromBase64 = new JobDataMap()
+        when:
+        converterBinary.toJobData(plainDoc, fromPlain)
+        converterBinary.toJobData(base64Doc, fromBase64)
+        then:
+        fromPlain.getWrappedMap() == createJobDataWithSimpleContent().getWrappedMap()
+        fromBase64.getWrappedMap() == createJobDataWithSerializableContent().getWrappedMap()
+    }
+
+    def "binary decode fails without serializer"() {
+        given:
+        def doc = new Document(Constants.JOB_DATA_BINARY, new byte[1])
+        when:
+        converterBase64.toJobData(doc, new JobDataMap())
+        then:
+        thrown(JobPersistenceException)
+    }
+
     @ToString
     @EqualsAndHashCode
     static class Foo implements Serializable {
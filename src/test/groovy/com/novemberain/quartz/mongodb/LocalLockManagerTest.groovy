@@ -0,0 +1,131 @@
+package com.novemberain.quartz.mongodb
+
+import com.novemberain.quartz.mongodb.dao.LocksDao
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics
+import com.novemberain.quartz.mongodb.util.Clock
+import com.novemberain.quartz.mongodb.util.ExpiryCalculator
+import org.quartz.DisallowConcurrentExecution
+import org.quartz.Job
+import org.quartz.JobBuilder
+import org.quartz.JobExecutionContext
+import org.quartz.TriggerKey
+import org.quartz.impl.triggers.SimpleTriggerImpl
+import spock.lang.Specification
+import spock.lang.Subject
+
+class LocalLockManagerTest extends Specification {
+
+    def now = 10000L
+    def clock = Mock(Clock) {
+        millis() >> { now }
+    }
+    def locksDao = Mock(LocksDao)
+    def triggerDao = Mock(TriggerDao)
+    def metrics = Mock(JobStoreMetrics)
+
+    @Subject def manager = new LocalLockManager(locksDao, Mock(ExpiryCalculator), triggerDao, null,
+            clock, false, metrics, null, 5000)
+
+    def tkey = new TriggerKey('n1', 'g1')
+
+    @DisallowConcurrentExecution
+    static class NonConcurrentJob implements Job {
+        void execute(JobExecutionContext context) {}
+    }
+
+    static class ConcurrentJob implements Job {
+        void execute(JobExecutionContext context) {}
+    }
+
+    def trigger() {
+        def trigger = new SimpleTriggerImpl()
+        trigger.setKey(tkey)
+        trigger
+    }
+
+    def 'should lock trigger once until unlocked without touching the database'() {
+        when:
+        def first = manager.tryLock(tkey)
+        def second = manager.tryLock(tkey)
+        manager.unlockAcquiredTrigger(trigger())
+        def third = manager.tryLock(tkey)
+
+        then:
+        first
+        !second
+        third
+        1 * metrics.recordLockConflict()
+        0 * locksDao._
+    }
+
+    def 'should unlock triggers at once'() {
+        given:
+        manager.tryLock(tkey)
+
+        when:
+        manager.unlockTriggers([tkey])
+
+        then:
+        manager.tryLock(tkey)
+    }
+
+    def 'should never relock trigger locked in memory'() {
+        given:
+        manager.tryLock(tkey)
+
+        expect:
+        !manager.relockExpired(tkey)
+    }
+
+    def 'should lock only jobs disallowing concurrent execution'() {
+        given:
+        def job = JobBuilder.newJob(NonConcurrentJob).withIdentity('j1').build()
+        def concurrent = JobBuilder.newJob(ConcurrentJob).withIdentity('j2').build()
+
+        expect:
+        manager.tryLockJob(job)
+        !manager.tryLockJob(job)
+        manager.tryLockJob(concurrent)
+        manager.tryLockJob(concurrent)
+
+        when:
+        manager.unlockJob(job)
+
+        then:
+        manager.tryLockJob(job)
+    }
+
+    def 'should unlock job only when its lock expired'() {
+        given:
+        def job = JobBuilder.newJob(NonConcurrentJob).withIdentity('j1').build()
+        manager.tryLockJob(job)
+
+        when:
+        now = 15000
+        manager.unlockExpired(job)
+
+        then:
+        !manager.tryLockJob(job)
+
+        when:
+        now = 15001
+        manager.unlockExpired(job)
+
+        then:
+        manager.tryLockJob(job)
+    }
+
+    def 'should lock triggers in their documents when configured'() {
+        given:
+        def documentManager = new LocalLockManager(locksDao, Mock(ExpiryCalculator), triggerDao, null,
+                clock, true, metrics, null, 5000)
+
+        when:
+        def locked = documentManager.tryLock(tkey)
+
+        then:
+        1 * triggerDao.acquire(tkey, _, _) >> true
+        locked
+    }
+}
@@ -4,6 +4,9 @@ import com.mongodb.MongoWriteException
 import com.mongodb.ServerAddress
 import com.mongodb.WriteError
 import com.novemberain.quartz.mongodb.dao.LocksDao
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics
+import com.novemberain.quartz.mongodb.metrics.NoOpJobStoreMetrics
 import com.novemberain.quartz.mongodb.util.ExpiryCalculator
 import org.bson.BsonDocument
 import org.bson.Document
@@ -83,4 +86,65 @@ class LockManagerTest extends Specification {
         where:
         expectedResult << [false, true]
     }
-}
\ No newline at end of file
+
+    def 'should acquire trigger in its document when configured'() {
+        given:
+        def triggerDao = Mock(TriggerDao)
+        def clock = Clocks.constClock(100)
+        def docManager = new LockManager(locksDao, expiryCalc, triggerDao,
+                Mock(TriggerAndJobPersister), clock, true, NoOpJobStoreMetrics.INSTANCE, null)
+
+        when:
+        def locked = docManager.tryLock(tkey)
+
+        then:
+        0 * locksDao.lockTrigger(_ as TriggerKey)
+        1 * triggerDao.acquire(tkey, _, new Date(100)) >> true
+        locked
+    }
+
+    def 'should relock expired trigger in its document'() {
+        given:
+        def triggerDao = Mock(TriggerDao)
+        def clock = Clocks.constClock(100)
+        def docManager = new LockManager(locksDao, expiryCalc, triggerDao,
+                Mock(TriggerAndJobPersister), clock, true, NoOpJobStoreMetrics.INSTANCE, null)
+        def lockTime = new Date(50)
+        def triggerDoc = new Document([keyName: 'n1', keyGroup: 'g1', time: lockTime])
+
+        when:
+        def relocked = docManager.relockExpired(triggerDoc)
+
+        then:
+        0 * locksDao.relock(_, _)
+        1 * expiryCalc.isTriggerLockExpired(triggerDoc) >> true
+        1 * triggerDao.relock(tkey, lockTime, _, new Date(100)) >> true
+        relocked
+    }
+
+    def 'should record lock conflicts and relocks'() {
+        given:
+        def triggerDao = Mock(TriggerDao)
+        def metrics = Mock(JobStoreMetrics)
+        def docManager = new LockManager(locksDao, expiryCalc, triggerDao,
+                Mock(TriggerAndJobPersister), Clocks.constClock(100), true, metrics, null)
+        def triggerDoc = new Document([keyName: 'n1', keyGroup: 'g1', time: new Date(50)])
+
+        when:
+        def locked = docManager.tryLock(tkey)
+
+        then:
+        1 * triggerDao.acquire(tkey, _, new Date(100)) >> false
+        1 * metrics.recordLockConflict()
+        !locked
+
+        when:
+        def relocked = docManager.relockExpired(triggerDoc)
+
+        then:
+        1 * expiryCalc.isTriggerLockExpired(triggerDoc) >> true
+        1 * triggerDao.relock(tkey, new Date(50), _, new Date(100)) >> true
+        1 * metrics.recordRelock()
+        relocked
+    }
+}
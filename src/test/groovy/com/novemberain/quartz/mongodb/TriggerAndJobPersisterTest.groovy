@@ -0,0 +1,100 @@
+package com.novemberain.quartz.mongodb
+
+import com.novemberain.quartz.mongodb.dao.JobDao
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.trigger.TriggerConverter
+import org.bson.Document
+import org.bson.types.ObjectId
+import org.quartz.Job
+import org.quartz.JobBuilder
+import org.quartz.JobExecutionContext
+import org.quartz.JobKey
+import org.quartz.JobPersistenceException
+import org.quartz.TriggerBuilder
+import spock.lang.Specification
+import spock.lang.Subject
+
+class TriggerAndJobPersisterTest extends Specification {
+
+    def jobDao = Mock(JobDao)
+    def triggerDao = Mock(TriggerDao)
+
+    @Subject
+    def persister = new TriggerAndJobPersister(triggerDao, jobDao,
+            new TriggerConverter(jobDao, new JobDataConverter(true)))
+
+    static class NoOpJob implements Job {
+        void execute(JobExecutionContext context) {}
+    }
+
+    def job(String name) {
+        JobBuilder.newJob(NoOpJob).withIdentity(name).build()
+    }
+
+    def trigger(String name, JobKey jobKey) {
+        TriggerBuilder.newTrigger().withIdentity(name).forJob(jobKey).build()
+    }
+
+    def 'should store jobs and triggers in chunks with ids of stored jobs'() {
+        given:
+        def jobs = (1..3).collect { job("j$it") }
+        def triggersAndJobs = new LinkedHashMap()
+        jobs.each { triggersAndJobs.put(it, [trigger("t-$it.key.name", it.key)] as Set) }
+        def ids = jobs.collectEntries { [(it.key): new ObjectId()] }
+
+        when:
+        persister.storeJobsAndTriggers(triggersAndJobs, false, 2)
+
+        then:
+        1 * jobDao.storeJobsInMongo(jobs[0..1], false) >> ids.subMap(jobs[0..1]*.key)
+        1 * triggerDao.storeAll({ it*.jobId == [ids[jobs[0].key], ids[jobs[1].key]] }, { it.size() == 2 }, false)
+
+        then:
+        1 * jobDao.storeJobsInMongo([jobs[2]], false) >> ids.subMap([jobs[2].key])
+        1 * triggerDao.storeAll({ it*.jobId == [ids[jobs[2].key]] }, _, false)
+        0 * jobDao.getJob(_)
+    }
+
+    def 'should split triggers of a job into chunks'() {
+        given:
+        def job = job('j1')
+        def triggers = (1..3).collect { trigger("t$it", job.key) } as Set
+
+        when:
+        persister.storeJobsAndTriggers([(job): triggers], true, 2)
+
+        then:
+        1 * jobDao.storeJobsInMongo([job], true) >> [(job.key): new ObjectId()]
+        1 * triggerDao.storeAll({ it.size() == 2 }, _, true)
+        1 * triggerDao.storeAll({ it.size() == 1 }, _, true)
+    }
+
+    def 'should find job of trigger stored before'() {
+        given:
+        def job = job('j1')
+        def storedJobId = new ObjectId()
+
+        when:
+        persister.storeJobsAndTriggers([(job): [trigger('t1', new JobKey('stored'))] as Set], false, 10)
+
+        then:
+        1 * jobDao.storeJobsInMongo(_, false) >> [(job.key): new ObjectId()]
+        1 * jobDao.getJob(_) >> new Document('_id', storedJobId)
+        1 * triggerDao.storeAll({ it*.jobId == [storedJobId] }, _, false)
+    }
+
+    def 'should fail when job of trigger is missing'() {
+        given:
+        def job = job('j1')
+
+        when:
+        persister.storeJobsAndTriggers([(job): [trigger('t1', new JobKey('missing'))] as Set], false, 10)
+
+        then:
+        1 * jobDao.storeJobsInMongo(_, false) >> [(job.key): new ObjectId()]
+        1 * jobDao.getJob(_) >> null
+        def e = thrown(JobPersistenceException)
+        e.message.startsWith('Could not find job with key')
+        0 * triggerDao.storeAll(*_)
+    }
+}
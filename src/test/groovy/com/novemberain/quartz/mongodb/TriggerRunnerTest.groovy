@@ -0,0 +1,133 @@
+package com.novemberain.quartz.mongodb
+
+import com.mongodb.client.FindIterable
+import com.mongodb.client.MongoCursor
+import com.novemberain.quartz.mongodb.cluster.TriggerRecoverer
+import com.novemberain.quartz.mongodb.dao.CalendarDao
+import com.novemberain.quartz.mongodb.dao.JobDao
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.trigger.MisfireHandler
+import com.novemberain.quartz.mongodb.trigger.TriggerConverter
+import org.bson.Document
+import org.quartz.DisallowConcurrentExecution
+import org.quartz.Job
+import org.quartz.JobBuilder
+import org.quartz.JobExecutionContext
+import org.quartz.JobKey
+import org.quartz.JobPersistenceException
+import org.quartz.impl.triggers.SimpleTriggerImpl
+import spock.lang.Specification
+import spock.lang.Subject
+
+class TriggerRunnerTest extends Specification {
+
+    def triggerDao = Mock(TriggerDao)
+    def jobDao = Mock(JobDao)
+    def triggerConverter = Mock(TriggerConverter)
+    def lockManager = Mock(LockManager)
+
+    @Subject def runner = new TriggerRunner(Mock(TriggerAndJobPersister), triggerDao, jobDao, Mock(CalendarDao),
+            Mock(MisfireHandler), triggerConverter, lockManager, Mock(TriggerRecoverer))
+
+    def fired = trigger('fired')
+    def jobLocked = trigger('job-locked')
+    def brokenData = trigger('broken-data')
+    def notStored = trigger('not-stored')
+    def jobGone = trigger('job-gone')
+
+    def 'should map each trigger to its result'() {
+        given:
+        jobDao.retrieveJob(_) >> { JobKey key -> job(key) }
+        triggerDao.findJobData(_) >> found([new Document('keyName', 'broken-data').append('keyGroup', 'g')])
+        triggerConverter.loadJobData(_, brokenData) >> { throw new JobPersistenceException('broken') }
+        lockManager.tryLockJob({ it.key.name != 'job-locked' }) >> true
+
+        when:
+        def results = runner.triggersFired([fired, jobLocked, brokenData, notStored])
+
+        then: 'job-locked trigger is left to Quartz to release'
+        1 * lockManager.storeAcquiredTriggers([fired, notStored]) >> [1: 'write conflict']
+        1 * lockManager.unlockExpired({ it.key.name == 'job-locked' })
+        0 * lockManager.unlockAcquiredTrigger(_)
+        1 * triggerDao.transferState(brokenData.key, Constants.STATE_WAITING, Constants.STATE_ERROR)
+        1 * lockManager.unlockJob({ it.key.name == 'not-stored' })
+        0 * lockManager.unlockTriggers(_)
+
+        and:
+        results.size() == 4
+        results[0].triggerFiredBundle.trigger.is(fired)
+        results[0].exception == null
+        results[1].triggerFiredBundle == null
+        results[1].exception == null
+        results[2].triggerFiredBundle == null
+        results[2].exception.message == 'broken'
+        results[3].triggerFiredBundle == null
+        results[3].exception.message == 'Could not store fired trigger g.not-stored: write conflict'
+    }
+
+    def 'should release fired triggers and their jobs when storing them fails'() {
+        given:
+        jobDao.retrieveJob(_) >> { JobKey key -> job(key) }
+        triggerDao.findJobData(_) >> found([])
+        lockManager.tryLockJob(_) >> true
+        lockManager.storeAcquiredTriggers(_) >> { throw new IllegalStateException('connection lost') }
+
+        when:
+        runner.triggersFired([fired, notStored])
+
+        then:
+        thrown(IllegalStateException)
+        1 * lockManager.unlockJob({ it.key.name == 'not-stored' })
+        1 * lockManager.unlockTriggers([fired.key, notStored.key])
+    }
+
+    def 'should release triggers not fired yet when firing fails'() {
+        given:
+        triggerDao.findJobData(_) >> found([])
+        lockManager.tryLockJob(_) >> true
+        jobDao.retrieveJob(jobGone.jobKey) >> { throw new JobPersistenceException('gone') }
+        jobDao.retrieveJob(_) >> { JobKey key -> job(key) }
+
+        when:
+        runner.triggersFired([fired, jobGone, notStored])
+
+        then: 'the failing trigger is released with the ones after it'
+        thrown(JobPersistenceException)
+        0 * lockManager.unlockAcquiredTrigger(_)
+        1 * lockManager.unlockTriggers([fired.key, jobGone.key, notStored.key])
+    }
+
+    def found(List<Document> docs) {
+        def iterator = docs.iterator()
+        def cursor = [hasNext: { iterator.hasNext() }, next: { iterator.next() }, close: {}] as MongoCursor
+        [iterator: { cursor }] as FindIterable
+    }
+
+    def trigger(String name) {
+        def trigger = new SimpleTriggerImpl(name, 'g', new Date(1000), null, 1, 1000)
+        trigger.setJobKey(new JobKey(name, 'g'))
+        trigger.computeFirstFireTime(null)
+        trigger
+    }
+
+    def job(JobKey key) {
+        JobBuilder.newJob(key.name == 'not-stored' ? NonConcurrentJob : ConcurrentJob)
+                .withIdentity(key)
+                .build()
+    }
+
+    static class ConcurrentJob implements Job {
+
+        @Override
+        void execute(JobExecutionContext context) {
+        }
+    }
+
+    @DisallowConcurrentExecution
+    static class NonConcurrentJob implements Job {
+
+        @Override
+        void execute(JobExecutionContext context) {
+        }
+    }
+}
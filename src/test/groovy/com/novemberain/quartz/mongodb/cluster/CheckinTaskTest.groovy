@@ -33,4 +33,54 @@ class CheckinTaskTest extends Specification {
         then:
         1 * errorHandler.run()
     }
+
+    def 'should refresh cluster membership after checkin'() {
+        given:
+        def membership = Mock(ClusterMembership)
+        def task = new CheckinTask(schedulerDao, membership, Mock(Runnable))
+
+        when:
+        task.run()
+
+        then:
+        1 * schedulerDao.checkIn()
+
+        then:
+        1 * membership.refresh()
+    }
+
+    def 'should not refresh cluster membership when checkin failed'() {
+        given:
+        def membership = Mock(ClusterMembership)
+        def errorHandler = Mock(Runnable)
+        def task = new CheckinTask(schedulerDao, membership, errorHandler)
+        schedulerDao.checkIn() >> { throw new MongoException('Checkin Error!') }
+
+        when:
+        task.run()
+
+        then:
+        1 * errorHandler.run()
+        0 * membership.refresh()
+    }
+
+    def 'should lease own buckets and rebalance them after refresh'() {
+        given:
+        def membership = Mock(ClusterMembership)
+        def buckets = Mock(TriggerBuckets)
+        def task = new CheckinTask(schedulerDao, membership, buckets, Mock(Runnable))
+        buckets.getOwnBuckets() >> [0, 2]
+
+        when:
+        task.run()
+
+        then:
+        1 * schedulerDao.checkIn([0, 2])
+
+        then:
+        1 * membership.refresh()
+
+        then:
+        1 * buckets.rebalance()
+    }
 }
@@ -0,0 +1,88 @@
+package com.novemberain.quartz.mongodb.cluster
+
+import com.novemberain.quartz.mongodb.Clocks
+import com.novemberain.quartz.mongodb.dao.SchedulerDao
+import spock.lang.Specification
+import spock.lang.Subject
+
+class ClusterMembershipTest extends Specification {
+
+    def clock = Clocks.constClock(100000)
+
+    def schedulerDao = Mock(SchedulerDao, constructorArgs: [null, 'sname', 'self', 1000, clock])
+
+    @Subject def membership = new ClusterMembership(schedulerDao, clock)
+
+    def alive = new Scheduler('sname', 'alive', 99000, 1000)
+    def dead = new Scheduler('sname', 'dead', 0, 1000)
+
+    def setup() {
+        schedulerDao.isNotSelf(_) >> { Scheduler s -> s.instanceId != 'self' }
+    }
+
+    def 'should look up instances in database before first refresh'() {
+        when:
+        def defunct = membership.isDefunct('dead')
+
+        then:
+        1 * schedulerDao.findInstance('dead') >> dead
+        defunct
+    }
+
+    def 'should tell live instances without database lookups'() {
+        given:
+        schedulerDao.getAllByCheckinTime() >> [alive]
+        membership.refresh()
+
+        when:
+        def defunct = membership.isDefunct('alive')
+
+        then:
+        !defunct
+        0 * schedulerDao.findInstance(_)
+    }
+
+    def 'should confirm defunct instances in database'() {
+        given:
+        schedulerDao.getAllByCheckinTime() >> [dead]
+        membership.refresh()
+
+        when: 'it has checked in since the refresh'
+        def defunct = membership.isDefunct('dead')
+
+        then:
+        1 * schedulerDao.findInstance('dead') >> new Scheduler('sname', 'dead', 99500, 1000)
+        !defunct
+
+        when: 'it has not'
+        defunct = membership.isDefunct('dead')
+
+        then:
+        1 * schedulerDao.findInstance('dead') >> dead
+        defunct
+    }
+
+    def 'should never tell self or unknown instances defunct'() {
+        given:
+        schedulerDao.getAllByCheckinTime() >> []
+        membership.refresh()
+        schedulerDao.findInstance('self') >> new Scheduler('sname', 'self', 0, 1000)
+        schedulerDao.findInstance('unknown') >> null
+
+        expect:
+        !membership.isDefunct('self')
+        !membership.isDefunct('unknown')
+    }
+
+    def 'should keep only instances of this scheduler'() {
+        given:
+        def other = new Scheduler('other', 'node', 98000, 1000)
+        schedulerDao.getAllByCheckinTime() >> [dead, other, alive]
+
+        when:
+        membership.refresh()
+
+        then:
+        membership.instances*.instanceId == ['dead', 'alive']
+    }
+}
@@ -0,0 +1,69 @@
+package com.novemberain.quartz.mongodb.cluster
+
+import com.novemberain.quartz.mongodb.LockManager
+import com.novemberain.quartz.mongodb.dao.SchedulerDao
+import spock.lang.Specification
+import spock.lang.Subject
+
+class DefunctSchedulerRecovererTest extends Specification {
+
+    def membership = Mock(ClusterMembership)
+    def schedulerDao = Mock(SchedulerDao)
+    def lockManager = Mock(LockManager)
+    def recoverer = Mock(TriggerRecoverer)
+
+    @Subject def defunctRecoverer = new DefunctSchedulerRecoverer(membership, schedulerDao,
+            lockManager, recoverer, 1000)
+
+    def alive = new Scheduler('sname', 'alive', 99000, 1000)
+    def dead = new Scheduler('sname', 'dead', 0, 1000)
+
+    def 'should take over, recover and remove defunct schedulers only'() {
+        given:
+        membership.getInstances() >> [dead, alive]
+        membership.isDefunct('dead') >> true
+        membership.isDefunct('alive') >> false
+
+        when:
+        defunctRecoverer.run()
+
+        then:
+        1 * lockManager.takeOverTriggerLocks('dead') >> 3
+
+        then:
+        1 * recoverer.recoverTakenOver('dead') >> 3
+
+        then:
+        1 * lockManager.hasTriggerLocks('dead') >> false
+        1 * schedulerDao.remove('dead', 0) >> true
+        0 * lockManager.takeOverTriggerLocks('alive')
+        0 * recoverer.recoverTakenOver('alive')
+    }
+
+    def 'should keep defunct scheduler while it holds locks not expired yet'() {
+        given:
+        lockManager.hasTriggerLocks('dead') >> true
+
+        when:
+        def removed = defunctRecoverer.recover(dead)
+
+        then:
+        !removed
+        0 * schedulerDao.remove(_, _)
+    }
+
+    def 'should go on with other schedulers when recovery of one failed'() {
+        given:
+        def otherDead = new Scheduler('sname', 'otherDead', 0, 1000)
+        membership.getInstances() >> [dead, otherDead]
+        membership.isDefunct(_) >> true
+        lockManager.takeOverTriggerLocks('dead') >> { throw new RuntimeException('Just no!') }
+
+        when:
+        defunctRecoverer.run()
+
+        then:
+        1 * recoverer.recoverTakenOver('otherDead')
+        1 * schedulerDao.remove('otherDead', 0)
+    }
+}
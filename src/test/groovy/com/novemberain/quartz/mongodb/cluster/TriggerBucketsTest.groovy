@@ -0,0 +1,90 @@
+package com.novemberain.quartz.mongodb.cluster
+
+import com.novemberain.quartz.mongodb.Clocks
+import org.quartz.TriggerKey
+import spock.lang.Specification
+import spock.lang.Subject
+
+class TriggerBucketsTest extends Specification {
+
+    def membership = Mock(ClusterMembership)
+
+    @Subject def buckets = new TriggerBuckets(6, 'b', membership, Clocks.constClock(100000))
+
+    def alive(String id, List<Integer> leased = null) {
+        new Scheduler('sname', id, 99000, 1000, leased)
+    }
+
+    def 'should query all buckets before first rebalance'() {
+        expect:
+        buckets.ownBuckets == null
+        buckets.queryBuckets == null
+    }
+
+    def 'should spread buckets over live instances sorted by id'() {
+        given:
+        membership.getInstances() >> [alive('c', [2, 5]), alive('b'), alive('a', [0, 3])]
+
+        when:
+        buckets.rebalance()
+
+        then:
+        buckets.ownBuckets == [1, 4]
+        buckets.queryBuckets == [1, 4]
+    }
+
+    def 'should leave out defunct instances and query buckets nobody leased'() {
+        given: 'c has not seen d leave yet'
+        def dead = new Scheduler('sname', 'd', 0, 1000, [3])
+        membership.getInstances() >> [dead, alive('c', [2]), alive('a', [0, 4])]
+
+        when:
+        buckets.rebalance()
+
+        then:
+        buckets.ownBuckets == [1, 4]
+        buckets.queryBuckets == [1, 3, 4, 5]
+    }
+
+    def 'should query buckets until their new owner leases them'() {
+        given: 'b owned all buckets, a joined, c still leases buckets owned before a joined'
+        membership.getInstances() >>> [
+                [alive('b')],
+                [alive('a'), alive('b', 0..5), alive('c', [1, 3, 5])],
+                [alive('a', [0, 3]), alive('b', [1, 4]), alive('c', [2, 5])]]
+        buckets.rebalance()
+
+        when:
+        buckets.rebalance()
+
+        then:
+        buckets.ownBuckets == [1, 4]
+        buckets.queryBuckets == [0, 1, 2, 3, 4]
+
+        when:
+        buckets.rebalance()
+
+        then:
+        buckets.queryBuckets == [1, 4]
+    }
+
+    def 'should own all buckets when alone'() {
+        given:
+        membership.getInstances() >> []
+
+        when:
+        buckets.rebalance()
+
+        then:
+        buckets.ownBuckets == 0..5
+    }
+
+    def 'should put triggers into the same bucket on every call'() {
+        given:
+        def key = new TriggerKey('name', 'group')
+
+        expect:
+        TriggerBuckets.bucketOf(key, 16) == TriggerBuckets.bucketOf(new TriggerKey('name', 'group'), 16)
+        (0..<100).every { TriggerBuckets.bucketOf(new TriggerKey("t$it", 'g'), 7) in 0..6 }
+    }
+}
@@ -75,4 +75,14 @@ class CalendarDaoTest extends Specification {
         calendarNames.contains(nameSecond)
     }
 
-}
\ No newline at end of file
+    def 'should count stored calendars exactly and approximately'() {
+        given:
+        ['first', 'second'].forEach {
+            name -> dao.store(name as String, new DailyCalendar('10:15', '10:30'))
+        }
+
+        expect:
+        dao.getCount() == 2
+        dao.getEstimatedCount() == 2
+    }
+}
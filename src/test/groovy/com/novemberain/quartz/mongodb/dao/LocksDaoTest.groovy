@@ -122,6 +122,35 @@ class LocksDaoTest extends Specification {
         counter.get() == 3
     }
 
+    def 'should take over expired trigger locks of defunct scheduler'() {
+        given:
+        def counter = new AtomicInteger(0)
+        def clock = Clocks.incClock(counter)
+        def otherId = 'defunct scheduler'
+        def otherDao = createDao(clock, otherId)
+        def dao = createDao(clock)
+
+        when: 'Other scheduler locks triggers in time 1 and 2'
+        otherDao.lockTrigger(new TriggerKey('n1', 'g1'))
+        otherDao.lockTrigger(new TriggerKey('n2', 'g1'))
+
+        and: 'Locks taken before time 2 are taken over'
+        def takenOver = dao.takeOverTriggerLocks(otherId, new Date(2))
+
+        then:
+        takenOver == 1
+        dao.findTriggerLocksTakenOverFrom(otherId) == [new TriggerKey('n1', 'g1')]
+        dao.hasTriggerLocks(otherId)
+
+        when:
+        dao.takeOverTriggerLocks(otherId, new Date(10))
+
+        then:
+        !dao.hasTriggerLocks(otherId)
+        dao.findTriggerLocksTakenOverFrom(otherId).size() == 2
+        dao.findOwnTriggersLocks().size() == 2
+    }
+
     def createDao() {
         createDao(testClock)
     }
@@ -1,18 +1,29 @@
 package com.novemberain.quartz.mongodb.dao
 
+import com.mongodb.client.FindIterable
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.result.UpdateResult
 import com.novemberain.quartz.mongodb.MongoHelper
 import com.novemberain.quartz.mongodb.trigger.TriggerConverter
 import com.novemberain.quartz.mongodb.util.Keys
 import com.novemberain.quartz.mongodb.util.QueryHelper
 import org.bson.Document
+import org.quartz.JobPersistenceException
+import org.quartz.Trigger
 import org.quartz.TriggerKey
 import org.quartz.impl.triggers.SimpleTriggerImpl
 import spock.lang.Shared
 import spock.lang.Specification
 
+import static com.novemberain.quartz.mongodb.Constants.LOCK_INSTANCE_ID
+import static com.novemberain.quartz.mongodb.Constants.LOCK_STATE_ON_RELEASE
+import static com.novemberain.quartz.mongodb.Constants.LOCK_TIME
+import static com.novemberain.quartz.mongodb.Constants.STATE_ACQUIRED
 import static com.novemberain.quartz.mongodb.Constants.STATE_ERROR
 import static com.novemberain.quartz.mongodb.Constants.STATE_PAUSED
 import static com.novemberain.quartz.mongodb.Constants.STATE_WAITING
+import static com.novemberain.quartz.mongodb.Constants.TRIGGER_STATE
+import static com.novemberain.quartz.mongodb.Constants.TRIGGER_WRITER
 
 class TriggerDaoTest extends Specification {
 
@@ -32,13 +43,70 @@ class TriggerDaoTest extends Specification {
         def indices = MongoHelper.getTriggersColl().listIndexes().into([]).groupBy { it.name }
 
         then: 'contains default _id index'
-        indices.size() == 2 // id and key-group
+        indices.size() == 4 // id, key-group, state-nextFireTime and the one for ignored misfires
         indices.containsKey('_id_')
 
         and: 'has trigger key-group index'
         def idx = indices['keyGroup_1_keyName_1'].first()
         idx['unique'] == true
         idx['key'] == [keyGroup: 1, keyName: 1]
+
+        and: 'has index for eligible triggers query'
+        indices['state_1_nextFireTime_1'].first()['key'] == [state: 1, nextFireTime: 1]
+
+        and: 'has partial index for triggers ignoring misfires'
+        def ignoring = indices['state_1_misfireInstruction_1_nextFireTime_1'].first()
+        ignoring['partialFilterExpression'] == [misfireInstruction: Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY]
+    }
+
+    def "should find eligible triggers in fire time order, skipping ones without next fire time"() {
+        given:
+        insertWaitingTrigger(new TriggerKey('later', 'default'), new Date(2000))
+        insertWaitingTrigger(new TriggerKey('sooner', 'default'), new Date(1000))
+        insertWaitingTrigger(new TriggerKey('too-late', 'default'), new Date(5000))
+        insertWaitingTrigger(new TriggerKey('no-next-fire', 'default'))
+
+        when:
+        def names = triggerDao.findEligibleToRun(new Date(3000)).into([]).collect { it.keyName }
+
+        then:
+        names == ['sooner', 'later']
+        triggerDao.findWithoutNextFireTime().into([]).collect { it.keyName } == ['no-next-fire']
+    }
+
+    def "should leave out misfired triggers unless they ignore misfires"() {
+        given:
+        insertWaitingTrigger(new TriggerKey('on-time', 'default'), new Date(2000))
+        insertWaitingTrigger(new TriggerKey('misfired', 'default'), new Date(500))
+        def ignoring = createSimpleTriggerData(new TriggerKey('ignoring', 'default'))
+        ignoring.nextFireTime = new Date(100)
+        ignoring.misfireInstruction = Trigger.MISFIRE_INSTRUCTION_IGNORE_MISFIRE_POLICY
+        MongoHelper.addTrigger(ignoring)
+
+        expect:
+        triggerDao.findEligibleToRun(new Date(3000), new Date(1000)).into([]).collect { it.keyName } ==
+                ['ignoring', 'on-time']
+        triggerDao.findEligibleFireTimes(new Date(100), new Date(3000), new Date(1000), null).into([])
+                .collect { it.keyName } == ['on-time']
+    }
+
+    def "should leave job data out of eligible triggers and find it separately"() {
+        given:
+        def data = createSimpleTriggerData(triggerKey)
+        data.nextFireTime = new Date(1000)
+        data.jobDataPlain = [foo: 'bar']
+        MongoHelper.addTrigger(data)
+        insertWaitingTrigger(new TriggerKey('no-data', 'default'), new Date(1000))
+
+        when:
+        def eligible = triggerDao.findEligibleToRun(new Date(3000)).into([])
+        def jobData = triggerDao.findJobData([triggerKey, new TriggerKey('no-data', 'default')]).into([])
+
+        then:
+        eligible.every { !it.containsKey('jobDataPlain') }
+        jobData.size() == 1
+        jobData[0].keyName == triggerKey.name
+        jobData[0].jobDataPlain.foo == 'bar'
     }
 
     def "should transfer trigger state if trigger is in specified state"() {
@@ -75,6 +143,219 @@ class TriggerDaoTest extends Specification {
         triggerDao.exists(Keys.toFilter(triggerKey))
     }
 
+    def "should update triggers in one bulk write"() {
+        given:
+        def otherKey = new TriggerKey('other', 'default')
+        insertWaitingTrigger(triggerKey, new Date(1000))
+        insertWaitingTrigger(otherKey, new Date(1000))
+
+        when:
+        def errors = triggerDao.updateAll([triggerKey, otherKey], [
+                new Document('$set', new Document(TRIGGER_STATE, STATE_ACQUIRED)),
+                new Document('$set', new Document('nextFireTime', new Date(2000)))])
+
+        then:
+        errors.isEmpty()
+        triggerDao.getState(triggerKey) == STATE_ACQUIRED
+        def other = triggerDao.findTrigger(Keys.toFilter(otherKey))
+        other.nextFireTime == new Date(2000)
+        other.state == STATE_WAITING
+        other.get('class') == SimpleTriggerImpl.name
+    }
+
+    def "should acquire eligible trigger only once"() {
+        given:
+        insertWaitingTrigger(triggerKey, new Date(1000))
+        def id = triggerDao.findTrigger(Keys.toFilter(triggerKey)).get('_id')
+        def lockTime = new Date(1000)
+
+        when:
+        def acquired = triggerDao.acquire(id, new Date(), 'node1', lockTime)
+
+        then:
+        acquired[TRIGGER_STATE] == STATE_ACQUIRED
+        acquired[LOCK_INSTANCE_ID] == 'node1'
+        acquired[LOCK_TIME] == lockTime
+
+        and: 'other scheduler cannot acquire it'
+        triggerDao.acquire(id, new Date(), 'node2', new Date()) == null
+        !triggerDao.acquire(triggerKey, 'node2', new Date())
+    }
+
+    def "should relock acquired trigger only if lock time has not changed"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        def lockTime = new Date(1000)
+        triggerDao.acquire(triggerKey, 'node1', lockTime)
+
+        expect:
+        !triggerDao.relock(triggerKey, new Date(999), 'node2', new Date())
+        triggerDao.relock(triggerKey, lockTime, 'node2', new Date())
+        triggerDao.findAcquired(triggerKey)[LOCK_INSTANCE_ID] == 'node2'
+    }
+
+    def "should release trigger acquired by given scheduler"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        triggerDao.acquire(triggerKey, 'node1', new Date())
+
+        when: 'other scheduler tries to release it'
+        triggerDao.release(triggerKey, 'node2')
+
+        then:
+        triggerDao.getState(triggerKey) == STATE_ACQUIRED
+
+        when:
+        triggerDao.release(triggerKey, 'node1')
+
+        then:
+        triggerDao.getState(triggerKey) == STATE_WAITING
+        def doc = triggerDao.findTrigger(Keys.toFilter(triggerKey))
+        !doc.containsKey(LOCK_INSTANCE_ID)
+        !doc.containsKey(LOCK_TIME)
+    }
+
+    def "should pause acquired trigger when it is released"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        triggerDao.acquire(triggerKey, 'node1', new Date())
+
+        when:
+        triggerDao.setState(triggerKey, STATE_PAUSED)
+
+        then: 'it stays acquired'
+        triggerDao.getState(triggerKey) == STATE_ACQUIRED
+
+        when:
+        triggerDao.release(triggerKey, 'node1')
+
+        then:
+        triggerDao.getState(triggerKey) == STATE_PAUSED
+        !triggerDao.findTrigger(Keys.toFilter(triggerKey)).containsKey(LOCK_STATE_ON_RELEASE)
+    }
+
+    def "should release trigger paused and resumed while acquired as waiting"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        triggerDao.acquire(triggerKey, 'node1', new Date())
+
+        when:
+        triggerDao.setStateInAll(STATE_PAUSED)
+        triggerDao.setStateInAll(STATE_WAITING)
+        triggerDao.releaseAll([triggerKey], 'node1')
+
+        then:
+        triggerDao.getState(triggerKey) == STATE_WAITING
+    }
+
+    def "should keep lock of acquired trigger when it is replaced"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        def lockTime = new Date(1000)
+        triggerDao.acquire(triggerKey, 'node1', lockTime)
+
+        when:
+        triggerDao.replace(triggerKey, new Document(createSimpleTriggerData(triggerKey)))
+
+        then:
+        def doc = triggerDao.findTrigger(Keys.toFilter(triggerKey))
+        doc[TRIGGER_STATE] == STATE_ACQUIRED
+        doc[LOCK_INSTANCE_ID] == 'node1'
+        doc[LOCK_TIME] == lockTime
+    }
+
+    def "should update only triggers still acquired by given scheduler"() {
+        given:
+        insertWaitingTrigger(triggerKey, new Date(1000))
+        triggerDao.acquire(triggerKey, 'node2', new Date())
+
+        when:
+        triggerDao.updateAllAcquired([triggerKey], 'node1',
+                [new Document('$set', new Document('nextFireTime', new Date(2000)))])
+
+        then:
+        triggerDao.findTrigger(Keys.toFilter(triggerKey)).nextFireTime == new Date(1000)
+    }
+
+    def "should release all triggers acquired by given scheduler"() {
+        given:
+        def otherKey = new TriggerKey('other', 'default')
+        insertWaitingTrigger(triggerKey)
+        insertWaitingTrigger(otherKey)
+        triggerDao.acquire(triggerKey, 'node1', new Date())
+        triggerDao.acquire(otherKey, 'node2', new Date())
+
+        when:
+        triggerDao.releaseAll('node1')
+
+        then:
+        triggerDao.getState(triggerKey) == STATE_WAITING
+        triggerDao.getState(otherKey) == STATE_ACQUIRED
+    }
+
+    def "should stamp every write with its scheduler"() {
+        given:
+        def stampingDao = new TriggerDao(MongoHelper.getTriggersColl(), new QueryHelper(),
+                Mock(TriggerConverter), 'node1')
+        stampingDao.replace(triggerKey, new Document(createSimpleTriggerData(triggerKey)))
+        def first = triggerDao.findTrigger(Keys.toFilter(triggerKey))[TRIGGER_WRITER]
+
+        when:
+        stampingDao.updateAll([triggerKey], [new Document('$set', new Document('nextFireTime', new Date(2000)))])
+
+        then:
+        def second = triggerDao.findTrigger(Keys.toFilter(triggerKey))[TRIGGER_WRITER]
+        second != first
+        TriggerDao.isWrittenBy(first, 'node1')
+        TriggerDao.isWrittenBy(second, 'node1')
+        !TriggerDao.isWrittenBy(second, 'node')
+    }
+
+    def "should assign buckets only to triggers without buckets of the given count"() {
+        given:
+        insertWaitingTrigger(triggerKey)
+        triggerDao.assignBuckets(8)
+
+        expect:
+        triggerDao.assignBuckets(8) == 0
+        triggerDao.assignBuckets(16) == 1
+        triggerDao.findTrigger(Keys.toFilter(triggerKey)).bucketCount == 16
+    }
+
+    def "should give up replacing trigger whose lock keeps changing"() {
+        given:
+        def collection = Mock(MongoCollection)
+        def acquired = Mock(FindIterable) {
+            first() >> new Document(TRIGGER_STATE, STATE_ACQUIRED).append(LOCK_INSTANCE_ID, 'node1')
+        }
+        collection.find(_) >> acquired
+        def dao = new TriggerDao(collection, new QueryHelper(), Mock(TriggerConverter))
+
+        when:
+        dao.replace(triggerKey, new Document(createSimpleTriggerData(triggerKey)))
+
+        then:
+        20 * collection.replaceOne(_, _) >> UpdateResult.acknowledged(0, 0, null)
+        thrown(JobPersistenceException)
+    }
+
+    def "should give up releasing trigger whose state keeps changing"() {
+        given:
+        def collection = Mock(MongoCollection)
+        def acquired = Mock(FindIterable)
+        acquired.projection(_) >> acquired
+        acquired.first() >> new Document(LOCK_STATE_ON_RELEASE, STATE_PAUSED)
+        collection.find(_) >> acquired
+        def dao = new TriggerDao(collection, new QueryHelper(), Mock(TriggerConverter))
+
+        when:
+        dao.release(triggerKey, 'node1')
+
+        then:
+        10 * collection.updateOne(_, _) >> UpdateResult.acknowledged(0, 0, null)
+        thrown(JobPersistenceException)
+    }
+
     private static Map createSimpleTriggerData(TriggerKey key) {
         return [
                 state   : STATE_WAITING,
@@ -88,4 +369,10 @@ class TriggerDaoTest extends Specification {
         def data = createSimpleTriggerData(key)
         MongoHelper.addTrigger(data)
     }
+
+    private static insertWaitingTrigger(TriggerKey key, Date nextFireTime) {
+        def data = createSimpleTriggerData(key)
+        data.nextFireTime = nextFireTime
+        MongoHelper.addTrigger(data)
+    }
 }
@@ -0,0 +1,109 @@
+package com.novemberain.quartz.mongodb.db
+
+import com.mongodb.ServerAddress
+import com.mongodb.connection.ClusterId
+import com.mongodb.connection.ConnectionDescription
+import com.mongodb.connection.ServerId
+import com.mongodb.event.CommandStartedEvent
+import com.mongodb.event.CommandSucceededEvent
+import com.novemberain.quartz.mongodb.metrics.JobStoreMetrics
+import org.bson.BsonDocument
+import spock.lang.Specification
+
+import java.util.concurrent.TimeUnit
+
+class CommandTrackerTest extends Specification {
+
+    def connection = new ConnectionDescription(new ServerId(new ClusterId(), new ServerAddress()))
+    def metrics = Mock(JobStoreMetrics)
+
+    def find = BsonDocument.parse(
+            '{find: "quartz_triggers", filter: {state: "waiting", nextFireTime: {$lte: 1}, keyGroup: {$in: ["a", "b"]}}}')
+    def reply = BsonDocument.parse('{ok: 1}')
+
+    def start(CommandTracker tracker, BsonDocument command) {
+        tracker.commandStarted(new CommandStartedEvent(1, connection, 'quartz', command.getFirstKey(), command))
+    }
+
+    def succeed(CommandTracker tracker, String name, long millis) {
+        tracker.commandSucceeded(new CommandSucceededEvent(1, connection, name, reply,
+                TimeUnit.MILLISECONDS.toNanos(millis)))
+    }
+
+    def 'should attribute commands to current operation'() {
+        given:
+        def tracker = new CommandTracker(metrics, 0)
+
+        when:
+        def context = tracker.begin('acquireNextTriggers')
+        2.times {
+            start(tracker, find)
+            succeed(tracker, 'find', 3)
+        }
+        tracker.end(context)
+
+        then:
+        1 * metrics.recordOperation('acquireNextTriggers', _, 2)
+        1 * metrics.recordCommands('acquireNextTriggers', TimeUnit.MILLISECONDS.toNanos(6))
+        0 * metrics.recordSlowCommand(*_)
+        tracker.current() == null
+    }
+
+    def 'should keep commands of nested operation in the outer one'() {
+        given:
+        def tracker = new CommandTracker(metrics, 0)
+
+        when:
+        def outer = tracker.begin('storeJobsAndTriggers')
+        def inner = tracker.begin('storeJob')
+        start(tracker, find)
+        tracker.end(inner)
+        tracker.end(outer)
+
+        then:
+        inner == null
+        1 * metrics.recordOperation('storeJobsAndTriggers', _, 1)
+        0 * metrics.recordOperation('storeJob', _, _)
+    }
+
+    def 'should ignore commands outside of operations'() {
+        given:
+        def tracker = new CommandTracker(metrics, 1)
+
+        when:
+        start(tracker, find)
+        succeed(tracker, 'find', 5)
+
+        then:
+        0 * metrics._
+    }
+
+    def 'should report slow commands with their filter shape'() {
+        given:
+        def tracker = new CommandTracker(metrics, 10)
+
+        when:
+        def context = tracker.begin('triggersFired')
+        start(tracker, find)
+        succeed(tracker, 'find', 5)
+        start(tracker, find)
+        succeed(tracker, 'find', 20)
+        tracker.end(context)
+
+        then:
+        1 * metrics.recordSlowCommand('triggersFired', 'find', 'quartz_triggers',
+                '{state: ?, nextFireTime: {$lte: ?}, keyGroup: {$in: [?]}}', TimeUnit.MILLISECONDS.toNanos(20))
+    }
+
+    def 'should describe filters of write commands'() {
+        expect:
+        CommandTracker.filterShape(name, BsonDocument.parse(command)) == shape
+
+        where:
+        name            | command                                                                 | shape
+        'update'        | '{update: "t", updates: [{q: {_id: 1, state: "a"}, u: {$set: {x: 1}}}]}' | '{_id: ?, state: ?}'
+        'delete'        | '{delete: "t", deletes: [{q: {$or: [{a: 1}, {b: 2}]}, limit: 0}]}'      | '{$or: [{a: ?}, {b: ?}]}'
+        'findAndModify' | '{findAndModify: "t", query: {state: "waiting"}, update: {}}'           | '{state: ?}'
+        'insert'        | '{insert: "t", documents: [{a: 1}]}'                                     | '{}'
+    }
+}
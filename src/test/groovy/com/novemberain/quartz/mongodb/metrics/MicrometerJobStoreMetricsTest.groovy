@@ -0,0 +1,52 @@
+package com.novemberain.quartz.mongodb.metrics
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry
+import spock.lang.Specification
+import spock.lang.Subject
+
+import java.util.concurrent.TimeUnit
+
+class MicrometerJobStoreMetricsTest extends Specification {
+
+    def registry = new SimpleMeterRegistry()
+
+    @Subject def metrics = new MicrometerJobStoreMetrics(registry)
+
+    def 'should time operations with their round trips'() {
+        when:
+        metrics.recordOperation(JobStoreMetrics.TRIGGERS_FIRED, TimeUnit.MILLISECONDS.toNanos(20), 3)
+        metrics.recordOperation(JobStoreMetrics.TRIGGERS_FIRED, TimeUnit.MILLISECONDS.toNanos(10), 1)
+
+        then:
+        def timer = registry.get('quartz.jobstore.operation').tag('operation', 'triggersFired').timer()
+        timer.count() == 2
+        timer.totalTime(TimeUnit.MILLISECONDS) == 30
+        def roundTrips = registry.get('quartz.jobstore.db.round.trips').tag('operation', 'triggersFired').summary()
+        roundTrips.totalAmount() == 4
+    }
+
+    def 'should count misfires per trigger group'() {
+        when:
+        metrics.recordMisfire('g1')
+        metrics.recordMisfire('g1')
+        metrics.recordMisfire('g2')
+
+        then:
+        registry.get('quartz.jobstore.misfires').tag('group', 'g1').counter().count() == 2
+        registry.get('quartz.jobstore.misfires').tag('group', 'g2').counter().count() == 1
+    }
+
+    def 'should count lock events and fire lag'() {
+        when:
+        metrics.recordLockConflict()
+        metrics.recordRelock()
+        metrics.recordRecovery()
+        metrics.recordFireLag(15)
+
+        then:
+        registry.get('quartz.jobstore.lock.conflicts').counter().count() == 1
+        registry.get('quartz.jobstore.relocks').counter().count() == 1
+        registry.get('quartz.jobstore.recoveries').counter().count() == 1
+        registry.get('quartz.jobstore.fire.lag').timer().totalTime(TimeUnit.MILLISECONDS) == 15
+    }
+}
@@ -0,0 +1,140 @@
+package com.novemberain.quartz.mongodb.trigger
+
+import com.novemberain.quartz.mongodb.Constants
+import com.novemberain.quartz.mongodb.LockManager
+import com.novemberain.quartz.mongodb.TriggerAndJobPersister
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.db.CommandTracker
+import com.novemberain.quartz.mongodb.metrics.NoOpJobStoreMetrics
+import org.bson.Document
+import org.quartz.JobKey
+import org.quartz.TriggerKey
+import org.quartz.spi.OperableTrigger
+import org.quartz.spi.SchedulerSignaler
+import spock.lang.Specification
+import spock.lang.Subject
+
+class MisfireSweeperTest extends Specification {
+
+    def misfireTime = new Date(10000)
+
+    def triggerDao = Mock(TriggerDao)
+    def triggerConverter = Mock(TriggerConverter)
+    def persister = Mock(TriggerAndJobPersister)
+    def lockManager = Mock(LockManager)
+    def misfireHandler = Mock(MisfireHandler) {
+        getMisfireTime() >> misfireTime
+    }
+    def signaler = Mock(SchedulerSignaler)
+    def commandTracker = new CommandTracker(NoOpJobStoreMetrics.INSTANCE, 0)
+
+    @Subject def sweeper = new MisfireSweeper(triggerDao, triggerConverter, persister, lockManager,
+            misfireHandler, signaler, commandTracker, 1000, 2)
+
+    def trigger(String name, long nextFireTime) {
+        Mock(OperableTrigger) {
+            getKey() >> new TriggerKey(name, 'g')
+            getJobKey() >> new JobKey('job', 'g')
+            getNextFireTime() >> new Date(nextFireTime)
+        }
+    }
+
+    def 'should store misfired triggers with one bulk write and signal earliest fire time'() {
+        given:
+        def docs = [new Document(), new Document()]
+        def t1 = trigger('t1', 30000)
+        def t2 = trigger('t2', 20000)
+        triggerDao.findMisfired(misfireTime, 2) >>> [docs, []]
+        triggerConverter.toTriggersWithOptionalJob(docs) >> [t1, t2]
+        lockManager.tryLock(_) >> true
+        misfireHandler.applyMisfire(_) >> true
+
+        when:
+        sweeper.run()
+
+        then:
+        1 * lockManager.storeAcquiredTriggers([t1, t2]) >> [:]
+        1 * lockManager.unlockReleasedTriggers([t1, t2])
+        1 * signaler.signalSchedulingChange(20000)
+    }
+
+    def 'should skip triggers locked by others'() {
+        given:
+        def docs = [new Document()]
+        def t1 = trigger('t1', 30000)
+        triggerDao.findMisfired(misfireTime, 2) >> docs
+        triggerConverter.toTriggersWithOptionalJob(docs) >> [t1]
+        lockManager.tryLock(t1.key) >> false
+        lockManager.relockExpired(t1.key) >> false
+
+        when:
+        def more = sweeper.sweep()
+
+        then:
+        !more
+        0 * misfireHandler.applyMisfire(_)
+        1 * lockManager.storeAcquiredTriggers([]) >> [:]
+        0 * signaler.signalSchedulingChange(_)
+    }
+
+    def 'should release triggers without changes and remove finished ones'() {
+        given:
+        def docs = [new Document(), new Document()]
+        def unchanged = trigger('unchanged', 30000)
+        def finished = trigger('finished', 30000)
+        triggerDao.findMisfired(misfireTime, 2) >> docs
+        triggerConverter.toTriggersWithOptionalJob(docs) >> [unchanged, finished]
+        lockManager.tryLock(_) >> true
+        // mocked triggers compare as equal, so match them by identity
+        misfireHandler.applyMisfire({ it.is(unchanged) }) >> false
+        misfireHandler.applyMisfire({ it.is(finished) }) >> true
+        persister.removeTriggerWithoutNextFireTime({ it.is(finished) }) >> true
+
+        when:
+        def more = sweeper.sweep()
+
+        then: 'a full batch was handled, so there may be more'
+        more
+        1 * lockManager.storeAcquiredTriggers([]) >> [:]
+        1 * lockManager.unlockAcquiredTrigger(unchanged)
+        1 * lockManager.unlockAcquiredTrigger(finished)
+        0 * signaler.signalSchedulingChange(_)
+    }
+
+    def 'should not sweep again right away when full batch was released unchanged'() {
+        given:
+        def docs = [new Document(), new Document()]
+        def t1 = trigger('t1', 30000)
+        def t2 = trigger('t2', 30000)
+        triggerConverter.toTriggersWithOptionalJob(docs) >> [t1, t2]
+        lockManager.tryLock(_) >> true
+        misfireHandler.applyMisfire(_) >> false
+        lockManager.storeAcquiredTriggers([]) >> [:]
+
+        when:
+        sweeper.run()
+
+        then: 'the same triggers would be found again'
+        1 * triggerDao.findMisfired(misfireTime, 2) >> docs
+        1 * lockManager.unlockAcquiredTrigger(t1)
+        1 * lockManager.unlockAcquiredTrigger(t2)
+    }
+
+    def 'should put aside triggers without job'() {
+        given:
+        def docs = [new Document()]
+        def orphan = Mock(OperableTrigger) {
+            getKey() >> new TriggerKey('orphan', 'g')
+        }
+        triggerDao.findMisfired(misfireTime, 2) >> docs
+        triggerConverter.toTriggersWithOptionalJob(docs) >> [orphan]
+
+        when:
+        sweeper.sweep()
+
+        then:
+        1 * triggerDao.transferState(orphan.key, Constants.STATE_WAITING, Constants.STATE_ERROR)
+        0 * lockManager.tryLock(_)
+        1 * lockManager.storeAcquiredTriggers([]) >> [:]
+    }
+}
@@ -0,0 +1,171 @@
+package com.novemberain.quartz.mongodb.trigger
+
+import com.mongodb.MongoException
+import com.mongodb.MongoNamespace
+import com.mongodb.client.ChangeStreamIterable
+import com.mongodb.client.MongoCollection
+import com.mongodb.client.MongoCursor
+import com.mongodb.client.model.changestream.ChangeStreamDocument
+import com.mongodb.client.model.changestream.OperationType
+import com.mongodb.client.model.changestream.UpdateDescription
+import com.novemberain.quartz.mongodb.Constants
+import org.bson.BsonDateTime
+import org.bson.BsonDocument
+import org.bson.BsonNull
+import org.bson.BsonString
+import org.bson.Document
+import org.quartz.spi.OperableTrigger
+import org.quartz.spi.SchedulerSignaler
+import spock.lang.Specification
+import spock.lang.Subject
+import spock.util.concurrent.BlockingVariable
+
+class TriggerChangeWatcherTest extends Specification {
+
+    def collection = Mock(MongoCollection)
+    def signaler = Mock(SchedulerSignaler)
+
+    @Subject def watcher = new TriggerChangeWatcher(collection, signaler, 10, 'node1', null)
+
+    def change(Long nextFireTime, String writer = 'node2:1') {
+        def trigger = new Document(Constants.TRIGGER_STATE, Constants.STATE_WAITING)
+                .append(Constants.TRIGGER_WRITER, writer)
+        if (nextFireTime != null) {
+            trigger.put(Constants.TRIGGER_NEXT_FIRE_TIME, new Date(nextFireTime))
+        }
+        new ChangeStreamDocument<Document>(new BsonDocument(), new MongoNamespace('db.triggers'),
+                trigger, new BsonDocument(), OperationType.INSERT, null)
+    }
+
+    def update(BsonDocument updatedFields, List<String> removedFields = []) {
+        new ChangeStreamDocument<Document>(new BsonDocument(), new MongoNamespace('db.triggers'),
+                null, new BsonDocument(), OperationType.UPDATE, new UpdateDescription(removedFields, updatedFields))
+    }
+
+    def 'should signal only triggers firing before the earliest signaled one'() {
+        when:
+        watcher.onChange(change(50000))
+        watcher.onChange(change(60000))
+        watcher.onChange(change(40000))
+
+        then:
+        1 * signaler.signalSchedulingChange(50000)
+        0 * signaler.signalSchedulingChange(60000)
+        1 * signaler.signalSchedulingChange(40000)
+    }
+
+    def 'should signal only triggers firing before the planned wake-up'() {
+        given:
+        def acquired = Mock(OperableTrigger) {
+            getNextFireTime() >> new Date(30000)
+        }
+        watcher.onAcquiring()
+        watcher.onAcquired(40000, [acquired])
+
+        when:
+        watcher.onChange(change(35000))
+        watcher.onChange(change(20000))
+
+        then:
+        0 * signaler.signalSchedulingChange(35000)
+        1 * signaler.signalSchedulingChange(20000)
+    }
+
+    def 'should plan wake-up at the end of the idle wait without acquired triggers'() {
+        given:
+        watcher.onAcquiring()
+        watcher.onAcquired(40000, [])
+
+        when:
+        watcher.onChange(change(50000))
+        watcher.onChange(change(30000))
+
+        then:
+        0 * signaler.signalSchedulingChange(50000)
+        1 * signaler.signalSchedulingChange(30000)
+    }
+
+    def 'should keep change signaled during acquisition'() {
+        given:
+        watcher.onAcquiring()
+        watcher.onChange(change(20000))
+
+        when:
+        watcher.onAcquired(40000, [])
+        watcher.onChange(change(30000))
+
+        then:
+        0 * signaler.signalSchedulingChange(_)
+    }
+
+    def 'should skip changes written by this node'() {
+        when:
+        watcher.onChange(change(20000, 'node1:5'))
+        watcher.onChange(update(new BsonDocument(Constants.TRIGGER_NEXT_FIRE_TIME, new BsonDateTime(20000))
+                .append(Constants.TRIGGER_WRITER, new BsonString('node1:6'))))
+
+        then:
+        0 * signaler.signalSchedulingChange(_)
+    }
+
+    def 'should signal rescheduled trigger from its updated fields'() {
+        when:
+        watcher.onChange(update(new BsonDocument(Constants.TRIGGER_NEXT_FIRE_TIME, new BsonDateTime(20000))
+                .append(Constants.TRIGGER_WRITER, new BsonString('node2:6'))))
+
+        then:
+        1 * signaler.signalSchedulingChange(20000)
+    }
+
+    def 'should signal general change for resumed trigger but not for released one'() {
+        when:
+        watcher.onChange(update(new BsonDocument(Constants.TRIGGER_STATE, new BsonString(Constants.STATE_WAITING)),
+                [Constants.LOCK_INSTANCE_ID, Constants.LOCK_TIME]))
+
+        then:
+        0 * signaler.signalSchedulingChange(_)
+
+        when:
+        watcher.onChange(update(new BsonDocument(Constants.TRIGGER_STATE, new BsonString(Constants.STATE_WAITING))
+                .append(Constants.TRIGGER_WRITER, new BsonString('node2:7'))))
+
+        then:
+        1 * signaler.signalSchedulingChange(0L)
+    }
+
+    def 'should ignore triggers without next fire time or removed ones'() {
+        given:
+        def removed = new ChangeStreamDocument<Document>(new BsonDocument(), new MongoNamespace('db.triggers'),
+                null, new BsonDocument(), OperationType.UPDATE, null)
+
+        when:
+        watcher.onChange(change(null))
+        watcher.onChange(removed)
+        watcher.onChange(update(new BsonDocument(Constants.TRIGGER_NEXT_FIRE_TIME, new BsonNull())))
+
+        then:
+        0 * signaler.signalSchedulingChange(_)
+    }
+
+    def 'should signal general change after watching again'() {
+        given:
+        def cursor = Mock(MongoCursor) {
+            hasNext() >> false
+        }
+        def stream = Mock(ChangeStreamIterable) {
+            iterator() >> cursor
+        }
+        collection.watch(_) >> { throw new MongoException('Not a replica set') } >> stream
+        def signaled = new BlockingVariable<Long>(5)
+        signaler.signalSchedulingChange(_) >> { long time -> signaled.set(time) }
+
+        when:
+        watcher.start()
+
+        then:
+        signaled.get() == 0L
+
+        cleanup:
+        watcher.shutdown()
+    }
+}
@@ -6,8 +6,11 @@ import com.novemberain.quartz.mongodb.dao.JobDao
 import com.novemberain.quartz.mongodb.dao.TriggerDao
 import com.novemberain.quartz.mongodb.util.Keys
 import org.bson.Document
+import org.quartz.JobKey
+import org.quartz.JobPersistenceException
 import org.quartz.TriggerKey
 import org.quartz.impl.triggers.SimpleTriggerImpl
+import org.quartz.spi.OperableTrigger
 import spock.lang.Shared
 import spock.lang.Specification
 import spock.lang.Subject
@@ -70,6 +73,133 @@ class TriggerConverterTest extends Specification {
         trigger.getJobDataMap().getString('trg param') == 'my message'
     }
 
+    def 'should resolve jobs of all triggers with a single lookup'() {
+        given:
+        def orphanDoc = createTriggerDoc()
+                .append('keyName', 'orphan')
+                .append('jobId', 'gone')
+        def triggerDocs = [createTriggerDoc(), createTriggerDoc().append('keyName', 'tkey2'), orphanDoc]
+
+        when:
+        def triggers = converter.toTriggersWithOptionalJob(triggerDocs)
+
+        then:
+        0 * jobDao.getById(_)
+        1 * jobDao.getJobKeysByIds({ it as Set == [jobId, 'gone'] as Set }) >> [(jobId): new JobKey('job key', 'job group')]
+        triggers*.key*.name == ['tkey', 'tkey2', 'orphan']
+        triggers*.jobKey == [new JobKey('job key', 'job group'), new JobKey('job key', 'job group'), null]
+    }
+
+    def 'should skip triggers without job when converting in batch'() {
+        given:
+        def triggerDocs = [createTriggerDoc(), createTriggerDoc().append('keyName', 'orphan').append('jobId', 'gone')]
+        1 * jobDao.getJobKeysByIds(_) >> [(jobId): new JobKey('job key', 'job group')]
+
+        when:
+        def triggers = converter.toTriggers(triggerDocs)
+
+        then:
+        triggers*.key*.name == ['tkey']
+    }
+
+    def 'should convert only fire time fields of fired trigger'() {
+        given:
+        def trigger = new SimpleTriggerImpl('tkey', 'tgroup', new Date(10), null, 10, 400)
+        trigger.getJobDataMap().put('trg param', 'my message')
+        trigger.computeFirstFireTime(null)
+        trigger.triggered(null)
+
+        when:
+        def doc = converter.toFireTimesDocument(trigger)
+
+        then:
+        doc.keySet() == ['finalFireTime', 'fireInstanceId', 'nextFireTime', 'previousFireTime', 'startTime',
+                         'repeatCount', 'timesTriggered'] as Set
+        doc.previousFireTime == new Date(10)
+        doc.nextFireTime == new Date(410)
+        doc.timesTriggered == 1
+    }
+
+    def 'should convert custom trigger with registered converter'() {
+        given:
+        converter.registerPropertiesConverter(new CustomTriggerPropertiesConverter())
+        def trigger = new CustomTrigger(color: 'blue')
+        trigger.setKey(new TriggerKey('tkey', 'tgroup'))
+        trigger.setStartTime(new Date(10))
+        1 * jobDao.getById(jobId) >> new Document(Keys.KEY_NAME, 'job key').append(Keys.KEY_GROUP, 'job group')
+
+        when:
+        def doc = converter.toDocument(trigger, null).append('jobId', jobId)
+        def restored = converter.toTrigger(doc)
+
+        then:
+        doc.color == 'blue'
+        restored instanceof CustomTrigger
+        (restored as CustomTrigger).color == 'blue'
+    }
+
+    def 'should create triggers with registered factory'() {
+        given:
+        def created = 0
+        converter.registerTriggerFactory(FactoryTrigger.name, { created++; new FactoryTrigger() })
+        1 * jobDao.getById(jobId) >> new Document(Keys.KEY_NAME, 'job key').append(Keys.KEY_GROUP, 'job group')
+
+        when:
+        def trigger = converter.toTrigger(createTriggerDoc().append('class', FactoryTrigger.name))
+
+        then:
+        trigger instanceof FactoryTrigger
+        created == 1
+    }
+
+    def 'should not share registered converters between stores'() {
+        given:
+        converter.registerPropertiesConverter(new CustomTriggerPropertiesConverter())
+        def other = new TriggerConverter(jobDao, new JobDataConverter(true))
+        def trigger = new CustomTrigger(color: 'blue')
+        trigger.setKey(new TriggerKey('tkey', 'tgroup'))
+
+        when:
+        def doc = other.toDocument(trigger, null)
+
+        then:
+        !doc.containsKey('color')
+    }
+
+    def 'should fail to convert trigger of unknown class'() {
+        when:
+        converter.toTrigger(createTriggerDoc().append('class', 'com.example.NoSuchTrigger'))
+
+        then:
+        def e = thrown(JobPersistenceException)
+        e.message == 'Could not find trigger class com.example.NoSuchTrigger'
+    }
+
+    static class CustomTrigger extends SimpleTriggerImpl {
+        String color
+    }
+
+    static class FactoryTrigger extends SimpleTriggerImpl {
+    }
+
+    static class CustomTriggerPropertiesConverter extends TriggerPropertiesConverter {
+
+        @Override
+        protected boolean canHandle(OperableTrigger trigger) {
+            trigger instanceof CustomTrigger
+        }
+
+        @Override
+        Document injectExtraPropertiesForInsert(OperableTrigger trigger, Document original) {
+            new Document(original).append('color', (trigger as CustomTrigger).color)
+        }
+
+        @Override
+        void setExtraPropertiesAfterInstantiation(OperableTrigger trigger, Document stored) {
+            (trigger as CustomTrigger).color = stored.getString('color')
+        }
+    }
+
     def createTriggerDoc() {
         new Document()
                 .append('_id', '57a6d36dee7825134cf47309')
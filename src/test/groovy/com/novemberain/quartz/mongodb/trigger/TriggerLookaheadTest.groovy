@@ -0,0 +1,129 @@
+package com.novemberain.quartz.mongodb.trigger
+
+import com.mongodb.client.FindIterable
+import com.mongodb.client.MongoCursor
+import com.novemberain.quartz.mongodb.Constants
+import com.novemberain.quartz.mongodb.dao.TriggerDao
+import com.novemberain.quartz.mongodb.util.Clock
+import org.bson.Document
+import org.quartz.TriggerKey
+import spock.lang.Specification
+import spock.lang.Subject
+
+class TriggerLookaheadTest extends Specification {
+
+    def now = 10000L
+    def clock = Mock(Clock) {
+        millis() >> { now }
+    }
+    def triggerDao = Mock(TriggerDao)
+
+    @Subject def lookahead = new TriggerLookahead(triggerDao, clock, 5000, 1000)
+
+    def trigger(String name, long nextFireTime, Integer bucket = null) {
+        def doc = new Document('keyName', name).append('keyGroup', 'g')
+                .append(Constants.TRIGGER_NEXT_FIRE_TIME, new Date(nextFireTime))
+        if (bucket != null) {
+            doc.append(Constants.TRIGGER_BUCKET, bucket)
+        }
+        doc
+    }
+
+    def found(List<Document> docs) {
+        def iterator = docs.iterator()
+        def cursor = [hasNext: { iterator.hasNext() }, next: { iterator.next() }, close: {}] as MongoCursor
+        [iterator: { cursor }] as FindIterable
+    }
+
+    def key(String name) {
+        new TriggerKey(name, 'g')
+    }
+
+    def 'should tell if acquisition can be served from memory'() {
+        expect:
+        lookahead.covers(new Date(15000))
+        !lookahead.covers(new Date(15001))
+    }
+
+    def 'should load window once and take due triggers earliest first'() {
+        when:
+        def due = lookahead.takeDue(new Date(12000), null, null, 10)
+
+        then:
+        1 * triggerDao.findEligibleFireTimes(null, new Date(15000), null, null) >>
+                found([trigger('late', 14000), trigger('t2', 11000), trigger('t1', 10500)])
+        due == [key('t1'), key('t2')]
+
+        when:
+        due = lookahead.takeDue(new Date(15000), null, null, 10)
+
+        then:
+        0 * triggerDao.findEligibleFireTimes(*_)
+        due == [key('late')]
+    }
+
+    def 'should load only triggers due after loaded part when time passed'() {
+        given:
+        triggerDao.findEligibleFireTimes(null, _, _, _) >> found([])
+        lookahead.takeDue(new Date(10000), null, null, 10)
+        now = 10500
+
+        when:
+        def due = lookahead.takeDue(new Date(15500), null, null, 10)
+
+        then:
+        1 * triggerDao.findEligibleFireTimes(new Date(15000), new Date(15500), null, null) >>
+                found([trigger('t1', 15200)])
+        due == [key('t1')]
+    }
+
+    def 'should reload everything after reload interval or when buckets changed'() {
+        given:
+        triggerDao.findEligibleFireTimes(null, _, null, [1]) >> found([])
+        lookahead.takeDue(new Date(10000), null, [1], 10)
+
+        when:
+        lookahead.takeDue(new Date(10000), null, [1, 2], 10)
+        now = 11000
+        lookahead.takeDue(new Date(10000), null, [1, 2], 10)
+
+        then:
+        2 * triggerDao.findEligibleFireTimes(null, _, null, [1, 2]) >> { found([]) }
+    }
+
+    def 'should take offered triggers and forget rescheduled ones'() {
+        given:
+        triggerDao.findEligibleFireTimes(*_) >> found([trigger('t1', 11000)])
+        lookahead.takeDue(new Date(10000), null, null, 10)
+
+        when:
+        lookahead.offer(key('t1'), new Date(20000))
+        lookahead.offer(key('t2'), new Date(12000))
+        lookahead.offer(trigger('t3', 13000))
+
+        then:
+        lookahead.takeDue(new Date(15000), null, null, 10) == [key('t2'), key('t3')]
+    }
+
+    def 'should not take offered triggers from buckets of other nodes'() {
+        given:
+        triggerDao.findEligibleFireTimes(*_) >> found([])
+        lookahead.takeDue(new Date(10000), null, [1], 10)
+
+        when:
+        lookahead.offer(trigger('mine', 11000, 1))
+        lookahead.offer(trigger('other', 11000, 2))
+
+        then:
+        lookahead.takeDue(new Date(12000), null, [1], 10) == [key('mine')]
+    }
+
+    def 'should stop at max count and keep the rest'() {
+        given:
+        triggerDao.findEligibleFireTimes(*_) >> found([trigger('t1', 10100), trigger('t2', 10200)])
+
+        expect:
+        lookahead.takeDue(new Date(11000), null, null, 1) == [key('t1')]
+        lookahead.takeDue(new Date(11000), null, null, 1) == [key('t2')]
+    }
+}
@@ -0,0 +1,82 @@
+package com.novemberain.quartz.mongodb.util
+
+import org.quartz.impl.calendar.DailyCalendar
+import spock.lang.Specification
+
+import java.util.concurrent.atomic.AtomicLong
+
+class CalendarCacheTest extends Specification {
+
+    def time = new AtomicLong(1000)
+    def clock = [millis: { time.get() }, now: { new Date(time.get()) }] as Clock
+    def calendar = new DailyCalendar('10:15', '10:30')
+
+    def 'should use calendar without checking within staleness bound'() {
+        given:
+        def cache = new CalendarCache(clock, 100, 10)
+        cache.put('cal', 1, calendar)
+
+        expect:
+        cache.getFresh('cal').is(calendar)
+
+        when:
+        time.addAndGet(100)
+
+        then:
+        cache.getFresh('cal') == null
+    }
+
+    def 'should never be fresh without staleness bound'() {
+        given:
+        def cache = new CalendarCache(clock, 0, 10)
+        cache.put('cal', 1, calendar)
+
+        expect:
+        cache.getFresh('cal') == null
+        cache.getIfVersion('cal', 1).is(calendar)
+    }
+
+    def 'should return calendar only for matching version'() {
+        given:
+        def cache = new CalendarCache(clock, 100, 10)
+        cache.put('cal', 1, calendar)
+        time.addAndGet(500)
+
+        expect:
+        cache.getIfVersion('cal', 2) == null
+        cache.getFresh('cal') == null
+
+        and: 'confirmed version is fresh again'
+        cache.getIfVersion('cal', 1).is(calendar)
+        cache.getFresh('cal').is(calendar)
+    }
+
+    def 'should evict least recently used calendars'() {
+        given:
+        def cache = new CalendarCache(clock, 100, 2)
+        cache.put('a', 1, calendar)
+        cache.put('b', 1, calendar)
+        cache.getFresh('a')
+
+        when:
+        cache.put('c', 1, calendar)
+
+        then:
+        cache.getFresh('a') != null
+        cache.getFresh('b') == null
+        cache.getFresh('c') != null
+    }
+
+    def 'should forget invalidated calendar'() {
+        given:
+        def cache = new CalendarCache(clock, 100, 10)
+        cache.put('cal', 1, calendar)
+
+        when:
+        cache.invalidate('cal')
+
+        then:
+        cache.getFresh('cal') == null
+        cache.getIfVersion('cal', 1) == null
+    }
+}
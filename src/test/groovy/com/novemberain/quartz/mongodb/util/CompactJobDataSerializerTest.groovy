@@ -0,0 +1,56 @@
+package com.novemberain.quartz.mongodb.util
+
+import spock.lang.Specification
+import spock.lang.Subject
+
+class CompactJobDataSerializerTest extends Specification {
+
+    @Subject def serializer = new CompactJobDataSerializer()
+
+    def 'should keep values and their types'() {
+        given:
+        def jobData = [str: 'zażółć', int: 1, long: 2L, bool: true, double: 1.5d, float: 2.5f,
+                       short: (short) 3, byte: (byte) 4, char: 'c' as char, date: new Date(123),
+                       none: null, list: ['a', 'b'], nested: [one: 1]]
+
+        when:
+        def decoded = serializer.deserialize(serializer.serialize(jobData))
+
+        then:
+        decoded == jobData
+        decoded.collectEntries { k, v -> [k, v?.getClass()] } == jobData.collectEntries { k, v -> [k, v?.getClass()] }
+    }
+
+    def 'should keep byte arrays'() {
+        when:
+        def decoded = serializer.deserialize(serializer.serialize([bytes: [1, 2, 3] as byte[]]))
+
+        then:
+        decoded.bytes == [1, 2, 3] as byte[]
+    }
+
+    def 'should be smaller than java serialization'() {
+        given:
+        def jobData = [str: '123', count: 10, enabled: true]
+
+        expect:
+        serializer.serialize(jobData).length < Base64.decoder.decode(SerialUtils.serialize(new org.quartz.JobDataMap(jobData))).length / 4
+    }
+
+    def 'should name not serializable value'() {
+        when:
+        serializer.serialize([bad: new Object()])
+
+        then:
+        def e = thrown(NotSerializableException)
+        e.message.contains("'bad'")
+    }
+
+    def 'should reject unknown version'() {
+        when:
+        serializer.deserialize([2, 0, 0, 0, 0] as byte[])
+
+        then:
+        thrown(IOException)
+    }
+}
@@ -0,0 +1,76 @@
+package com.novemberain.quartz.mongodb.util
+
+import org.quartz.TimeOfDay
+import org.quartz.impl.triggers.CronTriggerImpl
+import spock.lang.Specification
+
+import java.text.ParseException
+
+class ScheduleCacheTest extends Specification {
+
+    def cache = new ScheduleCache(2)
+
+    def 'should parse a new expression in cached time zone on every call'() {
+        when:
+        def first = cache.newCronExpression('0 0 12 * * ?', 'Europe/Warsaw')
+        def second = cache.newCronExpression('0 0 12 * * ?', 'Europe/Warsaw')
+        def otherZone = cache.newCronExpression('0 0 12 * * ?', 'UTC')
+
+        then:
+        !first.is(second)
+        !first.timeZone.is(second.timeZone)
+        first.cronExpression == second.cronExpression
+        first.timeZone.ID == 'Europe/Warsaw'
+        second.timeZone.ID == 'Europe/Warsaw'
+        otherZone.timeZone.ID == 'UTC'
+        cache.newCronExpression('0 0 12 * * ?', null).timeZone.ID == TimeZone.getDefault().ID
+    }
+
+    def 'should keep time zone of other triggers when one trigger changes it'() {
+        given:
+        def first = new CronTriggerImpl()
+        first.setCronExpression(cache.newCronExpression('0 0 12 * * ?', 'UTC'))
+        def second = new CronTriggerImpl()
+        second.setCronExpression(cache.newCronExpression('0 0 12 * * ?', 'UTC'))
+
+        when:
+        first.setTimeZone(TimeZone.getTimeZone('Europe/Warsaw'))
+
+        then:
+        second.timeZone.ID == 'UTC'
+        second.cronExpression == '0 0 12 * * ?'
+        cache.newCronExpression('0 0 12 * * ?', 'UTC').timeZone.ID == 'UTC'
+    }
+
+    def 'should fail on invalid expression'() {
+        when:
+        cache.newCronExpression('not cron', 'UTC')
+
+        then:
+        thrown(ParseException)
+    }
+
+    def 'should hand out copies of time zones'() {
+        when:
+        def first = cache.getTimeZone('Europe/Warsaw')
+        first.setRawOffset(0)
+
+        then:
+        cache.getTimeZone('Europe/Warsaw').rawOffset == 3600000
+    }
+
+    def 'should evict least recently used times of day'() {
+        given:
+        cache.putTimeOfDay(1, new TimeOfDay(0, 0, 1))
+        cache.putTimeOfDay(2, new TimeOfDay(0, 0, 2))
+        cache.getTimeOfDay(1)
+
+        when:
+        cache.putTimeOfDay(3, new TimeOfDay(0, 0, 3))
+
+        then:
+        cache.getTimeOfDay(1) == new TimeOfDay(0, 0, 1)
+        cache.getTimeOfDay(2) == null
+        cache.getTimeOfDay(3) == new TimeOfDay(0, 0, 3)
+    }
+}
@@ -366,6 +366,28 @@ class QuartzWithMongoDbStoreTest extends Specification {
         scheduler.getTriggersOfJob(jobKey) == [trigger]
     }
 
+    def 'replace jobs and triggers via scheduleJobs method'(){
+        given:
+        def jobsAndTriggers = [:]
+        (1..5).each {
+            def job = JobBuilder.newJob(JobH).withIdentity("job$it", 'bulk').build()
+            jobsAndTriggers.put(job, [TriggerBuilder.newTrigger().withIdentity("trigger$it", 'bulk').forJob(job).build()] as Set)
+        }
+        scheduler.scheduleJobs(jobsAndTriggers, false)
+
+        when:
+        scheduler.scheduleJobs(jobsAndTriggers, true)
+
+        then:
+        (1..5).every { scheduler.getTriggersOfJob(new JobKey("job$it", 'bulk'))*.key == [new TriggerKey("trigger$it", 'bulk')] }
+
+        when:
+        scheduler.scheduleJobs(jobsAndTriggers, false)
+
+        then:
+        thrown(ObjectAlreadyExistsException)
+    }
+
     public static class JobH implements Job {
       @Override
       void execute(JobExecutionContext ctx) throws JobExecutionException {